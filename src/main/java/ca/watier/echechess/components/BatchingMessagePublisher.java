@@ -0,0 +1,259 @@
+/*
+ *    Copyright 2014 - 2021 Yannick Watier
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.watier.echechess.components;
+
+import ca.watier.echechess.exceptions.MessageNotConfirmedException;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitOperations;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publish the messages in small batches, from a dedicated thread; each batch is sent on one channel (one checkout of
+ * the channel for the whole batch, instead of one per message).
+ * <p>
+ * A batch is sent when it reaches the batch size, or when the linger time elapsed since its first message; with a
+ * linger of zero, the batch contains the messages already waiting (no delay is added). The publisher confirms are
+ * received asynchronously (the connection factory must use the correlated confirms): the future returned by
+ * {@link #publish(String, Message)} completes when the broker confirms the message, fails with a
+ * {@link MessageNotConfirmedException} when the broker refuses it, and with the error thrown when the message can't be
+ * sent (whatever the type of the error, so the callers are never left waiting).
+ */
+public class BatchingMessagePublisher {
+    private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(BatchingMessagePublisher.class);
+    private static final long IDLE_POLL_IN_MILLIS = 100;
+
+    private final RabbitOperations rabbitOperations;
+    private final String exchange;
+    private final int batchSize;
+    private final long lingerInNanos;
+    private final BlockingQueue<PendingMessage> pendingMessages;
+    private final ExecutorService executorService;
+    private final AtomicLong publishedMessages = new AtomicLong();
+    private final AtomicLong publishedBatches = new AtomicLong();
+    private final AtomicLong confirmedMessages = new AtomicLong();
+    private final AtomicLong failedMessages = new AtomicLong();
+    private volatile boolean isRunning = true;
+
+    /**
+     * @param exchange     - The exchange of the messages, empty for the default exchange
+     * @param maximumQueue - The number of messages waiting to be sent, the new messages are refused when full
+     */
+    public BatchingMessagePublisher(RabbitOperations rabbitOperations, String exchange, int batchSize, Duration linger, int maximumQueue) {
+        if (batchSize < 1 || maximumQueue < 1) {
+            throw new IllegalArgumentException("The batch size and the maximum queue must be positive");
+        }
+
+        this.rabbitOperations = rabbitOperations;
+        this.exchange = exchange;
+        this.batchSize = batchSize;
+        this.lingerInNanos = Math.max(0, linger.toNanos());
+        this.pendingMessages = new ArrayBlockingQueue<>(maximumQueue);
+        this.executorService = Executors.newSingleThreadExecutor(new CustomizableThreadFactory("rabbit-publisher-"));
+        this.executorService.execute(this::run);
+    }
+
+    /**
+     * Queue the message, to be sent with the next batch.
+     *
+     * @return A future completed when the broker confirms the message
+     */
+    public CompletableFuture<Void> publish(String routingKey, Message message) {
+        PendingMessage pendingMessage = new PendingMessage(routingKey, message);
+
+        if (!isRunning) {
+            pendingMessage.future.completeExceptionally(new IllegalStateException("The publisher is stopped"));
+        } else if (!pendingMessages.offer(pendingMessage)) {
+            LOGGER.warn("Too many messages waiting to be published, refusing the message to {}", routingKey);
+            fail(pendingMessage, new MessageNotConfirmedException());
+        } else if (!isRunning && pendingMessages.remove(pendingMessage)) {
+            // Stopped while queuing, the publishing thread may be gone
+            fail(pendingMessage, new IllegalStateException("The publisher is stopped"));
+        }
+
+        return pendingMessage.future;
+    }
+
+    private void run() {
+        List<PendingMessage> batch = new ArrayList<>(batchSize);
+
+        while (isRunning || !pendingMessages.isEmpty()) {
+            try {
+                PendingMessage first = pendingMessages.poll(IDLE_POLL_IN_MILLIS, TimeUnit.MILLISECONDS);
+
+                if (first == null) {
+                    continue;
+                }
+
+                batch.add(first);
+                fillBatch(batch);
+                sendBatch(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failBatch(batch, new IllegalStateException("The publisher is stopped"));
+                break;
+            } catch (Throwable throwable) {
+                LOGGER.error("Unable to publish the batch of messages", throwable);
+                failBatch(batch, throwable);
+            } finally {
+                batch.clear();
+            }
+        }
+
+        // Stopped while messages were waiting; they will never be sent
+        List<PendingMessage> remaining = new ArrayList<>();
+        pendingMessages.drainTo(remaining);
+        remaining.forEach(pendingMessage -> fail(pendingMessage, new IllegalStateException("The publisher is stopped")));
+    }
+
+    private void fillBatch(List<PendingMessage> batch) throws InterruptedException {
+        pendingMessages.drainTo(batch, batchSize - batch.size());
+
+        long deadline = System.nanoTime() + lingerInNanos;
+
+        while (batch.size() < batchSize && isRunning) {
+            long remainingInNanos = deadline - System.nanoTime();
+
+            if (remainingInNanos <= 0) {
+                return;
+            }
+
+            PendingMessage next = pendingMessages.poll(remainingInNanos, TimeUnit.NANOSECONDS);
+
+            if (next == null) {
+                return;
+            }
+
+            batch.add(next);
+            pendingMessages.drainTo(batch, batchSize - batch.size());
+        }
+    }
+
+    private void sendBatch(List<PendingMessage> batch) {
+        int[] sent = {0};
+
+        try {
+            rabbitOperations.invoke(operations -> {
+                for (PendingMessage pendingMessage : batch) {
+                    CorrelationData correlationData = new CorrelationData();
+                    correlationData.getFuture().addCallback(
+                            confirm -> onConfirm(pendingMessage, confirm),
+                            throwable -> fail(pendingMessage, throwable));
+
+                    operations.send(exchange, pendingMessage.routingKey, pendingMessage.message, correlationData);
+                    sent[0]++;
+                }
+
+                return null;
+            });
+        } catch (Throwable throwable) {
+            // Not only the AmqpException; a message never handed to the broker would never be confirmed
+            LOGGER.error("Unable to publish {} messages", batch.size() - sent[0], throwable);
+
+            for (int i = sent[0]; i < batch.size(); i++) {
+                fail(batch.get(i), throwable);
+            }
+        }
+
+        publishedMessages.addAndGet(sent[0]);
+        publishedBatches.incrementAndGet();
+    }
+
+    /**
+     * Fail the messages of the batch not already completed (by a confirm, or by the failure of the send).
+     */
+    private void failBatch(List<PendingMessage> batch, Throwable throwable) {
+        for (PendingMessage pendingMessage : batch) {
+            if (!pendingMessage.future.isDone()) {
+                fail(pendingMessage, throwable);
+            }
+        }
+    }
+
+    private void onConfirm(PendingMessage pendingMessage, CorrelationData.Confirm confirm) {
+        if (confirm != null && confirm.isAck()) {
+            confirmedMessages.incrementAndGet();
+            pendingMessage.future.complete(null);
+            return;
+        }
+
+        LOGGER.warn("The message to {} was not confirmed by the broker ({})", pendingMessage.routingKey,
+                confirm == null ? null : confirm.getReason());
+        fail(pendingMessage, new MessageNotConfirmedException());
+    }
+
+    private void fail(PendingMessage pendingMessage, Throwable throwable) {
+        if (pendingMessage.future.completeExceptionally(throwable)) {
+            failedMessages.incrementAndGet();
+        }
+    }
+
+    public int getNumberOfPendingMessages() {
+        return pendingMessages.size();
+    }
+
+    public long getPublishedMessages() {
+        return publishedMessages.get();
+    }
+
+    public long getPublishedBatches() {
+        return publishedBatches.get();
+    }
+
+    public long getConfirmedMessages() {
+        return confirmedMessages.get();
+    }
+
+    public long getFailedMessages() {
+        return failedMessages.get();
+    }
+
+    /**
+     * Send the waiting messages and stop the publisher.
+     */
+    public void shutdown() {
+        isRunning = false;
+        executorService.shutdown();
+
+        try {
+            if (!executorService.awaitTermination(5, TimeUnit.SECONDS)) {
+                executorService.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executorService.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class PendingMessage {
+        private final String routingKey;
+        private final Message message;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        private PendingMessage(String routingKey, Message message) {
+            this.routingKey = routingKey;
+            this.message = message;
+        }
+    }
+}
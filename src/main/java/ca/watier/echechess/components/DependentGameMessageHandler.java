@@ -16,23 +16,54 @@
 
 package ca.watier.echechess.components;
 
+import org.springframework.amqp.core.Message;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
 
-
+/**
+ * Responses received on the queues of the communication module, from the engine nodes not using the partitions; the
+ * partitioned queues are consumed by the listeners of the
+ * {@link ca.watier.echechess.configuration.mode.dependent.PartitionedQueueConfiguration}.
+ * <p>
+ * The move responses are handled by a single consumer, in the order of the queue. The consumers of the available
+ * moves listener are resized by the {@link ListenerConcurrencyScaler}, the processing time of the messages is recorded
+ * for it.
+ */
 public class DependentGameMessageHandler {
+    public static final String MOVE_RESPONSE_LISTENER_ID = "node-to-app-move";
+    public static final String AVAIL_MOVE_RESPONSE_LISTENER_ID = "node-to-app-avail-move";
+
     private final MessageActionExecutor actionExecutor;
+    private final ListenerConcurrencyScaler listenerConcurrencyScaler;
 
     public DependentGameMessageHandler(MessageActionExecutor actionExecutor) {
+        this(actionExecutor, null);
+    }
+
+    /**
+     * @param listenerConcurrencyScaler - Receives the processing time of the messages; can be null
+     */
+    public DependentGameMessageHandler(MessageActionExecutor actionExecutor, ListenerConcurrencyScaler listenerConcurrencyScaler) {
         this.actionExecutor = actionExecutor;
+        this.listenerConcurrencyScaler = listenerConcurrencyScaler;
+    }
+
+    @RabbitListener(id = MOVE_RESPONSE_LISTENER_ID, queues = "#{nodeToAppMoveQueue.name}", containerFactory = "moveResponseListenerFactory")
+    public void handleMoveResponseMessage(Message message) {
+        long start = System.nanoTime();
+        actionExecutor.handleMoveResponseMessage(message.getBody());
+        recordProcessing(MOVE_RESPONSE_LISTENER_ID, start);
     }
 
-    @RabbitListener(queues = "#{nodeToAppMoveQueue.name}")
-    public void handleMoveResponseMessage(String message) {
-        actionExecutor.handleMoveResponseMessage(message);
+    @RabbitListener(id = AVAIL_MOVE_RESPONSE_LISTENER_ID, queues = "#{nodeToAppAvailMoveQueue.name}", containerFactory = "availMoveResponseListenerFactory")
+    public void handleAvailMoveResponseMessage(Message message) {
+        long start = System.nanoTime();
+        actionExecutor.handleAvailMoveResponseMessage(message.getBody());
+        recordProcessing(AVAIL_MOVE_RESPONSE_LISTENER_ID, start);
     }
 
-    @RabbitListener(queues = "#{nodeToAppAvailMoveQueue.name}")
-    public void handleAvailMoveResponseMessage(String message) {
-        actionExecutor.handleAvailMoveResponseMessage(message);
+    private void recordProcessing(String listenerId, long start) {
+        if (listenerConcurrencyScaler != null) {
+            listenerConcurrencyScaler.recordProcessing(listenerId, System.nanoTime() - start);
+        }
     }
 }
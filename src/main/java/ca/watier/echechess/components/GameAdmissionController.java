@@ -0,0 +1,165 @@
+/*
+ *    Copyright 2014 - 2021 Yannick Watier
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.watier.echechess.components;
+
+import ca.watier.echechess.exceptions.GameOverloadedException;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bound the game commands in progress (sent and not answered yet), for each type of command and for each player.
+ * <p>
+ * The available moves are only hints for the players: they are also shed while the moves in progress are above the
+ * shedding threshold, so the moves keep the capacity when the server is loaded.
+ */
+public class GameAdmissionController {
+    private final AtomicInteger moves = new AtomicInteger();
+    private final AtomicInteger availableMoves = new AtomicInteger();
+    private final ConcurrentMap<String, AtomicInteger> commandsByPlayer = new ConcurrentHashMap<>();
+    private final int maximumMoves;
+    private final int maximumAvailableMoves;
+    private final int maximumByPlayer;
+    private final int availableMovesShedThreshold;
+    private final long retryAfterInSeconds;
+    private final AtomicLong rejectedMoves = new AtomicLong();
+    private final AtomicLong shedAvailableMoves = new AtomicLong();
+    private final AtomicLong rejectedCommandsOfPlayers = new AtomicLong();
+
+    /**
+     * @param availableMovesShedRatio - The ratio of the moves in progress above which the available moves are shed
+     */
+    public GameAdmissionController(int maximumMoves,
+                                   int maximumAvailableMoves,
+                                   int maximumByPlayer,
+                                   double availableMovesShedRatio,
+                                   Duration retryAfter) {
+
+        if (maximumMoves < 1 || maximumAvailableMoves < 1 || maximumByPlayer < 1) {
+            throw new IllegalArgumentException("The maximums must be positive");
+        }
+
+        this.maximumMoves = maximumMoves;
+        this.maximumAvailableMoves = maximumAvailableMoves;
+        this.maximumByPlayer = maximumByPlayer;
+        this.availableMovesShedThreshold = (int) Math.ceil(maximumMoves * availableMovesShedRatio);
+        this.retryAfterInSeconds = Math.max(1, retryAfter.toSeconds());
+    }
+
+    /**
+     * Admit a move; {@link #releaseMove(String)} must be called once the move is answered.
+     *
+     * @throws GameOverloadedException when the player or the server has too many commands in progress
+     */
+    public void admitMove(String playerId) throws GameOverloadedException {
+        admitForPlayer(playerId);
+
+        if (moves.incrementAndGet() > maximumMoves) {
+            moves.decrementAndGet();
+            releaseForPlayer(playerId);
+            rejectedMoves.incrementAndGet();
+            throw new GameOverloadedException(false, retryAfterInSeconds);
+        }
+    }
+
+    public void releaseMove(String playerId) {
+        moves.decrementAndGet();
+        releaseForPlayer(playerId);
+    }
+
+    /**
+     * Admit an available moves request; {@link #releaseAvailableMoves(String)} must be called once answered.
+     *
+     * @throws GameOverloadedException when the player or the server has too many commands in progress, or when the
+     *                                 moves in progress are above the shedding threshold
+     */
+    public void admitAvailableMoves(String playerId) throws GameOverloadedException {
+        if (moves.get() >= availableMovesShedThreshold) {
+            shedAvailableMoves.incrementAndGet();
+            throw new GameOverloadedException(false, retryAfterInSeconds);
+        }
+
+        admitForPlayer(playerId);
+
+        if (availableMoves.incrementAndGet() > maximumAvailableMoves) {
+            availableMoves.decrementAndGet();
+            releaseForPlayer(playerId);
+            shedAvailableMoves.incrementAndGet();
+            throw new GameOverloadedException(false, retryAfterInSeconds);
+        }
+    }
+
+    public void releaseAvailableMoves(String playerId) {
+        availableMoves.decrementAndGet();
+        releaseForPlayer(playerId);
+    }
+
+    public int getMovesInProgress() {
+        return moves.get();
+    }
+
+    public int getAvailableMovesInProgress() {
+        return availableMoves.get();
+    }
+
+    public long getRejectedMoves() {
+        return rejectedMoves.get();
+    }
+
+    public long getShedAvailableMoves() {
+        return shedAvailableMoves.get();
+    }
+
+    public long getRejectedCommandsOfPlayers() {
+        return rejectedCommandsOfPlayers.get();
+    }
+
+    private void admitForPlayer(String playerId) throws GameOverloadedException {
+        if (playerId == null) {
+            return;
+        }
+
+        boolean[] isAdmitted = {false};
+
+        commandsByPlayer.compute(playerId, (key, commands) -> {
+            AtomicInteger current = commands == null ? new AtomicInteger() : commands;
+
+            if (current.get() < maximumByPlayer) {
+                current.incrementAndGet();
+                isAdmitted[0] = true;
+            }
+
+            return current.get() == 0 ? null : current;
+        });
+
+        if (!isAdmitted[0]) {
+            rejectedCommandsOfPlayers.incrementAndGet();
+            throw new GameOverloadedException(true, retryAfterInSeconds);
+        }
+    }
+
+    private void releaseForPlayer(String playerId) {
+        if (playerId == null) {
+            return;
+        }
+
+        commandsByPlayer.computeIfPresent(playerId, (key, commands) -> commands.decrementAndGet() == 0 ? null : commands);
+    }
+}
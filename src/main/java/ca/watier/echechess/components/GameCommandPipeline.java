@@ -0,0 +1,391 @@
+/*
+ *    Copyright 2014 - 2021 Yannick Watier
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.watier.echechess.components;
+
+import ca.watier.echechess.interfaces.GameCommandExecutor;
+import ca.watier.echechess.interfaces.GameCommandHandler;
+import ca.watier.echechess.models.GameCommand;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Ring buffer carrying the game commands through three stages, each on its own thread(s):
+ * <ol>
+ *     <li>decode: the message is decoded in the slot, and the game is assigned to a worker</li>
+ *     <li>apply: each worker applies the commands of its games (a game is always applied by the same worker, one
+ *     command at a time and in order), and records their result in the command</li>
+ *     <li>publish: each worker has a publisher sending the results of its games, in the order of their commands; a
+ *     slow game only delays the results of the games of its worker</li>
+ * </ol>
+ * The slots and their {@link GameCommand} are allocated once and reused; a slot is given back to the producers once
+ * passed by all the publishers. The producers (the request threads) wait for a free slot when the buffer is full.
+ * Each stage waits for the previous one with its own {@link WaitStrategy}.
+ * <p>
+ * A command failing in a stage (any {@link Throwable}) only fails its slot, the sequence still advances; its failure
+ * is published instead of its result. A stage that stops anyway stops the pipeline, so the producers fail instead of
+ * waiting for a slot that is never published.
+ */
+public class GameCommandPipeline implements GameCommandExecutor {
+    private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(GameCommandPipeline.class);
+    private static final long FULL_BUFFER_PARK_IN_NANOS = 10_000;
+
+    private final Slot[] slots;
+    private final int indexMask;
+    private final AtomicLongArray writtenSequences;
+    private final AtomicLong claimedSequence = new AtomicLong(-1);
+    private final AtomicLong decodedSequence = new AtomicLong(-1);
+    private final AtomicLong[] appliedSequences;
+    private final AtomicLong[] publishedSequences;
+    private final WaitStrategy decodeWaitStrategy;
+    private final WaitStrategy applyWaitStrategy;
+    private final WaitStrategy publishWaitStrategy;
+    private final ExecutorService executorService;
+    private final AtomicLong executedCommands = new AtomicLong();
+    private final AtomicLong failedCommands = new AtomicLong();
+    private final AtomicLong fullBufferWaits = new AtomicLong();
+    private volatile boolean isRunning = true;
+
+    /**
+     * @param bufferSize           - The number of slots, a power of two
+     * @param numberOfApplyWorkers - The number of threads applying the commands, each with its thread publishing the
+     *                             results
+     */
+    public GameCommandPipeline(int bufferSize,
+                               int numberOfApplyWorkers,
+                               WaitStrategy decodeWaitStrategy,
+                               WaitStrategy applyWaitStrategy,
+                               WaitStrategy publishWaitStrategy) {
+
+        if (bufferSize < 1 || Integer.bitCount(bufferSize) != 1) {
+            throw new IllegalArgumentException("The size of the buffer must be a power of two");
+        } else if (numberOfApplyWorkers < 1) {
+            throw new IllegalArgumentException("The number of apply workers must be positive");
+        }
+
+        this.slots = new Slot[bufferSize];
+        this.indexMask = bufferSize - 1;
+        this.writtenSequences = new AtomicLongArray(bufferSize);
+        this.appliedSequences = new AtomicLong[numberOfApplyWorkers];
+        this.publishedSequences = new AtomicLong[numberOfApplyWorkers];
+        this.decodeWaitStrategy = decodeWaitStrategy;
+        this.applyWaitStrategy = applyWaitStrategy;
+        this.publishWaitStrategy = publishWaitStrategy;
+
+        for (int i = 0; i < bufferSize; i++) {
+            slots[i] = new Slot();
+            writtenSequences.set(i, -1);
+        }
+
+        for (int worker = 0; worker < numberOfApplyWorkers; worker++) {
+            appliedSequences[worker] = new AtomicLong(-1);
+            publishedSequences[worker] = new AtomicLong(-1);
+        }
+
+        executorService = Executors.newFixedThreadPool(2 * numberOfApplyWorkers + 1, new CustomizableThreadFactory("game-pipeline-"));
+        executorService.execute(new DecodeStage());
+
+        for (int worker = 0; worker < numberOfApplyWorkers; worker++) {
+            executorService.execute(new ApplyStage(worker));
+            executorService.execute(new PublishStage(worker));
+        }
+    }
+
+    @Override
+    public void submit(String gameUuid, Runnable command) {
+        if (gameUuid == null || command == null) {
+            throw new IllegalArgumentException();
+        }
+
+        long sequence = claim();
+        Slot slot = slots[(int) sequence & indexMask];
+        slot.taskGameId = gameUuid;
+        slot.task = command;
+        write(sequence);
+    }
+
+    @Override
+    public void submit(byte[] message, GameCommandHandler handler) {
+        if (message == null || handler == null) {
+            throw new IllegalArgumentException();
+        }
+
+        long sequence = claim();
+        Slot slot = slots[(int) sequence & indexMask];
+        slot.message = message;
+        slot.handler = handler;
+        write(sequence);
+    }
+
+    public int getBufferSize() {
+        return slots.length;
+    }
+
+    /**
+     * @return The number of commands submitted and not published yet
+     */
+    public long getPendingCommands() {
+        return claimedSequence.get() - getMinimumSequence(publishedSequences);
+    }
+
+    public long getExecutedCommands() {
+        return executedCommands.get();
+    }
+
+    public long getFailedCommands() {
+        return failedCommands.get();
+    }
+
+    /**
+     * @return The number of times a producer waited for a free slot
+     */
+    public long getFullBufferWaits() {
+        return fullBufferWaits.get();
+    }
+
+    public void shutdown() {
+        isRunning = false;
+        executorService.shutdownNow();
+
+        try {
+            if (!executorService.awaitTermination(10, TimeUnit.SECONDS)) {
+                LOGGER.warn("The game pipeline was not stopped in time");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Claim the next sequence, waiting until its slot was published.
+     */
+    private long claim() {
+        long sequence = claimedSequence.incrementAndGet();
+        long wrapPoint = sequence - slots.length;
+
+        if (wrapPoint > getMinimumSequence(publishedSequences)) {
+            fullBufferWaits.incrementAndGet();
+
+            while (wrapPoint > getMinimumSequence(publishedSequences)) {
+                if (!isRunning) {
+                    throw new IllegalStateException("The game pipeline is stopped");
+                }
+
+                LockSupport.parkNanos(FULL_BUFFER_PARK_IN_NANOS);
+            }
+        }
+
+        return sequence;
+    }
+
+    private void write(long sequence) {
+        writtenSequences.set((int) sequence & indexMask, sequence);
+        decodeWaitStrategy.signalAll();
+    }
+
+    private static long getMinimumSequence(AtomicLong[] sequences) {
+        long minimum = Long.MAX_VALUE;
+
+        for (AtomicLong sequence : sequences) {
+            minimum = Math.min(minimum, sequence.get());
+        }
+
+        return minimum;
+    }
+
+    private void fail(Slot slot, Throwable throwable) {
+        slot.isFailed = true;
+        failedCommands.incrementAndGet();
+        LOGGER.error("Unable to execute the command of the game {}", slot.getGameId(), throwable);
+    }
+
+    private static final class Slot {
+        private final GameCommand command = new GameCommand();
+        private byte[] message;
+        private GameCommandHandler handler;
+        private String taskGameId;
+        private Runnable task;
+        private int worker;
+        private boolean isFailed;
+
+        private String getGameId() {
+            return task != null ? taskGameId : command.getGameId();
+        }
+
+        private void clear() {
+            command.clear();
+            message = null;
+            handler = null;
+            taskGameId = null;
+            task = null;
+            isFailed = false;
+        }
+    }
+
+    /**
+     * Process the sequences one after the other, once available.
+     */
+    private abstract class Stage implements Runnable {
+        private final WaitStrategy waitStrategy;
+        private final BooleanSupplier isNextAvailable = this::isAvailable;
+        protected long nextSequence;
+
+        private Stage(WaitStrategy waitStrategy) {
+            this.waitStrategy = waitStrategy;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (isRunning) {
+                    waitStrategy.waitFor(isNextAvailable);
+                    process(slots[(int) nextSequence & indexMask]);
+                    nextSequence++;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                if (isRunning) {
+                    isRunning = false;
+                    LOGGER.error("A stage of the game pipeline stopped at the sequence {}, the pipeline is stopped", nextSequence);
+                }
+            }
+        }
+
+        protected abstract boolean isAvailable();
+
+        protected abstract void process(Slot slot);
+    }
+
+    private final class DecodeStage extends Stage {
+        private DecodeStage() {
+            super(decodeWaitStrategy);
+        }
+
+        @Override
+        protected boolean isAvailable() {
+            return writtenSequences.get((int) nextSequence & indexMask) >= nextSequence;
+        }
+
+        @Override
+        protected void process(Slot slot) {
+            try {
+                if (slot.task == null) {
+                    slot.command.decode(slot.message);
+                }
+
+                slot.worker = (slot.getGameId().hashCode() & Integer.MAX_VALUE) % appliedSequences.length;
+            } catch (Throwable e) {
+                slot.worker = 0;
+                fail(slot, e);
+            }
+
+            decodedSequence.set(nextSequence);
+            applyWaitStrategy.signalAll();
+        }
+    }
+
+    private final class ApplyStage extends Stage {
+        private final int worker;
+        private final AtomicLong appliedSequence;
+
+        private ApplyStage(int worker) {
+            super(applyWaitStrategy);
+            this.worker = worker;
+            this.appliedSequence = appliedSequences[worker];
+        }
+
+        @Override
+        protected boolean isAvailable() {
+            return decodedSequence.get() >= nextSequence;
+        }
+
+        @Override
+        protected void process(Slot slot) {
+            if (slot.worker == worker && !slot.isFailed) {
+                try {
+                    if (slot.task != null) {
+                        slot.task.run();
+                    } else {
+                        slot.handler.apply(slot.command);
+                    }
+                } catch (Throwable e) {
+                    fail(slot, e);
+                }
+            }
+
+            appliedSequence.set(nextSequence);
+            publishWaitStrategy.signalAll();
+        }
+    }
+
+    private final class PublishStage extends Stage {
+        private final int worker;
+        private final AtomicLong appliedSequence;
+        private final AtomicLong publishedSequence;
+
+        private PublishStage(int worker) {
+            super(publishWaitStrategy);
+            this.worker = worker;
+            this.appliedSequence = appliedSequences[worker];
+            this.publishedSequence = publishedSequences[worker];
+        }
+
+        @Override
+        protected boolean isAvailable() {
+            return appliedSequence.get() >= nextSequence;
+        }
+
+        @Override
+        protected void process(Slot slot) {
+            if (slot.worker == worker) {
+                if (slot.task == null) {
+                    publish(slot);
+                }
+
+                executedCommands.incrementAndGet();
+                slot.clear();
+            }
+
+            publishedSequence.set(nextSequence); // The slot can be reused, once passed by all the publishers
+        }
+
+        private void publish(Slot slot) {
+            if (!slot.isFailed) {
+                try {
+                    slot.handler.publish(slot.command);
+                    return;
+                } catch (Throwable e) {
+                    fail(slot, e);
+                }
+            }
+
+            try {
+                slot.handler.publishFailure(slot.command);
+            } catch (Throwable e) {
+                LOGGER.error("Unable to publish the failure of the command of the game {}", slot.getGameId(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ *    Copyright 2014 - 2021 Yannick Watier
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.watier.echechess.components;
+
+import ca.watier.echechess.common.enums.Side;
+import ca.watier.echechess.models.GameEventModel;
+import ca.watier.echechess.models.GameEventsModel;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+/**
+ * The last events sent on the topics of each game (the topic of the game and the topics of the sides), numbered by a
+ * sequence increasing for each event of the game; a client that lost its session asks for the events after the
+ * last sequence it received, instead of reloading the game.
+ * <p>
+ * The events are kept serialized, in a ring buffer by game, locked by game; when there are more games than the
+ * maximum, the least recently used ones are evicted by batch, and the sequences of an evicted game start again from 1. The sequences of each log of a game are qualified by the epoch of the log, sent in
+ * the {@link #EVENT_EPOCH_HEADER} header; the clients resuming with the epoch of another log are told to reload the
+ * game.
+ */
+public class GameEventLog {
+    public static final String EVENT_SEQUENCE_HEADER = "event-sequence";
+    public static final String EVENT_EPOCH_HEADER = "event-epoch";
+
+    private static final String TOPIC = "/topic/";
+    private static final Side[] SIDES = Side.values();
+
+    private final int maximumGames;
+    private final int eventsByGame;
+    private final ConcurrentMap<String, GameEvents> gameEvents = new ConcurrentHashMap<>();
+    private final AtomicBoolean evicting = new AtomicBoolean();
+
+    public GameEventLog(int maximumGames, int eventsByGame) {
+        if (maximumGames < 1 || eventsByGame < 1) {
+            throw new IllegalArgumentException("The number of games and of events by game must be positive");
+        }
+
+        this.maximumGames = maximumGames;
+        this.eventsByGame = eventsByGame;
+    }
+
+    public GameEvents get(String uuid) {
+        GameEvents events = gameEvents.get(uuid);
+
+        if (events == null) {
+            events = gameEvents.computeIfAbsent(uuid, id -> new GameEvents(id, eventsByGame));
+
+            if (gameEvents.size() > maximumGames) {
+                evictLeastRecentlyUsed(uuid);
+            }
+        }
+
+        events.lastAccess = System.nanoTime();
+        return events;
+    }
+
+    /**
+     * @param side     - The side of the player; the events of the other sides are not returned
+     * @param epoch    - The epoch of the log of the last event received by the player, 0 when none
+     * @param sequence - The sequence of the last event received by the player, 0 when none
+     */
+    public GameEventsModel getEventsAfter(String uuid, Side side, long epoch, long sequence) {
+        GameEvents events = gameEvents.get(uuid);
+
+        if (events == null) {
+            return new GameEventsModel(sequence == 0, 0, 0, List.of());
+        }
+
+        events.lastAccess = System.nanoTime();
+        return events.getEventsAfter(side, epoch, sequence);
+    }
+
+    /**
+     * Evict the least recently used games, down to a sixteenth under the maximum, so the games are not sorted on each
+     * new game; done by one thread at a time, the other threads don't wait for it.
+     *
+     * @param addedUuid - The game just added, never evicted
+     */
+    private void evictLeastRecentlyUsed(String addedUuid) {
+        if (!evicting.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            int numberToEvict = gameEvents.size() - (maximumGames - maximumGames / 16);
+
+            if (numberToEvict <= 0) {
+                return;
+            }
+
+            gameEvents.entrySet().stream()
+                    .filter(entry -> !entry.getKey().equals(addedUuid))
+                    .sorted(Comparator.comparingLong(entry -> entry.getValue().lastAccess))
+                    .limit(numberToEvict)
+                    .map(Map.Entry::getKey)
+                    .collect(Collectors.toList())
+                    .forEach(gameEvents::remove);
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    /**
+     * The topics of a game and their last events; an event is sent while holding the lock of its game, so the
+     * events are sent in the order of their sequence.
+     */
+    public static final class GameEvents {
+        private static final long MAXIMUM_EPOCH = 1L << 53; // Kept exact as a JavaScript number
+
+        private final long epoch;
+        private final String[] destinations;
+        private final Side[] sides;
+        private final byte[][] payloads;
+        private long lastSequence;
+        private volatile long lastAccess;
+
+        private GameEvents(String uuid, int eventsByGame) {
+            this.epoch = ThreadLocalRandom.current().nextLong(1, MAXIMUM_EPOCH);
+            this.sides = new Side[eventsByGame];
+            this.payloads = new byte[eventsByGame][];
+            this.destinations = new String[SIDES.length + 1];
+            this.destinations[0] = TOPIC + uuid;
+
+            for (Side side : SIDES) {
+                destinations[side.ordinal() + 1] = destinations[0] + '/' + side;
+            }
+        }
+
+        /**
+         * @param side - The side of the topic, null for the topic of the game
+         */
+        public String getDestination(Side side) {
+            return side == null ? destinations[0] : destinations[side.ordinal() + 1];
+        }
+
+        /**
+         * @return The epoch of this log, distinct from the epochs of the previous logs of the game
+         */
+        public long getEpoch() {
+            return epoch;
+        }
+
+        /**
+         * @param side - The side of the topic, null for the topic of the game
+         * @return The sequence of the event
+         */
+        public synchronized long append(Side side, byte[] payload) {
+            long sequence = ++lastSequence;
+            int index = (int) (sequence % payloads.length);
+            sides[index] = side;
+            payloads[index] = payload;
+
+            return sequence;
+        }
+
+        private synchronized GameEventsModel getEventsAfter(Side side, long epoch, long sequence) {
+            long firstSequence = Math.max(1, lastSequence - payloads.length + 1);
+            boolean isOtherLog = sequence != 0 && epoch != this.epoch;
+
+            if (isOtherLog || sequence < firstSequence - 1 || sequence > lastSequence) {
+                return new GameEventsModel(false, this.epoch, lastSequence, List.of());
+            }
+
+            List<GameEventModel> events = new ArrayList<>((int) (lastSequence - sequence));
+
+            for (long current = sequence + 1; current <= lastSequence; current++) {
+                int index = (int) (current % payloads.length);
+                Side eventSide = sides[index];
+
+                if (eventSide == null || eventSide == side) {
+                    events.add(new GameEventModel(current, eventSide, new String(payloads[index], StandardCharsets.UTF_8)));
+                }
+            }
+
+            return new GameEventsModel(true, epoch, lastSequence, events);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ *    Copyright 2014 - 2021 Yannick Watier
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.watier.echechess.components;
+
+import ca.watier.echechess.common.enums.CasePosition;
+import ca.watier.echechess.common.enums.MoveType;
+import ca.watier.echechess.common.enums.Pieces;
+import ca.watier.echechess.common.enums.Side;
+import ca.watier.echechess.common.sessions.Player;
+import ca.watier.echechess.communication.redis.model.GenericGameHandlerWrapper;
+import ca.watier.echechess.engine.delegates.PieceMoveConstraintDelegate;
+import ca.watier.echechess.engine.engines.GenericGameHandler;
+import ca.watier.echechess.engine.exceptions.FenParserException;
+import ca.watier.echechess.engine.utils.FenGameParser;
+import ca.watier.echechess.interfaces.GameJournal;
+import ca.watier.echechess.models.TrackedGameHandlerWrapper;
+import ca.watier.echechess.repositories.IndependentGameRepositoryImpl;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.LoggerFactory;
+
+import java.util.UUID;
+
+/**
+ * Rebuild the games in the repository from the records of the journal; the records are applied the same way the
+ * {@link ca.watier.echechess.services.GameService} applied them the first time.
+ * <p>
+ * The games hibernated before the restart are put back in hibernation, only the games that were in memory are kept
+ * in memory.
+ */
+public class GameJournalReplayer implements GameJournal {
+    private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(GameJournalReplayer.class);
+
+    private final IndependentGameRepositoryImpl gameRepository;
+    private final PieceMoveConstraintDelegate pieceMoveConstraintDelegate;
+
+    public GameJournalReplayer(IndependentGameRepositoryImpl gameRepository, PieceMoveConstraintDelegate pieceMoveConstraintDelegate) {
+        this.gameRepository = gameRepository;
+        this.pieceMoveConstraintDelegate = pieceMoveConstraintDelegate;
+    }
+
+    @Override
+    public void recordCreation(UUID uuid, String specialGamePieces, Side side, boolean againstComputer, boolean observers, Player player) {
+        GenericGameHandler genericGameHandler;
+
+        try {
+            if (StringUtils.isNotBlank(specialGamePieces)) {
+                genericGameHandler = FenGameParser.parse(specialGamePieces);
+            } else {
+                genericGameHandler = GenericGameHandler.newStandardHandlerFromConstraintDelegate(pieceMoveConstraintDelegate);
+            }
+        } catch (FenParserException e) {
+            LOGGER.error("Unable to replay the creation of the game {}", uuid, e);
+            return;
+        }
+
+        String uuidAsString = uuid.toString();
+        genericGameHandler.setUuid(uuidAsString);
+        if (!player.getCreatedGameList().contains(uuid)) {
+            player.addCreatedGame(uuid);
+        }
+
+        genericGameHandler.setPlayerToSide(player, side);
+        genericGameHandler.setAllowOtherToJoin(!againstComputer);
+        genericGameHandler.setAllowObservers(observers);
+
+        gameRepository.add(new TrackedGameHandlerWrapper(uuidAsString, genericGameHandler, StringUtils.trimToNull(specialGamePieces)));
+    }
+
+    @Override
+    public void recordMove(UUID uuid, CasePosition from, CasePosition to, Side side) {
+        GenericGameHandlerWrapper<GenericGameHandler> wrapper = getGame(uuid);
+
+        if (wrapper == null) {
+            return;
+        }
+
+        MoveType moveType = wrapper.getGenericGameHandler().movePiece(from, to, side);
+
+        if (MoveType.isMoved(moveType) && wrapper instanceof TrackedGameHandlerWrapper) {
+            ((TrackedGameHandlerWrapper) wrapper).recordMove(from, to);
+        }
+    }
+
+    @Override
+    public void recordPromotion(UUID uuid, CasePosition to, Pieces pieces, Side side) {
+        GenericGameHandlerWrapper<GenericGameHandler> wrapper = getGame(uuid);
+
+        if (wrapper == null) {
+            return;
+        }
+
+        boolean isUpgraded = wrapper.getGenericGameHandler().upgradePiece(to, pieces, side);
+
+        if (isUpgraded && wrapper instanceof TrackedGameHandlerWrapper) {
+            ((TrackedGameHandlerWrapper) wrapper).recordPromotion(to, pieces);
+        }
+    }
+
+    @Override
+    public void recordJoin(UUID uuid, Side side, Player player) {
+        GenericGameHandlerWrapper<GenericGameHandler> wrapper = getGame(uuid);
+
+        if (wrapper != null && wrapper.getGenericGameHandler().setPlayerToSide(player, side) && !player.getJoinedGameList().contains(uuid)) {
+            player.addJoinedGame(uuid);
+        }
+    }
+
+    @Override
+    public void recordDeletion(UUID uuid) {
+        gameRepository.delete(uuid.toString());
+    }
+
+    @Override
+    public void recordState(UUID uuid, GenericGameHandlerWrapper<GenericGameHandler> genericGameHandlerWrapper) {
+        gameRepository.add(genericGameHandlerWrapper);
+    }
+
+    /**
+     * The game is removed from the memory when its file is still in the hibernation store; otherwise the game was
+     * loaded again, and its state follows in the journal.
+     */
+    @Override
+    public void recordHibernation(UUID uuid) {
+        gameRepository.unload(uuid.toString());
+    }
+
+    private GenericGameHandlerWrapper<GenericGameHandler> getGame(UUID uuid) {
+        GenericGameHandlerWrapper<GenericGameHandler> wrapper = gameRepository.get(uuid.toString());
+
+        if (wrapper == null) {
+            LOGGER.warn("The game {} is not in the journal, the record is ignored", uuid);
+        }
+
+        return wrapper;
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ *    Copyright 2014 - 2021 Yannick Watier
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.watier.echechess.components;
+
+import ca.watier.echechess.interfaces.GameCommandExecutor;
+import ca.watier.echechess.interfaces.GameCommandHandler;
+import ca.watier.echechess.models.GameCommand;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Run the commands of a game one at a time, in the submission order, while the commands of different games are
+ * executed in parallel on the shared pool.
+ * <p>
+ * Each game owns a mailbox; the first command posted to an empty mailbox schedules a drain task on the pool, the
+ * following ones are only queued. Since only one drain task can exist per mailbox, a game is never mutated by two
+ * threads at the same time.
+ */
+public class GameMailboxScheduler implements GameCommandExecutor {
+    private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(GameMailboxScheduler.class);
+
+    private final ConcurrentMap<String, Mailbox> mailboxes = new ConcurrentHashMap<>();
+    private final AtomicLong executedCommands = new AtomicLong();
+    private final AtomicInteger highestQueueDepth = new AtomicInteger();
+    private final ExecutorService executorService;
+
+    public GameMailboxScheduler() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public GameMailboxScheduler(int numberOfWorkers) {
+        this(Executors.newFixedThreadPool(numberOfWorkers, new CustomizableThreadFactory("game-mailbox-")));
+    }
+
+    public GameMailboxScheduler(ExecutorService executorService) {
+        this.executorService = executorService;
+    }
+
+    /**
+     * Queue the command in the mailbox of the game; the command will be executed after all the commands previously
+     * submitted for the same game.
+     *
+     * @param gameUuid - The game owning the mailbox
+     * @param command  - The command to execute
+     */
+    @Override
+    public void submit(String gameUuid, Runnable command) {
+        if (gameUuid == null || command == null) {
+            throw new IllegalArgumentException();
+        }
+
+        Mailbox[] target = new Mailbox[1];
+        boolean[] needDrain = new boolean[1];
+
+        mailboxes.compute(gameUuid, (key, mailbox) -> {
+            Mailbox current = mailbox == null ? new Mailbox(key) : mailbox;
+            current.commands.offer(command);
+
+            int depth = current.pending.incrementAndGet();
+            highestQueueDepth.accumulateAndGet(depth, Math::max);
+
+            target[0] = current;
+            needDrain[0] = depth == 1;
+            return current;
+        });
+
+        if (needDrain[0]) {
+            executorService.execute(target[0]::drain);
+        }
+    }
+
+    /**
+     * The message is decoded by the caller, and applied then published in the mailbox of the game; the failure is
+     * published when the command fails.
+     */
+    @Override
+    public void submit(byte[] message, GameCommandHandler handler) {
+        GameCommand command = new GameCommand();
+        command.decode(message);
+
+        submit(command.getGameId(), () -> {
+            try {
+                handler.apply(command);
+                handler.publish(command);
+            } catch (Throwable e) {
+                handler.publishFailure(command);
+                throw e;
+            }
+        });
+    }
+
+    /**
+     * @param gameUuid - The game
+     * @return The number of commands waiting (or running) for the game
+     */
+    public int getQueueDepth(String gameUuid) {
+        Mailbox mailbox = mailboxes.get(gameUuid);
+        return mailbox == null ? 0 : mailbox.pending.get();
+    }
+
+    /**
+     * @return A snapshot of the queue depth of every game that currently have pending commands
+     */
+    public Map<String, Integer> getQueueDepths() {
+        Map<String, Integer> values = new HashMap<>();
+
+        for (Map.Entry<String, Mailbox> entry : mailboxes.entrySet()) {
+            values.put(entry.getKey(), entry.getValue().pending.get());
+        }
+
+        return values;
+    }
+
+    public int getHighestQueueDepth() {
+        return highestQueueDepth.get();
+    }
+
+    public long getExecutedCommands() {
+        return executedCommands.get();
+    }
+
+    public void shutdown() {
+        executorService.shutdown();
+
+        try {
+            if (!executorService.awaitTermination(10, TimeUnit.SECONDS)) {
+                executorService.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executorService.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private final class Mailbox {
+        private final String gameUuid;
+        private final Queue<Runnable> commands = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger pending = new AtomicInteger();
+
+        private Mailbox(String gameUuid) {
+            this.gameUuid = gameUuid;
+        }
+
+        /**
+         * Any failure of a command is caught, the mailbox is then left consistent: either drained and removed, or
+         * rescheduled when the drain was interrupted with commands still pending.
+         */
+        private void drain() {
+            boolean hasMoreCommands = true;
+
+            try {
+                while (hasMoreCommands) {
+                    Runnable command = commands.poll();
+
+                    try {
+                        command.run();
+                    } catch (Throwable e) {
+                        LOGGER.error("Unable to execute the command of the game {}", gameUuid, e);
+                    } finally {
+                        executedCommands.incrementAndGet();
+                        hasMoreCommands = pending.decrementAndGet() > 0;
+                    }
+                }
+            } finally {
+                if (hasMoreCommands) {
+                    executorService.execute(this::drain);
+                } else {
+                    // Remove the mailbox only when no command was queued in the meantime; the remapping is atomic with the submit
+                    mailboxes.computeIfPresent(gameUuid, (key, mailbox) -> mailbox.pending.get() == 0 ? null : mailbox);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ *    Copyright 2014 - 2021 Yannick Watier
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.watier.echechess.components;
+
+import java.util.UUID;
+
+/**
+ * Assign the games to a fixed number of partitions, with a consistent hash of the game uuid (jump consistent hash);
+ * all the messages of a game go through the same partition, so they stay ordered and are handled by the same worker.
+ * When the number of partitions grows from n to n + 1, only 1 / (n + 1) of the games change of partition.
+ * <p>
+ * The engine nodes must use the same function to answer on the partition of the game.
+ */
+public class GamePartitioner {
+    private final int numberOfPartitions;
+
+    public GamePartitioner(int numberOfPartitions) {
+        if (numberOfPartitions < 1) {
+            throw new IllegalArgumentException("The number of partitions must be positive");
+        }
+
+        this.numberOfPartitions = numberOfPartitions;
+    }
+
+    public int getPartition(UUID gameId) {
+        return jumpConsistentHash(mix(gameId.getMostSignificantBits() ^ gameId.getLeastSignificantBits()), numberOfPartitions);
+    }
+
+    public int getNumberOfPartitions() {
+        return numberOfPartitions;
+    }
+
+    /**
+     * @return The name of the queue of the partition, {@code <base name>.<partition>}
+     */
+    public static String getQueueName(String baseName, int partition) {
+        return baseName + '.' + partition;
+    }
+
+    /**
+     * Lamping and Veach, "A Fast, Minimal Memory, Consistent Hash Algorithm".
+     */
+    static int jumpConsistentHash(long key, int numberOfBuckets) {
+        long bucket = -1;
+        long next = 0;
+
+        while (next < numberOfBuckets) {
+            bucket = next;
+            key = key * 2862933555777941757L + 1;
+            next = (long) ((bucket + 1) * ((double) (1L << 31) / (double) ((key >>> 33) + 1)));
+        }
+
+        return (int) bucket;
+    }
+
+    /**
+     * Finalizer of MurmurHash3; the uuid bits are not uniformly distributed (version and variant bits).
+     */
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+}
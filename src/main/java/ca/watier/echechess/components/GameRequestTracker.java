@@ -0,0 +1,198 @@
+/*
+ *    Copyright 2014 - 2021 Yannick Watier
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.watier.echechess.components;
+
+import ca.watier.echechess.exceptions.GameRequestRejectedException;
+import ca.watier.echechess.exceptions.GameRequestTimeoutException;
+import org.slf4j.LoggerFactory;
+
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Track the requests sent to the game engine until their response is received, by correlation id.
+ * <p>
+ * The number of requests in flight is bounded, the new requests are rejected when full; a request not answered in
+ * time fails with a {@link GameRequestTimeoutException}. The correlation ids start with a random prefix of the node
+ * (the 24 high bits), since all the application nodes receive the responses; the responses of the other nodes are
+ * ignored. A response of this node without a pending request is counted as late when its request timed out recently,
+ * and as an orphan otherwise.
+ */
+public class GameRequestTracker {
+    private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(GameRequestTracker.class);
+    private static final int NODE_PREFIX_SHIFT = 40;
+    private static final long SEQUENCE_MASK = (1L << NODE_PREFIX_SHIFT) - 1;
+    private static final int MAXIMUM_EXPIRED_REQUESTS = 4096;
+
+    private final long nodePrefix;
+    private final int maximumInFlight;
+    private final long timeoutInMillis;
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final ConcurrentMap<Long, CompletableFuture<byte[]>> pendingRequests = new ConcurrentHashMap<>();
+    private final Map<Long, Boolean> expiredRequests;
+    private final AtomicLong completedRequests = new AtomicLong();
+    private final AtomicLong rejectedRequests = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong lateReplies = new AtomicLong();
+    private final AtomicLong orphanReplies = new AtomicLong();
+
+    public GameRequestTracker(int maximumInFlight, Duration timeout) {
+        if (maximumInFlight < 1) {
+            throw new IllegalArgumentException("The maximum of requests in flight must be positive");
+        }
+
+        this.maximumInFlight = maximumInFlight;
+        this.timeoutInMillis = timeout.toMillis();
+        this.nodePrefix = 1 + new SecureRandom().nextInt((1 << 24) - 1); // Never zero, the ids are never NO_CORRELATION
+        this.expiredRequests = new LinkedHashMap<>(16, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Boolean> eldest) {
+                return size() > MAXIMUM_EXPIRED_REQUESTS;
+            }
+        };
+    }
+
+    /**
+     * @return The correlation id of a new request, its response is awaited with {@link #getResponse(long)} before
+     * sending the request
+     */
+    public long nextCorrelationId() {
+        return (nodePrefix << NODE_PREFIX_SHIFT) | (sequence.incrementAndGet() & SEQUENCE_MASK);
+    }
+
+    /**
+     * @return The future of the response, already failed with a {@link GameRequestRejectedException} when too many
+     * requests are in flight
+     */
+    public CompletableFuture<byte[]> getResponse(long correlationId) {
+        CompletableFuture<byte[]> response = new CompletableFuture<>();
+
+        if (inFlight.incrementAndGet() > maximumInFlight) {
+            inFlight.decrementAndGet();
+            rejectedRequests.incrementAndGet();
+            response.completeExceptionally(new GameRequestRejectedException());
+            return response;
+        }
+
+        pendingRequests.put(correlationId, response);
+        CompletableFuture.delayedExecutor(timeoutInMillis, TimeUnit.MILLISECONDS).execute(() -> expire(correlationId, response));
+
+        return response;
+    }
+
+    /**
+     * Complete the request of the response.
+     *
+     * @return false when the response has no pending request (sent by another node, late or orphan)
+     */
+    public boolean complete(long correlationId, byte[] response) {
+        CompletableFuture<byte[]> pendingRequest = remove(correlationId);
+
+        if (pendingRequest != null) {
+            completedRequests.incrementAndGet();
+            pendingRequest.complete(response);
+            return true;
+        }
+
+        if ((correlationId >>> NODE_PREFIX_SHIFT) != nodePrefix) {
+            return false;
+        }
+
+        boolean isLate;
+        synchronized (expiredRequests) {
+            isLate = expiredRequests.remove(correlationId) != null;
+        }
+
+        if (isLate) {
+            lateReplies.incrementAndGet();
+        } else {
+            orphanReplies.incrementAndGet();
+            LOGGER.debug("Received a response without request ({})", correlationId);
+        }
+
+        return false;
+    }
+
+    /**
+     * Fail the request, when it cannot be sent.
+     */
+    public void fail(long correlationId, Throwable throwable) {
+        CompletableFuture<byte[]> pendingRequest = remove(correlationId);
+
+        if (pendingRequest != null) {
+            pendingRequest.completeExceptionally(throwable);
+        }
+    }
+
+    private void expire(long correlationId, CompletableFuture<byte[]> response) {
+        if (!pendingRequests.remove(correlationId, response)) {
+            return;
+        }
+
+        inFlight.decrementAndGet();
+        timeouts.incrementAndGet();
+
+        synchronized (expiredRequests) {
+            expiredRequests.put(correlationId, Boolean.TRUE);
+        }
+
+        response.completeExceptionally(new GameRequestTimeoutException());
+    }
+
+    private CompletableFuture<byte[]> remove(long correlationId) {
+        CompletableFuture<byte[]> pendingRequest = pendingRequests.remove(correlationId);
+
+        if (pendingRequest != null) {
+            inFlight.decrementAndGet();
+        }
+
+        return pendingRequest;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public long getCompletedRequests() {
+        return completedRequests.get();
+    }
+
+    public long getRejectedRequests() {
+        return rejectedRequests.get();
+    }
+
+    public long getTimeouts() {
+        return timeouts.get();
+    }
+
+    public long getLateReplies() {
+        return lateReplies.get();
+    }
+
+    public long getOrphanReplies() {
+        return orphanReplies.get();
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ *    Copyright 2014 - 2021 Yannick Watier
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.watier.echechess.components;
+
+import ca.watier.echechess.interfaces.GameCommandExecutor;
+import ca.watier.echechess.repositories.IndependentGameRepositoryImpl;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Periodically move the idle games out of the heap. The hibernation of a game is submitted like a command of the game
+ * ({@link GameCommandExecutor}), so a game is never written while a command is being applied on it.
+ */
+public class IdleGameHibernator {
+    private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(IdleGameHibernator.class);
+
+    private final IndependentGameRepositoryImpl gameRepository;
+    private final GameCommandExecutor gameCommandExecutor;
+    private final Duration maxIdleTime;
+    private final Duration sweepInterval;
+    private final AtomicLong hibernatedGames = new AtomicLong();
+    private final ScheduledExecutorService scheduledExecutorService =
+            Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("game-hibernator-"));
+
+    public IdleGameHibernator(IndependentGameRepositoryImpl gameRepository,
+                              GameCommandExecutor gameCommandExecutor,
+                              Duration maxIdleTime,
+                              Duration sweepInterval) {
+        this.gameRepository = gameRepository;
+        this.gameCommandExecutor = gameCommandExecutor;
+        this.maxIdleTime = maxIdleTime;
+        this.sweepInterval = sweepInterval;
+    }
+
+    public void start() {
+        long interval = sweepInterval.toMillis();
+        scheduledExecutorService.scheduleWithFixedDelay(this::sweep, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Queue the hibernation of every idle game; a game that had activity before its turn is kept.
+     */
+    public void sweep() {
+        List<String> idleGames = gameRepository.getIdleGames(maxIdleTime);
+
+        if (idleGames.isEmpty()) {
+            return;
+        }
+
+        LOGGER.info("Hibernating {} idle games", idleGames.size());
+
+        for (String id : idleGames) {
+            gameCommandExecutor.submit(id, () -> {
+                if (gameRepository.hibernate(id, maxIdleTime)) {
+                    hibernatedGames.incrementAndGet();
+                }
+            });
+        }
+    }
+
+    public long getHibernatedGames() {
+        return hibernatedGames.get();
+    }
+
+    public void shutdown() {
+        scheduledExecutorService.shutdownNow();
+    }
+}
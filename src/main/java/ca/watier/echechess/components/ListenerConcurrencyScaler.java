@@ -0,0 +1,288 @@
+/*
+ *    Copyright 2014 - 2021 Yannick Watier
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.watier.echechess.components;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntConsumer;
+import java.util.function.IntSupplier;
+
+/**
+ * Periodically resize the consumers of the registered listeners, between the configured bounds, from the depth of
+ * their queue and the time taken to process their messages.
+ * <p>
+ * The consumers needed are {@code (arrival rate + depth / drain time) * processing time}: enough to keep up with the
+ * messages received, and to drain the messages waiting within the drain time. The consumers are added at once, and
+ * removed one at a time once fewer consumers were needed during {@code scaleDownRounds} consecutive rounds. Only the
+ * listeners whose messages can be handled out of order are registered.
+ * <p>
+ * The decisions are exposed as Micrometer meters, tagged with the id of the listener: the current and needed
+ * consumers, the queue depth and the processing time at the last round, and the number of scale ups and downs.
+ */
+public class ListenerConcurrencyScaler implements MeterBinder {
+    private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(ListenerConcurrencyScaler.class);
+    private static final double NANOS_BY_SECOND = 1_000_000_000d;
+
+    private final int minimumConsumers;
+    private final int maximumConsumers;
+    private final double drainTimeInSeconds;
+    private final int scaleDownRounds;
+    private final Duration interval;
+    private final Map<String, ScaledListener> listeners = new ConcurrentHashMap<>();
+    private final AtomicLong scaleUps = new AtomicLong();
+    private final AtomicLong scaleDowns = new AtomicLong();
+    private final ScheduledExecutorService scheduledExecutorService =
+            Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("listener-scaler-"));
+    private long lastRound = System.nanoTime();
+    private volatile MeterRegistry meterRegistry;
+
+    public ListenerConcurrencyScaler(int minimumConsumers,
+                                     int maximumConsumers,
+                                     Duration drainTime,
+                                     int scaleDownRounds,
+                                     Duration interval) {
+
+        if (minimumConsumers < 1 || maximumConsumers < minimumConsumers) {
+            throw new IllegalArgumentException("The bounds of the consumers are invalid");
+        }
+
+        this.minimumConsumers = minimumConsumers;
+        this.maximumConsumers = maximumConsumers;
+        this.drainTimeInSeconds = Math.max(1, drainTime.toMillis()) / 1000d;
+        this.scaleDownRounds = Math.max(1, scaleDownRounds);
+        this.interval = interval;
+    }
+
+    /**
+     * @param queueDepth       - The number of messages waiting in the queue of the listener
+     * @param consumersUpdater - Set the number of consumers of the listener, started with the minimum
+     */
+    public void register(String id, IntSupplier queueDepth, IntConsumer consumersUpdater) {
+        ScaledListener listener = new ScaledListener(queueDepth, consumersUpdater, minimumConsumers);
+        listeners.put(id, listener);
+
+        MeterRegistry registry = meterRegistry;
+        if (registry != null) {
+            bindTo(registry, id, listener);
+        }
+    }
+
+    /**
+     * Register the meters of the scaler, and of the listeners registered before and after.
+     */
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        meterRegistry = registry;
+
+        FunctionCounter.builder("echechess.listener.scale.ups", scaleUps, AtomicLong::get)
+                .description("The number of times consumers were added to a listener")
+                .register(registry);
+        FunctionCounter.builder("echechess.listener.scale.downs", scaleDowns, AtomicLong::get)
+                .description("The number of times a consumer was removed from a listener")
+                .register(registry);
+
+        listeners.forEach((id, listener) -> bindTo(registry, id, listener));
+    }
+
+    private static void bindTo(MeterRegistry registry, String id, ScaledListener listener) {
+        Gauge.builder("echechess.listener.consumers", listener, scaledListener -> scaledListener.consumers)
+                .description("The current consumers of the listener")
+                .tag("listener", id)
+                .register(registry);
+        Gauge.builder("echechess.listener.consumers.needed", listener, scaledListener -> scaledListener.neededConsumers)
+                .description("The consumers needed by the listener, at the last round")
+                .tag("listener", id)
+                .register(registry);
+        Gauge.builder("echechess.listener.queue.depth", listener, scaledListener -> scaledListener.depth)
+                .description("The depth of the queue of the listener, at the last round")
+                .tag("listener", id)
+                .register(registry);
+        Gauge.builder("echechess.listener.processing.time", listener, scaledListener -> scaledListener.processingTimeInSeconds)
+                .description("The average time to process a message of the listener, over the last round with messages")
+                .tag("listener", id)
+                .baseUnit("seconds")
+                .register(registry);
+    }
+
+    /**
+     * Called by the listener once a message is processed.
+     */
+    public void recordProcessing(String id, long durationInNanos) {
+        ScaledListener listener = listeners.get(id);
+
+        if (listener != null) {
+            listener.processedMessages.increment();
+            listener.processingTimeInNanos.add(durationInNanos);
+        }
+    }
+
+    public void start() {
+        long intervalInMillis = interval.toMillis();
+        scheduledExecutorService.scheduleWithFixedDelay(this::scale, intervalInMillis, intervalInMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Resize the listeners, from what happened since the previous round.
+     */
+    public void scale() {
+        long now = System.nanoTime();
+        long elapsedTimeInNanos = now - lastRound;
+        lastRound = now;
+
+        scale(elapsedTimeInNanos);
+    }
+
+    void scale(long elapsedTimeInNanos) {
+        double elapsedTimeInSeconds = Math.max(1, elapsedTimeInNanos) / NANOS_BY_SECOND;
+
+        listeners.forEach((id, listener) -> {
+            try {
+                scale(id, listener, elapsedTimeInSeconds);
+            } catch (RuntimeException e) {
+                LOGGER.warn("Unable to scale the listener {}", id, e);
+            }
+        });
+    }
+
+    private void scale(String id, ScaledListener listener, double elapsedTimeInSeconds) {
+        int depth = Math.max(0, listener.queueDepth.getAsInt());
+        long processedMessages = listener.processedMessages.sumThenReset();
+        long processingTimeInNanos = listener.processingTimeInNanos.sumThenReset();
+
+        if (processedMessages > 0) {
+            listener.processingTimeInSeconds = processingTimeInNanos / (double) processedMessages / NANOS_BY_SECOND;
+        }
+
+        long arrivedMessages = Math.max(0, processedMessages + depth - listener.depth);
+        int consumers = listener.consumers;
+        int neededConsumers;
+
+        if (listener.processingTimeInSeconds > 0) {
+            double rate = arrivedMessages / elapsedTimeInSeconds + depth / drainTimeInSeconds;
+            neededConsumers = (int) Math.ceil(rate * listener.processingTimeInSeconds);
+        } else {
+            neededConsumers = depth > 0 ? consumers + 1 : consumers; // Nothing processed yet, the time is unknown
+        }
+
+        neededConsumers = Math.max(minimumConsumers, Math.min(maximumConsumers, neededConsumers));
+        listener.depth = depth;
+        listener.neededConsumers = neededConsumers;
+
+        if (neededConsumers > consumers) {
+            listener.roundsBelow = 0;
+            update(id, listener, neededConsumers);
+            scaleUps.incrementAndGet();
+        } else if (neededConsumers < consumers && ++listener.roundsBelow >= scaleDownRounds) {
+            listener.roundsBelow = 0;
+            update(id, listener, consumers - 1);
+            scaleDowns.incrementAndGet();
+        } else if (neededConsumers == consumers) {
+            listener.roundsBelow = 0;
+        }
+    }
+
+    private static void update(String id, ScaledListener listener, int consumers) {
+        LOGGER.info("Scaling the listener {} from {} to {} consumers (depth {}, processing time {} micros)", id,
+                listener.consumers, consumers, listener.depth, getProcessingTimeInMicros(listener));
+
+        listener.consumersUpdater.accept(consumers);
+        listener.consumers = consumers;
+    }
+
+    private static long getProcessingTimeInMicros(ScaledListener listener) {
+        return Math.round(listener.processingTimeInSeconds * 1_000_000);
+    }
+
+    /**
+     * @return The current consumers of the listener, 0 when not registered
+     */
+    public int getConsumers(String id) {
+        ScaledListener listener = listeners.get(id);
+        return listener == null ? 0 : listener.consumers;
+    }
+
+    /**
+     * @return The consumers needed by the listener, at the last round
+     */
+    public int getNeededConsumers(String id) {
+        ScaledListener listener = listeners.get(id);
+        return listener == null ? 0 : listener.neededConsumers;
+    }
+
+    /**
+     * @return The depth of the queue of the listener, at the last round
+     */
+    public int getQueueDepth(String id) {
+        ScaledListener listener = listeners.get(id);
+        return listener == null ? 0 : listener.depth;
+    }
+
+    /**
+     * @return The average time to process a message of the listener, over the last round with messages
+     */
+    public long getProcessingTimeInMicros(String id) {
+        ScaledListener listener = listeners.get(id);
+        return listener == null ? 0 : getProcessingTimeInMicros(listener);
+    }
+
+    public long getScaleUps() {
+        return scaleUps.get();
+    }
+
+    public long getScaleDowns() {
+        return scaleDowns.get();
+    }
+
+    public void shutdown() {
+        scheduledExecutorService.shutdownNow();
+    }
+
+    /**
+     * The state of the rounds is only changed by the thread of the scaler.
+     */
+    private static class ScaledListener {
+        private final IntSupplier queueDepth;
+        private final IntConsumer consumersUpdater;
+        private final LongAdder processedMessages = new LongAdder();
+        private final LongAdder processingTimeInNanos = new LongAdder();
+        private volatile int consumers;
+        private volatile int neededConsumers;
+        private volatile int depth;
+        private volatile double processingTimeInSeconds;
+        private int roundsBelow;
+
+        private ScaledListener(IntSupplier queueDepth, IntConsumer consumersUpdater, int consumers) {
+            this.queueDepth = queueDepth;
+            this.consumersUpdater = consumersUpdater;
+            this.consumers = consumers;
+            this.neededConsumers = consumers;
+        }
+    }
+}
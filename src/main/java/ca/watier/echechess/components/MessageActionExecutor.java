@@ -16,8 +16,28 @@
 
 package ca.watier.echechess.components;
 
+import ca.watier.echechess.models.MoveAppliedModel;
+
+import java.util.UUID;
+
+/**
+ * Handle the responses of the game engine; the messages are encoded with the {@link ca.watier.echechess.utils.GameMessageCodec}.
+ */
 public interface MessageActionExecutor {
-    void handleMoveResponseMessage(String message);
+    void handleMoveResponseMessage(byte[] message);
+
+    /**
+     * @param moveApplied - The outcome of the move, recorded when the move was applied; sent as is, without reading
+     *                    the game again
+     */
+    void handleMoveResponseMessage(byte[] message, MoveAppliedModel moveApplied);
+
+    void handleAvailMoveResponseMessage(byte[] message);
 
-    void handleAvailMoveResponseMessage(String message);
+    /**
+     * Fail the request that could not be handled, and ask the players to refresh their board.
+     *
+     * @param correlationId - The request, {@link ca.watier.echechess.utils.GameMessageCodec#NO_CORRELATION} when unknown
+     */
+    void handleFailedRequest(UUID gameId, long correlationId);
 }
@@ -16,141 +16,146 @@
 
 package ca.watier.echechess.components;
 
-import ca.watier.echechess.common.enums.CasePosition;
-import ca.watier.echechess.common.enums.KingStatus;
 import ca.watier.echechess.common.enums.MoveType;
 import ca.watier.echechess.common.enums.Side;
 import ca.watier.echechess.common.services.WebSocketService;
-import ca.watier.echechess.common.utils.Constants;
 import ca.watier.echechess.communication.redis.interfaces.GameRepository;
 import ca.watier.echechess.communication.redis.model.GenericGameHandlerWrapper;
-import ca.watier.echechess.engine.abstracts.GameBoardData;
 import ca.watier.echechess.engine.delegates.PieceMoveConstraintDelegate;
 import ca.watier.echechess.engine.engines.GenericGameHandler;
+import ca.watier.echechess.exceptions.GameRequestFailedException;
 import ca.watier.echechess.models.AvailableMove;
-import ca.watier.echechess.models.PawnPromotionViewModel;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.type.CollectionLikeType;
-import com.fasterxml.jackson.databind.type.TypeFactory;
-import org.apache.commons.lang3.ObjectUtils;
-import org.apache.commons.lang3.StringUtils;
-import org.slf4j.LoggerFactory;
-
-import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
+import ca.watier.echechess.models.MoveAppliedModel;
+import ca.watier.echechess.models.TrackedGameHandlerWrapper;
+import ca.watier.echechess.repositories.CachingGameRepository;
+import ca.watier.echechess.utils.GameMessageCodec;
+import org.apache.commons.lang3.ArrayUtils;
+
+import java.util.UUID;
 
 import static ca.watier.echechess.common.enums.ChessEventMessage.*;
-import static ca.watier.echechess.common.enums.Side.getOtherPlayerSide;
-import static ca.watier.echechess.common.utils.Constants.PLAYER_KING_CHECKMATE;
-import static ca.watier.echechess.common.utils.Constants.PLAYER_MOVE;
 
 /**
  * This implementation is intended to replicate the comportment of a Queue when in independent mode.
  */
 public class MessageActionExecutorImpl implements MessageActionExecutor {
-    private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(MessageActionExecutorImpl.class);
-    private static final String REGEX_VALUE_SEPARATOR = "\\|";
     private final PieceMoveConstraintDelegate gameMoveConstraintDelegate;
     private final GameRepository<GenericGameHandler> gameRepository;
     private final WebSocketService webSocketService;
-    private final ObjectMapper objectMapper;
-    private final CollectionLikeType listStringType;
+    private final CachingGameRepository gameCache;
+    private final GameRequestTracker gameRequestTracker;
+
+    public MessageActionExecutorImpl(PieceMoveConstraintDelegate gameMoveConstraintDelegate, GameRepository<GenericGameHandler> gameRepository, WebSocketService webSocketService) {
+        this(gameMoveConstraintDelegate, gameRepository, webSocketService, null, null);
+    }
 
-    public MessageActionExecutorImpl(PieceMoveConstraintDelegate gameMoveConstraintDelegate, GameRepository<GenericGameHandler> gameRepository, WebSocketService webSocketService, ObjectMapper objectMapper) {
+    /**
+     * @param gameCache          - The local copy of the games updated by the other nodes, dropped when receiving a move; can be null
+     * @param gameRequestTracker - The requests waiting for their response, completed before the events are sent; can be null
+     */
+    public MessageActionExecutorImpl(PieceMoveConstraintDelegate gameMoveConstraintDelegate,
+                                     GameRepository<GenericGameHandler> gameRepository,
+                                     WebSocketService webSocketService,
+                                     CachingGameRepository gameCache,
+                                     GameRequestTracker gameRequestTracker) {
         this.gameMoveConstraintDelegate = gameMoveConstraintDelegate;
         this.gameRepository = gameRepository;
+        this.gameCache = gameCache;
+        this.gameRequestTracker = gameRequestTracker;
         this.webSocketService = webSocketService;
-        this.objectMapper = objectMapper;
-        TypeFactory typeFactory = this.objectMapper.getTypeFactory();
-        listStringType = typeFactory.constructCollectionLikeType(ArrayList.class, String.class);
     }
 
     @Override
-    public void handleMoveResponseMessage(String message) {
-        if (StringUtils.isBlank(message)) {
+    public void handleMoveResponseMessage(byte[] message) {
+        handleMoveResponseMessage(message, null);
+    }
+
+    @Override
+    public void handleMoveResponseMessage(byte[] message, MoveAppliedModel moveApplied) {
+        if (ArrayUtils.isEmpty(message)) {
             return;
         }
 
-        handleReceivedMoveMessage(message);
+        byte[] moveMessage = GameMessageCodec.normalize(message, GameMessageCodec.MOVE_RESPONSE);
+        completeRequest(moveMessage);
+        handleReceivedMoveMessage(moveMessage, moveApplied);
     }
 
     @Override
-    public void handleAvailMoveResponseMessage(String message) {
-        if (StringUtils.isBlank(message)) {
+    public void handleAvailMoveResponseMessage(byte[] message) {
+        if (ArrayUtils.isEmpty(message)) {
             return;
         }
 
-        String[] headers = message.split(REGEX_VALUE_SEPARATOR);
-        String uuid = headers[0];
-        String fromAsString = headers[1];
-        Side playerSide = Side.getFromValue(Byte.parseByte(headers[2]));
+        byte[] availableMovesMessage = GameMessageCodec.normalize(message, GameMessageCodec.AVAILABLE_MOVES_RESPONSE);
+        completeRequest(availableMovesMessage);
 
-        try {
-            List<String> positions = objectMapper.readValue(headers[3], listStringType);
+        String uuid = GameMessageCodec.getGameId(availableMovesMessage).toString();
+        Side playerSide = GameMessageCodec.getSide(availableMovesMessage);
 
-            webSocketService.fireSideEvent(uuid, playerSide, AVAILABLE_MOVE, null, new AvailableMove(fromAsString, positions));
-        } catch (IOException e) {
-            LOGGER.error(e.getMessage(), e);
-        }
+        AvailableMove availableMove = new AvailableMove(GameMessageCodec.getFrom(availableMovesMessage).name(), GameMessageCodec.getPositions(availableMovesMessage));
+        webSocketService.fireSideEvent(uuid, playerSide, AVAILABLE_MOVE, null, availableMove);
     }
 
-    private void handleReceivedMoveMessage(String messageAsString) {
-        String[] messages = messageAsString.split(REGEX_VALUE_SEPARATOR);
-
-        String uuid = messages[0];
-        CasePosition from = CasePosition.valueOf(messages[1]);
-        CasePosition to = CasePosition.valueOf(messages[2]);
-        MoveType moveType = MoveType.getFromValue(Byte.parseByte(messages[3]));
-        Side playerSide = Side.getFromValue(Byte.parseByte(messages[4]));
+    @Override
+    public void handleFailedRequest(UUID gameId, long correlationId) {
+        if (gameRequestTracker != null && correlationId != GameMessageCodec.NO_CORRELATION) {
+            gameRequestTracker.fail(correlationId, new GameRequestFailedException());
+        }
 
-        GenericGameHandlerWrapper<GenericGameHandler> handlerWrapper = gameRepository.get(uuid);
-        GenericGameHandler gameFromUuid = handlerWrapper.getGenericGameHandler();
+        webSocketService.fireGameEvent(gameId.toString(), REFRESH_BOARD); // The game may be changed or not
+    }
 
-        if (MoveType.isMoved(moveType)) {
-            if (MoveType.PAWN_PROMOTION.equals(moveType)) {
-                PawnPromotionViewModel viewModel = new PawnPromotionViewModel();
-                viewModel.setGameSide(playerSide);
-                viewModel.setFrom(from.name());
-                viewModel.setTo(to.name());
+    private void completeRequest(byte[] message) {
+        long correlationId = GameMessageCodec.getCorrelationId(message);
 
-                webSocketService.fireGameEvent(uuid, PAWN_PROMOTION, viewModel);
-            } else {
+        if (gameRequestTracker != null && correlationId != GameMessageCodec.NO_CORRELATION) {
+            gameRequestTracker.complete(correlationId, message);
+        }
+    }
 
-                GameBoardData boardData = gameFromUuid.getCloneOfCurrentDataState();
+    private void handleReceivedMoveMessage(byte[] message, MoveAppliedModel moveApplied) {
+        String uuid = GameMessageCodec.getGameId(message).toString();
+
+        switch (GameMessageCodec.getMoveStatus(message)) {
+            case GameMessageCodec.MOVE_DUPLICATE:
+                return; // The events were sent with the first response
+            case GameMessageCodec.MOVE_STALE:
+                webSocketService.fireGameEvent(uuid, REFRESH_BOARD); // The board of the player is behind the game
+                return;
+            default:
+                break;
+        }
 
-                KingStatus currentKingStatus = gameMoveConstraintDelegate.getKingStatus(playerSide, boardData);
-                KingStatus otherKingStatus = gameMoveConstraintDelegate.getKingStatus(Side.getOtherPlayerSide(playerSide), boardData);
+        if (gameCache != null) {
+            // The game was updated by the node that applied the move
+            gameCache.invalidate(uuid);
+        }
 
-                sendMovedPieceMessage(from, to, uuid, gameFromUuid, playerSide);
-                sendCheckOrCheckmateMessagesIfNeeded(currentKingStatus, otherKingStatus, playerSide, uuid);
-            }
+        if (moveApplied != null) {
+            webSocketService.fireGameEvent(uuid, MOVE, moveApplied);
+        } else if (MoveType.isMoved(GameMessageCodec.getMoveType(message))) {
+            sendMoveApplied(message, uuid);
         }
     }
 
-    private void sendMovedPieceMessage(CasePosition from, CasePosition to, String uuid, GenericGameHandler gameFromUuid, Side playerSide) {
-        webSocketService.fireGameEvent(uuid, MOVE, String.format(PLAYER_MOVE, playerSide, from, to));
-        webSocketService.fireSideEvent(uuid, getOtherPlayerSide(playerSide), PLAYER_TURN, Constants.PLAYER_TURN);
-        webSocketService.fireGameEvent(uuid, SCORE_UPDATE, gameFromUuid.getGameScore());
-    }
+    /**
+     * All the changes of the move are sent in one event: the changed positions (applied by the players to their board,
+     * the whole board is fetched only when they missed a move), the side to play, the score and the status of the kings.
+     * <p>
+     * The move was applied by an engine node, the outcome is read from the game it wrote.
+     */
+    private void sendMoveApplied(byte[] message, String uuid) {
+        GenericGameHandlerWrapper<GenericGameHandler> handlerWrapper = gameRepository.get(uuid);
+        int sequence = GameMessageCodec.getSequence(message);
 
-    private void sendCheckOrCheckmateMessagesIfNeeded(KingStatus currentKingStatus, KingStatus otherKingStatusAfterMove, Side playerSide, String uuid) {
-        if (ObjectUtils.anyNull(currentKingStatus, otherKingStatusAfterMove, playerSide)) {
-            return;
+        if (sequence == GameMessageCodec.NO_SEQUENCE) {
+            sequence = TrackedGameHandlerWrapper.getNumberOfMoves(handlerWrapper); // Sent by an engine not counting the moves
         }
 
-        Side otherPlayerSide = getOtherPlayerSide(playerSide);
+        MoveAppliedModel moveApplied = MoveAppliedModel.ofMove(sequence, GameMessageCodec.getFrom(message), GameMessageCodec.getTo(message),
+                GameMessageCodec.getMoveType(message), GameMessageCodec.getSide(message), handlerWrapper, gameMoveConstraintDelegate);
 
-        if (KingStatus.CHECKMATE.equals(currentKingStatus)) {
-            webSocketService.fireGameEvent(uuid, KING_CHECKMATE, String.format(PLAYER_KING_CHECKMATE, playerSide));
-        } else if (KingStatus.CHECKMATE.equals(otherKingStatusAfterMove)) {
-            webSocketService.fireGameEvent(uuid, KING_CHECKMATE, String.format(PLAYER_KING_CHECKMATE, otherPlayerSide));
-        }
-
-        if (KingStatus.CHECK.equals(currentKingStatus)) {
-            webSocketService.fireSideEvent(uuid, playerSide, KING_CHECK, Constants.PLAYER_KING_CHECK);
-        } else if (KingStatus.CHECK.equals(otherKingStatusAfterMove)) {
-            webSocketService.fireSideEvent(uuid, otherPlayerSide, KING_CHECK, Constants.PLAYER_KING_CHECK);
-        }
+        webSocketService.fireGameEvent(uuid, MOVE, moveApplied);
     }
 }
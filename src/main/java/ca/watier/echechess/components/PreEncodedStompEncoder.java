@@ -0,0 +1,192 @@
+/*
+ *    Copyright 2014 - 2021 Yannick Watier
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.watier.echechess.components;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompEncoder;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.NativeMessageHeaderAccessor;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encode the MESSAGE frames of a broadcast with the header lines encoded once for all the subscribers (see
+ * {@link #preEncode(String, Message)}); only the headers of the subscriber (subscription and message id) are encoded
+ * for each frame. The other frames, and the messages without pre-encoded headers, are encoded by the
+ * {@link StompEncoder}.
+ * <p>
+ * The frames are the same, byte for byte, as the ones of the {@link StompEncoder}: the headers are written in the
+ * order of the frame, a pre-encoded line is only used when the frame has the same values, and the content length is
+ * written last, from the payload.
+ */
+public class PreEncodedStompEncoder extends StompEncoder {
+    public static final String PRE_ENCODED_FRAME_HEADER = "preEncodedFrame";
+
+    private static final String DESTINATION = "destination";
+    private static final String CONTENT_TYPE = "content-type";
+    private static final String CONTENT_LENGTH = "content-length";
+    private static final byte[] MESSAGE_COMMAND = "MESSAGE\n".getBytes(StandardCharsets.UTF_8);
+    private static final byte LF = '\n';
+    private static final byte COLON = ':';
+
+    /**
+     * Encode the header lines shared by all the subscribers: the destination, the native headers of the message and
+     * the content type.
+     *
+     * @return The pre-encoded headers, or null when the payload is not encoded yet
+     */
+    public static PreEncodedFrame preEncode(String destination, Message<?> message) {
+        if (!(message.getPayload() instanceof byte[])) {
+            return null;
+        }
+
+        Map<String, PreEncodedHeader> headers = new HashMap<>();
+
+        @SuppressWarnings("unchecked")
+        Map<String, List<String>> nativeHeaders = (Map<String, List<String>>) message.getHeaders().get(NativeMessageHeaderAccessor.NATIVE_HEADERS);
+
+        if (nativeHeaders != null) {
+            nativeHeaders.forEach((name, values) -> headers.put(name, new PreEncodedHeader(name, values)));
+        }
+
+        // Set from the message headers when the frame is created, in place of the native headers
+        headers.put(DESTINATION, new PreEncodedHeader(DESTINATION, List.of(destination)));
+        Object contentType = message.getHeaders().get(MessageHeaders.CONTENT_TYPE);
+
+        if (contentType != null) {
+            headers.put(CONTENT_TYPE, new PreEncodedHeader(CONTENT_TYPE, List.of(contentType.toString())));
+        }
+
+        return new PreEncodedFrame(headers);
+    }
+
+    @Override
+    public byte[] encode(Map<String, Object> headers, byte[] payload) {
+        Object preEncodedFrame = headers.get(PRE_ENCODED_FRAME_HEADER);
+
+        @SuppressWarnings("unchecked")
+        Map<String, List<String>> nativeHeaders = (Map<String, List<String>>) headers.get(NativeMessageHeaderAccessor.NATIVE_HEADERS);
+
+        if (!(preEncodedFrame instanceof PreEncodedFrame) || nativeHeaders == null ||
+                headers.get(StompHeaderAccessor.COMMAND_HEADER) != StompCommand.MESSAGE) {
+            return super.encode(headers, payload);
+        }
+
+        Map<String, PreEncodedHeader> preEncodedHeaders = ((PreEncodedFrame) preEncodedFrame).headers;
+        ByteArrayOutputStream output = new ByteArrayOutputStream(MESSAGE_COMMAND.length + 256 + payload.length);
+        output.writeBytes(MESSAGE_COMMAND);
+
+        for (Map.Entry<String, List<String>> nativeHeader : nativeHeaders.entrySet()) {
+            String name = nativeHeader.getKey();
+
+            if (CONTENT_LENGTH.equals(name)) {
+                continue; // Written from the payload
+            }
+
+            PreEncodedHeader preEncodedHeader = preEncodedHeaders.get(name);
+
+            if (preEncodedHeader != null && preEncodedHeader.values.equals(nativeHeader.getValue())) {
+                output.writeBytes(preEncodedHeader.lines);
+            } else {
+                writeHeader(output, name, nativeHeader.getValue());
+            }
+        }
+
+        writeHeader(output, CONTENT_LENGTH, List.of(String.valueOf(payload.length)));
+        output.write(LF);
+        output.writeBytes(payload);
+        output.write(0);
+
+        return output.toByteArray();
+    }
+
+    /**
+     * The header lines shared by the subscribers, by header name.
+     */
+    public static final class PreEncodedFrame {
+        private final Map<String, PreEncodedHeader> headers;
+
+        private PreEncodedFrame(Map<String, PreEncodedHeader> headers) {
+            this.headers = headers;
+        }
+    }
+
+    /**
+     * The values of a header, with their encoded lines.
+     */
+    private static final class PreEncodedHeader {
+        private final List<String> values;
+        private final byte[] lines;
+
+        private PreEncodedHeader(String name, List<String> values) {
+            ByteArrayOutputStream output = new ByteArrayOutputStream(32 * values.size());
+            writeHeader(output, name, values);
+
+            this.values = List.copyOf(values);
+            this.lines = output.toByteArray();
+        }
+    }
+
+    private static void writeHeader(ByteArrayOutputStream output, String name, List<String> values) {
+        byte[] encodedName = escape(name).getBytes(StandardCharsets.UTF_8);
+
+        for (String value : values) {
+            output.writeBytes(encodedName);
+            output.write(COLON);
+            output.writeBytes(escape(value).getBytes(StandardCharsets.UTF_8));
+            output.write(LF);
+        }
+    }
+
+    /**
+     * The escaping of the header names and values of the STOMP 1.2 frames, as done by the {@link StompEncoder}.
+     */
+    private static String escape(String value) {
+        StringBuilder escaped = null;
+
+        for (int i = 0; i < value.length(); i++) {
+            char character = value.charAt(i);
+            String replacement = switch (character) {
+                case '\\' -> "\\\\";
+                case ':' -> "\\c";
+                case '\n' -> "\\n";
+                case '\r' -> "\\r";
+                default -> null;
+            };
+
+            if (replacement != null && escaped == null) {
+                escaped = new StringBuilder(value.length() + 8).append(value, 0, i);
+            }
+
+            if (escaped != null) {
+                if (replacement != null) {
+                    escaped.append(replacement);
+                } else {
+                    escaped.append(character);
+                }
+            }
+        }
+
+        return escaped == null ? value : escaped.toString();
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ *    Copyright 2014 - 2021 Yannick Watier
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.watier.echechess.components;
+
+import org.slf4j.LoggerFactory;
+import org.springframework.lang.Nullable;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.SubscribableChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.MessageHeaderInitializer;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.MultiValueMap;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Simple broker with the subscriptions sharded by destination ({@link ShardedSubscriptionRegistry}); the messages of
+ * a destination are sent to its subscribers by the thread of its shard, in order, while the other shards send in
+ * parallel.
+ * <p>
+ * The part of the frame shared by the subscribers is encoded once per message and carried in the
+ * {@link PreEncodedStompEncoder#PRE_ENCODED_FRAME_HEADER} header, for the {@link PreEncodedStompEncoder}.
+ * <p>
+ * The queue of each shard is bounded; when a shard is behind by the maximum number of messages, the new messages of
+ * its destinations are dropped (and counted, see {@link #getDroppedMessages()}) instead of filling the heap. The
+ * clients see the gap in the event sequence and resume from the event log.
+ */
+public class ShardedBrokerMessageHandler extends SimpleBrokerMessageHandler {
+    private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(ShardedBrokerMessageHandler.class);
+
+    private final ExecutorService[] shards;
+    private final AtomicLong sentMessages = new AtomicLong();
+    private final AtomicLong deliveredMessages = new AtomicLong();
+    private final AtomicLong droppedMessages = new AtomicLong();
+
+    /**
+     * @param maximumQueuedMessages - The number of messages waiting in the queue of a shard before the new ones are
+     *                              dropped
+     */
+    public ShardedBrokerMessageHandler(SubscribableChannel clientInboundChannel,
+                                       MessageChannel clientOutboundChannel,
+                                       SubscribableChannel brokerChannel,
+                                       Collection<String> destinationPrefixes,
+                                       int numberOfShards,
+                                       int maximumQueuedMessages) {
+
+        super(clientInboundChannel, clientOutboundChannel, brokerChannel, destinationPrefixes);
+        setSubscriptionRegistry(new ShardedSubscriptionRegistry(numberOfShards));
+
+        shards = new ExecutorService[numberOfShards];
+        RejectedExecutionHandler dropMessage = (task, executor) -> {
+            droppedMessages.incrementAndGet();
+
+            if (!executor.isShutdown()) {
+                LOGGER.warn("The broker shard is full ({} queued messages), the message is dropped", maximumQueuedMessages);
+            }
+        };
+
+        for (int i = 0; i < numberOfShards; i++) {
+            shards[i] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(maximumQueuedMessages),
+                    new CustomizableThreadFactory("broker-shard-" + i + "-"), dropMessage);
+        }
+    }
+
+    @Override
+    protected void sendMessageToSubscribers(@Nullable String destination, Message<?> message) {
+        if (destination == null) {
+            return;
+        }
+
+        sentMessages.incrementAndGet();
+        shards[ShardedSubscriptionRegistry.getShard(destination, shards.length)].execute(() -> fanOut(destination, message));
+    }
+
+    private void fanOut(String destination, Message<?> message) {
+        MultiValueMap<String, String> subscriptions = getSubscriptionRegistry().findSubscriptions(message);
+
+        if (subscriptions.isEmpty()) {
+            return;
+        }
+
+        PreEncodedStompEncoder.PreEncodedFrame preEncodedFrame = PreEncodedStompEncoder.preEncode(destination, message);
+        Object payload = message.getPayload();
+
+        for (var subscription : subscriptions.entrySet()) {
+            String sessionId = subscription.getKey();
+            List<String> subscriptionIds = subscription.getValue();
+
+            for (String subscriptionId : subscriptionIds) {
+                SimpMessageHeaderAccessor headerAccessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+                MessageHeaderInitializer headerInitializer = getHeaderInitializer();
+
+                if (headerInitializer != null) {
+                    headerInitializer.initHeaders(headerAccessor);
+                }
+
+                headerAccessor.setSessionId(sessionId);
+                headerAccessor.setSubscriptionId(subscriptionId);
+                headerAccessor.copyHeadersIfAbsent(message.getHeaders());
+
+                if (preEncodedFrame != null) {
+                    headerAccessor.setHeader(PreEncodedStompEncoder.PRE_ENCODED_FRAME_HEADER, preEncodedFrame);
+                }
+
+                headerAccessor.setLeaveMutable(true);
+
+                try {
+                    getClientOutboundChannel().send(MessageBuilder.createMessage(payload, headerAccessor.getMessageHeaders()));
+                    deliveredMessages.incrementAndGet();
+                } catch (RuntimeException e) {
+                    LOGGER.warn("Unable to send the message of {} to the session {}", destination, sessionId, e);
+                }
+            }
+        }
+    }
+
+    public long getSentMessages() {
+        return sentMessages.get();
+    }
+
+    public long getDeliveredMessages() {
+        return deliveredMessages.get();
+    }
+
+    public long getDroppedMessages() {
+        return droppedMessages.get();
+    }
+
+    public void shutdown() {
+        for (ExecutorService shard : shards) {
+            shard.shutdown();
+        }
+    }
+}
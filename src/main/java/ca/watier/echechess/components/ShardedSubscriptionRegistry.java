@@ -0,0 +1,167 @@
+/*
+ *    Copyright 2014 - 2021 Yannick Watier
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.watier.echechess.components;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.broker.DefaultSubscriptionRegistry;
+import org.springframework.messaging.simp.broker.SubscriptionRegistry;
+import org.springframework.util.CollectionUtils;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Subscriptions indexed by destination, split in shards by the hash of the destination; finding the subscribers of a
+ * destination only reads its entry, whatever the number of subscriptions of the other destinations.
+ * <p>
+ * The subscriptions with a pattern or a selector are delegated to a {@link DefaultSubscriptionRegistry}, only
+ * searched once such a subscription was registered.
+ */
+public class ShardedSubscriptionRegistry implements SubscriptionRegistry {
+    private static final String SELECTOR_HEADER = "selector";
+    private static final MultiValueMap<String, String> NO_SUBSCRIPTIONS = CollectionUtils.toMultiValueMap(Collections.emptyMap());
+
+    private final ConcurrentMap<String, ConcurrentMap<String, List<String>>>[] shards;
+    private final ConcurrentMap<String, ConcurrentMap<String, String>> destinationsBySession = new ConcurrentHashMap<>();
+    private final DefaultSubscriptionRegistry patternRegistry = new DefaultSubscriptionRegistry();
+    private volatile boolean hasPatternSubscriptions;
+
+    @SuppressWarnings("unchecked")
+    public ShardedSubscriptionRegistry(int numberOfShards) {
+        if (numberOfShards < 1) {
+            throw new IllegalArgumentException("The number of shards must be positive");
+        }
+
+        shards = new ConcurrentMap[numberOfShards];
+
+        for (int i = 0; i < numberOfShards; i++) {
+            shards[i] = new ConcurrentHashMap<>();
+        }
+    }
+
+    public static int getShard(String destination, int numberOfShards) {
+        return Math.floorMod(destination.hashCode(), numberOfShards);
+    }
+
+    @Override
+    public void registerSubscription(Message<?> subscribeMessage) {
+        Map<String, Object> headers = subscribeMessage.getHeaders();
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(headers);
+        String subscriptionId = SimpMessageHeaderAccessor.getSubscriptionId(headers);
+        String destination = SimpMessageHeaderAccessor.getDestination(headers);
+
+        if (sessionId == null || subscriptionId == null || destination == null) {
+            return;
+        }
+
+        if (isPatternOrSelector(destination, subscribeMessage)) {
+            hasPatternSubscriptions = true;
+            patternRegistry.registerSubscription(subscribeMessage);
+            return;
+        }
+
+        destinationsBySession.computeIfAbsent(sessionId, key -> new ConcurrentHashMap<>()).put(subscriptionId, destination);
+        getShard(destination).compute(destination, (key, subscriptions) -> {
+            ConcurrentMap<String, List<String>> current = subscriptions == null ? new ConcurrentHashMap<>() : subscriptions;
+            current.computeIfAbsent(sessionId, session -> new CopyOnWriteArrayList<>()).add(subscriptionId);
+            return current;
+        });
+    }
+
+    @Override
+    public void unregisterSubscription(Message<?> unsubscribeMessage) {
+        Map<String, Object> headers = unsubscribeMessage.getHeaders();
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(headers);
+        String subscriptionId = SimpMessageHeaderAccessor.getSubscriptionId(headers);
+
+        if (sessionId == null || subscriptionId == null) {
+            return;
+        }
+
+        ConcurrentMap<String, String> destinations = destinationsBySession.get(sessionId);
+        String destination = destinations == null ? null : destinations.remove(subscriptionId);
+
+        if (destination != null) {
+            unregister(destination, sessionId, subscriptionId);
+        } else if (hasPatternSubscriptions) {
+            patternRegistry.unregisterSubscription(unsubscribeMessage);
+        }
+    }
+
+    @Override
+    public void unregisterAllSubscriptions(String sessionId) {
+        ConcurrentMap<String, String> destinations = destinationsBySession.remove(sessionId);
+
+        if (destinations != null) {
+            destinations.forEach((subscriptionId, destination) -> unregister(destination, sessionId, subscriptionId));
+        }
+
+        if (hasPatternSubscriptions) {
+            patternRegistry.unregisterAllSubscriptions(sessionId);
+        }
+    }
+
+    /**
+     * @return The subscription ids by session id; a view of the registry, not to be modified
+     */
+    @Override
+    public MultiValueMap<String, String> findSubscriptions(Message<?> message) {
+        String destination = SimpMessageHeaderAccessor.getDestination(message.getHeaders());
+
+        if (destination == null) {
+            return NO_SUBSCRIPTIONS;
+        }
+
+        ConcurrentMap<String, List<String>> subscriptions = getShard(destination).get(destination);
+        MultiValueMap<String, String> found = subscriptions == null ? NO_SUBSCRIPTIONS : CollectionUtils.toMultiValueMap(subscriptions);
+
+        if (!hasPatternSubscriptions) {
+            return found;
+        }
+
+        MultiValueMap<String, String> foundWithPatterns = new LinkedMultiValueMap<>(found);
+        patternRegistry.findSubscriptions(message).forEach(foundWithPatterns::addAll);
+        return foundWithPatterns;
+    }
+
+    private void unregister(String destination, String sessionId, String subscriptionId) {
+        getShard(destination).computeIfPresent(destination, (key, subscriptions) -> {
+            subscriptions.computeIfPresent(sessionId, (session, subscriptionIds) -> {
+                subscriptionIds.remove(subscriptionId);
+                return subscriptionIds.isEmpty() ? null : subscriptionIds;
+            });
+
+            return subscriptions.isEmpty() ? null : subscriptions;
+        });
+    }
+
+    private ConcurrentMap<String, ConcurrentMap<String, List<String>>> getShard(String destination) {
+        return shards[getShard(destination, shards.length)];
+    }
+
+    private static boolean isPatternOrSelector(String destination, Message<?> message) {
+        return destination.indexOf('*') >= 0 || destination.indexOf('{') >= 0
+                || SimpMessageHeaderAccessor.getFirstNativeHeader(SELECTOR_HEADER, message.getHeaders()) != null;
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ *    Copyright 2014 - 2021 Yannick Watier
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.watier.echechess.components;
+
+import java.util.Locale;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * How a stage of the {@link GameCommandPipeline} waits for its next command, from the lowest latency to the lowest
+ * cpu usage when idle:
+ * <ul>
+ *     <li>{@code busy-spin}: spins on the condition, the stage keeps a core busy</li>
+ *     <li>{@code yielding}: spins, then yields the thread</li>
+ *     <li>{@code sleeping}: spins, yields, then parks the thread for a short time</li>
+ *     <li>{@code blocking}: waits on a condition, signaled by the previous stage</li>
+ * </ul>
+ */
+public interface WaitStrategy {
+    int SPIN_TRIES = 100;
+
+    /**
+     * Wait until the condition is true.
+     *
+     * @throws InterruptedException when the pipeline is stopped
+     */
+    void waitFor(BooleanSupplier condition) throws InterruptedException;
+
+    /**
+     * Wake up the waiting threads, when the condition may have changed.
+     */
+    default void signalAll() {
+    }
+
+    static WaitStrategy of(String name) {
+        switch (name.toLowerCase(Locale.ROOT)) {
+            case "busy-spin":
+                return new BusySpin();
+            case "yielding":
+                return new Yielding();
+            case "sleeping":
+                return new Sleeping();
+            case "blocking":
+                return new Blocking();
+            default:
+                throw new IllegalArgumentException("Unknown wait strategy: " + name);
+        }
+    }
+
+    private static void checkInterrupted() throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+    }
+
+    final class BusySpin implements WaitStrategy {
+        @Override
+        public void waitFor(BooleanSupplier condition) throws InterruptedException {
+            while (!condition.getAsBoolean()) {
+                checkInterrupted();
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    final class Yielding implements WaitStrategy {
+        @Override
+        public void waitFor(BooleanSupplier condition) throws InterruptedException {
+            for (int tries = 0; !condition.getAsBoolean(); tries++) {
+                checkInterrupted();
+
+                if (tries < SPIN_TRIES) {
+                    Thread.onSpinWait();
+                } else {
+                    Thread.yield();
+                }
+            }
+        }
+    }
+
+    final class Sleeping implements WaitStrategy {
+        private static final long SLEEP_IN_NANOS = 100_000;
+
+        @Override
+        public void waitFor(BooleanSupplier condition) throws InterruptedException {
+            for (int tries = 0; !condition.getAsBoolean(); tries++) {
+                checkInterrupted();
+
+                if (tries < SPIN_TRIES) {
+                    Thread.onSpinWait();
+                } else if (tries < SPIN_TRIES * 2) {
+                    Thread.yield();
+                } else {
+                    LockSupport.parkNanos(SLEEP_IN_NANOS);
+                }
+            }
+        }
+    }
+
+    final class Blocking implements WaitStrategy {
+        private final Lock lock = new ReentrantLock();
+        private final Condition changed = lock.newCondition();
+        private volatile boolean isSignalNeeded;
+
+        @Override
+        public void waitFor(BooleanSupplier condition) throws InterruptedException {
+            if (condition.getAsBoolean()) {
+                return;
+            }
+
+            lock.lock();
+            try {
+                while (!condition.getAsBoolean()) {
+                    isSignalNeeded = true;
+
+                    if (condition.getAsBoolean()) {
+                        break; // Changed before the flag was seen by the signaling thread
+                    }
+
+                    changed.await();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void signalAll() {
+            if (!isSignalNeeded) {
+                return;
+            }
+
+            lock.lock();
+            try {
+                isSignalNeeded = false;
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
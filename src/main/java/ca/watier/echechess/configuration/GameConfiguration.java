@@ -19,15 +19,22 @@ package ca.watier.echechess.configuration;
 
 import ca.watier.echechess.common.services.WebSocketService;
 import ca.watier.echechess.communication.redis.interfaces.GameRepository;
+import ca.watier.echechess.components.GameAdmissionController;
 import ca.watier.echechess.delegates.GameMessageDelegate;
 import ca.watier.echechess.engine.delegates.PieceMoveConstraintDelegate;
 import ca.watier.echechess.engine.engines.GenericGameHandler;
+import ca.watier.echechess.interfaces.GameJournal;
+import ca.watier.echechess.repositories.GameStateCodec;
 import ca.watier.echechess.services.GameService;
 import ca.watier.echechess.services.GameServiceImpl;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.time.Duration;
+
 @Configuration
 public class GameConfiguration {
     @Bean
@@ -40,9 +47,30 @@ public class GameConfiguration {
     public GameService gameService(PieceMoveConstraintDelegate pieceMoveConstraintDelegate,
                                    WebSocketService webSocketService,
                                    GameRepository<GenericGameHandler> gameRepository,
-                                   GameMessageDelegate gameMessageDelegate) {
+                                   GameMessageDelegate gameMessageDelegate,
+                                   ObjectProvider<GameJournal> gameJournal,
+                                   GameAdmissionController gameAdmissionController) {
+
+        return new GameServiceImpl(pieceMoveConstraintDelegate, webSocketService, gameRepository, gameMessageDelegate,
+                gameJournal.getIfAvailable(), gameAdmissionController);
+    }
 
-        return new GameServiceImpl(pieceMoveConstraintDelegate, webSocketService, gameRepository, gameMessageDelegate);
+    /**
+     * Bound the game commands in progress; the available moves are shed first, once the moves in progress are above
+     * the ratio of their maximum.
+     */
+    @Bean
+    public GameAdmissionController gameAdmissionController(@Value("${app.game.admission.maximum-moves:5000}") int maximumMoves,
+                                                           @Value("${app.game.admission.maximum-available-moves:2000}") int maximumAvailableMoves,
+                                                           @Value("${app.game.admission.maximum-by-player:8}") int maximumByPlayer,
+                                                           @Value("${app.game.admission.available-moves-shed-ratio:0.5}") double availableMovesShedRatio,
+                                                           @Value("${app.game.admission.retry-after:1s}") Duration retryAfter) {
+        return new GameAdmissionController(maximumMoves, maximumAvailableMoves, maximumByPlayer, availableMovesShedRatio, retryAfter);
+    }
+
+    @Bean
+    public GameStateCodec gameStateCodec(PieceMoveConstraintDelegate pieceMoveConstraintDelegate) {
+        return new GameStateCodec(pieceMoveConstraintDelegate);
     }
 
     @Bean
@@ -0,0 +1,96 @@
+/*
+ *    Copyright 2014 - 2021 Yannick Watier
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.watier.echechess.configuration;
+
+import ca.watier.echechess.components.PreEncodedStompEncoder;
+import ca.watier.echechess.components.ShardedBrokerMessageHandler;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.simp.broker.AbstractBrokerMessageHandler;
+import org.springframework.messaging.simp.user.UserDestinationResolver;
+import org.springframework.messaging.support.AbstractSubscribableChannel;
+import org.springframework.scheduling.concurrent.ConcurrentTaskScheduler;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.config.annotation.DelegatingWebSocketMessageBrokerConfiguration;
+import org.springframework.web.socket.messaging.StompSubProtocolHandler;
+import org.springframework.web.socket.messaging.SubProtocolHandler;
+import org.springframework.web.socket.messaging.SubProtocolWebSocketHandler;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The message broker configuration (in place of {@code @EnableWebSocketMessageBroker}), with the simple broker
+ * replaced by the {@link ShardedBrokerMessageHandler} and the frames encoded by the {@link PreEncodedStompEncoder};
+ * the other settings are still read from the {@link WebSocketConfiguration}.
+ */
+@Configuration
+public class ShardedBrokerConfiguration extends DelegatingWebSocketMessageBrokerConfiguration {
+    public static final String TOPIC_PREFIX = "/topic";
+
+    private static final long SESSION_HEARTH_BEAT_INTERVAL_IN_MILLIS = TimeUnit.SECONDS.toMillis(10);
+    private static final long[] HEARTBEAT =
+            {
+                    SESSION_HEARTH_BEAT_INTERVAL_IN_MILLIS, //Server
+                    SESSION_HEARTH_BEAT_INTERVAL_IN_MILLIS //Client
+            };
+
+    private final int numberOfShards;
+    private final int maximumQueuedMessages;
+
+    /**
+     * @param numberOfShards        - The number of shards of the broker, 0 for the number of processors
+     * @param maximumQueuedMessages - The number of messages queued by a shard before the new ones are dropped
+     */
+    public ShardedBrokerConfiguration(@Value("${app.websocket.broker.shards:0}") int numberOfShards,
+                                      @Value("${app.websocket.broker.shard-queue-size:10000}") int maximumQueuedMessages) {
+        this.numberOfShards = numberOfShards > 0 ? numberOfShards : Runtime.getRuntime().availableProcessors();
+        this.maximumQueuedMessages = maximumQueuedMessages;
+    }
+
+    @Bean
+    @Override
+    public AbstractBrokerMessageHandler simpleBrokerMessageHandler(AbstractSubscribableChannel clientInboundChannel,
+                                                                   AbstractSubscribableChannel clientOutboundChannel,
+                                                                   AbstractSubscribableChannel brokerChannel,
+                                                                   UserDestinationResolver userDestinationResolver) {
+
+        ShardedBrokerMessageHandler handler = new ShardedBrokerMessageHandler(clientInboundChannel, clientOutboundChannel,
+                brokerChannel, List.of(TOPIC_PREFIX), numberOfShards, maximumQueuedMessages);
+        handler.setTaskScheduler(new ConcurrentTaskScheduler());
+        handler.setHeartbeatValue(HEARTBEAT);
+        return handler;
+    }
+
+    @Bean
+    @Override
+    public WebSocketHandler subProtocolWebSocketHandler(AbstractSubscribableChannel clientInboundChannel,
+                                                        AbstractSubscribableChannel clientOutboundChannel) {
+
+        return new SubProtocolWebSocketHandler(clientInboundChannel, clientOutboundChannel) {
+            @Override
+            public void addProtocolHandler(SubProtocolHandler handler) {
+                if (handler instanceof StompSubProtocolHandler) {
+                    ((StompSubProtocolHandler) handler).setEncoder(new PreEncodedStompEncoder());
+                }
+
+                super.addProtocolHandler(handler);
+            }
+        };
+    }
+}
@@ -20,30 +20,25 @@ package ca.watier.echechess.configuration;
  * Created by yannick on 4/30/2017.
  */
 
+import ca.watier.echechess.components.GameEventLog;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
-import org.springframework.messaging.simp.config.SimpleBrokerRegistration;
-import org.springframework.scheduling.concurrent.ConcurrentTaskScheduler;
 import org.springframework.security.config.annotation.web.messaging.MessageSecurityMetadataSourceRegistry;
 import org.springframework.security.config.annotation.web.socket.AbstractSecurityWebSocketMessageBrokerConfigurer;
-import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.server.standard.ServletServerContainerFactoryBean;
 
 import java.util.concurrent.TimeUnit;
 
+/**
+ * The broker itself is configured by the {@link ShardedBrokerConfiguration}.
+ */
 @Configuration
-@EnableWebSocketMessageBroker
 public class WebSocketConfiguration extends AbstractSecurityWebSocketMessageBrokerConfigurer {
 
     private static final long TIMEOUT_SESSION_IN_MILLIS = TimeUnit.MINUTES.toMillis(2);
-    private static final long SESSION_HEARTH_BEAT_INTERVAL_IN_MILLIS = TimeUnit.SECONDS.toMillis(10);
-    private static final long[] HEARTBEAT =
-            {
-                    SESSION_HEARTH_BEAT_INTERVAL_IN_MILLIS, //Server
-                    SESSION_HEARTH_BEAT_INTERVAL_IN_MILLIS //Client
-            };
 
     @Override
     protected boolean sameOriginDisabled() {
@@ -57,10 +52,6 @@ public class WebSocketConfiguration extends AbstractSecurityWebSocketMessageBrok
 
     @Override
     public void configureMessageBroker(MessageBrokerRegistry config) {
-        SimpleBrokerRegistration simpleBrokerRegistration = config.enableSimpleBroker("/topic");
-        simpleBrokerRegistration.setTaskScheduler(new ConcurrentTaskScheduler());
-        simpleBrokerRegistration.setHeartbeatValue(HEARTBEAT);
-
         config.setApplicationDestinationPrefixes("/app");
     }
 
@@ -70,6 +61,15 @@ public class WebSocketConfiguration extends AbstractSecurityWebSocketMessageBrok
         messages.anyMessage().authenticated();
     }
 
+    /**
+     * The last events of each game, replayed to the clients resuming their session.
+     */
+    @Bean
+    public GameEventLog gameEventLog(@Value("${app.websocket.replay.maximum-games:4096}") int maximumGames,
+                                     @Value("${app.websocket.replay.events-by-game:32}") int eventsByGame) {
+        return new GameEventLog(maximumGames, eventsByGame);
+    }
+
     @Bean
     public ServletServerContainerFactoryBean createWebSocketContainer() {
         ServletServerContainerFactoryBean container = new ServletServerContainerFactoryBean();
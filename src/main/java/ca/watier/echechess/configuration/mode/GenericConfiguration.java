@@ -18,23 +18,35 @@ package ca.watier.echechess.configuration.mode;
 
 import ca.watier.echechess.common.services.WebSocketService;
 import ca.watier.echechess.communication.redis.interfaces.GameRepository;
+import ca.watier.echechess.components.GameRequestTracker;
 import ca.watier.echechess.components.MessageActionExecutor;
 import ca.watier.echechess.components.MessageActionExecutorImpl;
 import ca.watier.echechess.engine.delegates.PieceMoveConstraintDelegate;
 import ca.watier.echechess.engine.engines.GenericGameHandler;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.time.Duration;
+
 @Configuration
 public class GenericConfiguration {
 
     @Bean
     public MessageActionExecutor messageActionExecutor(GameRepository<GenericGameHandler> gameRepository,
                                                        WebSocketService webSocketService,
-                                                       ObjectMapper objectMapper,
-                                                       PieceMoveConstraintDelegate gameMoveConstraintDelegate) {
-        return new MessageActionExecutorImpl(gameMoveConstraintDelegate, gameRepository, webSocketService, objectMapper);
+                                                       PieceMoveConstraintDelegate gameMoveConstraintDelegate,
+                                                       GameRequestTracker gameRequestTracker) {
+        return new MessageActionExecutorImpl(gameMoveConstraintDelegate, gameRepository, webSocketService, null, gameRequestTracker);
+    }
+
+    /**
+     * The requests sent to the game engine waiting for their response.
+     */
+    @Bean
+    public GameRequestTracker gameRequestTracker(@Value("${app.game.request.maximum-in-flight:10000}") int maximumInFlight,
+                                                 @Value("${app.game.request.timeout:5s}") Duration timeout) {
+        return new GameRequestTracker(maximumInFlight, timeout);
     }
 
 }
@@ -20,19 +20,33 @@ import ca.watier.echechess.common.services.WebSocketService;
 import ca.watier.echechess.communication.rabbitmq.configuration.RabbitMqConfiguration;
 import ca.watier.echechess.communication.redis.interfaces.GameRepository;
 import ca.watier.echechess.communication.redis.pojos.ServerInfoPojo;
+import ca.watier.echechess.components.BatchingMessagePublisher;
 import ca.watier.echechess.components.DependentGameMessageHandler;
+import ca.watier.echechess.components.GameRequestTracker;
+import ca.watier.echechess.components.ListenerConcurrencyScaler;
 import ca.watier.echechess.components.MessageActionExecutor;
 import ca.watier.echechess.components.MessageActionExecutorImpl;
 import ca.watier.echechess.engine.delegates.PieceMoveConstraintDelegate;
 import ca.watier.echechess.engine.engines.GenericGameHandler;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import ca.watier.echechess.repositories.CachingGameRepository;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.listener.MessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistry;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
 import org.springframework.amqp.rabbit.listener.adapter.MessageListenerAdapter;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
 
+import java.time.Duration;
+
 @Configuration
 @Profile("dependent-mode")
 public class AppRabbitConfiguration extends RabbitMqConfiguration {
@@ -48,15 +62,97 @@ public class AppRabbitConfiguration extends RabbitMqConfiguration {
     }
 
     @Bean
-    public DependentGameMessageHandler gameMessageHandler(MessageActionExecutor actionExecutor) {
-        return new DependentGameMessageHandler(actionExecutor);
+    public DependentGameMessageHandler gameMessageHandler(MessageActionExecutor actionExecutor,
+                                                          ListenerConcurrencyScaler listenerConcurrencyScaler) {
+        return new DependentGameMessageHandler(actionExecutor, listenerConcurrencyScaler);
+    }
+
+    /**
+     * The moves of a game must be handled in the order they were applied by the engine; the queue of the communication
+     * module is shared by all the games, so it is consumed by a single consumer.
+     */
+    @Bean
+    public SimpleRabbitListenerContainerFactory moveResponseListenerFactory(ConnectionFactory connectionFactory,
+                                                                            @Value("${app.rabbit.listener.move-response-prefetch:50}") int prefetch) {
+        return newListenerFactory(connectionFactory, 1, prefetch);
+    }
+
+    @Bean
+    public SimpleRabbitListenerContainerFactory availMoveResponseListenerFactory(ConnectionFactory connectionFactory,
+                                                                                 @Value("${app.rabbit.listener.minimum-consumers:1}") int minimumConsumers,
+                                                                                 @Value("${app.rabbit.listener.avail-move-response-prefetch:250}") int prefetch) {
+        return newListenerFactory(connectionFactory, minimumConsumers, prefetch);
+    }
+
+    /**
+     * Resize the consumers of the available moves listener of the {@link DependentGameMessageHandler}, from the depth
+     * of its queue and the processing time of its messages; the available moves are read-only, their order doesn't
+     * matter. The move responses keep their single consumer.
+     * <p>
+     * The scaler is a {@link io.micrometer.core.instrument.binder.MeterBinder}, its meters are registered by the
+     * actuator.
+     */
+    @Bean(initMethod = "start", destroyMethod = "shutdown")
+    public ListenerConcurrencyScaler listenerConcurrencyScaler(RabbitTemplate rabbitTemplate,
+                                                               RabbitListenerEndpointRegistry listenerEndpointRegistry,
+                                                               @Qualifier("nodeToAppAvailMoveQueue") Queue availMoveQueue,
+                                                               @Value("${app.rabbit.listener.minimum-consumers:1}") int minimumConsumers,
+                                                               @Value("${app.rabbit.listener.maximum-consumers:8}") int maximumConsumers,
+                                                               @Value("${app.rabbit.listener.drain-time:1s}") Duration drainTime,
+                                                               @Value("${app.rabbit.listener.scale-down-rounds:3}") int scaleDownRounds,
+                                                               @Value("${app.rabbit.listener.scale-interval:5s}") Duration interval) {
+
+        ListenerConcurrencyScaler listenerConcurrencyScaler =
+                new ListenerConcurrencyScaler(minimumConsumers, maximumConsumers, drainTime, scaleDownRounds, interval);
+
+        listenerConcurrencyScaler.register(DependentGameMessageHandler.AVAIL_MOVE_RESPONSE_LISTENER_ID,
+                () -> getQueueDepth(rabbitTemplate, availMoveQueue.getName()),
+                consumers -> setConsumers(listenerEndpointRegistry, DependentGameMessageHandler.AVAIL_MOVE_RESPONSE_LISTENER_ID, consumers));
+
+        return listenerConcurrencyScaler;
+    }
+
+    private static SimpleRabbitListenerContainerFactory newListenerFactory(ConnectionFactory connectionFactory, int consumers, int prefetch) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        factory.setConnectionFactory(connectionFactory);
+        factory.setConcurrentConsumers(consumers);
+        factory.setPrefetchCount(prefetch);
+        return factory;
+    }
+
+    private static int getQueueDepth(RabbitTemplate rabbitTemplate, String queueName) {
+        Long messageCount = rabbitTemplate.execute(channel -> channel.messageCount(queueName));
+        return messageCount == null ? 0 : (int) Math.min(Integer.MAX_VALUE, messageCount);
+    }
+
+    /**
+     * The consumers are added or removed by the running container.
+     */
+    private static void setConsumers(RabbitListenerEndpointRegistry listenerEndpointRegistry, String listenerId, int consumers) {
+        MessageListenerContainer container = listenerEndpointRegistry.getListenerContainer(listenerId);
+
+        if (container instanceof SimpleMessageListenerContainer) {
+            ((SimpleMessageListenerContainer) container).setConcurrentConsumers(consumers);
+        }
     }
 
     @Bean
     public MessageActionExecutor actionExecutor(GameRepository<GenericGameHandler> gameRepository,
                                                 WebSocketService webSocketService,
-                                                ObjectMapper objectMapper,
-                                                PieceMoveConstraintDelegate gameMoveConstraintDelegate) {
-        return new MessageActionExecutorImpl(gameMoveConstraintDelegate, gameRepository, webSocketService, objectMapper);
+                                                PieceMoveConstraintDelegate gameMoveConstraintDelegate,
+                                                ObjectProvider<CachingGameRepository> gameCache,
+                                                GameRequestTracker gameRequestTracker) {
+        return new MessageActionExecutorImpl(gameMoveConstraintDelegate, gameRepository, webSocketService, gameCache.getIfAvailable(), gameRequestTracker);
+    }
+
+    /**
+     * Publish the requests to the game engine in small batches, with the publisher confirms.
+     */
+    @Bean(destroyMethod = "shutdown")
+    public BatchingMessagePublisher messagePublisher(RabbitTemplate rabbitTemplate,
+                                                     @Value("${app.rabbit.publisher.batch-size:64}") int batchSize,
+                                                     @Value("${app.rabbit.publisher.linger:1ms}") Duration linger,
+                                                     @Value("${app.rabbit.publisher.maximum-queue:10000}") int maximumQueue) {
+        return new BatchingMessagePublisher(rabbitTemplate, rabbitTemplate.getExchange(), batchSize, linger, maximumQueue);
     }
 }
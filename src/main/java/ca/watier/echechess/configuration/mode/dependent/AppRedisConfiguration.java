@@ -18,10 +18,24 @@ package ca.watier.echechess.configuration.mode.dependent;
 
 import ca.watier.echechess.communication.redis.configuration.RedisConfiguration;
 import ca.watier.echechess.communication.redis.pojos.ServerInfoPojo;
+import ca.watier.echechess.repositories.CachingGameRepository;
+import ca.watier.echechess.repositories.DependentGameRepositoryImpl;
+import ca.watier.echechess.repositories.GameStateCodec;
+import ca.watier.echechess.repositories.WriteBehindGameRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 import org.springframework.context.annotation.Profile;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.time.Duration;
 
 @Configuration
 @Profile("dependent-mode")
@@ -30,4 +44,50 @@ public class AppRedisConfiguration extends RedisConfiguration {
     public AppRedisConfiguration(@Qualifier("redisServerPojo") ServerInfoPojo redisServerPojo) {
         super(redisServerPojo);
     }
+
+    /**
+     * Replace the game repository of the communication module, to store the games with the {@link GameStateCodec};
+     * the writes of a game are merged over a short window, in front of the near-cache.
+     * <p>
+     * This repository is the default ({@code app.game.storage.format=compact}); the near-cache, the compare-and-set
+     * of the versions, the indexes, the paging, the write-behind and the local available moves all rely on it. The
+     * engine nodes of a release that still reads the java serialized wrappers of the communication module need
+     * {@code app.game.storage.format=shared}, which keeps the repository of the communication module and turns all
+     * of those off.
+     */
+    @Bean(destroyMethod = "shutdown")
+    @Primary
+    @ConditionalOnProperty(name = "app.game.storage.format", havingValue = "compact", matchIfMissing = true)
+    public WriteBehindGameRepository dependentGameRepository(CachingGameRepository gameCache,
+                                                             @Value("${app.game.write-behind.window:10ms}") Duration window) {
+        return new WriteBehindGameRepository(gameCache, window);
+    }
+
+    /**
+     * The games are kept in a local near-cache invalidated by the other nodes; the invalidations are published when
+     * the games are written to Redis, after the write-behind window.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "app.game.storage.format", havingValue = "compact", matchIfMissing = true)
+    public CachingGameRepository gameCache(RedisConnectionFactory redisConnectionFactory,
+                                           GameStateCodec gameStateCodec,
+                                           @Value("${app.game.cache.maximum-size:10000}") int maximumSize,
+                                           @Value("${app.game.cache.time-to-live:30s}") Duration timeToLive) {
+
+        return new CachingGameRepository(
+                new DependentGameRepositoryImpl(redisConnectionFactory, gameStateCodec),
+                maximumSize,
+                timeToLive,
+                new StringRedisTemplate(redisConnectionFactory));
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "app.game.storage.format", havingValue = "compact", matchIfMissing = true)
+    public RedisMessageListenerContainer gameCacheInvalidationContainer(RedisConnectionFactory redisConnectionFactory,
+                                                                        CachingGameRepository gameCache) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(redisConnectionFactory);
+        container.addMessageListener(gameCache, new ChannelTopic(CachingGameRepository.INVALIDATION_CHANNEL));
+        return container;
+    }
 }
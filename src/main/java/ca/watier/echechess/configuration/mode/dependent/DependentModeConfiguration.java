@@ -72,6 +72,7 @@ public class DependentModeConfiguration {
         factory.setPort(rabbitPort);
         factory.setUsername(rabbitUser);
         factory.setPassword(rabbitPassword);
+        factory.setPublisherConfirmType(CachingConnectionFactory.ConfirmType.CORRELATED); // Confirms of the batching publisher
         return factory;
     }
 }
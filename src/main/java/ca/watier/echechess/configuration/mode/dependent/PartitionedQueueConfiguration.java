@@ -0,0 +1,127 @@
+/*
+ *    Copyright 2014 - 2021 Yannick Watier
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.watier.echechess.configuration.mode.dependent;
+
+import ca.watier.echechess.components.GamePartitioner;
+import ca.watier.echechess.components.MessageActionExecutor;
+import org.springframework.amqp.core.*;
+import org.springframework.amqp.rabbit.annotation.RabbitListenerConfigurer;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistrar;
+import org.springframework.amqp.rabbit.listener.SimpleRabbitListenerEndpoint;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static ca.watier.echechess.communication.rabbitmq.configuration.RabbitMqConfiguration.AVAIL_MOVE_WORK_QUEUE_NAME;
+import static ca.watier.echechess.communication.rabbitmq.configuration.RabbitMqConfiguration.MOVE_WORK_QUEUE_NAME;
+
+/**
+ * Partitioned queues between the application and the engine nodes, the partition of a game is given by the
+ * {@link GamePartitioner}.
+ * <ul>
+ *     <li>The requests are sent to the durable work queues {@code <work queue>.<partition>}, an engine node consumes
+ *     a partition with a single consumer.</li>
+ *     <li>The responses are published on the direct exchanges {@link #MOVE_RESPONSE_EXCHANGE_NAME} and
+ *     {@link #AVAIL_MOVE_RESPONSE_EXCHANGE_NAME}, with the partition as routing key; each application node binds one
+ *     queue per partition (all the nodes receive the responses, to notify their clients), consumed by one consumer.</li>
+ * </ul>
+ * The queues of the communication module are still consumed, for the engine nodes not using the partitions.
+ * <p>
+ * Enabled with {@code app.rabbit.partitioned-queues.enabled=true}, once the engine nodes consume the partitions; until
+ * then, the requests are sent to the work queues of the communication module.
+ */
+@Configuration
+@Profile("dependent-mode")
+@ConditionalOnProperty(name = "app.rabbit.partitioned-queues.enabled", havingValue = "true")
+public class PartitionedQueueConfiguration implements RabbitListenerConfigurer {
+    public static final String MOVE_RESPONSE_EXCHANGE_NAME = "echechess.node-to-app.move";
+    public static final String AVAIL_MOVE_RESPONSE_EXCHANGE_NAME = "echechess.node-to-app.avail-move";
+
+    private final GamePartitioner gamePartitioner;
+    private final ObjectProvider<MessageActionExecutor> actionExecutor;
+    private final List<Queue> moveResponseQueues = new ArrayList<>();
+    private final List<Queue> availMoveResponseQueues = new ArrayList<>();
+
+    public PartitionedQueueConfiguration(@Value("${app.rabbit.partitions:8}") int numberOfPartitions,
+                                         ObjectProvider<MessageActionExecutor> actionExecutor) {
+        this.gamePartitioner = new GamePartitioner(numberOfPartitions);
+        this.actionExecutor = actionExecutor;
+
+        for (int partition = 0; partition < numberOfPartitions; partition++) {
+            moveResponseQueues.add(new AnonymousQueue());
+            availMoveResponseQueues.add(new AnonymousQueue());
+        }
+    }
+
+    @Bean
+    public GamePartitioner gamePartitioner() {
+        return gamePartitioner;
+    }
+
+    @Bean
+    public Declarables partitionedQueues() {
+        List<Declarable> declarables = new ArrayList<>();
+        DirectExchange moveResponseExchange = new DirectExchange(MOVE_RESPONSE_EXCHANGE_NAME);
+        DirectExchange availMoveResponseExchange = new DirectExchange(AVAIL_MOVE_RESPONSE_EXCHANGE_NAME);
+        declarables.add(moveResponseExchange);
+        declarables.add(availMoveResponseExchange);
+
+        for (int partition = 0; partition < gamePartitioner.getNumberOfPartitions(); partition++) {
+            String routingKey = String.valueOf(partition);
+            Queue moveResponseQueue = moveResponseQueues.get(partition);
+            Queue availMoveResponseQueue = availMoveResponseQueues.get(partition);
+
+            declarables.add(new Queue(GamePartitioner.getQueueName(MOVE_WORK_QUEUE_NAME, partition)));
+            declarables.add(new Queue(GamePartitioner.getQueueName(AVAIL_MOVE_WORK_QUEUE_NAME, partition)));
+            declarables.add(moveResponseQueue);
+            declarables.add(availMoveResponseQueue);
+            declarables.add(BindingBuilder.bind(moveResponseQueue).to(moveResponseExchange).with(routingKey));
+            declarables.add(BindingBuilder.bind(availMoveResponseQueue).to(availMoveResponseExchange).with(routingKey));
+        }
+
+        return new Declarables(declarables);
+    }
+
+    /**
+     * One listener per response queue; with the single consumer of the default container factory, the responses of a
+     * game are handled in order, while the partitions are handled in parallel.
+     */
+    @Override
+    public void configureRabbitListeners(RabbitListenerEndpointRegistrar registrar) {
+        for (int partition = 0; partition < gamePartitioner.getNumberOfPartitions(); partition++) {
+            registerListener(registrar, "move-response-" + partition, moveResponseQueues.get(partition),
+                    body -> actionExecutor.getObject().handleMoveResponseMessage(body));
+            registerListener(registrar, "avail-move-response-" + partition, availMoveResponseQueues.get(partition),
+                    body -> actionExecutor.getObject().handleAvailMoveResponseMessage(body));
+        }
+    }
+
+    private static void registerListener(RabbitListenerEndpointRegistrar registrar, String id, Queue queue, Consumer<byte[]> handler) {
+        SimpleRabbitListenerEndpoint endpoint = new SimpleRabbitListenerEndpoint();
+        endpoint.setId(id);
+        endpoint.setQueues(queue);
+        endpoint.setMessageListener(message -> handler.accept(message.getBody()));
+        registrar.registerEndpoint(endpoint);
+    }
+}
@@ -16,17 +16,31 @@
 
 package ca.watier.echechess.configuration.mode.independent;
 
-import ca.watier.echechess.communication.redis.interfaces.GameRepository;
-import ca.watier.echechess.engine.engines.GenericGameHandler;
+import ca.watier.echechess.components.GameCommandPipeline;
+import ca.watier.echechess.components.GameJournalReplayer;
+import ca.watier.echechess.components.GameMailboxScheduler;
+import ca.watier.echechess.components.IdleGameHibernator;
+import ca.watier.echechess.components.WaitStrategy;
+import ca.watier.echechess.interfaces.GameCommandExecutor;
+import ca.watier.echechess.engine.delegates.PieceMoveConstraintDelegate;
+import ca.watier.echechess.repositories.GameHibernationStore;
+import ca.watier.echechess.repositories.GameStateCodec;
 import ca.watier.echechess.repositories.IndependentGameRepositoryImpl;
+import ca.watier.echechess.repositories.MappedGameJournal;
 import ca.watier.echechess.repositories.IndependentUserRepositoryImpl;
 import ca.watier.echechess.repositories.UserRepository;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
 import org.springframework.security.crypto.password.PasswordEncoder;
 
+import java.nio.file.Path;
+import java.time.Duration;
+
 @Configuration
 @Profile("independent-mode")
 public class IndependentModeConfiguration {
@@ -38,8 +52,75 @@ public class IndependentModeConfiguration {
     }
 
     @Bean
-    public GameRepository<GenericGameHandler> gameRepository() {
-        return new IndependentGameRepositoryImpl();
+    public IndependentGameRepositoryImpl gameRepository(@Value("${app.game.repository.expected-games:131072}") int expectedNumberOfGames,
+                                                        @Value("${app.game.hibernation.enabled:true}") boolean isHibernationEnabled,
+                                                        @Value("${app.game.hibernation.directory:${java.io.tmpdir}/echechess/games}") String hibernationDirectory,
+                                                        ObjectProvider<MappedGameJournal> gameJournal,
+                                                        PieceMoveConstraintDelegate pieceMoveConstraintDelegate,
+                                                        GameStateCodec gameStateCodec) {
+
+        GameHibernationStore hibernationStore = isHibernationEnabled ? new GameHibernationStore(Path.of(hibernationDirectory), gameStateCodec) : null;
+        IndependentGameRepositoryImpl gameRepository = new IndependentGameRepositoryImpl(expectedNumberOfGames, hibernationStore);
+
+        MappedGameJournal journal = gameJournal.getIfAvailable();
+        if (journal != null) {
+            journal.replay(new GameJournalReplayer(gameRepository, pieceMoveConstraintDelegate));
+            gameRepository.setGameJournal(journal);
+        }
+
+        return gameRepository;
+    }
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "app.game.journal.enabled", havingValue = "true", matchIfMissing = true)
+    public MappedGameJournal gameJournal(GameStateCodec gameStateCodec,
+                                         @Value("${app.game.journal.directory:${java.io.tmpdir}/echechess/journal}") String directory,
+                                         @Value("${app.game.journal.segment-size:67108864}") int segmentSize,
+                                         @Value("${app.game.journal.flush-interval:10ms}") Duration flushInterval,
+                                         @Value("${app.game.journal.snapshot-interval:5m}") Duration snapshotInterval,
+                                         @Value("${app.game.journal.sync-on-append:false}") boolean isSyncOnAppend) {
+        return new MappedGameJournal(Path.of(directory), gameStateCodec, segmentSize, flushInterval, snapshotInterval, isSyncOnAppend);
+    }
+
+    @Bean(initMethod = "start", destroyMethod = "shutdown")
+    @ConditionalOnProperty(name = "app.game.hibernation.enabled", havingValue = "true", matchIfMissing = true)
+    public IdleGameHibernator idleGameHibernator(IndependentGameRepositoryImpl gameRepository,
+                                                 GameCommandExecutor gameCommandExecutor,
+                                                 @Value("${app.game.hibernation.idle-timeout:30m}") Duration maxIdleTime,
+                                                 @Value("${app.game.hibernation.sweep-interval:1m}") Duration sweepInterval) {
+        return new IdleGameHibernator(gameRepository, gameCommandExecutor, maxIdleTime, sweepInterval);
+    }
+
+    /**
+     * Carry the game commands through a ring buffer (decode, apply, publish); the wait strategies are
+     * {@code blocking}, {@code sleeping}, {@code yielding} or {@code busy-spin}, see {@link WaitStrategy}.
+     */
+    @Bean(destroyMethod = "shutdown")
+    @ConditionalOnProperty(name = "app.game.pipeline.enabled", havingValue = "true", matchIfMissing = true)
+    public GameCommandPipeline gameCommandPipeline(@Value("${app.game.pipeline.buffer-size:4096}") int bufferSize,
+                                                   @Value("${app.game.pipeline.apply-workers:0}") int numberOfApplyWorkers,
+                                                   @Value("${app.game.pipeline.decode-wait-strategy:blocking}") String decodeWaitStrategy,
+                                                   @Value("${app.game.pipeline.apply-wait-strategy:blocking}") String applyWaitStrategy,
+                                                   @Value("${app.game.pipeline.publish-wait-strategy:blocking}") String publishWaitStrategy) {
+        if (numberOfApplyWorkers <= 0) {
+            numberOfApplyWorkers = Runtime.getRuntime().availableProcessors();
+        }
+
+        return new GameCommandPipeline(bufferSize, numberOfApplyWorkers, WaitStrategy.of(decodeWaitStrategy),
+                WaitStrategy.of(applyWaitStrategy), WaitStrategy.of(publishWaitStrategy));
+    }
+
+    /**
+     * The previous executor of the commands, one mailbox per game on a shared pool.
+     */
+    @Bean(destroyMethod = "shutdown")
+    @ConditionalOnProperty(name = "app.game.pipeline.enabled", havingValue = "false")
+    public GameMailboxScheduler gameMailboxScheduler(@Value("${app.game.mailbox.workers:0}") int numberOfWorkers) {
+        if (numberOfWorkers <= 0) {
+            return new GameMailboxScheduler();
+        }
+
+        return new GameMailboxScheduler(numberOfWorkers);
     }
 
     @Bean
@@ -17,31 +17,50 @@
 package ca.watier.echechess.controllers;
 
 import ca.watier.echechess.common.enums.CasePosition;
+import ca.watier.echechess.common.enums.MoveType;
 import ca.watier.echechess.common.enums.Side;
 import ca.watier.echechess.common.responses.BooleanResponse;
 import ca.watier.echechess.common.responses.StringResponse;
 import ca.watier.echechess.engine.exceptions.FenParserException;
+import ca.watier.echechess.components.GameEventLog;
+import ca.watier.echechess.exceptions.GameConflictException;
 import ca.watier.echechess.exceptions.GameException;
+import ca.watier.echechess.exceptions.GameOverloadedException;
+import ca.watier.echechess.exceptions.GameRequestFailedException;
+import ca.watier.echechess.exceptions.GameRequestRejectedException;
+import ca.watier.echechess.exceptions.GameRequestTimeoutException;
+import ca.watier.echechess.models.BoardUpdateModel;
+import ca.watier.echechess.models.GameEventsModel;
+import ca.watier.echechess.models.GamePage;
+import ca.watier.echechess.models.GameState;
+import ca.watier.echechess.models.GameSummaryModel;
 import ca.watier.echechess.models.PawnPromotionPiecesModel;
 import ca.watier.echechess.models.PieceLocationModel;
 import ca.watier.echechess.models.UserDetailsImpl;
 import ca.watier.echechess.services.GameService;
 import ca.watier.echechess.services.UserService;
 import ca.watier.echechess.utils.AuthenticationUtils;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
 import io.swagger.annotations.ApiResponse;
 import io.swagger.annotations.ApiResponses;
+import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
 import java.util.List;
 import java.util.UUID;
 
@@ -64,14 +83,36 @@ public class GameController {
     private static final String PATTERN_CUSTOM_GAME = "Pattern used to create a custom game";
     private static final ResponseEntity NO_CONTENT_RESPONSE_ENTITY = ResponseEntity.noContent().build();
     private static final ResponseEntity BAD_REQUEST_RESPONSE_ENTITY = ResponseEntity.badRequest().build();
+    private static final ResponseEntity GATEWAY_TIMEOUT_RESPONSE_ENTITY = ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).build();
+    private static final ResponseEntity SERVICE_UNAVAILABLE_RESPONSE_ENTITY = ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+            .header(HttpHeaders.RETRY_AFTER, "1").build();
+    private static final String WAIT_FOR_RESULT = "Wait for the result of the move, instead of receiving it on the web socket (false by default)";
+    private static final String CURSOR = "The cursor returned with the previous page, empty for the first page";
+    private static final String PAGE_SIZE = "The number of games per page";
+    private static final String GAME_STATE = "The state of the games";
+    private static final String SEQUENCE = "The number of moves of the game seen by the player; the move is refused when the game has changed";
+    private static final String LAST_EVENT_SEQUENCE = "The sequence of the last event received, 0 when none";
+    private static final String LAST_EVENT_EPOCH = "The epoch of the log of the last event received, 0 when none";
+    private static final String IDEMPOTENCY_KEY = "The key of the move, the same for its retries; a move already applied is answered with its first result (not checked by the engine nodes reading the previous text format)";
+    private static final ResponseEntity NOT_IMPLEMENTED_RESPONSE_ENTITY = ResponseEntity.status(HttpStatus.NOT_IMPLEMENTED).build();
+    private static final ResponseEntity CONFLICT_RESPONSE_ENTITY = ResponseEntity.status(HttpStatus.CONFLICT).build();
+    private static final ResponseEntity INTERNAL_SERVER_ERROR_RESPONSE_ENTITY = ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAXIMUM_PAGE_SIZE = 1_000;
+    private static final byte[] LINE_SEPARATOR = {'\n'};
 
     private final GameService gameService;
     private final UserService userService;
+    private final ObjectMapper objectMapper;
+    private final GameEventLog gameEventLog;
 
     @Autowired
-    public GameController(GameService gameService, UserService userService) {
+    public GameController(GameService gameService, UserService userService, ObjectMapper objectMapper, GameEventLog gameEventLog) {
         this.gameService = gameService;
         this.userService = userService;
+        this.objectMapper = objectMapper;
+        this.gameEventLog = gameEventLog;
     }
 
 
@@ -100,17 +141,41 @@ public class GameController {
 
     @ApiResponses(value = {
             @ApiResponse(code = 400, message = "There's an issue with when moving the piece."),
-            @ApiResponse(code = 204, message = "The result of this query will be sent on the web socket, when ready.")
+            @ApiResponse(code = 200, message = "The type of the move, when waiting for the result."),
+            @ApiResponse(code = 204, message = "The result of this query will be sent on the web socket, when ready (also when waiting, if the engine doesn't answer the moves)."),
+            @ApiResponse(code = 409, message = "The game has changed since the given sequence, when waiting for the result."),
+            @ApiResponse(code = 429, message = "The player has too many commands in progress, retry after the delay."),
+            @ApiResponse(code = 500, message = "The engine failed to apply the move, when waiting for the result; the board is refreshed."),
+            @ApiResponse(code = 503, message = "The server is overloaded, retry after the delay."),
+            @ApiResponse(code = 504, message = "The move was not answered in time, when waiting for the result.")
     })
     @ApiOperation("Move the selected piece")
     @PreAuthorize("isPlayerInGame(#uuid)")
     @PostMapping(path = "/move", produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<Void> movePieceOfPlayer(@ApiParam(value = FROM_POSITION, required = true) CasePosition from,
-                                                  @ApiParam(value = TO_POSITION, required = true) CasePosition to,
-                                                  @ApiParam(value = UUID_GAME, required = true) String uuid) {
+    public ResponseEntity<?> movePieceOfPlayer(@ApiParam(value = FROM_POSITION, required = true) CasePosition from,
+                                               @ApiParam(value = TO_POSITION, required = true) CasePosition to,
+                                               @ApiParam(value = UUID_GAME, required = true) String uuid,
+                                               @ApiParam(value = WAIT_FOR_RESULT) boolean sync,
+                                               @ApiParam(value = SEQUENCE) Integer sequence,
+                                               @ApiParam(value = IDEMPOTENCY_KEY) @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
 
         try {
-            gameService.movePiece(from, to, uuid, AuthenticationUtils.getUserDetail());
+            if (sync) {
+                MoveType moveType = gameService.movePieceAndWait(from, to, uuid, sequence, idempotencyKey, AuthenticationUtils.getUserDetail());
+                return moveType == null ? NO_CONTENT_RESPONSE_ENTITY : ResponseEntity.ok(new StringResponse(moveType.name()));
+            }
+
+            gameService.movePiece(from, to, uuid, sequence, idempotencyKey, AuthenticationUtils.getUserDetail());
+        } catch (GameConflictException e) {
+            return CONFLICT_RESPONSE_ENTITY;
+        } catch (GameOverloadedException e) {
+            return getOverloadedResponseEntity(e);
+        } catch (GameRequestRejectedException e) {
+            return SERVICE_UNAVAILABLE_RESPONSE_ENTITY;
+        } catch (GameRequestTimeoutException e) {
+            return GATEWAY_TIMEOUT_RESPONSE_ENTITY;
+        } catch (GameRequestFailedException e) {
+            return INTERNAL_SERVER_ERROR_RESPONSE_ENTITY;
         } catch (GameException e) {
             return BAD_REQUEST_RESPONSE_ENTITY;
         }
@@ -121,7 +186,9 @@ public class GameController {
 
     @ApiResponses(value = {
             @ApiResponse(code = 400, message = "There's an issue when fetching the available moves."),
-            @ApiResponse(code = 204, message = "The result of this query will be sent on the web socket, when ready.")
+            @ApiResponse(code = 204, message = "The result of this query will be sent on the web socket, when ready."),
+            @ApiResponse(code = 429, message = "The player has too many commands in progress, retry after the delay."),
+            @ApiResponse(code = 503, message = "The server is overloaded, retry after the delay.")
     })
     @ApiOperation("Get a list of position that the piece can moves")
     @PreAuthorize("isPlayerInGame(#uuid)")
@@ -131,6 +198,8 @@ public class GameController {
 
         try {
             gameService.getAllAvailableMoves(from, uuid, AuthenticationUtils.getUserDetail());
+        } catch (GameOverloadedException e) {
+            return getOverloadedResponseEntity(e);
         } catch (GameException e) {
             return BAD_REQUEST_RESPONSE_ENTITY;
         }
@@ -170,6 +239,39 @@ public class GameController {
         }
     }
 
+    @ApiResponses(value = {
+            @ApiResponse(code = 400, message = "There's an issue when fetching the board of the game."),
+            @ApiResponse(code = 200, message = "The pieces with their location, and the number of moves of the game.")
+    })
+    @ApiOperation("Gets the board, to resynchronize it with the game after a missed update")
+    @PreAuthorize("isPlayerInGame(#uuid)")
+    @GetMapping(path = "/board", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<BoardUpdateModel> getBoard(@ApiParam(value = UUID_GAME, required = true) String uuid) {
+        try {
+            return ResponseEntity.ok(gameService.getBoard(uuid, AuthenticationUtils.getUserDetail()));
+        } catch (GameException e) {
+            return BAD_REQUEST_RESPONSE_ENTITY;
+        }
+    }
+
+    @ApiResponses(value = {
+            @ApiResponse(code = 400, message = "There's an issue when fetching the events of the game."),
+            @ApiResponse(code = 200, message = "The events of the game and of the side of the player sent after the sequence; when not complete (events dropped, or sequence of another epoch), the game is to be reloaded.")
+    })
+    @ApiOperation("Gets the events sent after the given sequence, to resume the web socket session")
+    @PreAuthorize("isPlayerInGame(#uuid)")
+    @GetMapping(path = "/events", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<GameEventsModel> getEvents(@ApiParam(value = UUID_GAME, required = true) String uuid,
+                                                     @ApiParam(value = LAST_EVENT_EPOCH, required = true) long epoch,
+                                                     @ApiParam(value = LAST_EVENT_SEQUENCE, required = true) long after) {
+        try {
+            Side side = gameService.getPlayerSide(uuid, AuthenticationUtils.getUserDetail());
+            return ResponseEntity.ok(gameEventLog.getEventsAfter(uuid, side, epoch, after));
+        } catch (GameException e) {
+            return BAD_REQUEST_RESPONSE_ENTITY;
+        }
+    }
+
     @ApiResponses(value = {
             @ApiResponse(code = 400, message = "There's an issue when joining the game."),
             @ApiResponse(code = 200, message = "The player has joined the game successfully.")
@@ -214,4 +316,115 @@ public class GameController {
             return BAD_REQUEST_RESPONSE_ENTITY;
         }
     }
+
+    @ApiResponses(value = {
+            @ApiResponse(code = 400, message = "The cursor is invalid."),
+            @ApiResponse(code = 200, message = "The page of games, with the cursor of the next page (null on the last page)")
+    })
+    @ApiOperation("List the games, one page at a time")
+    @PreAuthorize("hasAuthority('ADMIN')")
+    @GetMapping(path = "/list", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<GamePage<GameSummaryModel>> getGames(@ApiParam(value = CURSOR) String cursor,
+                                                               @ApiParam(value = PAGE_SIZE) Integer pageSize) {
+        try {
+            return ResponseEntity.ok(gameService.getGames(StringUtils.trimToNull(cursor), getPageSize(pageSize)));
+        } catch (GameException e) {
+            return BAD_REQUEST_RESPONSE_ENTITY;
+        }
+    }
+
+    @ApiResponses(value = {
+            @ApiResponse(code = 501, message = "The games can't be read by page (shared storage)"),
+            @ApiResponse(code = 200, message = "All the games, one JSON document per line")
+    })
+    @ApiOperation("Stream all the games; the games are read one page at a time while being written")
+    @PreAuthorize("hasAuthority('ADMIN')")
+    @GetMapping(path = "/list/stream", produces = "application/x-ndjson")
+    public ResponseEntity<StreamingResponseBody> streamGames(@ApiParam(value = PAGE_SIZE) Integer pageSize) {
+        if (!gameService.isGamesPageable()) {
+            return NOT_IMPLEMENTED_RESPONSE_ENTITY;
+        }
+
+        int size = getPageSize(pageSize);
+
+        StreamingResponseBody body = outputStream -> {
+            String cursor = null;
+
+            do {
+                GamePage<GameSummaryModel> page;
+
+                try {
+                    page = gameService.getGames(cursor, size);
+                } catch (GameException e) {
+                    throw new IOException("Unable to read the games", e);
+                }
+
+                for (GameSummaryModel gameSummaryModel : page.getValues()) {
+                    outputStream.write(objectMapper.writeValueAsBytes(gameSummaryModel));
+                    outputStream.write(LINE_SEPARATOR);
+                }
+
+                outputStream.flush();
+                cursor = page.getNextCursor();
+            } while (cursor != null);
+        };
+
+        return ResponseEntity.ok().contentType(NDJSON).body(body);
+    }
+
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "The games of the current player")
+    })
+    @ApiOperation("List the games where the current player is white, black or an observer")
+    @GetMapping(path = "/list/player", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<List<GameSummaryModel>> getGamesOfPlayer() {
+        try {
+            return ResponseEntity.ok(gameService.getGamesOfPlayer(AuthenticationUtils.getUserDetail()));
+        } catch (GameException e) {
+            return BAD_REQUEST_RESPONSE_ENTITY;
+        }
+    }
+
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "The games accepting other players")
+    })
+    @ApiOperation("List the games still accepting other players, with a free side")
+    @GetMapping(path = "/list/open", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<List<GameSummaryModel>> getOpenGames() {
+        return ResponseEntity.ok(gameService.getOpenGames());
+    }
+
+    @ApiResponses(value = {
+            @ApiResponse(code = 400, message = "The state is missing"),
+            @ApiResponse(code = 200, message = "The games in the state")
+    })
+    @ApiOperation("List the games in a state")
+    @PreAuthorize("hasAuthority('ADMIN')")
+    @GetMapping(path = "/list/state", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<List<GameSummaryModel>> getGamesByState(@ApiParam(value = GAME_STATE, required = true) GameState state) {
+        try {
+            return ResponseEntity.ok(gameService.getGamesByState(state));
+        } catch (GameException e) {
+            return BAD_REQUEST_RESPONSE_ENTITY;
+        }
+    }
+
+    private static int getPageSize(Integer pageSize) {
+        if (pageSize == null || pageSize < 1) {
+            return DEFAULT_PAGE_SIZE;
+        }
+
+        return Math.min(pageSize, MAXIMUM_PAGE_SIZE);
+    }
+
+    /**
+     * 429 when the player has too many commands in progress, 503 when the server is full; with the delay to wait
+     * before trying again.
+     */
+    private static <T> ResponseEntity<T> getOverloadedResponseEntity(GameOverloadedException exception) {
+        HttpStatus status = exception.isLimitOfPlayer() ? HttpStatus.TOO_MANY_REQUESTS : HttpStatus.SERVICE_UNAVAILABLE;
+        return ResponseEntity.status(status)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(exception.getRetryAfterInSeconds()))
+                .build();
+    }
 }
@@ -17,27 +17,192 @@
 package ca.watier.echechess.delegates;
 
 
+import ca.watier.echechess.common.enums.CasePosition;
+import ca.watier.echechess.common.enums.Side;
+import ca.watier.echechess.communication.redis.model.GenericGameHandlerWrapper;
+import ca.watier.echechess.components.BatchingMessagePublisher;
+import ca.watier.echechess.components.GamePartitioner;
+import ca.watier.echechess.components.MessageActionExecutor;
+import ca.watier.echechess.engine.engines.GenericGameHandler;
 import ca.watier.echechess.interfaces.GameMessage;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import ca.watier.echechess.repositories.CachingGameRepository;
+import ca.watier.echechess.utils.CasePositionMask;
+import ca.watier.echechess.utils.GameMessageCodec;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 import static ca.watier.echechess.communication.rabbitmq.configuration.RabbitMqConfiguration.AVAIL_MOVE_WORK_QUEUE_NAME;
 import static ca.watier.echechess.communication.rabbitmq.configuration.RabbitMqConfiguration.MOVE_WORK_QUEUE_NAME;
 
+/**
+ * The moves are sent to the engine nodes. The available moves are read-only, they are answered by this node when it
+ * has a fresh copy of the game (see {@link CachingGameRepository}), and sent to the engine nodes otherwise. The copies
+ * are only kept with the compact storage ({@code app.game.storage.format=compact}, the default), which creates the
+ * cache; with the shared storage, all the available moves are sent to the engine nodes.
+ * <p>
+ * The requests are encoded once, in the format read by the engine nodes: the fixed layout of the
+ * {@link GameMessageCodec}, or the previous text format until the engine nodes read the fixed layout. The encoder is
+ * picked when the delegate is created.
+ */
 public class DependentGameMessageImpl implements GameMessage {
 
-    private final RabbitTemplate rabbitTemplate;
+    private final BatchingMessagePublisher messagePublisher;
+    private final GamePartitioner gamePartitioner;
+    private final CachingGameRepository gameCache;
+    private final MessageActionExecutor actionExecutor;
+    private final RequestFormat requestFormat;
+
+    public DependentGameMessageImpl(BatchingMessagePublisher messagePublisher, GamePartitioner gamePartitioner) {
+        this(messagePublisher, gamePartitioner, null, null, false);
+    }
 
-    public DependentGameMessageImpl(RabbitTemplate rabbitTemplate) {
-        this.rabbitTemplate = rabbitTemplate;
+    /**
+     * @param gamePartitioner  - The partitions of the work queues; can be null, when the engine nodes don't consume
+     *                         the partitions
+     * @param gameCache        - The local copies of the games, used to answer the available moves; null without the
+     *                         compact storage
+     * @param actionExecutor   - Receives the available moves answered by this node
+     * @param isBinaryProtocol - When the engine nodes read the fixed layout of the {@link GameMessageCodec}
+     */
+    public DependentGameMessageImpl(BatchingMessagePublisher messagePublisher,
+                                    GamePartitioner gamePartitioner,
+                                    CachingGameRepository gameCache,
+                                    MessageActionExecutor actionExecutor,
+                                    boolean isBinaryProtocol) {
+        this.messagePublisher = messagePublisher;
+        this.gamePartitioner = gamePartitioner;
+        this.gameCache = gameCache;
+        this.actionExecutor = actionExecutor;
+        this.requestFormat = isBinaryProtocol ? RequestFormat.BINARY : RequestFormat.TEXT;
     }
 
+    /**
+     * @param message - A move request, in the fixed layout of the {@link GameMessageCodec}
+     */
     @Override
-    public void handleMoveMessage(String message) {
-        rabbitTemplate.convertAndSend(MOVE_WORK_QUEUE_NAME, message);
+    public CompletableFuture<Void> handleMoveMessage(byte[] message) {
+        return sendMove(GameMessageCodec.getGameId(message), GameMessageCodec.getCorrelationId(message),
+                GameMessageCodec.getFrom(message), GameMessageCodec.getTo(message), GameMessageCodec.getSide(message),
+                GameMessageCodec.getSequence(message), GameMessageCodec.getIdempotencyKey(message));
     }
 
+    /**
+     * @param message - An available moves request, in the fixed layout of the {@link GameMessageCodec}
+     */
     @Override
-    public void handleAvailableMoveMessage(String message) {
-        rabbitTemplate.convertAndSend(AVAIL_MOVE_WORK_QUEUE_NAME, message);
+    public CompletableFuture<Void> handleAvailableMoveMessage(byte[] message) {
+        return sendAvailableMoves(GameMessageCodec.getGameId(message), GameMessageCodec.getCorrelationId(message),
+                GameMessageCodec.getFrom(message), GameMessageCodec.getSide(message));
+    }
+
+    /**
+     * Encode the move request in the format of the engine nodes, and send it.
+     */
+    public CompletableFuture<Void> sendMove(UUID gameId, long correlationId, CasePosition from, CasePosition to, Side side, int sequence, long idempotencyKey) {
+        byte[] body = requestFormat.encodeMoveRequest(gameId, correlationId, from, to, side, sequence, idempotencyKey);
+        return messagePublisher.publish(getWorkQueueName(MOVE_WORK_QUEUE_NAME, gameId), requestFormat.toAmqpMessage(body));
+    }
+
+    /**
+     * Answer the available moves from the local copy of the game, or encode the request in the format of the engine
+     * nodes and send it.
+     */
+    public CompletableFuture<Void> sendAvailableMoves(UUID gameId, long correlationId, CasePosition from, Side side) {
+        byte[] response = getLocalAvailableMoves(gameId, correlationId, from, side);
+
+        if (response != null) {
+            actionExecutor.handleAvailMoveResponseMessage(response);
+            return CompletableFuture.completedFuture(null);
+        }
+
+        byte[] body = requestFormat.encodeAvailableMovesRequest(gameId, correlationId, from, side);
+        return messagePublisher.publish(getWorkQueueName(AVAIL_MOVE_WORK_QUEUE_NAME, gameId), requestFormat.toAmqpMessage(body));
+    }
+
+    /**
+     * @return The response of the request, or null when the game is not cached on this node
+     */
+    private byte[] getLocalAvailableMoves(UUID gameId, long correlationId, CasePosition from, Side side) {
+        if (gameCache == null || actionExecutor == null) {
+            return null;
+        }
+
+        GenericGameHandlerWrapper<GenericGameHandler> wrapper = gameCache.getIfCached(gameId.toString());
+
+        if (wrapper == null) {
+            return null;
+        }
+
+        long positions = CasePositionMask.of(wrapper.getGenericGameHandler().getAllAvailableMoves(from, side));
+        return GameMessageCodec.encodeAvailableMovesResponse(gameId, correlationId, from, side, positions);
+    }
+
+    /**
+     * The requests of a game always go to the work queue of its partition, or to the work queue of the communication
+     * module when the queues are not partitioned.
+     */
+    private String getWorkQueueName(String baseName, UUID gameId) {
+        if (gamePartitioner == null) {
+            return baseName;
+        }
+
+        return GamePartitioner.getQueueName(baseName, gamePartitioner.getPartition(gameId));
+    }
+
+    /**
+     * The format of the requests read by the engine nodes; the messages are sent without going through a message
+     * converter.
+     */
+    private enum RequestFormat {
+        BINARY {
+            @Override
+            byte[] encodeMoveRequest(UUID gameId, long correlationId, CasePosition from, CasePosition to, Side side, int sequence, long idempotencyKey) {
+                return GameMessageCodec.encodeMoveRequest(gameId, correlationId, from, to, side, sequence, idempotencyKey);
+            }
+
+            @Override
+            byte[] encodeAvailableMovesRequest(UUID gameId, long correlationId, CasePosition from, Side side) {
+                return GameMessageCodec.encodeAvailableMovesRequest(gameId, correlationId, from, side);
+            }
+
+            @Override
+            Message toAmqpMessage(byte[] body) {
+                MessageProperties messageProperties = new MessageProperties();
+                messageProperties.setContentType(MessageProperties.CONTENT_TYPE_BYTES);
+                return new Message(body, messageProperties);
+            }
+        },
+        /**
+         * The previous format keeps neither the correlation id, nor the sequence, nor the idempotency key.
+         */
+        TEXT {
+            @Override
+            byte[] encodeMoveRequest(UUID gameId, long correlationId, CasePosition from, CasePosition to, Side side, int sequence, long idempotencyKey) {
+                return GameMessageCodec.encodeLegacyMoveRequest(gameId, from, to, side);
+            }
+
+            @Override
+            byte[] encodeAvailableMovesRequest(UUID gameId, long correlationId, CasePosition from, Side side) {
+                return GameMessageCodec.encodeLegacyAvailableMovesRequest(gameId, from, side);
+            }
+
+            @Override
+            Message toAmqpMessage(byte[] body) {
+                MessageProperties messageProperties = new MessageProperties();
+                messageProperties.setContentType(MessageProperties.CONTENT_TYPE_TEXT_PLAIN);
+                messageProperties.setContentEncoding(StandardCharsets.UTF_8.name());
+                return new Message(body, messageProperties);
+            }
+        };
+
+        abstract byte[] encodeMoveRequest(UUID gameId, long correlationId, CasePosition from, CasePosition to, Side side, int sequence, long idempotencyKey);
+
+        abstract byte[] encodeAvailableMovesRequest(UUID gameId, long correlationId, CasePosition from, Side side);
+
+        abstract Message toAmqpMessage(byte[] body);
     }
 }
@@ -17,60 +17,170 @@
 package ca.watier.echechess.delegates;
 
 
+import ca.watier.echechess.common.enums.CasePosition;
+import ca.watier.echechess.common.enums.Side;
 import ca.watier.echechess.communication.redis.interfaces.GameRepository;
+import ca.watier.echechess.components.BatchingMessagePublisher;
+import ca.watier.echechess.components.GamePartitioner;
+import ca.watier.echechess.components.GameRequestTracker;
 import ca.watier.echechess.components.MessageActionExecutor;
+import ca.watier.echechess.engine.delegates.PieceMoveConstraintDelegate;
 import ca.watier.echechess.engine.engines.GenericGameHandler;
+import ca.watier.echechess.interfaces.GameCommandExecutor;
+import ca.watier.echechess.interfaces.GameJournal;
 import ca.watier.echechess.interfaces.GameMessage;
 import ca.watier.echechess.models.EnvironmentProfile;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import ca.watier.echechess.repositories.CachingGameRepository;
+import ca.watier.echechess.utils.GameMessageCodec;
 import org.apache.commons.lang3.EnumUtils;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
 import static ca.watier.echechess.models.EnvironmentProfile.DEPENDENT_MODE;
 
 @Component
 public class GameMessageDelegate implements GameMessage {
 
     private final EnvironmentProfile activeProfile;
+    private final GameRequestTracker gameRequestTracker;
+    private final boolean isCorrelated;
     private GameMessage independentGameMessage;
-    private GameMessage dependentGameMessage;
+    private DependentGameMessageImpl dependentGameMessage;
 
     @Autowired(required = false)
     public GameMessageDelegate(@Value("${spring.profiles.active}") String activeProfile,
                                MessageActionExecutor messageActionExecutor,
                                GameRepository<GenericGameHandler> gameRepository,
-                               ObjectMapper objectMapper) {
+                               GameCommandExecutor gameCommandExecutor,
+                               ObjectProvider<GameJournal> gameJournal,
+                               GameRequestTracker gameRequestTracker,
+                               PieceMoveConstraintDelegate pieceMoveConstraintDelegate) {
 
         this.activeProfile = EnumUtils.getEnum(EnvironmentProfile.class, activeProfile);
-        independentGameMessage = new IndependentGameMessageImpl(messageActionExecutor, gameRepository, objectMapper);
+        this.gameRequestTracker = gameRequestTracker;
+        this.isCorrelated = true;
+        independentGameMessage = new IndependentGameMessageImpl(messageActionExecutor, gameRepository, gameCommandExecutor,
+                gameJournal.getIfAvailable(), pieceMoveConstraintDelegate);
     }
 
     @Autowired(required = false)
     public GameMessageDelegate(@Value("${spring.profiles.active}") String activeProfile,
-                               RabbitTemplate rabbitTemplate) {
+                               BatchingMessagePublisher messagePublisher,
+                               ObjectProvider<GamePartitioner> gamePartitioner,
+                               GameRequestTracker gameRequestTracker,
+                               ObjectProvider<CachingGameRepository> gameCache,
+                               MessageActionExecutor actionExecutor,
+                               @Value("${app.engine.binary-protocol.enabled:false}") boolean isBinaryProtocol) {
         this.activeProfile = EnumUtils.getEnum(EnvironmentProfile.class, activeProfile);
-        dependentGameMessage = new DependentGameMessageImpl(rabbitTemplate);
+        this.gameRequestTracker = gameRequestTracker;
+        this.isCorrelated = isBinaryProtocol; // The engine nodes using the text format neither echo the correlation ids nor answer the refused moves
+        dependentGameMessage = new DependentGameMessageImpl(messagePublisher, gamePartitioner.getIfAvailable(), gameCache.getIfAvailable(), actionExecutor, isBinaryProtocol);
     }
 
 
     @Override
-    public void handleMoveMessage(String message) {
+    public CompletableFuture<Void> handleMoveMessage(byte[] message) {
         if (DEPENDENT_MODE.equals(activeProfile)) {
-            dependentGameMessage.handleMoveMessage(message);
+            return dependentGameMessage.handleMoveMessage(message);
         } else {
-            independentGameMessage.handleMoveMessage(message);
+            return independentGameMessage.handleMoveMessage(message);
         }
     }
 
     @Override
-    public void handleAvailableMoveMessage(String message) {
+    public CompletableFuture<Void> handleAvailableMoveMessage(byte[] message) {
         if (DEPENDENT_MODE.equals(activeProfile)) {
-            dependentGameMessage.handleAvailableMoveMessage(message);
+            return dependentGameMessage.handleAvailableMoveMessage(message);
         } else {
-            independentGameMessage.handleAvailableMoveMessage(message);
+            return independentGameMessage.handleAvailableMoveMessage(message);
+        }
+    }
+
+    /**
+     * Send a move request, correlated with its response when the game engine answers all the moves.
+     *
+     * @param sequence       - The number of moves of the game seen by the player, {@link GameMessageCodec#NO_SEQUENCE}
+     *                       when not checked
+     * @param idempotencyKey - The key of the move across the retries, {@link GameMessageCodec#NO_IDEMPOTENCY_KEY} to
+     *                       use the correlation id
+     * @return The move response ({@link GameMessageCodec#MOVE_RESPONSE}); fails with a
+     * {@link ca.watier.echechess.exceptions.GameRequestTimeoutException} when not answered in time. When the requests
+     * are not correlated, completed with null once the request is sent
+     */
+    public CompletableFuture<byte[]> requestMove(UUID gameId, CasePosition from, CasePosition to, Side side, int sequence, long idempotencyKey) {
+        if (!isCorrelated) {
+            return toUncorrelatedResponse(sendMove(gameId, GameMessageCodec.NO_CORRELATION, from, to, side, sequence, idempotencyKey));
         }
+
+        long correlationId = gameRequestTracker.nextCorrelationId();
+        CompletableFuture<byte[]> response = gameRequestTracker.getResponse(correlationId);
+
+        if (!response.isDone()) {
+            long key = idempotencyKey == GameMessageCodec.NO_IDEMPOTENCY_KEY ? correlationId : idempotencyKey;
+            send(correlationId, sendMove(gameId, correlationId, from, to, side, sequence, key));
+        }
+
+        return response;
+    }
+
+    /**
+     * Send an available moves request, correlated with its response.
+     *
+     * @return The available moves response ({@link GameMessageCodec#AVAILABLE_MOVES_RESPONSE}); when the requests are
+     * not correlated, completed with null once the request is sent
+     */
+    public CompletableFuture<byte[]> requestAvailableMoves(UUID gameId, CasePosition from, Side side) {
+        if (!isCorrelated) {
+            return toUncorrelatedResponse(sendAvailableMoves(gameId, GameMessageCodec.NO_CORRELATION, from, side));
+        }
+
+        long correlationId = gameRequestTracker.nextCorrelationId();
+        CompletableFuture<byte[]> response = gameRequestTracker.getResponse(correlationId);
+
+        if (!response.isDone()) {
+            send(correlationId, sendAvailableMoves(gameId, correlationId, from, side));
+        }
+
+        return response;
+    }
+
+    /**
+     * The engine nodes get the request encoded once in their format; the in process engine reads the fixed layout.
+     */
+    private CompletableFuture<Void> sendMove(UUID gameId, long correlationId, CasePosition from, CasePosition to, Side side, int sequence, long idempotencyKey) {
+        if (DEPENDENT_MODE.equals(activeProfile)) {
+            return dependentGameMessage.sendMove(gameId, correlationId, from, to, side, sequence, idempotencyKey);
+        }
+
+        return independentGameMessage.handleMoveMessage(GameMessageCodec.encodeMoveRequest(gameId, correlationId, from, to, side, sequence, idempotencyKey));
+    }
+
+    private CompletableFuture<Void> sendAvailableMoves(UUID gameId, long correlationId, CasePosition from, Side side) {
+        if (DEPENDENT_MODE.equals(activeProfile)) {
+            return dependentGameMessage.sendAvailableMoves(gameId, correlationId, from, side);
+        }
+
+        return independentGameMessage.handleAvailableMoveMessage(GameMessageCodec.encodeAvailableMovesRequest(gameId, correlationId, from, side));
+    }
+
+    /**
+     * The responses are still handled by the listeners (events sent to the players), but cannot be matched to their
+     * request; the request ends when it is sent.
+     */
+    private static CompletableFuture<byte[]> toUncorrelatedResponse(CompletableFuture<Void> sent) {
+        return sent.thenApply(ignored -> null);
+    }
+
+    private void send(long correlationId, CompletableFuture<Void> sent) {
+        sent.whenComplete((ignored, throwable) -> {
+            if (throwable != null) {
+                gameRequestTracker.fail(correlationId, throwable);
+            }
+        });
     }
 }
@@ -17,90 +17,197 @@
 package ca.watier.echechess.delegates;
 
 
-import ca.watier.echechess.common.enums.CasePosition;
 import ca.watier.echechess.common.enums.MoveType;
-import ca.watier.echechess.common.enums.Side;
 import ca.watier.echechess.communication.redis.interfaces.GameRepository;
 import ca.watier.echechess.communication.redis.model.GenericGameHandlerWrapper;
 import ca.watier.echechess.components.MessageActionExecutor;
+import ca.watier.echechess.engine.delegates.PieceMoveConstraintDelegate;
 import ca.watier.echechess.engine.engines.GenericGameHandler;
+import ca.watier.echechess.interfaces.GameCommandExecutor;
+import ca.watier.echechess.interfaces.GameCommandHandler;
+import ca.watier.echechess.interfaces.GameJournal;
 import ca.watier.echechess.interfaces.GameMessage;
-import ca.watier.echechess.utils.MessageQueueUtils;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import org.slf4j.LoggerFactory;
-
-import java.util.ArrayList;
-import java.util.List;
-
-import static ca.watier.echechess.communication.rabbitmq.configuration.RabbitMqConfiguration.AVAIL_MOVE_WORK_QUEUE_NAME;
-import static ca.watier.echechess.communication.rabbitmq.configuration.RabbitMqConfiguration.MOVE_WORK_QUEUE_NAME;
-
-public class IndependentGameMessageImpl implements GameMessage {
-    private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(IndependentGameMessageImpl.class);
+import ca.watier.echechess.interfaces.VersionedGameRepository;
+import ca.watier.echechess.models.GameCommand;
+import ca.watier.echechess.models.MoveAppliedModel;
+import ca.watier.echechess.models.TrackedGameHandlerWrapper;
+import ca.watier.echechess.utils.CasePositionMask;
+import ca.watier.echechess.utils.GameMessageCodec;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Apply the game messages in process; the messages are carried by the {@link GameCommandExecutor}, this class is the
+ * handler of their steps.
+ */
+public class IndependentGameMessageImpl implements GameMessage, GameCommandHandler {
+    private static final int MAX_UPDATE_ATTEMPTS = 5;
 
     private final MessageActionExecutor actionExecutor;
     private final GameRepository<GenericGameHandler> gameRepository;
-    private final ObjectMapper objectMapper;
-
-    public IndependentGameMessageImpl(MessageActionExecutor actionExecutor, GameRepository<GenericGameHandler> gameRepository, ObjectMapper objectMapper) {
+    private final GameCommandExecutor commandExecutor;
+    private final GameJournal gameJournal;
+    private final PieceMoveConstraintDelegate pieceMoveConstraintDelegate;
+
+    /**
+     * @param gameJournal - The journal of the moves, can be null when the journal is disabled
+     */
+    public IndependentGameMessageImpl(MessageActionExecutor actionExecutor,
+                                      GameRepository<GenericGameHandler> gameRepository,
+                                      GameCommandExecutor commandExecutor,
+                                      GameJournal gameJournal,
+                                      PieceMoveConstraintDelegate pieceMoveConstraintDelegate) {
         this.actionExecutor = actionExecutor;
         this.gameRepository = gameRepository;
-        this.objectMapper = objectMapper;
+        this.commandExecutor = commandExecutor;
+        this.gameJournal = gameJournal;
+        this.pieceMoveConstraintDelegate = pieceMoveConstraintDelegate;
     }
 
     @Override
-    public void handleMoveMessage(String message) {
-        handleChessMessage(MOVE_WORK_QUEUE_NAME, message);
+    public CompletableFuture<Void> handleMoveMessage(byte[] message) {
+        commandExecutor.submit(message, this);
+        return CompletableFuture.completedFuture(null);
     }
 
     @Override
-    public void handleAvailableMoveMessage(String message) {
-        handleChessMessage(AVAIL_MOVE_WORK_QUEUE_NAME, message);
+    public CompletableFuture<Void> handleAvailableMoveMessage(byte[] message) {
+        commandExecutor.submit(message, this);
+        return CompletableFuture.completedFuture(null);
     }
 
-    private void handleChessMessage(String queueName, String message) {
-        String[] headers = message.split("\\|");
-        String uuid = headers[0];
-        GenericGameHandlerWrapper<GenericGameHandler> wrapper = gameRepository.get(uuid);
-        GenericGameHandler genericGameHandler = wrapper.getGenericGameHandler();
-        CasePosition from = CasePosition.valueOf(headers[1]);
+    @Override
+    public void apply(GameCommand command) {
+        switch (command.getType()) {
+            case GameMessageCodec.MOVE_REQUEST -> applyMove(command);
+            case GameMessageCodec.AVAILABLE_MOVES_REQUEST -> applyAvailMoves(command);
+            default -> throw new IllegalArgumentException("Unknown type of game message: " + command.getType());
+        }
+    }
 
-        switch (queueName) {
-            case AVAIL_MOVE_WORK_QUEUE_NAME -> handleAvailMoves(headers[2], uuid, genericGameHandler, from);
-            case MOVE_WORK_QUEUE_NAME -> handleMove(headers, uuid, genericGameHandler, from);
+    /**
+     * The responses are also sent for the refused moves, to answer the correlated requests. The outcome of an applied
+     * move was recorded by the apply, the game is not read again (it may already be changed by the next moves).
+     */
+    @Override
+    public void publish(GameCommand command) {
+        if (command.getType() == GameMessageCodec.MOVE_REQUEST) {
+            actionExecutor.handleMoveResponseMessage(GameMessageCodec.encodeMoveResponse(command.getGameUuid(),
+                    command.getCorrelationId(), command.getFrom(), command.getTo(), command.getMoveType(), command.getSide(),
+                    command.getStatus(), command.getSequence()), command.getMoveApplied());
+        } else {
+            actionExecutor.handleAvailMoveResponseMessage(GameMessageCodec.encodeAvailableMovesResponse(command.getGameUuid(),
+                    command.getCorrelationId(), command.getFrom(), command.getSide(), command.getPositions()));
         }
     }
 
-    private void handleAvailMoves(String header, String uuid, GenericGameHandler genericGameHandler, CasePosition from) {
-        Side playerSide;
-        byte playerSideValue = Byte.parseByte(header);
-        playerSide = Side.getFromValue(playerSideValue);
+    /**
+     * A command not decoded up to its game cannot be answered, its request times out.
+     */
+    @Override
+    public void publishFailure(GameCommand command) {
+        if (command.getGameUuid() != null) {
+            actionExecutor.handleFailedRequest(command.getGameUuid(), command.getCorrelationId());
+        }
+    }
 
+    private void applyAvailMoves(GameCommand command) {
+        GenericGameHandler genericGameHandler = gameRepository.get(command.getGameId()).getGenericGameHandler();
+        command.setPositions(CasePositionMask.of(genericGameHandler.getAllAvailableMoves(command.getFrom(), command.getSide())));
+    }
 
-        List<String> postionsAsString = new ArrayList<>();
-        for (CasePosition casePosition : genericGameHandler.getAllAvailableMoves(from, playerSide)) {
-            postionsAsString.add(casePosition.name());
+    /**
+     * With a {@link VersionedGameRepository}, the move is played on a copy of the game, that replaces the stored game
+     * only when the game was not changed since it was read (by a join or a promotion, for example); otherwise the
+     * game is read again and the move played on the new state. The stored game is never changed, so the other threads
+     * never see a move that is not written. The move is refused as stale when the game is still changed after
+     * {@link #MAX_UPDATE_ATTEMPTS}.
+     */
+    private void applyMove(GameCommand command) {
+        for (int attempt = 1; ; attempt++) {
+            GenericGameHandlerWrapper<GenericGameHandler> storedWrapper = gameRepository.get(command.getGameId());
+            TrackedGameHandlerWrapper storedTrackedWrapper = storedWrapper instanceof TrackedGameHandlerWrapper ? (TrackedGameHandlerWrapper) storedWrapper : null;
+
+            if (storedTrackedWrapper != null && isDuplicateOrStale(command, storedTrackedWrapper)) {
+                return;
+            }
+
+            boolean isVersioned = storedTrackedWrapper != null && gameRepository instanceof VersionedGameRepository;
+            long version = TrackedGameHandlerWrapper.getVersion(storedWrapper);
+            GenericGameHandlerWrapper<GenericGameHandler> wrapper = isVersioned ? TrackedGameHandlerWrapper.copyOf(storedWrapper) : storedWrapper;
+
+            MoveType moveType = wrapper.getGenericGameHandler().movePiece(command.getFrom(), command.getTo(), command.getSide());
+            command.setMoveType(moveType);
+
+            if (MoveType.isMoved(moveType)) {
+                if (wrapper instanceof TrackedGameHandlerWrapper) {
+                    TrackedGameHandlerWrapper trackedWrapper = (TrackedGameHandlerWrapper) wrapper;
+                    trackedWrapper.recordMove(command.getFrom(), command.getTo());
+                    trackedWrapper.getIdempotencyWindow().put(command.getIdempotencyKey(), moveType); // Written with the move
+                }
+
+                if (!writeGame(wrapper, version, isVersioned)) {
+                    if (attempt == MAX_UPDATE_ATTEMPTS) {
+                        command.setMoveType(MoveType.MOVE_NOT_ALLOWED);
+                        command.setStatus(GameMessageCodec.MOVE_STALE);
+                        command.setSequence(TrackedGameHandlerWrapper.getNumberOfMoves(storedWrapper));
+                        return;
+                    }
+
+                    continue;
+                }
+
+                if (gameJournal != null) {
+                    gameJournal.recordMove(command.getGameUuid(), command.getFrom(), command.getTo(), command.getSide()); // Before the response is sent
+                }
+            }
+
+            if (storedTrackedWrapper != null && !MoveType.isMoved(moveType)) {
+                storedTrackedWrapper.getIdempotencyWindow().put(command.getIdempotencyKey(), moveType); // The game is not written
+            }
+
+            command.setSequence(TrackedGameHandlerWrapper.getNumberOfMoves(wrapper));
+
+            if (MoveType.isMoved(moveType)) {
+                command.setMoveApplied(MoveAppliedModel.ofMove(command.getSequence(), command.getFrom(), command.getTo(),
+                        moveType, command.getSide(), wrapper, pieceMoveConstraintDelegate));
+            }
+
+            return;
         }
+    }
 
-        try {
-            String payload = MessageQueueUtils.convertToMessage(uuid, from, playerSideValue, objectMapper.writeValueAsString(postionsAsString));
-            actionExecutor.handleAvailMoveResponseMessage(payload);
-        } catch (JsonProcessingException e) {
-            LOGGER.error(e.getMessage(), e);
+    /**
+     * The write also marks the activity on the game.
+     */
+    private boolean writeGame(GenericGameHandlerWrapper<GenericGameHandler> wrapper, long expectedVersion, boolean isVersioned) {
+        if (isVersioned) {
+            return ((VersionedGameRepository) gameRepository).compareAndSet((TrackedGameHandlerWrapper) wrapper, expectedVersion);
         }
-    }
 
-    private void handleMove(String[] headers, String uuid, GenericGameHandler genericGameHandler, CasePosition from) {
-        Side playerSide;
-        CasePosition to = CasePosition.valueOf(headers[2]);
-        playerSide = Side.getFromValue(Byte.parseByte(headers[3]));
-        MoveType moveType = genericGameHandler.movePiece(from, to, playerSide);
+        gameRepository.add(wrapper);
+        return true;
+    }
 
-        if (MoveType.isMoved(moveType)) {
-            String message = MessageQueueUtils.convertToMessage(uuid, from, to, moveType.getValue(), playerSide.getValue());
-            actionExecutor.handleMoveResponseMessage(message);
+    /**
+     * A move already applied is answered with its first result, and a move played on another state of the game is
+     * refused; in both cases the game is not changed, and the response carries the current number of moves.
+     */
+    private static boolean isDuplicateOrStale(GameCommand command, TrackedGameHandlerWrapper wrapper) {
+        int numberOfMoves = wrapper.getNumberOfMoves();
+        MoveType previousMoveType = wrapper.getIdempotencyWindow().get(command.getIdempotencyKey());
+
+        if (previousMoveType != null) {
+            command.setMoveType(previousMoveType);
+            command.setStatus(GameMessageCodec.MOVE_DUPLICATE);
+        } else if (command.getSequence() != GameMessageCodec.NO_SEQUENCE && command.getSequence() != numberOfMoves) {
+            command.setMoveType(MoveType.MOVE_NOT_ALLOWED);
+            command.setStatus(GameMessageCodec.MOVE_STALE);
+        } else {
+            return false;
         }
-    }
 
+        command.setSequence(numberOfMoves);
+        return true;
+    }
 }
@@ -0,0 +1,46 @@
+/*
+ *    Copyright 2014 - 2021 Yannick Watier
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.watier.echechess.exceptions;
+
+import java.io.Serial;
+
+/**
+ * The command was not admitted, the client can try again after the delay.
+ */
+public class GameOverloadedException extends GameException {
+    @Serial
+    private static final long serialVersionUID = -6102771357431570642L;
+
+    private final boolean isLimitOfPlayer;
+    private final long retryAfterInSeconds;
+
+    /**
+     * @param isLimitOfPlayer - true when the player has too many commands in progress, false when the server is full
+     */
+    public GameOverloadedException(boolean isLimitOfPlayer, long retryAfterInSeconds) {
+        this.isLimitOfPlayer = isLimitOfPlayer;
+        this.retryAfterInSeconds = retryAfterInSeconds;
+    }
+
+    public boolean isLimitOfPlayer() {
+        return isLimitOfPlayer;
+    }
+
+    public long getRetryAfterInSeconds() {
+        return retryAfterInSeconds;
+    }
+}
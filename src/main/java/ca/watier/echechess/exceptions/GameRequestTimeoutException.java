@@ -14,17 +14,14 @@
  *    limitations under the License.
  */
 
-package ca.watier.echechess.utils;
+package ca.watier.echechess.exceptions;
 
-import org.apache.commons.lang3.StringUtils;
+import java.io.Serial;
 
-public final class MessageQueueUtils {
-
-    private MessageQueueUtils() {
-    }
-
-    public static String convertToMessage(Object... sections) {
-        String joinString = StringUtils.join(sections, '|');
-        return StringUtils.defaultString(joinString);
-    }
+/**
+ * The engine did not answer the request in time.
+ */
+public class GameRequestTimeoutException extends GameException {
+    @Serial
+    private static final long serialVersionUID = -6017364925146408236L;
 }
@@ -0,0 +1,27 @@
+/*
+ *    Copyright 2014 - 2021 Yannick Watier
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.watier.echechess.exceptions;
+
+import java.io.Serial;
+
+/**
+ * The message was refused (negative confirm) or lost by the broker.
+ */
+public class MessageNotConfirmedException extends GameException {
+    @Serial
+    private static final long serialVersionUID = 5803519624837707405L;
+}
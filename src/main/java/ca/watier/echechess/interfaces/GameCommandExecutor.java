@@ -0,0 +1,33 @@
+/*
+ *    Copyright 2014 - 2021 Yannick Watier
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.watier.echechess.interfaces;
+
+/**
+ * Run the commands of the games in independent mode; the commands of a game are applied one at a time, in the
+ * submission order, by the thread owning the game.
+ */
+public interface GameCommandExecutor {
+    /**
+     * Run the command after the commands previously submitted for the game.
+     */
+    void submit(String gameUuid, Runnable command);
+
+    /**
+     * Decode the game message, apply it on the game and publish its result with the handler.
+     */
+    void submit(byte[] message, GameCommandHandler handler);
+}
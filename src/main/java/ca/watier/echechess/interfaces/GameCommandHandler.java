@@ -0,0 +1,40 @@
+/*
+ *    Copyright 2014 - 2021 Yannick Watier
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.watier.echechess.interfaces;
+
+import ca.watier.echechess.models.GameCommand;
+
+/**
+ * The steps of a decoded game message, see {@link GameCommandExecutor}.
+ */
+public interface GameCommandHandler {
+    /**
+     * Apply the command on its game, and keep the result in the command; called by the thread owning the game.
+     */
+    void apply(GameCommand command);
+
+    /**
+     * Send the result of the applied command, as recorded by {@link #apply(GameCommand)}.
+     */
+    void publish(GameCommand command);
+
+    /**
+     * Send the failure of the command that could not be decoded, applied or published, so its sender doesn't wait
+     * for a result; the command may be partly decoded.
+     */
+    void publishFailure(GameCommand command);
+}
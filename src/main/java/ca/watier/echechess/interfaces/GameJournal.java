@@ -0,0 +1,53 @@
+/*
+ *    Copyright 2014 - 2021 Yannick Watier
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.watier.echechess.interfaces;
+
+import ca.watier.echechess.common.enums.CasePosition;
+import ca.watier.echechess.common.enums.Pieces;
+import ca.watier.echechess.common.enums.Side;
+import ca.watier.echechess.common.sessions.Player;
+import ca.watier.echechess.communication.redis.model.GenericGameHandlerWrapper;
+import ca.watier.echechess.engine.engines.GenericGameHandler;
+
+import java.util.UUID;
+
+/**
+ * The changes applied on the games; the same interface is used to write the changes and to replay them.
+ */
+public interface GameJournal {
+    void recordCreation(UUID uuid, String specialGamePieces, Side side, boolean againstComputer, boolean observers, Player player);
+
+    void recordMove(UUID uuid, CasePosition from, CasePosition to, Side side);
+
+    void recordPromotion(UUID uuid, CasePosition to, Pieces pieces, Side side);
+
+    void recordJoin(UUID uuid, Side side, Player player);
+
+    void recordDeletion(UUID uuid);
+
+    /**
+     * The whole game, replacing its previous records; recorded when the game is loaded back from the hibernation
+     * store, or kept in memory after being written to it.
+     */
+    void recordState(UUID uuid, GenericGameHandlerWrapper<GenericGameHandler> genericGameHandlerWrapper);
+
+    /**
+     * The game was written to the hibernation store and removed from the memory; its previous records are no longer
+     * needed.
+     */
+    void recordHibernation(UUID uuid);
+}
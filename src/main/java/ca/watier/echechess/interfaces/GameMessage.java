@@ -16,7 +16,14 @@
 
 package ca.watier.echechess.interfaces;
 
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Send the requests to the game engine; the messages are encoded with the {@link ca.watier.echechess.utils.GameMessageCodec}.
+ * The returned future completes when the request is accepted (confirmed by the broker, or queued in process), and
+ * fails when it is refused.
+ */
 public interface GameMessage {
-    void handleMoveMessage(String message);
-    void handleAvailableMoveMessage(String message);
+    CompletableFuture<Void> handleMoveMessage(byte[] message);
+    CompletableFuture<Void> handleAvailableMoveMessage(byte[] message);
 }
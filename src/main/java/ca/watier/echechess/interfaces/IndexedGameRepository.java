@@ -0,0 +1,42 @@
+/*
+ *    Copyright 2014 - 2021 Yannick Watier
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ca.watier.echechess.interfaces;
+
+import ca.watier.echechess.models.GameState;
+
+import java.util.Set;
+
+/**
+ * Game repository that maintains secondary indexes on each write and delete; the queries return the ids of the games
+ * and are answered in O(result). An index can briefly list a game that no longer matches, the callers check the games
+ * they load.
+ * <p>
+ * Only the compact storage ({@code app.game.storage.format=compact}, the default) provides the indexed repositories;
+ * with the shared storage, the games are found by reading all of them.
+ */
+public interface IndexedGameRepository extends VersionedGameRepository, PageableGameRepository {
+    /**
+     * @return The games where the player is white, black or an observer
+     */
+    Set<String> getGamesOfPlayer(String playerId);
+
+    /**
+     * @return The games still accepting other players, with a free side
+     */
+    Set<String> getOpenGames();
+
+    Set<String> getGamesByState(GameState gameState);
+}
@@ -0,0 +1,38 @@
+/*
+ *    Copyright 2014 - 2021 Yannick Watier
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ca.watier.echechess.interfaces;
+
+import ca.watier.echechess.communication.redis.interfaces.GameRepository;
+import ca.watier.echechess.communication.redis.model.GenericGameHandlerWrapper;
+import ca.watier.echechess.engine.engines.GenericGameHandler;
+import ca.watier.echechess.models.GamePage;
+
+/**
+ * Game repository that can be listed one page at a time, without copying all the games. The games are listed in the
+ * order of their ids and the cursor is the id of the last game of the previous page: the games present during the
+ * whole listing are returned once, the games added or removed while listing may or may not be returned.
+ * <p>
+ * Only the compact storage ({@code app.game.storage.format=compact}, the default) provides the pageable repositories;
+ * with the shared storage, all the games are returned in a single page.
+ */
+public interface PageableGameRepository extends GameRepository<GenericGameHandler> {
+    /**
+     * @param cursor   - The cursor returned with the previous page, null to start the listing
+     * @param pageSize - The maximum number of games; a page can contain fewer games, when games were deleted
+     * @throws IllegalArgumentException when the page size is not positive
+     */
+    GamePage<GenericGameHandlerWrapper<GenericGameHandler>> getPage(String cursor, int pageSize);
+}
@@ -0,0 +1,34 @@
+/*
+ *    Copyright 2014 - 2021 Yannick Watier
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.watier.echechess.interfaces;
+
+import ca.watier.echechess.communication.redis.interfaces.GameRepository;
+import ca.watier.echechess.engine.engines.GenericGameHandler;
+import ca.watier.echechess.models.TrackedGameHandlerWrapper;
+
+/**
+ * Game repository that keeps a version per game; {@link #add} always writes the game and increments its version.
+ */
+public interface VersionedGameRepository extends GameRepository<GenericGameHandler> {
+    /**
+     * Write the game only when the stored version still is the expected one (the version of the game when it was
+     * read); on success, the version of the wrapper is set to the new version.
+     *
+     * @return false when the game was changed (or deleted) since it was read
+     */
+    boolean compareAndSet(TrackedGameHandlerWrapper trackedGameHandlerWrapper, long expectedVersion);
+}
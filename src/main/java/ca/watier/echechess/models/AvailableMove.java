@@ -16,18 +16,24 @@
 
 package ca.watier.echechess.models;
 
+import ca.watier.echechess.utils.CasePositionMask;
+
 import java.io.Serial;
 import java.io.Serializable;
 import java.util.List;
 
+/**
+ * The positions available from a piece; the positions are kept as a mask ({@link CasePositionMask}), and expanded to
+ * their names when serialized.
+ */
 public class AvailableMove implements Serializable {
     @Serial
-    private static final long serialVersionUID = 8612686569088965026L;
+    private static final long serialVersionUID = -3470315930514836262L;
 
     private final String from;
-    private final List<String> positions;
+    private final long positions;
 
-    public AvailableMove(String from, List<String> positions) {
+    public AvailableMove(String from, long positions) {
         this.from = from;
         this.positions = positions;
     }
@@ -37,6 +43,6 @@ public class AvailableMove implements Serializable {
     }
 
     public List<String> getPositions() {
-        return positions;
+        return CasePositionMask.toNames(positions);
     }
 }
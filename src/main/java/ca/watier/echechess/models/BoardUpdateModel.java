@@ -0,0 +1,49 @@
+/*
+ *    Copyright 2014 - 2021 Yannick Watier
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.watier.echechess.models;
+
+import java.io.Serial;
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Positions of the board with their piece (or without piece, when removed) and the number of moves of the game they
+ * reflect; the whole board when fetched, and the changed positions when pushed after a move.
+ * <p>
+ * The number of moves lets the clients detect a missed update (a gap), to fetch the whole board again; it is
+ * {@link ca.watier.echechess.utils.GameMessageCodec#NO_SEQUENCE} when the game doesn't count its moves.
+ */
+public class BoardUpdateModel implements Serializable {
+    @Serial
+    private static final long serialVersionUID = 2316153866462190537L;
+
+    private final int sequence;
+    private final List<PieceLocationModel> squares;
+
+    public BoardUpdateModel(int sequence, List<PieceLocationModel> squares) {
+        this.sequence = sequence;
+        this.squares = squares;
+    }
+
+    public int getSequence() {
+        return sequence;
+    }
+
+    public List<PieceLocationModel> getSquares() {
+        return squares;
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ *    Copyright 2014 - 2021 Yannick Watier
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.watier.echechess.models;
+
+import ca.watier.echechess.common.enums.CasePosition;
+import ca.watier.echechess.common.enums.MoveType;
+import ca.watier.echechess.common.enums.Side;
+import ca.watier.echechess.utils.CasePositionMask;
+import ca.watier.echechess.utils.GameMessageCodec;
+
+import java.util.UUID;
+
+/**
+ * A decoded game message and its result; the instances are reused by the
+ * {@link ca.watier.echechess.components.GameCommandPipeline}.
+ */
+public class GameCommand {
+    private byte type;
+    private UUID gameUuid;
+    private String gameId;
+    private long correlationId;
+    private int sequence;
+    private long idempotencyKey;
+    private byte status;
+    private CasePosition from;
+    private CasePosition to;
+    private Side side;
+    private MoveType moveType;
+    private long positions;
+    private MoveAppliedModel moveApplied;
+
+    public void decode(byte[] message) {
+        type = GameMessageCodec.getType(message);
+        gameUuid = GameMessageCodec.getGameId(message);
+        gameId = gameUuid.toString();
+        correlationId = GameMessageCodec.getCorrelationId(message);
+        sequence = type == GameMessageCodec.MOVE_REQUEST ? GameMessageCodec.getSequence(message) : GameMessageCodec.NO_SEQUENCE;
+        idempotencyKey = type == GameMessageCodec.MOVE_REQUEST ? GameMessageCodec.getIdempotencyKey(message) : GameMessageCodec.NO_IDEMPOTENCY_KEY;
+
+        if (idempotencyKey == GameMessageCodec.NO_IDEMPOTENCY_KEY) {
+            idempotencyKey = correlationId; // The redeliveries of the message are still detected
+        }
+
+        status = GameMessageCodec.MOVE_APPLIED;
+        from = GameMessageCodec.getFrom(message);
+        to = type == GameMessageCodec.MOVE_REQUEST ? GameMessageCodec.getTo(message) : null;
+        side = GameMessageCodec.getSide(message);
+        moveType = null;
+        positions = CasePositionMask.EMPTY;
+        moveApplied = null;
+    }
+
+    /**
+     * Drop the references to the previous message.
+     */
+    public void clear() {
+        gameUuid = null;
+        gameId = null;
+        correlationId = GameMessageCodec.NO_CORRELATION;
+        from = null;
+        to = null;
+        side = null;
+        moveType = null;
+        moveApplied = null;
+    }
+
+    public byte getType() {
+        return type;
+    }
+
+    public UUID getGameUuid() {
+        return gameUuid;
+    }
+
+    public String getGameId() {
+        return gameId;
+    }
+
+    public long getCorrelationId() {
+        return correlationId;
+    }
+
+    /**
+     * @return The number of moves seen by the sender of the move; once applied, the number of moves of the game
+     */
+    public int getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(int sequence) {
+        this.sequence = sequence;
+    }
+
+    public long getIdempotencyKey() {
+        return idempotencyKey;
+    }
+
+    /**
+     * @return The status of the move ({@link GameMessageCodec#MOVE_APPLIED}, {@link GameMessageCodec#MOVE_DUPLICATE}
+     * or {@link GameMessageCodec#MOVE_STALE})
+     */
+    public byte getStatus() {
+        return status;
+    }
+
+    public void setStatus(byte status) {
+        this.status = status;
+    }
+
+    public CasePosition getFrom() {
+        return from;
+    }
+
+    public CasePosition getTo() {
+        return to;
+    }
+
+    public Side getSide() {
+        return side;
+    }
+
+    public MoveType getMoveType() {
+        return moveType;
+    }
+
+    public void setMoveType(MoveType moveType) {
+        this.moveType = moveType;
+    }
+
+    /**
+     * @return The mask of the available positions ({@link CasePositionMask})
+     */
+    public long getPositions() {
+        return positions;
+    }
+
+    public void setPositions(long positions) {
+        this.positions = positions;
+    }
+
+    /**
+     * @return The outcome of the applied move, read from the game when the move was written; null when the move was
+     * not applied
+     */
+    public MoveAppliedModel getMoveApplied() {
+        return moveApplied;
+    }
+
+    public void setMoveApplied(MoveAppliedModel moveApplied) {
+        this.moveApplied = moveApplied;
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ *    Copyright 2014 - 2021 Yannick Watier
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.watier.echechess.models;
+
+import ca.watier.echechess.common.enums.Side;
+import com.fasterxml.jackson.annotation.JsonRawValue;
+
+/**
+ * An event sent on the topics of a game, as serialized when sent.
+ */
+public class GameEventModel {
+    private final long sequence;
+    private final Side side;
+    private final String event;
+
+    /**
+     * @param side  - The side of the topic, null for the topic of the game
+     * @param event - The event, in JSON
+     */
+    public GameEventModel(long sequence, Side side, String event) {
+        this.sequence = sequence;
+        this.side = side;
+        this.event = event;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public Side getSide() {
+        return side;
+    }
+
+    @JsonRawValue
+    public String getEvent() {
+        return event;
+    }
+}
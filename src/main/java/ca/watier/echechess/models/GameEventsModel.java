@@ -0,0 +1,56 @@
+/*
+ *    Copyright 2014 - 2021 Yannick Watier
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.watier.echechess.models;
+
+import java.util.List;
+
+/**
+ * The events of a game sent after a sequence, to resume a session; when not complete (the events were dropped from
+ * the buffer, or the sequence is of another log of the game), the client reloads the game instead.
+ */
+public class GameEventsModel {
+    private final boolean complete;
+    private final long epoch;
+    private final long lastSequence;
+    private final List<GameEventModel> events;
+
+    /**
+     * @param epoch - The epoch of the log of the game, 0 when the game has no log
+     */
+    public GameEventsModel(boolean complete, long epoch, long lastSequence, List<GameEventModel> events) {
+        this.complete = complete;
+        this.epoch = epoch;
+        this.lastSequence = lastSequence;
+        this.events = events;
+    }
+
+    public boolean isComplete() {
+        return complete;
+    }
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    public long getLastSequence() {
+        return lastSequence;
+    }
+
+    public List<GameEventModel> getEvents() {
+        return events;
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ *    Copyright 2014 - 2021 Yannick Watier
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ca.watier.echechess.models;
+
+import java.util.List;
+
+/**
+ * A page of a listing; the next page is fetched with the cursor, null on the last page.
+ */
+public class GamePage<T> {
+    private final List<T> values;
+    private final String nextCursor;
+
+    public GamePage(List<T> values, String nextCursor) {
+        this.values = values;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<T> getValues() {
+        return values;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public boolean isLast() {
+        return nextCursor == null;
+    }
+}
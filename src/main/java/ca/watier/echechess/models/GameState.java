@@ -0,0 +1,32 @@
+/*
+ *    Copyright 2014 - 2021 Yannick Watier
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ca.watier.echechess.models;
+
+import ca.watier.echechess.engine.engines.GenericGameHandler;
+
+public enum GameState {
+    RUNNING, PAUSED, ENDED;
+
+    public static GameState from(GenericGameHandler genericGameHandler) {
+        if (genericGameHandler.isGameEnded() || genericGameHandler.isGameDraw()) {
+            return ENDED;
+        } else if (genericGameHandler.isGamePaused()) {
+            return PAUSED;
+        }
+
+        return RUNNING;
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ *    Copyright 2014 - 2021 Yannick Watier
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ca.watier.echechess.models;
+
+import ca.watier.echechess.engine.engines.GenericGameHandler;
+
+import java.io.Serial;
+import java.io.Serializable;
+
+public class GameSummaryModel implements Serializable {
+    @Serial
+    private static final long serialVersionUID = 3311254927350614407L;
+
+    private final String uuid;
+    private final GameState state;
+    private final boolean allowOtherToJoin;
+    private final boolean allowObservers;
+    private final boolean hasPlayerWhite;
+    private final boolean hasPlayerBlack;
+
+    public GameSummaryModel(String uuid, GenericGameHandler genericGameHandler) {
+        this.uuid = uuid;
+        this.state = GameState.from(genericGameHandler);
+        this.allowOtherToJoin = genericGameHandler.isAllowOtherToJoin();
+        this.allowObservers = genericGameHandler.isAllowObservers();
+        this.hasPlayerWhite = genericGameHandler.getPlayerWhite() != null;
+        this.hasPlayerBlack = genericGameHandler.getPlayerBlack() != null;
+    }
+
+    public String getUuid() {
+        return uuid;
+    }
+
+    public GameState getState() {
+        return state;
+    }
+
+    public boolean isAllowOtherToJoin() {
+        return allowOtherToJoin;
+    }
+
+    public boolean isAllowObservers() {
+        return allowObservers;
+    }
+
+    public boolean isHasPlayerWhite() {
+        return hasPlayerWhite;
+    }
+
+    public boolean isHasPlayerBlack() {
+        return hasPlayerBlack;
+    }
+}
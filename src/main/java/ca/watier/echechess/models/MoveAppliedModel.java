@@ -0,0 +1,163 @@
+/*
+ *    Copyright 2014 - 2021 Yannick Watier
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.watier.echechess.models;
+
+import ca.watier.echechess.common.enums.CasePosition;
+import ca.watier.echechess.common.enums.KingStatus;
+import ca.watier.echechess.common.enums.MoveType;
+import ca.watier.echechess.common.enums.Side;
+import ca.watier.echechess.common.responses.GameScoreResponse;
+import ca.watier.echechess.communication.redis.model.GenericGameHandlerWrapper;
+import ca.watier.echechess.engine.abstracts.GameBoardData;
+import ca.watier.echechess.engine.delegates.PieceMoveConstraintDelegate;
+import ca.watier.echechess.engine.engines.GenericGameHandler;
+import ca.watier.echechess.utils.BoardDeltas;
+
+import java.io.Serial;
+import java.util.List;
+
+import static ca.watier.echechess.common.utils.Constants.PLAYER_MOVE;
+
+/**
+ * The whole outcome of a move, sent to the players in one event: the changed positions, the side to play, the score
+ * and the status of the kings. The players show the turn and the check from the status of their own side.
+ * <p>
+ * The version is incremented when the meaning of a field changes, the clients ignore the unknown fields.
+ */
+public class MoveAppliedModel extends BoardUpdateModel {
+    public static final int VERSION = 1;
+
+    @Serial
+    private static final long serialVersionUID = -6079236540983573188L;
+
+    private final Side side;
+    private final Side turn;
+    private final GameScoreResponse score;
+    private final KingStatus whiteKingStatus;
+    private final KingStatus blackKingStatus;
+    private String from;
+    private String to;
+    private String message;
+    private boolean pawnPromotion;
+
+    public MoveAppliedModel(int sequence, List<PieceLocationModel> squares, Side side, Side turn, GameScoreResponse score,
+                            KingStatus whiteKingStatus, KingStatus blackKingStatus) {
+        super(sequence, squares);
+        this.side = side;
+        this.turn = turn;
+        this.score = score;
+        this.whiteKingStatus = whiteKingStatus;
+        this.blackKingStatus = blackKingStatus;
+    }
+
+    /**
+     * @param side - The side that played
+     * @param turn - The side to play next
+     */
+    public static MoveAppliedModel of(int sequence, List<PieceLocationModel> squares, Side side, Side turn,
+                                      GenericGameHandlerWrapper<GenericGameHandler> gameHandlerWrapper,
+                                      PieceMoveConstraintDelegate pieceMoveConstraintDelegate) {
+        GenericGameHandler gameHandler = gameHandlerWrapper.getGenericGameHandler();
+        GameBoardData boardData = gameHandler.getCloneOfCurrentDataState();
+
+        return new MoveAppliedModel(sequence, squares, side, turn, gameHandler.getGameScore(),
+                pieceMoveConstraintDelegate.getKingStatus(Side.WHITE, boardData),
+                pieceMoveConstraintDelegate.getKingStatus(Side.BLACK, boardData));
+    }
+
+    /**
+     * @param side - The side that played
+     * @return The outcome of the move, read from the game as written by the move
+     */
+    public static MoveAppliedModel ofMove(int sequence, CasePosition from, CasePosition to, MoveType moveType, Side side,
+                                          GenericGameHandlerWrapper<GenericGameHandler> gameHandlerWrapper,
+                                          PieceMoveConstraintDelegate pieceMoveConstraintDelegate) {
+        boolean isPawnPromotion = MoveType.PAWN_PROMOTION.equals(moveType);
+        Side turn = isPawnPromotion ? side : Side.getOtherPlayerSide(side); // The promoted piece is chosen first
+        List<PieceLocationModel> squares = BoardDeltas.getChangedSquares(from, to, gameHandlerWrapper.getGenericGameHandler().getPiecesLocation());
+
+        MoveAppliedModel moveApplied = of(sequence, squares, side, turn, gameHandlerWrapper, pieceMoveConstraintDelegate);
+        moveApplied.setFrom(from.name());
+        moveApplied.setTo(to.name());
+        moveApplied.setMessage(String.format(PLAYER_MOVE, side, from, to));
+        moveApplied.setPawnPromotion(isPawnPromotion);
+
+        return moveApplied;
+    }
+
+    public int getVersion() {
+        return VERSION;
+    }
+
+    public Side getSide() {
+        return side;
+    }
+
+    public Side getTurn() {
+        return turn;
+    }
+
+    public GameScoreResponse getScore() {
+        return score;
+    }
+
+    public KingStatus getWhiteKingStatus() {
+        return whiteKingStatus;
+    }
+
+    public KingStatus getBlackKingStatus() {
+        return blackKingStatus;
+    }
+
+    public String getFrom() {
+        return from;
+    }
+
+    public void setFrom(String from) {
+        this.from = from;
+    }
+
+    public String getTo() {
+        return to;
+    }
+
+    public void setTo(String to) {
+        this.to = to;
+    }
+
+    /**
+     * @return The description of the move, for the log of the moves; null when the event is not a move (promotion)
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+
+    /**
+     * @return true when the pawn reached the last row, the side that played chooses its new piece before the turn
+     */
+    public boolean isPawnPromotion() {
+        return pawnPromotion;
+    }
+
+    public void setPawnPromotion(boolean pawnPromotion) {
+        this.pawnPromotion = pawnPromotion;
+    }
+}
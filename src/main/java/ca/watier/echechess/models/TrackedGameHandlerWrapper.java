@@ -0,0 +1,194 @@
+/*
+ *    Copyright 2014 - 2021 Yannick Watier
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.watier.echechess.models;
+
+import ca.watier.echechess.common.enums.CasePosition;
+import ca.watier.echechess.common.enums.Pieces;
+import ca.watier.echechess.communication.redis.model.GenericGameHandlerWrapper;
+import ca.watier.echechess.engine.engines.GenericGameHandler;
+import ca.watier.echechess.utils.GameMessageCodec;
+import ca.watier.echechess.utils.IdempotencyWindow;
+import org.apache.commons.lang3.SerializationUtils;
+
+import java.io.Serial;
+import java.util.Arrays;
+
+/**
+ * Game wrapper that keeps the starting position and the moves played, so the game can be rebuilt from a compact
+ * binary form (see {@link ca.watier.echechess.repositories.GameStateCodec}).
+ * <p>
+ * A move is packed in a short: the origin (6 bits), the destination (6 bits) and the promoted piece (4 bits, 0 when
+ * not promoted), using the ordinals of {@link CasePosition} and {@link Pieces}.
+ * <p>
+ * The version is incremented by the repository on each write, and used to detect concurrent updates (see
+ * {@link ca.watier.echechess.interfaces.VersionedGameRepository}).
+ * <p>
+ * The results of the last moves are kept by idempotency key, to answer the moves received again; they are not
+ * persisted.
+ */
+public class TrackedGameHandlerWrapper extends GenericGameHandlerWrapper<GenericGameHandler> {
+    @Serial
+    private static final long serialVersionUID = 5818430734823462718L;
+
+    private static final int POSITION_MASK = 0x3F;
+    private static final int PIECE_MASK = 0xF;
+    private static final CasePosition[] POSITIONS = CasePosition.values();
+    private static final Pieces[] PIECES = Pieces.values();
+
+    private final String initialPosition;
+    private short[] moves;
+    private int numberOfMoves;
+    private volatile long version;
+    private transient IdempotencyWindow idempotencyWindow;
+
+    /**
+     * @param initialPosition - The FEN pattern the game was created from, null for a standard game
+     */
+    public TrackedGameHandlerWrapper(String id, GenericGameHandler genericGameHandler, String initialPosition) {
+        this(id, genericGameHandler, initialPosition, new short[16], 0);
+    }
+
+    public TrackedGameHandlerWrapper(String id, GenericGameHandler genericGameHandler, String initialPosition, short[] moves, int numberOfMoves) {
+        super(id, genericGameHandler);
+        this.initialPosition = initialPosition;
+        this.moves = moves;
+        this.numberOfMoves = numberOfMoves;
+    }
+
+    /**
+     * @return The version of the game, 0 when the wrapper is not tracked
+     */
+    public static long getVersion(GenericGameHandlerWrapper<GenericGameHandler> genericGameHandlerWrapper) {
+        if (genericGameHandlerWrapper instanceof TrackedGameHandlerWrapper) {
+            return ((TrackedGameHandlerWrapper) genericGameHandlerWrapper).getVersion();
+        }
+
+        return 0;
+    }
+
+    /**
+     * @return The number of moves played, {@link GameMessageCodec#NO_SEQUENCE} when the wrapper is not tracked
+     */
+    public static int getNumberOfMoves(GenericGameHandlerWrapper<GenericGameHandler> genericGameHandlerWrapper) {
+        if (genericGameHandlerWrapper instanceof TrackedGameHandlerWrapper) {
+            return ((TrackedGameHandlerWrapper) genericGameHandlerWrapper).getNumberOfMoves();
+        }
+
+        return GameMessageCodec.NO_SEQUENCE;
+    }
+
+    /**
+     * The games stored in a {@link ca.watier.echechess.interfaces.VersionedGameRepository} are never changed in place
+     * (the moves are played on a copy swapped in by the compare-and-set), so the copy doesn't race with a move; the
+     * lock only covers the moves recorded on a wrapper not yet stored.
+     *
+     * @return A deep copy of the game, to be changed without changing the wrapper read by the other threads; the
+     * idempotency window is copied too
+     */
+    public static GenericGameHandlerWrapper<GenericGameHandler> copyOf(GenericGameHandlerWrapper<GenericGameHandler> genericGameHandlerWrapper) {
+        if (!(genericGameHandlerWrapper instanceof TrackedGameHandlerWrapper)) {
+            return SerializationUtils.clone(genericGameHandlerWrapper);
+        }
+
+        TrackedGameHandlerWrapper trackedGameHandlerWrapper = (TrackedGameHandlerWrapper) genericGameHandlerWrapper;
+
+        synchronized (trackedGameHandlerWrapper) {
+            TrackedGameHandlerWrapper copy = SerializationUtils.clone(trackedGameHandlerWrapper);
+            copy.idempotencyWindow = trackedGameHandlerWrapper.getIdempotencyWindow().copy();
+            return copy;
+        }
+    }
+
+    public static short packMove(CasePosition from, CasePosition to, Pieces promotion) {
+        int promotionValue = promotion == null ? 0 : promotion.ordinal() + 1;
+        return (short) ((from.ordinal() << 10) | (to.ordinal() << 4) | promotionValue);
+    }
+
+    public static CasePosition getFrom(short move) {
+        return POSITIONS[(move >>> 10) & POSITION_MASK];
+    }
+
+    public static CasePosition getTo(short move) {
+        return POSITIONS[(move >>> 4) & POSITION_MASK];
+    }
+
+    /**
+     * @return The promoted piece, or null if the move is not a promotion
+     */
+    public static Pieces getPromotion(short move) {
+        int promotionValue = move & PIECE_MASK;
+        return promotionValue == 0 ? null : PIECES[promotionValue - 1];
+    }
+
+    public synchronized void recordMove(CasePosition from, CasePosition to) {
+        if (numberOfMoves == moves.length) {
+            moves = Arrays.copyOf(moves, moves.length * 2);
+        }
+
+        moves[numberOfMoves++] = packMove(from, to, null);
+    }
+
+    /**
+     * Attach the promoted piece to the last move, when the last move is the pawn reaching the position.
+     */
+    public synchronized void recordPromotion(CasePosition to, Pieces pieces) {
+        if (numberOfMoves == 0) {
+            return;
+        }
+
+        short lastMove = moves[numberOfMoves - 1];
+
+        if (getTo(lastMove) == to && getPromotion(lastMove) == null) {
+            moves[numberOfMoves - 1] = packMove(getFrom(lastMove), to, pieces);
+        }
+    }
+
+    public String getInitialPosition() {
+        return initialPosition;
+    }
+
+    /**
+     * @return A copy of the moves, in the played order
+     */
+    public synchronized short[] getMoves() {
+        return Arrays.copyOf(moves, numberOfMoves);
+    }
+
+    public synchronized int getNumberOfMoves() {
+        return numberOfMoves;
+    }
+
+    /**
+     * @return The results of the last moves, by idempotency key; a move applied on a copy of the game is recorded in
+     * the window of the copy, written with it
+     */
+    public synchronized IdempotencyWindow getIdempotencyWindow() {
+        if (idempotencyWindow == null) {
+            idempotencyWindow = new IdempotencyWindow();
+        }
+
+        return idempotencyWindow;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+}
@@ -0,0 +1,331 @@
+/*
+ *    Copyright 2014 - 2021 Yannick Watier
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.watier.echechess.repositories;
+
+import ca.watier.echechess.communication.redis.model.GenericGameHandlerWrapper;
+import ca.watier.echechess.engine.engines.GenericGameHandler;
+import ca.watier.echechess.interfaces.IndexedGameRepository;
+import ca.watier.echechess.models.GamePage;
+import ca.watier.echechess.models.GameState;
+import ca.watier.echechess.models.TrackedGameHandlerWrapper;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded near-cache in front of a remote game repository; the least recently used games are evicted when the cache
+ * is full, and the entries expire after the time to live.
+ * <p>
+ * Each write is published on the {@link #INVALIDATION_CHANNEL} as {@code <node id>|<game id>}, the other nodes drop
+ * their copy of the game when receiving it. The time to live bounds the staleness of the games written by a node
+ * that does not publish on the channel.
+ * <p>
+ * A game read or written is only cached when the game was not invalidated in the meantime; each read or write of a
+ * game registers a token, removed by the invalidations of the same game, so the other games are still cached. The
+ * cache keeps its own copy of the games and returns a copy on each read, the callers can change it freely.
+ * <p>
+ * The cache is only in front of the compact storage ({@code app.game.storage.format=compact}, the default), there is
+ * no near-cache with {@code app.game.storage.format=shared}.
+ */
+public class CachingGameRepository implements IndexedGameRepository, MessageListener {
+    public static final String INVALIDATION_CHANNEL = "echechess:game:invalidations";
+    private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(CachingGameRepository.class);
+    private static final char MESSAGE_SEPARATOR = '|';
+
+    private final String nodeId = UUID.randomUUID().toString();
+    private final IndexedGameRepository gameRepository;
+    private final StringRedisTemplate redisTemplate;
+    private final long timeToLiveInNanos;
+    private final Map<String, CachedGame> cachedGames;
+    private final Map<String, Object> loadTokens = new HashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public CachingGameRepository(IndexedGameRepository gameRepository, int maximumSize, Duration timeToLive) {
+        this(gameRepository, maximumSize, timeToLive, null);
+    }
+
+    public CachingGameRepository(IndexedGameRepository gameRepository,
+                                 int maximumSize,
+                                 Duration timeToLive,
+                                 StringRedisTemplate redisTemplate) {
+
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("The maximum size must be positive");
+        }
+
+        this.gameRepository = gameRepository;
+        this.redisTemplate = redisTemplate;
+        this.timeToLiveInNanos = timeToLive.toNanos();
+        this.cachedGames = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedGame> eldest) {
+                boolean isFull = size() > maximumSize;
+
+                if (isFull) {
+                    evictions.incrementAndGet();
+                }
+
+                return isFull;
+            }
+        };
+    }
+
+    @Override
+    public void add(GenericGameHandlerWrapper<GenericGameHandler> genericGameHandlerWrapper) {
+        String id = genericGameHandlerWrapper.getId();
+        Object loadToken = startLoad(id);
+        boolean isWritten = false;
+
+        try {
+            gameRepository.add(genericGameHandlerWrapper);
+            isWritten = true;
+        } finally {
+            completeLoad(id, loadToken, isWritten ? genericGameHandlerWrapper : null);
+        }
+
+        publishInvalidation(id);
+    }
+
+    /**
+     * When the game was changed by another node, the local copy is dropped, so the game can be read again.
+     */
+    @Override
+    public boolean compareAndSet(TrackedGameHandlerWrapper trackedGameHandlerWrapper, long expectedVersion) {
+        String id = trackedGameHandlerWrapper.getId();
+        Object loadToken = startLoad(id);
+        boolean isWritten = false;
+
+        try {
+            isWritten = gameRepository.compareAndSet(trackedGameHandlerWrapper, expectedVersion);
+        } finally {
+            completeLoad(id, loadToken, isWritten ? trackedGameHandlerWrapper : null);
+        }
+
+        if (!isWritten) {
+            invalidate(id);
+            return false;
+        }
+
+        publishInvalidation(id);
+        return true;
+    }
+
+    @Override
+    public void add(String id, GenericGameHandler genericGameHandler) {
+        add(new GenericGameHandlerWrapper<>(id, genericGameHandler));
+    }
+
+    @Override
+    public void delete(String id) {
+        gameRepository.delete(id);
+        invalidate(id);
+        publishInvalidation(id);
+    }
+
+    @Override
+    public GenericGameHandlerWrapper<GenericGameHandler> get(String id) {
+        if (id == null) {
+            return null;
+        }
+
+        GenericGameHandlerWrapper<GenericGameHandler> cachedWrapper = getIfCached(id);
+
+        if (cachedWrapper != null) {
+            return cachedWrapper;
+        }
+
+        misses.incrementAndGet();
+
+        Object loadToken = startLoad(id);
+        GenericGameHandlerWrapper<GenericGameHandler> wrapper = null;
+
+        try {
+            wrapper = gameRepository.get(id);
+        } finally {
+            completeLoad(id, loadToken, wrapper);
+        }
+
+        return wrapper;
+    }
+
+    /**
+     * @return A copy of the cached game, when not expired nor invalidated; the remote repository is not read
+     */
+    public GenericGameHandlerWrapper<GenericGameHandler> getIfCached(String id) {
+        long now = System.nanoTime();
+
+        synchronized (cachedGames) {
+            CachedGame cachedGame = cachedGames.get(id);
+
+            if (cachedGame == null) {
+                return null;
+            }
+
+            if (now - cachedGame.loadedAt >= timeToLiveInNanos) {
+                cachedGames.remove(id);
+                evictions.incrementAndGet();
+                return null;
+            }
+
+            hits.incrementAndGet();
+            return TrackedGameHandlerWrapper.copyOf(cachedGame.wrapper);
+        }
+    }
+
+    /**
+     * The listing is always read from the remote repository.
+     */
+    @Override
+    public List<GenericGameHandlerWrapper<GenericGameHandler>> getAll() {
+        return gameRepository.getAll();
+    }
+
+    /**
+     * The pages are always read from the remote repository, and not cached.
+     */
+    @Override
+    public GamePage<GenericGameHandlerWrapper<GenericGameHandler>> getPage(String cursor, int pageSize) {
+        return gameRepository.getPage(cursor, pageSize);
+    }
+
+    @Override
+    public Set<String> getGamesOfPlayer(String playerId) {
+        return gameRepository.getGamesOfPlayer(playerId);
+    }
+
+    @Override
+    public Set<String> getOpenGames() {
+        return gameRepository.getOpenGames();
+    }
+
+    @Override
+    public Set<String> getGamesByState(GameState gameState) {
+        return gameRepository.getGamesByState(gameState);
+    }
+
+    /**
+     * Drop the local copy of the game, the next read will go to the remote repository.
+     */
+    public void invalidate(String id) {
+        synchronized (cachedGames) {
+            loadTokens.remove(id);
+
+            if (cachedGames.remove(id) != null) {
+                invalidations.incrementAndGet();
+            }
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        String senderId = StringUtils.substringBefore(body, String.valueOf(MESSAGE_SEPARATOR));
+        String id = StringUtils.substringAfter(body, String.valueOf(MESSAGE_SEPARATOR));
+
+        if (StringUtils.isBlank(id) || nodeId.equals(senderId)) {
+            return;
+        }
+
+        invalidate(id);
+    }
+
+    public int size() {
+        synchronized (cachedGames) {
+            return cachedGames.size();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public long getInvalidations() {
+        return invalidations.get();
+    }
+
+    /**
+     * @return The token of a read or write of the game, replacing the token of the previous one
+     */
+    private Object startLoad(String id) {
+        Object loadToken = new Object();
+
+        synchronized (cachedGames) {
+            loadTokens.put(id, loadToken);
+        }
+
+        return loadToken;
+    }
+
+    /**
+     * Cache a copy of the game, unless the game was invalidated or read again since the token was registered (the
+     * value may be older than the invalidation); the game is not cached when null.
+     */
+    private void completeLoad(String id, Object loadToken, GenericGameHandlerWrapper<GenericGameHandler> wrapper) {
+        GenericGameHandlerWrapper<GenericGameHandler> copy = wrapper == null ? null : TrackedGameHandlerWrapper.copyOf(wrapper);
+
+        synchronized (cachedGames) {
+            if (loadTokens.remove(id, loadToken) && copy != null) {
+                cachedGames.put(id, new CachedGame(copy, System.nanoTime()));
+            }
+        }
+    }
+
+    private void publishInvalidation(String id) {
+        if (redisTemplate == null) {
+            return;
+        }
+
+        try {
+            redisTemplate.convertAndSend(INVALIDATION_CHANNEL, nodeId + MESSAGE_SEPARATOR + id);
+        } catch (RuntimeException e) {
+            LOGGER.warn("Unable to publish the invalidation of the game {}", id, e);
+        }
+    }
+
+    private static final class CachedGame {
+        private final GenericGameHandlerWrapper<GenericGameHandler> wrapper;
+        private final long loadedAt;
+
+        private CachedGame(GenericGameHandlerWrapper<GenericGameHandler> wrapper, long loadedAt) {
+            this.wrapper = wrapper;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
@@ -0,0 +1,361 @@
+/*
+ *    Copyright 2014 - 2021 Yannick Watier
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.watier.echechess.repositories;
+
+import ca.watier.echechess.communication.redis.model.GenericGameHandlerWrapper;
+import ca.watier.echechess.engine.engines.GenericGameHandler;
+import ca.watier.echechess.interfaces.IndexedGameRepository;
+import ca.watier.echechess.models.GamePage;
+import ca.watier.echechess.models.GameState;
+import ca.watier.echechess.models.TrackedGameHandlerWrapper;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisZSetCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Redis store of the games, the values are encoded with the {@link GameStateCodec}.
+ * <p>
+ * The writes go through a script that reads the version of the stored game (at the fixed offset of the encoded
+ * value), compares it when the write is conditional, and stores the new value with the next version.
+ * <p>
+ * The indexes are a set per player ({@code echechess:index:player:<id>}), per state
+ * ({@code echechess:index:state:<state>}) and the set of the open games ({@code echechess:index:open}). The indexed
+ * values of each game are kept in a hash ({@code echechess:game-index:{<id>}}), written by the same script as the game
+ * and returning the previous values, to remove the game from the sets it left. The scripts only touch the keys given
+ * to them, in the slot of the game (the id is a hash tag), so the repository works on a Redis cluster; the sets are
+ * updated after the script, and can briefly list a game that no longer matches (the readers check the loaded games).
+ * <p>
+ * The ids of all the games are kept in a sorted set ({@code echechess:index:games}), to list the games by page.
+ */
+public class DependentGameRepositoryImpl implements IndexedGameRepository {
+    private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(DependentGameRepositoryImpl.class);
+    private static final String KEY_PREFIX = "echechess:game:";
+    private static final String INDEX_ENTRY_KEY_PREFIX = "echechess:game-index:";
+    private static final String PLAYER_INDEX_KEY_PREFIX = "echechess:index:player:";
+    private static final String STATE_INDEX_KEY_PREFIX = "echechess:index:state:";
+    private static final String OPEN_INDEX_KEY = "echechess:index:open";
+    private static final String GAMES_INDEX_KEY = "echechess:index:games";
+    private static final int BATCH_SIZE = 1_000;
+    private static final long ANY_VERSION = -1;
+    private static final long VERSION_CONFLICT = -1;
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> DELETE_SCRIPT = new DefaultRedisScript<>(
+            "local previous = redis.call('HMGET', KEYS[2], 'players', 'state')\n" +
+                    "redis.call('DEL', KEYS[1], KEYS[2])\n" +
+                    "return {previous[1] or '', previous[2] or ''}",
+            List.class);
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> WRITE_SCRIPT = new DefaultRedisScript<>(
+            "local offset = tonumber(ARGV[3])\n" +
+                    "local function version_of(value)\n" +
+                    "  if not value or string.len(value) < offset + 8 or string.byte(value, 3) < 2 then return 0 end\n" +
+                    "  local version = 0\n" +
+                    "  for i = offset + 1, offset + 8 do version = version * 256 + string.byte(value, i) end\n" +
+                    "  return version\n" +
+                    "end\n" +
+                    "local current = version_of(redis.call('GET', KEYS[1]))\n" +
+                    "local expected = tonumber(ARGV[1])\n" +
+                    "if expected >= 0 and current ~= expected then return {'-1'} end\n" +
+                    "local version = math.max(current, version_of(ARGV[2])) + 1\n" +
+                    "local bytes = {}\n" +
+                    "local remaining = version\n" +
+                    "for i = 8, 1, -1 do bytes[i] = remaining % 256; remaining = math.floor(remaining / 256) end\n" +
+                    "redis.call('SET', KEYS[1], string.sub(ARGV[2], 1, offset) .. string.char(unpack(bytes)) .. string.sub(ARGV[2], offset + 9))\n" +
+                    "local previous = redis.call('HMGET', KEYS[2], 'players', 'state')\n" +
+                    "redis.call('HSET', KEYS[2], 'players', ARGV[4], 'state', ARGV[5])\n" +
+                    "return {string.format('%d', version), previous[1] or '', previous[2] or ''}",
+            List.class);
+
+    private final RedisTemplate<String, byte[]> redisTemplate;
+    private final GameStateCodec gameStateCodec;
+
+    public DependentGameRepositoryImpl(RedisConnectionFactory redisConnectionFactory, GameStateCodec gameStateCodec) {
+        this.gameStateCodec = gameStateCodec;
+
+        redisTemplate = new RedisTemplate<>();
+        redisTemplate.setConnectionFactory(redisConnectionFactory);
+        redisTemplate.setKeySerializer(RedisSerializer.string());
+        redisTemplate.setValueSerializer(RedisSerializer.byteArray());
+        redisTemplate.afterPropertiesSet();
+    }
+
+    @Override
+    public void add(GenericGameHandlerWrapper<GenericGameHandler> genericGameHandlerWrapper) {
+        write(genericGameHandlerWrapper, ANY_VERSION);
+    }
+
+    @Override
+    public boolean compareAndSet(TrackedGameHandlerWrapper trackedGameHandlerWrapper, long expectedVersion) {
+        return write(trackedGameHandlerWrapper, expectedVersion);
+    }
+
+    @SuppressWarnings("unchecked")
+    private boolean write(GenericGameHandlerWrapper<GenericGameHandler> genericGameHandlerWrapper, long expectedVersion) {
+        String id = genericGameHandlerWrapper.getId();
+        GameIndexEntry indexEntry = GameIndexEntry.of(genericGameHandlerWrapper);
+        String playerIds = String.join(",", indexEntry.getPlayerIds());
+
+        List<byte[]> result = redisTemplate.execute(WRITE_SCRIPT,
+                List.of(getKey(id), getIndexEntryKey(id)),
+                toBytes(Long.toString(expectedVersion)),
+                encode(genericGameHandlerWrapper),
+                toBytes(Integer.toString(GameStateCodec.GAME_VERSION_OFFSET)),
+                toBytes(playerIds),
+                toBytes(indexEntry.getGameState().name()));
+
+        if (result == null || result.isEmpty()) {
+            return false;
+        }
+
+        long version = Long.parseLong(asString(result.get(0)));
+
+        if (version == VERSION_CONFLICT) {
+            return false;
+        }
+
+        updateIndexes(id, asString(result.get(1)), asString(result.get(2)), indexEntry);
+
+        if (genericGameHandlerWrapper instanceof TrackedGameHandlerWrapper) {
+            ((TrackedGameHandlerWrapper) genericGameHandlerWrapper).setVersion(version);
+        }
+
+        return true;
+    }
+
+    /**
+     * Remove the game from the sets it left and add it to its current sets, in one round trip; the current sets are
+     * always written, to repair the sets missed by an interrupted write.
+     */
+    private void updateIndexes(String id, String previousPlayerIds, String previousState, GameIndexEntry indexEntry) {
+        byte[] member = toBytes(id);
+        String state = indexEntry.getGameState().name();
+
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (String playerId : StringUtils.split(previousPlayerIds, ',')) {
+                if (!indexEntry.getPlayerIds().contains(playerId)) {
+                    connection.sRem(toBytes(PLAYER_INDEX_KEY_PREFIX + playerId), member);
+                }
+            }
+
+            for (String playerId : indexEntry.getPlayerIds()) {
+                connection.sAdd(toBytes(PLAYER_INDEX_KEY_PREFIX + playerId), member);
+            }
+
+            if (StringUtils.isNotEmpty(previousState) && !previousState.equals(state)) {
+                connection.sRem(toBytes(STATE_INDEX_KEY_PREFIX + previousState), member);
+            }
+
+            connection.sAdd(toBytes(STATE_INDEX_KEY_PREFIX + state), member);
+            connection.zAdd(toBytes(GAMES_INDEX_KEY), 0, member);
+
+            if (indexEntry.isOpen()) {
+                connection.sAdd(toBytes(OPEN_INDEX_KEY), member);
+            } else {
+                connection.sRem(toBytes(OPEN_INDEX_KEY), member);
+            }
+
+            return null;
+        });
+    }
+
+    @Override
+    public void add(String id, GenericGameHandler genericGameHandler) {
+        add(new GenericGameHandlerWrapper<>(id, genericGameHandler));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void delete(String id) {
+        List<byte[]> previous = redisTemplate.execute(DELETE_SCRIPT, List.of(getKey(id), getIndexEntryKey(id)));
+
+        if (previous == null || previous.size() < 2) {
+            return;
+        }
+
+        byte[] member = toBytes(id);
+        String previousState = asString(previous.get(1));
+
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (String playerId : StringUtils.split(asString(previous.get(0)), ',')) {
+                connection.sRem(toBytes(PLAYER_INDEX_KEY_PREFIX + playerId), member);
+            }
+
+            if (StringUtils.isNotEmpty(previousState)) {
+                connection.sRem(toBytes(STATE_INDEX_KEY_PREFIX + previousState), member);
+            }
+
+            connection.sRem(toBytes(OPEN_INDEX_KEY), member);
+            connection.zRem(toBytes(GAMES_INDEX_KEY), member);
+            return null;
+        });
+    }
+
+    @Override
+    public Set<String> getGamesOfPlayer(String playerId) {
+        return getMembers(PLAYER_INDEX_KEY_PREFIX + playerId);
+    }
+
+    @Override
+    public Set<String> getOpenGames() {
+        return getMembers(OPEN_INDEX_KEY);
+    }
+
+    @Override
+    public Set<String> getGamesByState(GameState gameState) {
+        return getMembers(STATE_INDEX_KEY_PREFIX + gameState.name());
+    }
+
+    private Set<String> getMembers(String key) {
+        Set<byte[]> members = redisTemplate.opsForSet().members(key);
+
+        if (members == null || members.isEmpty()) {
+            return Collections.emptySet();
+        }
+
+        Set<String> values = new HashSet<>(members.size());
+
+        for (byte[] member : members) {
+            values.add(new String(member, StandardCharsets.UTF_8));
+        }
+
+        return values;
+    }
+
+    @Override
+    public GenericGameHandlerWrapper<GenericGameHandler> get(String id) {
+        return decode(redisTemplate.opsForValue().get(getKey(id)));
+    }
+
+    /**
+     * The games are listed in the order of their ids, from the sorted set of the games; the cursor is the id of the last
+     * game of the previous page, so a cursor can be used again and the games present during the whole listing are
+     * listed once. The values of a page are read with one MGET.
+     */
+    @Override
+    public GamePage<GenericGameHandlerWrapper<GenericGameHandler>> getPage(String cursor, int pageSize) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("The page size must be positive");
+        }
+
+        RedisZSetCommands.Range range = cursor == null ? RedisZSetCommands.Range.unbounded() : RedisZSetCommands.Range.range().gt(cursor);
+        RedisZSetCommands.Limit limit = RedisZSetCommands.Limit.limit().count(pageSize + 1);
+
+        Set<byte[]> members = redisTemplate.execute((RedisCallback<Set<byte[]>>) connection ->
+                connection.zRangeByLex(toBytes(GAMES_INDEX_KEY), range, limit));
+
+        if (members == null || members.isEmpty()) {
+            return new GamePage<>(Collections.emptyList(), null);
+        }
+
+        List<String> ids = new ArrayList<>(Math.min(members.size(), pageSize));
+
+        for (byte[] member : members) {
+            if (ids.size() == pageSize) {
+                break;
+            }
+
+            ids.add(asString(member));
+        }
+
+        List<GenericGameHandlerWrapper<GenericGameHandler>> values = new ArrayList<>(ids.size());
+        List<String> keys = new ArrayList<>(ids.size());
+
+        for (String id : ids) {
+            keys.add(getKey(id));
+        }
+
+        List<byte[]> encodedValues = redisTemplate.opsForValue().multiGet(keys);
+
+        if (encodedValues != null) {
+            for (byte[] value : encodedValues) {
+                GenericGameHandlerWrapper<GenericGameHandler> wrapper = decode(value);
+
+                if (wrapper != null) { // Deleted since the read of the ids
+                    values.add(wrapper);
+                }
+            }
+        }
+
+        String nextCursor = members.size() > pageSize ? ids.get(ids.size() - 1) : null;
+        return new GamePage<>(values, nextCursor);
+    }
+
+    @Override
+    public List<GenericGameHandlerWrapper<GenericGameHandler>> getAll() {
+        List<GenericGameHandlerWrapper<GenericGameHandler>> values = new ArrayList<>();
+        String cursor = null;
+
+        do {
+            GamePage<GenericGameHandlerWrapper<GenericGameHandler>> page = getPage(cursor, BATCH_SIZE);
+            values.addAll(page.getValues());
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+
+        return values;
+    }
+
+    private byte[] encode(GenericGameHandlerWrapper<GenericGameHandler> genericGameHandlerWrapper) {
+        try {
+            return gameStateCodec.encode(genericGameHandlerWrapper);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to encode the game " + genericGameHandlerWrapper.getId(), e);
+        }
+    }
+
+    private GenericGameHandlerWrapper<GenericGameHandler> decode(byte[] value) {
+        if (value == null) {
+            return null;
+        }
+
+        try {
+            return gameStateCodec.decode(value);
+        } catch (IOException e) {
+            LOGGER.error("Unable to decode a game", e);
+            return null;
+        }
+    }
+
+    private static byte[] toBytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String asString(byte[] value) {
+        return value == null ? "" : new String(value, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The id is a hash tag, so the game and its index entry are in the same slot of a Redis cluster.
+     */
+    private static String getKey(String id) {
+        return KEY_PREFIX + "{" + id + "}";
+    }
+
+    private static String getIndexEntryKey(String id) {
+        return INDEX_ENTRY_KEY_PREFIX + "{" + id + "}";
+    }
+}
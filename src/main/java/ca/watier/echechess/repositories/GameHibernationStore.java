@@ -0,0 +1,115 @@
+/*
+ *    Copyright 2014 - 2021 Yannick Watier
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.watier.echechess.repositories;
+
+import ca.watier.echechess.communication.redis.model.GenericGameHandlerWrapper;
+import ca.watier.echechess.engine.engines.GenericGameHandler;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Keep the idle games on the local disk, one file per game, encoded with the {@link GameStateCodec}.
+ */
+public class GameHibernationStore {
+    private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(GameHibernationStore.class);
+    private static final String FILE_EXTENSION = ".game";
+    private static final String TEMPORARY_FILE_EXTENSION = ".tmp";
+
+    private final Path directory;
+    private final GameStateCodec gameStateCodec;
+
+    public GameHibernationStore(Path directory, GameStateCodec gameStateCodec) {
+        this.directory = directory;
+        this.gameStateCodec = gameStateCodec;
+
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to create the hibernation directory " + directory, e);
+        }
+    }
+
+    /**
+     * Write the game on the disk; the file is written in a temporary file and then moved, to never leave a partial
+     * game behind.
+     */
+    public void write(String id, GenericGameHandlerWrapper<GenericGameHandler> genericGameHandlerWrapper) throws IOException {
+        Path file = getFile(id);
+        Path temporaryFile = directory.resolve(id + TEMPORARY_FILE_EXTENSION);
+
+        Files.write(temporaryFile, gameStateCodec.encode(genericGameHandlerWrapper));
+        Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return The game, or null if the game is not hibernated
+     */
+    public GenericGameHandlerWrapper<GenericGameHandler> read(String id) {
+        if (isNotValidId(id)) {
+            return null;
+        }
+
+        Path file = getFile(id);
+
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+
+        try {
+            return gameStateCodec.decode(Files.readAllBytes(file));
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error("Unable to read the hibernated game {}", id, e);
+            return null;
+        }
+    }
+
+    public boolean exists(String id) {
+        return !isNotValidId(id) && Files.isRegularFile(getFile(id));
+    }
+
+    public void delete(String id) {
+        if (isNotValidId(id)) {
+            return;
+        }
+
+        try {
+            Files.deleteIfExists(getFile(id));
+        } catch (IOException e) {
+            LOGGER.warn("Unable to delete the hibernated game {}", id, e);
+        }
+    }
+
+    private Path getFile(String id) {
+        if (isNotValidId(id)) {
+            throw new IllegalArgumentException("Invalid game id");
+        }
+
+        return directory.resolve(id + FILE_EXTENSION);
+    }
+
+    /**
+     * The id is used as a file name; make sure it cannot escape the directory
+     */
+    private boolean isNotValidId(String id) {
+        return id == null || id.isBlank() || id.contains("/") || id.contains("\\") || id.contains("..");
+    }
+}
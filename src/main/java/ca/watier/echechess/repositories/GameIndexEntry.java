@@ -0,0 +1,99 @@
+/*
+ *    Copyright 2014 - 2021 Yannick Watier
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ca.watier.echechess.repositories;
+
+import ca.watier.echechess.common.sessions.Player;
+import ca.watier.echechess.communication.redis.model.GenericGameHandlerWrapper;
+import ca.watier.echechess.engine.engines.GenericGameHandler;
+import ca.watier.echechess.models.GameState;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * The values of a game in the secondary indexes, computed when the game is written; also used by the readers to
+ * check the games listed by an index.
+ */
+public final class GameIndexEntry {
+    private final Set<String> playerIds;
+    private final boolean isOpen;
+    private final GameState gameState;
+
+    private GameIndexEntry(Set<String> playerIds, boolean isOpen, GameState gameState) {
+        this.playerIds = playerIds;
+        this.isOpen = isOpen;
+        this.gameState = gameState;
+    }
+
+    public static GameIndexEntry of(GenericGameHandlerWrapper<GenericGameHandler> genericGameHandlerWrapper) {
+        GenericGameHandler genericGameHandler = genericGameHandlerWrapper.getGenericGameHandler();
+        Player playerWhite = genericGameHandler.getPlayerWhite();
+        Player playerBlack = genericGameHandler.getPlayerBlack();
+        List<Player> observers = genericGameHandler.getPlayerHandler().getObserverList();
+        GameState gameState = GameState.from(genericGameHandler);
+
+        Set<String> playerIds = new HashSet<>();
+        addPlayer(playerIds, playerWhite);
+        addPlayer(playerIds, playerBlack);
+
+        if (observers != null) {
+            for (Player observer : observers) {
+                addPlayer(playerIds, observer);
+            }
+        }
+
+        boolean isOpen = genericGameHandler.isAllowOtherToJoin() &&
+                (playerWhite == null || playerBlack == null) &&
+                gameState != GameState.ENDED;
+
+        return new GameIndexEntry(playerIds, isOpen, gameState);
+    }
+
+    private static void addPlayer(Set<String> playerIds, Player player) {
+        if (player != null && player.getId() != null) {
+            playerIds.add(player.getId());
+        }
+    }
+
+    public Set<String> getPlayerIds() {
+        return playerIds;
+    }
+
+    public boolean isOpen() {
+        return isOpen;
+    }
+
+    public GameState getGameState() {
+        return gameState;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        GameIndexEntry that = (GameIndexEntry) o;
+        return isOpen == that.isOpen &&
+                Objects.equals(playerIds, that.playerIds) &&
+                gameState == that.gameState;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(playerIds, isOpen, gameState);
+    }
+}
@@ -0,0 +1,312 @@
+/*
+ *    Copyright 2014 - 2021 Yannick Watier
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.watier.echechess.repositories;
+
+import ca.watier.echechess.common.enums.CasePosition;
+import ca.watier.echechess.common.enums.Pieces;
+import ca.watier.echechess.common.enums.Side;
+import ca.watier.echechess.common.sessions.Player;
+import ca.watier.echechess.communication.redis.model.GenericGameHandlerWrapper;
+import ca.watier.echechess.engine.delegates.PieceMoveConstraintDelegate;
+import ca.watier.echechess.engine.engines.GenericGameHandler;
+import ca.watier.echechess.engine.exceptions.FenParserException;
+import ca.watier.echechess.engine.utils.FenGameParser;
+import ca.watier.echechess.models.TrackedGameHandlerWrapper;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Compact binary form of the games.
+ * <p>
+ * Layout:
+ * <pre>
+ * magic (2 bytes) | version (1 byte) | encoding (1 byte) | game version (8 bytes) | id (utf)
+ * MOVES encoding:
+ *   flags (1 byte): allow other to join, allow observers
+ *   initial position (utf, FEN pattern, empty for a standard game)
+ *   moves: count (varint), 2 bytes per move (see {@link TrackedGameHandlerWrapper})
+ *   players: presence (1 byte, white then black), the white and black players, observers count (varint), observers
+ *   player: id (utf), created games count (varint), created games, joined games count (varint), joined games
+ * SERIALIZED encoding:
+ *   the java serialized wrapper, used for the games that were not created with their moves tracked
+ * </pre>
+ * The engine does not expose its state (castling rights, en passant, pawns that already moved, score, etc.), so only
+ * the moves are stored, and the game is decoded by replaying them on the initial position; the engine rebuilds the
+ * whole state, as when the moves were first played. The game version is at a fixed offset
+ * ({@link #GAME_VERSION_OFFSET}), so it can be checked by a Redis script without decoding the game.
+ * <p>
+ * The values of the earlier versions of the format are not decoded.
+ */
+public class GameStateCodec {
+    public static final byte VERSION = 4;
+    public static final int GAME_VERSION_OFFSET = 4;
+    public static final byte MOVES_ENCODING = 0;
+    public static final byte SERIALIZED_ENCODING = 1;
+
+    private static final byte FIRST_MAGIC_BYTE = 'E';
+    private static final byte SECOND_MAGIC_BYTE = 'G';
+    private static final int HAS_WHITE_PLAYER = 1;
+    private static final int HAS_BLACK_PLAYER = 1 << 1;
+    private static final int ALLOW_OTHER_TO_JOIN = 1;
+    private static final int ALLOW_OBSERVERS = 1 << 1;
+
+    private final PieceMoveConstraintDelegate pieceMoveConstraintDelegate;
+
+    public GameStateCodec(PieceMoveConstraintDelegate pieceMoveConstraintDelegate) {
+        this.pieceMoveConstraintDelegate = pieceMoveConstraintDelegate;
+    }
+
+    public byte[] encode(GenericGameHandlerWrapper<GenericGameHandler> genericGameHandlerWrapper) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(256);
+        DataOutputStream dataOutputStream = new DataOutputStream(outputStream);
+
+        dataOutputStream.writeByte(FIRST_MAGIC_BYTE);
+        dataOutputStream.writeByte(SECOND_MAGIC_BYTE);
+        dataOutputStream.writeByte(VERSION);
+
+        if (genericGameHandlerWrapper instanceof TrackedGameHandlerWrapper) {
+            TrackedGameHandlerWrapper trackedGameHandlerWrapper = (TrackedGameHandlerWrapper) genericGameHandlerWrapper;
+            dataOutputStream.writeByte(MOVES_ENCODING);
+            dataOutputStream.writeLong(trackedGameHandlerWrapper.getVersion());
+            dataOutputStream.writeUTF(genericGameHandlerWrapper.getId());
+            writeMoves(dataOutputStream, trackedGameHandlerWrapper);
+        } else {
+            dataOutputStream.writeByte(SERIALIZED_ENCODING);
+            dataOutputStream.writeLong(0);
+            dataOutputStream.writeUTF(genericGameHandlerWrapper.getId());
+            writeObject(dataOutputStream, genericGameHandlerWrapper);
+        }
+
+        dataOutputStream.flush();
+        return outputStream.toByteArray();
+    }
+
+    @SuppressWarnings("unchecked")
+    public GenericGameHandlerWrapper<GenericGameHandler> decode(byte[] values) throws IOException {
+        DataInputStream inputStream = new DataInputStream(new ByteArrayInputStream(values));
+
+        if (inputStream.readByte() != FIRST_MAGIC_BYTE || inputStream.readByte() != SECOND_MAGIC_BYTE) {
+            throw new IOException("Not an encoded game");
+        }
+
+        byte version = inputStream.readByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported game version " + version);
+        }
+
+        byte encoding = inputStream.readByte();
+        long gameVersion = inputStream.readLong();
+        String id = inputStream.readUTF();
+
+        return switch (encoding) {
+            case MOVES_ENCODING -> {
+                TrackedGameHandlerWrapper trackedGameHandlerWrapper = readMoves(inputStream, id);
+                trackedGameHandlerWrapper.setVersion(gameVersion);
+                yield trackedGameHandlerWrapper;
+            }
+            case SERIALIZED_ENCODING -> (GenericGameHandlerWrapper<GenericGameHandler>) readObject(inputStream.readNBytes(inputStream.readInt()));
+            default -> throw new IOException("Unknown game encoding " + encoding);
+        };
+    }
+
+    private static void writeMoves(DataOutputStream outputStream, TrackedGameHandlerWrapper wrapper) throws IOException {
+        GenericGameHandler genericGameHandler = wrapper.getGenericGameHandler();
+        short[] moves = wrapper.getMoves();
+
+        int flags = 0;
+        if (genericGameHandler.isAllowOtherToJoin()) {
+            flags |= ALLOW_OTHER_TO_JOIN;
+        }
+        if (genericGameHandler.isAllowObservers()) {
+            flags |= ALLOW_OBSERVERS;
+        }
+
+        outputStream.writeByte(flags);
+        outputStream.writeUTF(StringUtils.defaultString(wrapper.getInitialPosition()));
+
+        writeVarInt(outputStream, moves.length);
+        for (short move : moves) {
+            outputStream.writeShort(move);
+        }
+
+        Player white = genericGameHandler.getPlayerWhite();
+        Player black = genericGameHandler.getPlayerBlack();
+        outputStream.writeByte((white == null ? 0 : HAS_WHITE_PLAYER) | (black == null ? 0 : HAS_BLACK_PLAYER));
+
+        if (white != null) {
+            writePlayer(outputStream, white);
+        }
+        if (black != null) {
+            writePlayer(outputStream, black);
+        }
+
+        List<Player> observers = genericGameHandler.getPlayerHandler().getObserverList();
+        List<Player> observerList = observers == null ? List.of() : new ArrayList<>(observers);
+        writeVarInt(outputStream, observerList.size());
+        for (Player observer : observerList) {
+            writePlayer(outputStream, observer);
+        }
+    }
+
+    private TrackedGameHandlerWrapper readMoves(DataInputStream inputStream, String id) throws IOException {
+        int flags = inputStream.readUnsignedByte();
+        String initialPosition = inputStream.readUTF();
+
+        int numberOfMoves = readVarInt(inputStream);
+        short[] moves = new short[Math.max(16, numberOfMoves)];
+        for (int i = 0; i < numberOfMoves; i++) {
+            moves[i] = inputStream.readShort();
+        }
+
+        GenericGameHandler genericGameHandler = newGameHandler(initialPosition);
+        genericGameHandler.setUuid(id);
+        genericGameHandler.setAllowOtherToJoin((flags & ALLOW_OTHER_TO_JOIN) != 0);
+        genericGameHandler.setAllowObservers((flags & ALLOW_OBSERVERS) != 0);
+
+        for (int i = 0; i < numberOfMoves; i++) {
+            replayMove(genericGameHandler, moves[i]);
+        }
+
+        int players = inputStream.readUnsignedByte();
+        if ((players & HAS_WHITE_PLAYER) != 0) {
+            genericGameHandler.setPlayerToSide(readPlayer(inputStream), Side.WHITE);
+        }
+        if ((players & HAS_BLACK_PLAYER) != 0) {
+            genericGameHandler.setPlayerToSide(readPlayer(inputStream), Side.BLACK);
+        }
+
+        int numberOfObservers = readVarInt(inputStream);
+        for (int i = 0; i < numberOfObservers; i++) {
+            genericGameHandler.setPlayerToSide(readPlayer(inputStream), Side.OBSERVER);
+        }
+
+        return new TrackedGameHandlerWrapper(id, genericGameHandler, StringUtils.isEmpty(initialPosition) ? null : initialPosition, moves, numberOfMoves);
+    }
+
+    private GenericGameHandler newGameHandler(String initialPosition) throws IOException {
+        if (StringUtils.isBlank(initialPosition)) {
+            return GenericGameHandler.newStandardHandlerFromConstraintDelegate(pieceMoveConstraintDelegate);
+        }
+
+        try {
+            return FenGameParser.parse(initialPosition);
+        } catch (FenParserException e) {
+            throw new IOException("Invalid initial position", e);
+        }
+    }
+
+    private static void replayMove(GenericGameHandler genericGameHandler, short move) throws IOException {
+        CasePosition from = TrackedGameHandlerWrapper.getFrom(move);
+        CasePosition to = TrackedGameHandlerWrapper.getTo(move);
+        Pieces promotion = TrackedGameHandlerWrapper.getPromotion(move);
+        Pieces piece = genericGameHandler.getPiece(from);
+
+        if (piece == null) {
+            throw new IOException("No piece to replay the move " + from + " " + to);
+        }
+
+        Side side = piece.getSide();
+        genericGameHandler.movePiece(from, to, side);
+
+        if (promotion != null) {
+            genericGameHandler.upgradePiece(to, promotion, side);
+        }
+    }
+
+    private static void writePlayer(DataOutputStream outputStream, Player player) throws IOException {
+        outputStream.writeUTF(player.getId());
+        writeUuids(outputStream, player.getCreatedGameList());
+        writeUuids(outputStream, player.getJoinedGameList());
+    }
+
+    private static Player readPlayer(DataInputStream inputStream) throws IOException {
+        Player player = new Player(inputStream.readUTF());
+
+        int numberOfCreatedGames = readVarInt(inputStream);
+        for (int i = 0; i < numberOfCreatedGames; i++) {
+            player.addCreatedGame(readUuid(inputStream));
+        }
+
+        int numberOfJoinedGames = readVarInt(inputStream);
+        for (int i = 0; i < numberOfJoinedGames; i++) {
+            player.addJoinedGame(readUuid(inputStream));
+        }
+
+        return player;
+    }
+
+    private static void writeUuids(DataOutputStream outputStream, Collection<UUID> uuids) throws IOException {
+        List<UUID> values = uuids == null ? List.of() : new ArrayList<>(uuids);
+        writeVarInt(outputStream, values.size());
+
+        for (UUID uuid : values) {
+            outputStream.writeLong(uuid.getMostSignificantBits());
+            outputStream.writeLong(uuid.getLeastSignificantBits());
+        }
+    }
+
+    private static UUID readUuid(DataInputStream inputStream) throws IOException {
+        return new UUID(inputStream.readLong(), inputStream.readLong());
+    }
+
+    private static void writeObject(DataOutputStream outputStream, Object value) throws IOException {
+        ByteArrayOutputStream objectBytesOutputStream = new ByteArrayOutputStream(256);
+
+        try (ObjectOutputStream objectOutputStream = new ObjectOutputStream(objectBytesOutputStream)) {
+            objectOutputStream.writeObject(value);
+        }
+
+        outputStream.writeInt(objectBytesOutputStream.size());
+        objectBytesOutputStream.writeTo(outputStream);
+    }
+
+    private static Object readObject(byte[] value) throws IOException {
+        try (ObjectInputStream objectInputStream = new ObjectInputStream(new ByteArrayInputStream(value))) {
+            return objectInputStream.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Unable to read the serialized game", e);
+        }
+    }
+
+    private static void writeVarInt(DataOutputStream outputStream, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            outputStream.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+
+        outputStream.writeByte(value);
+    }
+
+    private static int readVarInt(DataInputStream inputStream) throws IOException {
+        int value = 0;
+        int shift = 0;
+        int current;
+
+        do {
+            current = inputStream.readUnsignedByte();
+            value |= (current & 0x7F) << shift;
+            shift += 7;
+        } while ((current & 0x80) != 0);
+
+        return value;
+    }
+}
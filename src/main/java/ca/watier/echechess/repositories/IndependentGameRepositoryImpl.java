@@ -16,16 +16,75 @@
 
 package ca.watier.echechess.repositories;
 
-import ca.watier.echechess.communication.redis.interfaces.GameRepository;
 import ca.watier.echechess.communication.redis.model.GenericGameHandlerWrapper;
 import ca.watier.echechess.engine.engines.GenericGameHandler;
+import ca.watier.echechess.interfaces.GameJournal;
+import ca.watier.echechess.interfaces.IndexedGameRepository;
+import ca.watier.echechess.models.GamePage;
+import ca.watier.echechess.models.GameState;
+import ca.watier.echechess.models.TrackedGameHandlerWrapper;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
 
-public class IndependentGameRepositoryImpl implements GameRepository<GenericGameHandler> {
+public class IndependentGameRepositoryImpl implements IndexedGameRepository {
     private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(IndependentGameRepositoryImpl.class);
-    private final Map<String, GenericGameHandlerWrapper<GenericGameHandler>> games = Collections.synchronizedMap(new HashMap<>(256));
+    private static final int DEFAULT_EXPECTED_NUMBER_OF_GAMES = 131_072;
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private final ConcurrentMap<String, GenericGameHandlerWrapper<GenericGameHandler>> games;
+    private final ConcurrentMap<String, Long> lastActivityByGame;
+    private final GameHibernationStore hibernationStore;
+    private final ConcurrentMap<String, GameIndexEntry> indexEntryByGame;
+    private final ConcurrentMap<String, Set<String>> gamesByPlayer = new ConcurrentHashMap<>();
+    private final Set<String> openGames = ConcurrentHashMap.newKeySet();
+    private final Map<GameState, Set<String>> gamesByState = new EnumMap<>(GameState.class);
+    private final NavigableSet<String> gameIds = new ConcurrentSkipListSet<>();
+    private volatile GameJournal gameJournal;
+
+    public IndependentGameRepositoryImpl() {
+        this(DEFAULT_EXPECTED_NUMBER_OF_GAMES);
+    }
+
+    /**
+     * @param expectedNumberOfGames - Used to size the store up front, to prevent the resize of the table when the
+     *                              number of live games grows.
+     */
+    public IndependentGameRepositoryImpl(int expectedNumberOfGames) {
+        this(expectedNumberOfGames, null);
+    }
+
+    /**
+     * @param expectedNumberOfGames - Used to size the store up front, to prevent the resize of the table when the
+     *                              number of live games grows.
+     * @param hibernationStore      - When set, the idle games can be moved out of the heap and are reloaded when
+     *                              fetched again; see {@link #hibernate(String, Duration)}.
+     */
+    public IndependentGameRepositoryImpl(int expectedNumberOfGames, GameHibernationStore hibernationStore) {
+        int concurrencyLevel = Runtime.getRuntime().availableProcessors();
+
+        this.games = new ConcurrentHashMap<>(expectedNumberOfGames, LOAD_FACTOR, concurrencyLevel);
+        this.lastActivityByGame = new ConcurrentHashMap<>(expectedNumberOfGames, LOAD_FACTOR, concurrencyLevel);
+        this.hibernationStore = hibernationStore;
+        this.indexEntryByGame = new ConcurrentHashMap<>(expectedNumberOfGames, LOAD_FACTOR, concurrencyLevel);
+
+        for (GameState gameState : GameState.values()) {
+            gamesByState.put(gameState, ConcurrentHashMap.newKeySet());
+        }
+    }
+
+    /**
+     * @param gameJournal - Journal of the deletions, hibernations and rehydrations, to drop the deleted and the
+     *                    hibernated games from the journal; set once the journal was replayed
+     */
+    public void setGameJournal(GameJournal gameJournal) {
+        this.gameJournal = gameJournal;
+    }
 
     @Override
     public void add(GenericGameHandlerWrapper<GenericGameHandler> genericGameHandlerWrapper) {
@@ -33,8 +92,58 @@ public class IndependentGameRepositoryImpl implements GameRepository<GenericGame
     }
 
     private void addGame(String id, GenericGameHandlerWrapper<GenericGameHandler> genericGameHandlerWrapper) {
-        LOGGER.info("Added new game with id {}", genericGameHandlerWrapper.getId());
-        games.put(id, genericGameHandlerWrapper);
+        LOGGER.debug("Added new game with id {}", genericGameHandlerWrapper.getId());
+        games.compute(id, (key, current) -> {
+            setNextVersion(genericGameHandlerWrapper, current);
+            index(key, genericGameHandlerWrapper);
+            recordActivity(key);
+            return genericGameHandlerWrapper;
+        });
+    }
+
+    /**
+     * The game needs to be in the heap; the hibernated games are loaded before being compared. The joins and the
+     * promotions are written here, outside of the thread owning the game; a refused write still counts as an activity
+     * of the game, since the caller retries it on the current state.
+     */
+    @Override
+    public boolean compareAndSet(TrackedGameHandlerWrapper trackedGameHandlerWrapper, long expectedVersion) {
+        String id = trackedGameHandlerWrapper.getId();
+        boolean[] isSet = {false};
+
+        if (get(id) == null) {
+            return false;
+        }
+
+        games.computeIfPresent(id, (key, current) -> {
+            recordActivity(key);
+
+            if (TrackedGameHandlerWrapper.getVersion(current) != expectedVersion) {
+                return current;
+            }
+
+            setNextVersion(trackedGameHandlerWrapper, current);
+            index(key, trackedGameHandlerWrapper);
+            isSet[0] = true;
+            return trackedGameHandlerWrapper;
+        });
+
+        return isSet[0];
+    }
+
+    /**
+     * Needs to be called while holding the entry of the game in the store, so the activity can't be recorded between
+     * the idle check of {@link #hibernate(String, Duration)} and the removal of the game.
+     */
+    private void recordActivity(String id) {
+        lastActivityByGame.put(id, System.currentTimeMillis());
+    }
+
+    private static void setNextVersion(GenericGameHandlerWrapper<GenericGameHandler> wrapper, GenericGameHandlerWrapper<GenericGameHandler> current) {
+        if (wrapper instanceof TrackedGameHandlerWrapper) {
+            long version = Math.max(TrackedGameHandlerWrapper.getVersion(current), TrackedGameHandlerWrapper.getVersion(wrapper));
+            ((TrackedGameHandlerWrapper) wrapper).setVersion(version + 1);
+        }
     }
 
     @Override
@@ -42,18 +151,338 @@ public class IndependentGameRepositoryImpl implements GameRepository<GenericGame
         addGame(id, new GenericGameHandlerWrapper<>(genericGameHandler));
     }
 
+    /**
+     * Update the indexes of the game; needs to be called while holding the entry of the game in the store, so the
+     * updates of a game are applied in order.
+     */
+    private void index(String id, GenericGameHandlerWrapper<GenericGameHandler> genericGameHandlerWrapper) {
+        GameIndexEntry indexEntry = GameIndexEntry.of(genericGameHandlerWrapper);
+        GameIndexEntry previousIndexEntry = indexEntryByGame.put(id, indexEntry);
+
+        if (previousIndexEntry == null) {
+            gameIds.add(id);
+        }
+
+        if (indexEntry.equals(previousIndexEntry)) {
+            return;
+        }
+
+        Set<String> previousPlayerIds = previousIndexEntry == null ? Collections.emptySet() : previousIndexEntry.getPlayerIds();
+
+        for (String playerId : previousPlayerIds) {
+            if (!indexEntry.getPlayerIds().contains(playerId)) {
+                removeGameOfPlayer(playerId, id);
+            }
+        }
+
+        for (String playerId : indexEntry.getPlayerIds()) {
+            if (!previousPlayerIds.contains(playerId)) {
+                gamesByPlayer.compute(playerId, (key, gameIds) -> {
+                    Set<String> values = gameIds == null ? ConcurrentHashMap.newKeySet() : gameIds;
+                    values.add(id);
+                    return values;
+                });
+            }
+        }
+
+        if (indexEntry.isOpen()) {
+            openGames.add(id);
+        } else {
+            openGames.remove(id);
+        }
+
+        if (previousIndexEntry != null && previousIndexEntry.getGameState() != indexEntry.getGameState()) {
+            gamesByState.get(previousIndexEntry.getGameState()).remove(id);
+        }
+
+        gamesByState.get(indexEntry.getGameState()).add(id);
+    }
+
+    private void unindex(String id, GameIndexEntry indexEntry) {
+        if (indexEntry == null) {
+            return;
+        }
+
+        gameIds.remove(id);
+
+        for (String playerId : indexEntry.getPlayerIds()) {
+            removeGameOfPlayer(playerId, id);
+        }
+
+        openGames.remove(id);
+        gamesByState.get(indexEntry.getGameState()).remove(id);
+    }
+
+    private void removeGameOfPlayer(String playerId, String id) {
+        gamesByPlayer.computeIfPresent(playerId, (key, gameIds) -> {
+            gameIds.remove(id);
+            return gameIds.isEmpty() ? null : gameIds;
+        });
+    }
+
+    @Override
+    public Set<String> getGamesOfPlayer(String playerId) {
+        Set<String> gameIds = gamesByPlayer.get(playerId);
+        return gameIds == null ? Collections.emptySet() : Set.copyOf(gameIds);
+    }
+
+    @Override
+    public Set<String> getOpenGames() {
+        return Set.copyOf(openGames);
+    }
+
+    @Override
+    public Set<String> getGamesByState(GameState gameState) {
+        return Set.copyOf(gamesByState.get(gameState));
+    }
+
+    /**
+     * The hibernated games are kept in the indexes.
+     */
     @Override
     public void delete(String id) {
-        games.remove(id);
+        games.compute(id, (key, current) -> {
+            unindex(key, indexEntryByGame.remove(key));
+            return null;
+        });
+        lastActivityByGame.remove(id);
+
+        if (hibernationStore != null) {
+            hibernationStore.delete(id);
+        }
+
+        UUID uuid = getJournaledUuid(id);
+        if (uuid != null) {
+            gameJournal.recordDeletion(uuid);
+        }
     }
 
+    /**
+     * @return The uuid of the game, null when the game is not journaled
+     */
+    private UUID getJournaledUuid(String id) {
+        if (gameJournal == null) {
+            return null;
+        }
+
+        try {
+            return UUID.fromString(id);
+        } catch (IllegalArgumentException e) {
+            LOGGER.debug("The game id {} is not an uuid, the game is not journaled", id);
+            return null;
+        }
+    }
+
+    /**
+     * Get the game; when the game was hibernated, the game is read from the disk and put back in the store. The file
+     * is read outside the entry of the game, to not block the other games of the bin during the read.
+     */
     @Override
     public GenericGameHandlerWrapper<GenericGameHandler> get(String id) {
-        return games.get(id);
+        if (id == null) {
+            return null;
+        }
+
+        GenericGameHandlerWrapper<GenericGameHandler> wrapper = games.get(id);
+
+        if (wrapper != null || hibernationStore == null) {
+            return wrapper;
+        }
+
+        return rehydrate(id);
+    }
+
+    private GenericGameHandlerWrapper<GenericGameHandler> rehydrate(String id) {
+        GenericGameHandlerWrapper<GenericGameHandler> wrapper = hibernationStore.read(id);
+
+        if (wrapper == null) {
+            return games.get(id); // Not hibernated, or already rehydrated by another thread
+        }
+
+        GenericGameHandlerWrapper<GenericGameHandler> current = games.putIfAbsent(id, wrapper);
+
+        if (current != null) {
+            return current;
+        }
+
+        LOGGER.info("Rehydrated the game with id {}", id);
+        lastActivityByGame.put(id, System.currentTimeMillis());
+
+        UUID uuid = getJournaledUuid(id);
+        if (uuid != null) {
+            gameJournal.recordState(uuid, wrapper); // The records of the game were dropped with its hibernation
+        }
+
+        hibernationStore.delete(id);
+
+        return wrapper;
     }
 
+    /**
+     * Remove the game from the memory when it is in the hibernation store, without writing it; used to replay the
+     * hibernations of the journal, the game rebuilt from the previous records being the one hibernated.
+     *
+     * @return true if the game was removed from the memory
+     */
+    public boolean unload(String id) {
+        if (hibernationStore == null || !hibernationStore.exists(id)) {
+            return false;
+        }
+
+        games.computeIfPresent(id, (key, current) -> {
+            lastActivityByGame.remove(key);
+            return null;
+        });
+
+        return true;
+    }
+
+    /**
+     * @param maxIdleTime - The time without activity (any write or refused compare-and-set: creation, join, move,
+     *                    promotion) after which a game is considered idle
+     * @return The ids of the games in the heap that are idle, or ended; the ended games are hibernated without
+     * waiting, to drop their records from the journal
+     */
+    public List<String> getIdleGames(Duration maxIdleTime) {
+        List<String> values = new ArrayList<>();
+        long limit = System.currentTimeMillis() - maxIdleTime.toMillis();
+
+        for (Map.Entry<String, Long> entry : lastActivityByGame.entrySet()) {
+            if (entry.getValue() <= limit || isEnded(entry.getKey())) {
+                values.add(entry.getKey());
+            }
+        }
+
+        return values;
+    }
+
+    /**
+     * Write the game to the disk and remove it from the heap, if the game is still idle. This needs to be called by
+     * the thread owning the game (see {@link ca.watier.echechess.interfaces.GameCommandExecutor}), to make sure the
+     * moves are not applied while the game is being written.
+     * <p>
+     * The file is written outside the entry of the game; the game is then removed only when it was not written or
+     * touched since, otherwise the file is deleted and the game is kept. The joins and the promotions, written with
+     * {@link #compareAndSet} from other threads, are caught by this check.
+     * <p>
+     * The hibernation is journaled before the game is removed, so it is always journaled before the state recorded
+     * when the game is loaded again; when the game is kept, its state is journaled after the hibernation.
+     *
+     * @param maxIdleTime - The time without activity after which a game is hibernated; the ended games are always
+     *                    hibernated
+     * @return true if the game was hibernated
+     */
+    public boolean hibernate(String id, Duration maxIdleTime) {
+        if (hibernationStore == null) {
+            return false;
+        }
+
+        long limit = System.currentTimeMillis() - maxIdleTime.toMillis();
+        GenericGameHandlerWrapper<GenericGameHandler> wrapper = games.get(id);
+
+        if (wrapper == null || isActive(id, limit)) {
+            return false;
+        }
+
+        long version = TrackedGameHandlerWrapper.getVersion(wrapper);
+
+        try {
+            hibernationStore.write(id, wrapper);
+        } catch (IOException e) {
+            LOGGER.error("Unable to hibernate the game {}", id, e);
+            return false;
+        }
+
+        UUID uuid = getJournaledUuid(id);
+        if (uuid != null) {
+            gameJournal.recordHibernation(uuid);
+        }
+
+        boolean[] isHibernated = {false};
+        List<GenericGameHandlerWrapper<GenericGameHandler>> keptWrapper = new ArrayList<>(1);
+
+        games.computeIfPresent(id, (key, current) -> {
+            if (current != wrapper || TrackedGameHandlerWrapper.getVersion(current) != version || isActive(key, limit)) {
+                keptWrapper.add(current); // Activity since the selection
+                return current;
+            }
+
+            lastActivityByGame.remove(key);
+            isHibernated[0] = true;
+            return null;
+        });
+
+        if (!isHibernated[0]) {
+            hibernationStore.delete(id);
+
+            if (uuid != null && !keptWrapper.isEmpty()) {
+                gameJournal.recordState(uuid, keptWrapper.get(0));
+            }
+        }
+
+        return isHibernated[0];
+    }
+
+    private boolean isActive(String id, long limit) {
+        Long lastActivity = lastActivityByGame.get(id);
+        return lastActivity != null && lastActivity > limit && !isEnded(id);
+    }
+
+    private boolean isEnded(String id) {
+        GameIndexEntry indexEntry = indexEntryByGame.get(id);
+        return indexEntry != null && indexEntry.getGameState() == GameState.ENDED;
+    }
+
+    /**
+     * List the games in the order of their ids; the cursor is the id of the last game of the previous page, so a
+     * cursor can be used again and the listing holds no state. The games present during the whole listing are listed
+     * once, the games added or deleted meanwhile may or may not be listed. The hibernated games are read from the disk,
+     * without being put back in the heap.
+     */
+    @Override
+    public GamePage<GenericGameHandlerWrapper<GenericGameHandler>> getPage(String cursor, int pageSize) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("The page size must be positive");
+        }
+
+        Iterator<String> iterator = (cursor == null ? gameIds : gameIds.tailSet(cursor, false)).iterator();
+        List<GenericGameHandlerWrapper<GenericGameHandler>> values = new ArrayList<>(pageSize);
+        String lastId = null;
+
+        while (values.size() < pageSize && iterator.hasNext()) {
+            lastId = iterator.next();
+            GenericGameHandlerWrapper<GenericGameHandler> wrapper = games.get(lastId);
+
+            if (wrapper == null && hibernationStore != null) {
+                wrapper = hibernationStore.read(lastId);
+            }
+
+            if (wrapper != null) {
+                values.add(wrapper);
+            }
+        }
+
+        return new GamePage<>(values, iterator.hasNext() ? lastId : null);
+    }
+
+    /**
+     * Copy the games in a new list; prefer {@link #values()} when the games only need to be iterated.
+     */
     @Override
     public List<GenericGameHandlerWrapper<GenericGameHandler>> getAll() {
-        return new ArrayList<>(games.values());
+        return List.copyOf(games.values());
+    }
+
+    /**
+     * @return A read-only view of the games in the heap (the hibernated games are not included). The iteration is weakly consistent: it never throws a
+     * {@link java.util.ConcurrentModificationException}, doesn't lock the store and may or may not reflect the games
+     * added / removed after the creation of the iterator.
+     */
+    public Collection<GenericGameHandlerWrapper<GenericGameHandler>> values() {
+        return Collections.unmodifiableCollection(games.values());
+    }
+
+    public int size() {
+        return games.size();
     }
 }
@@ -0,0 +1,669 @@
+/*
+ *    Copyright 2014 - 2021 Yannick Watier
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.watier.echechess.repositories;
+
+import ca.watier.echechess.common.enums.CasePosition;
+import ca.watier.echechess.common.enums.Pieces;
+import ca.watier.echechess.common.enums.Side;
+import ca.watier.echechess.common.sessions.Player;
+import ca.watier.echechess.communication.redis.model.GenericGameHandlerWrapper;
+import ca.watier.echechess.engine.engines.GenericGameHandler;
+import ca.watier.echechess.interfaces.GameJournal;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of the changes applied on the games, used to rebuild the games after a restart.
+ * <p>
+ * The records are appended in memory-mapped segments of a fixed size; a new segment is mapped when the current one is
+ * full. The segments are forced to the disk by a background thread every flush interval (group commit), so an append
+ * only costs a copy in the mapped memory. The sealed segments are periodically compacted with the previous snapshot in
+ * a new snapshot, holding only the records of the live games since their last creation or state record; the deleted
+ * games, and the games written in the hibernation store since their last record, are dropped (their file is their
+ * state). The compaction streams the files twice, record by record: once to find the first record to keep of each
+ * game, once to copy the records kept; only a few bytes by live game are kept in memory.
+ * <p>
+ * Record layout: {@code [length (int)][crc32 of the body (int)][body]}, the body starting with the type of the record
+ * and the game uuid. The length is written last, a zero length marking the end of a segment. The body of a state
+ * record is the game encoded with the {@link GameStateCodec}.
+ */
+public class MappedGameJournal implements GameJournal {
+    private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(MappedGameJournal.class);
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_EXTENSION = ".log";
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_EXTENSION = ".snap";
+    private static final String TEMPORARY_FILE_EXTENSION = ".tmp";
+
+    private static final int MAGIC = 0x45434A4E;
+    private static final int VERSION = 1;
+    private static final int FILE_HEADER_LENGTH = 8;
+    private static final int RECORD_HEADER_LENGTH = 8;
+    private static final int BODY_HEADER_LENGTH = 17;
+    private static final int READ_BUFFER_SIZE = 65_536;
+
+    private static final byte CREATION = 1;
+    private static final byte MOVE = 2;
+    private static final byte PROMOTION = 3;
+    private static final byte JOIN = 4;
+    private static final byte DELETION = 5;
+    private static final byte STATE = 7;
+    private static final byte HIBERNATION = 8;
+
+    private static final CasePosition[] POSITIONS = CasePosition.values();
+    private static final Pieces[] PIECES = Pieces.values();
+
+    private final Path directory;
+    private final GameStateCodec gameStateCodec;
+    private final int segmentSize;
+    private final boolean isSyncOnAppend;
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private final ReentrantLock snapshotLock = new ReentrantLock();
+    private final Object durableMonitor = new Object();
+    private final ScheduledExecutorService scheduledExecutorService =
+            Executors.newScheduledThreadPool(2, new CustomizableThreadFactory("game-journal-"));
+
+    private volatile MappedByteBuffer activeSegment;
+    private volatile long activeSegmentNumber;
+    private volatile long appendedRecords;
+    private volatile long durableRecords;
+
+    /**
+     * @param directory        - The directory of the segments and snapshots
+     * @param gameStateCodec   - The codec of the games recorded with {@link #recordState}
+     * @param segmentSize      - The size of a segment, in bytes
+     * @param flushInterval    - The maximum time an appended record stays in the page cache before being forced
+     * @param snapshotInterval - The interval between the merge of the sealed segments in the snapshot
+     * @param isSyncOnAppend   - When true, the append waits for its group to be forced on the disk
+     */
+    public MappedGameJournal(Path directory, GameStateCodec gameStateCodec, int segmentSize, Duration flushInterval, Duration snapshotInterval, boolean isSyncOnAppend) {
+        this.directory = directory;
+        this.gameStateCodec = gameStateCodec;
+        this.segmentSize = segmentSize;
+        this.isSyncOnAppend = isSyncOnAppend;
+
+        try {
+            Files.createDirectories(directory);
+            long snapshotNumber = removeCompactedFiles();
+            List<Long> segments = listFileNumbers(SEGMENT_PREFIX, SEGMENT_EXTENSION);
+            long lastSegment = segments.isEmpty() ? snapshotNumber - 1 : segments.get(segments.size() - 1);
+
+            // Never append after a tail that may be torn, always start a new segment
+            openSegment(Math.max(lastSegment + 1, snapshotNumber));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to open the game journal in " + directory, e);
+        }
+
+        long flushIntervalInMillis = Math.max(1, flushInterval.toMillis());
+        long snapshotIntervalInMillis = Math.max(1, snapshotInterval.toMillis());
+        scheduledExecutorService.scheduleWithFixedDelay(this::flush, flushIntervalInMillis, flushIntervalInMillis, TimeUnit.MILLISECONDS);
+        scheduledExecutorService.scheduleWithFixedDelay(this::snapshot, snapshotIntervalInMillis, snapshotIntervalInMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void recordCreation(UUID uuid, String specialGamePieces, Side side, boolean againstComputer, boolean observers, Player player) {
+        try {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream(256);
+            DataOutputStream dataOutputStream = new DataOutputStream(outputStream);
+
+            writeBodyHeader(dataOutputStream, CREATION, uuid);
+            dataOutputStream.writeByte(side.getValue());
+            dataOutputStream.writeBoolean(againstComputer);
+            dataOutputStream.writeBoolean(observers);
+            dataOutputStream.writeUTF(specialGamePieces == null ? "" : specialGamePieces);
+            writePlayer(dataOutputStream, player);
+
+            append(outputStream.toByteArray());
+        } catch (IOException e) {
+            LOGGER.error("Unable to journal the creation of the game {}", uuid, e);
+        }
+    }
+
+    @Override
+    public void recordMove(UUID uuid, CasePosition from, CasePosition to, Side side) {
+        ByteBuffer body = newBody(MOVE, uuid, 3);
+        body.put((byte) from.ordinal());
+        body.put((byte) to.ordinal());
+        body.put(side.getValue());
+
+        append(body.array());
+    }
+
+    @Override
+    public void recordPromotion(UUID uuid, CasePosition to, Pieces pieces, Side side) {
+        ByteBuffer body = newBody(PROMOTION, uuid, 3);
+        body.put((byte) to.ordinal());
+        body.put((byte) pieces.ordinal());
+        body.put(side.getValue());
+
+        append(body.array());
+    }
+
+    @Override
+    public void recordJoin(UUID uuid, Side side, Player player) {
+        try {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream(256);
+            DataOutputStream dataOutputStream = new DataOutputStream(outputStream);
+
+            writeBodyHeader(dataOutputStream, JOIN, uuid);
+            dataOutputStream.writeByte(side.getValue());
+            writePlayer(dataOutputStream, player);
+
+            append(outputStream.toByteArray());
+        } catch (IOException e) {
+            LOGGER.error("Unable to journal the join of the game {}", uuid, e);
+        }
+    }
+
+    @Override
+    public void recordDeletion(UUID uuid) {
+        append(newBody(DELETION, uuid, 0).array());
+    }
+
+    @Override
+    public void recordState(UUID uuid, GenericGameHandlerWrapper<GenericGameHandler> genericGameHandlerWrapper) {
+        try {
+            byte[] state = gameStateCodec.encode(genericGameHandlerWrapper);
+            ByteBuffer body = newBody(STATE, uuid, state.length);
+            body.put(state);
+
+            append(body.array());
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error("Unable to journal the state of the game {}", uuid, e);
+        }
+    }
+
+    @Override
+    public void recordHibernation(UUID uuid) {
+        append(newBody(HIBERNATION, uuid, 0).array());
+    }
+
+    /**
+     * Replay the snapshot and the sealed segments (the ones written before this instance was opened) in the target.
+     * Meant to be called once, at startup.
+     */
+    public void replay(GameJournal target) {
+        snapshotLock.lock();
+        try {
+            long replayedRecords = 0;
+            List<Long> snapshots = listFileNumbers(SNAPSHOT_PREFIX, SNAPSHOT_EXTENSION);
+
+            if (!snapshots.isEmpty()) {
+                replayedRecords += replayFile(getSnapshotFile(snapshots.get(snapshots.size() - 1)), target);
+            }
+
+            for (Long segment : listFileNumbers(SEGMENT_PREFIX, SEGMENT_EXTENSION)) {
+                if (segment < activeSegmentNumber) {
+                    replayedRecords += replayFile(getSegmentFile(segment), target);
+                }
+            }
+
+            LOGGER.info("Replayed {} journal records", replayedRecords);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to replay the game journal", e);
+        } finally {
+            snapshotLock.unlock();
+        }
+    }
+
+    /**
+     * Compact the previous snapshot and the sealed segments in a new snapshot, then delete them. The files are
+     * streamed twice: the first pass finds the live games and the first record to keep of each one, the second pass
+     * copies the records kept, in their order.
+     */
+    public void snapshot() {
+        snapshotLock.lock();
+        try {
+            List<Long> sealedSegments = new ArrayList<>();
+            for (Long segment : listFileNumbers(SEGMENT_PREFIX, SEGMENT_EXTENSION)) {
+                if (segment < activeSegmentNumber) {
+                    sealedSegments.add(segment);
+                }
+            }
+
+            if (sealedSegments.isEmpty()) {
+                return;
+            }
+
+            List<Path> compactedFiles = new ArrayList<>();
+            List<Long> snapshots = listFileNumbers(SNAPSHOT_PREFIX, SNAPSHOT_EXTENSION);
+
+            if (!snapshots.isEmpty()) {
+                compactedFiles.add(getSnapshotFile(snapshots.get(snapshots.size() - 1)));
+            }
+
+            for (Long segment : sealedSegments) {
+                compactedFiles.add(getSegmentFile(segment));
+            }
+
+            long snapshotNumber = sealedSegments.get(sealedSegments.size() - 1) + 1;
+            Path snapshotFile = getSnapshotFile(snapshotNumber);
+            Path temporaryFile = directory.resolve(snapshotFile.getFileName() + TEMPORARY_FILE_EXTENSION);
+            Map<UUID, LiveGame> liveGames = new HashMap<>();
+            long[] recordNumber = {0};
+            long[] keptRecords = {0};
+
+            for (Path file : compactedFiles) {
+                readRecords(file, body -> track(body, ++recordNumber[0], liveGames));
+            }
+
+            recordNumber[0] = 0;
+
+            try (DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryFile)))) {
+                outputStream.writeInt(MAGIC);
+                outputStream.writeInt(VERSION);
+
+                for (Path file : compactedFiles) {
+                    readRecords(file, body -> {
+                        long currentRecordNumber = ++recordNumber[0];
+                        LiveGame liveGame = liveGames.get(getUuid(body));
+
+                        if (liveGame != null && liveGame.isKept(currentRecordNumber)) {
+                            writeRecord(outputStream, body);
+                            keptRecords[0]++;
+                        }
+                    });
+                }
+            }
+
+            try (FileChannel channel = FileChannel.open(temporaryFile, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+
+            Files.move(temporaryFile, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            removeCompactedFiles();
+
+            LOGGER.info("Compacted {} journal segments in the snapshot {} ({} records kept, {} games)",
+                    sealedSegments.size(), snapshotFile.getFileName(), keptRecords[0], liveGames.size());
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error("Unable to snapshot the game journal", e);
+        } finally {
+            snapshotLock.unlock();
+        }
+    }
+
+    public long getAppendedRecords() {
+        return appendedRecords;
+    }
+
+    public long getDurableRecords() {
+        return durableRecords;
+    }
+
+    public void close() {
+        scheduledExecutorService.shutdownNow();
+
+        appendLock.lock();
+        try {
+            activeSegment.force();
+            markDurable(appendedRecords);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    private void append(byte[] body) {
+        int recordLength = RECORD_HEADER_LENGTH + body.length;
+
+        if (recordLength > segmentSize - FILE_HEADER_LENGTH) {
+            LOGGER.error("The journal record ({} bytes) is larger than a segment", recordLength);
+            return;
+        }
+
+        CRC32 crc32 = new CRC32();
+        crc32.update(body, 0, body.length);
+
+        long recordNumber;
+        appendLock.lock();
+        try {
+            MappedByteBuffer segment = activeSegment;
+
+            if (segment.remaining() < recordLength) {
+                segment = rollSegment();
+            }
+
+            int start = segment.position();
+            segment.position(start + Integer.BYTES);
+            segment.putInt((int) crc32.getValue());
+            segment.put(body);
+            segment.putInt(start, body.length);
+
+            recordNumber = ++appendedRecords;
+        } catch (IOException e) {
+            LOGGER.error("Unable to map a new journal segment, the record is lost", e);
+            return;
+        } finally {
+            appendLock.unlock();
+        }
+
+        if (isSyncOnAppend) {
+            awaitDurable(recordNumber);
+        }
+    }
+
+    /**
+     * Must be called with the append lock held
+     */
+    private MappedByteBuffer rollSegment() throws IOException {
+        activeSegment.force();
+        openSegment(activeSegmentNumber + 1);
+        return activeSegment;
+    }
+
+    private void openSegment(long segmentNumber) throws IOException {
+        MappedByteBuffer segment;
+
+        try (FileChannel channel = FileChannel.open(getSegmentFile(segmentNumber),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+
+        segment.putInt(MAGIC);
+        segment.putInt(VERSION);
+
+        activeSegment = segment;
+        activeSegmentNumber = segmentNumber;
+    }
+
+    private void flush() {
+        long appended = appendedRecords;
+
+        if (appended == durableRecords) {
+            return;
+        }
+
+        // The previous segments are forced when rolled, only the active one can contain records that are not durable
+        activeSegment.force();
+        markDurable(appended);
+    }
+
+    private void markDurable(long recordNumber) {
+        synchronized (durableMonitor) {
+            if (recordNumber > durableRecords) {
+                durableRecords = recordNumber;
+            }
+
+            durableMonitor.notifyAll();
+        }
+    }
+
+    private void awaitDurable(long recordNumber) {
+        synchronized (durableMonitor) {
+            while (durableRecords < recordNumber) {
+                try {
+                    durableMonitor.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private long replayFile(Path file, GameJournal target) throws IOException {
+        long[] replayedRecords = {0};
+
+        readRecords(file, body -> {
+            try {
+                dispatch(body, target);
+                replayedRecords[0]++;
+            } catch (IOException | RuntimeException e) {
+                LOGGER.error("Unable to replay a record of {}", file.getFileName(), e);
+            }
+        });
+
+        return replayedRecords[0];
+    }
+
+    /**
+     * Read the records of the file, one at a time; stops at the end of the records, or at the first torn or corrupted
+     * record.
+     */
+    private void readRecords(Path file, RecordHandler recordHandler) throws IOException {
+        long remaining = Files.size(file);
+
+        try (DataInputStream inputStream = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), READ_BUFFER_SIZE))) {
+            if (remaining < FILE_HEADER_LENGTH || inputStream.readInt() != MAGIC || inputStream.readInt() != VERSION) {
+                LOGGER.warn("Ignoring the journal file {}, invalid header", file.getFileName());
+                return;
+            }
+
+            long position = FILE_HEADER_LENGTH;
+            remaining -= FILE_HEADER_LENGTH;
+
+            while (remaining >= RECORD_HEADER_LENGTH) {
+                int length = inputStream.readInt();
+                int crc = inputStream.readInt();
+                remaining -= RECORD_HEADER_LENGTH;
+
+                if (length <= 0) {
+                    return;
+                } else if (length > remaining) {
+                    LOGGER.warn("Torn record at {} in {}, the following records are ignored", position, file.getFileName());
+                    return;
+                }
+
+                byte[] body = new byte[length];
+                inputStream.readFully(body);
+                remaining -= length;
+
+                CRC32 crc32 = new CRC32();
+                crc32.update(body, 0, length);
+
+                if ((int) crc32.getValue() != crc) {
+                    LOGGER.warn("Corrupted record at {} in {}, the following records are ignored", position, file.getFileName());
+                    return;
+                }
+
+                recordHandler.handle(body);
+                position += RECORD_HEADER_LENGTH + length;
+            }
+        }
+    }
+
+    /**
+     * Track the first record to keep of the game of the record; a creation or a state starts the game again, a
+     * deletion drops it, a hibernation drops it unless other records follow. The records of an unknown game are
+     * dropped, like when they are replayed.
+     */
+    private static void track(byte[] body, long recordNumber, Map<UUID, LiveGame> liveGames) {
+        UUID uuid = getUuid(body);
+
+        switch (body[0]) {
+            case CREATION, STATE -> liveGames.put(uuid, new LiveGame(recordNumber));
+            case DELETION -> liveGames.remove(uuid);
+            default -> {
+                LiveGame liveGame = liveGames.get(uuid);
+
+                if (liveGame != null) {
+                    liveGame.isHibernated = body[0] == HIBERNATION;
+                }
+            }
+        }
+    }
+
+    private static void writeRecord(DataOutputStream outputStream, byte[] body) throws IOException {
+        CRC32 crc32 = new CRC32();
+        crc32.update(body, 0, body.length);
+
+        outputStream.writeInt(body.length);
+        outputStream.writeInt((int) crc32.getValue());
+        outputStream.write(body);
+    }
+
+    private void dispatch(byte[] body, GameJournal target) throws IOException {
+        DataInputStream inputStream = new DataInputStream(new ByteArrayInputStream(body, BODY_HEADER_LENGTH, body.length - BODY_HEADER_LENGTH));
+        dispatch(body[0], getUuid(body), inputStream, target);
+    }
+
+    private void dispatch(byte type, UUID uuid, DataInputStream inputStream, GameJournal target) throws IOException {
+        switch (type) {
+            case MOVE -> target.recordMove(uuid, POSITIONS[inputStream.readByte()], POSITIONS[inputStream.readByte()], Side.getFromValue(inputStream.readByte()));
+            case PROMOTION -> target.recordPromotion(uuid, POSITIONS[inputStream.readByte()], PIECES[inputStream.readByte()], Side.getFromValue(inputStream.readByte()));
+            case JOIN -> {
+                Side side = Side.getFromValue(inputStream.readByte());
+                target.recordJoin(uuid, side, readPlayer(inputStream));
+            }
+            case CREATION -> {
+                Side side = Side.getFromValue(inputStream.readByte());
+                boolean againstComputer = inputStream.readBoolean();
+                boolean observers = inputStream.readBoolean();
+                String specialGamePieces = inputStream.readUTF();
+                target.recordCreation(uuid, specialGamePieces, side, againstComputer, observers, readPlayer(inputStream));
+            }
+            case DELETION -> target.recordDeletion(uuid);
+            case STATE -> target.recordState(uuid, gameStateCodec.decode(inputStream.readAllBytes()));
+            case HIBERNATION -> target.recordHibernation(uuid);
+            default -> throw new IOException("Unknown journal record type " + type);
+        }
+    }
+
+    private static UUID getUuid(byte[] body) {
+        ByteBuffer buffer = ByteBuffer.wrap(body, 1, 2 * Long.BYTES);
+        return new UUID(buffer.getLong(), buffer.getLong());
+    }
+
+    private static ByteBuffer newBody(byte type, UUID uuid, int payloadLength) {
+        ByteBuffer body = ByteBuffer.allocate(BODY_HEADER_LENGTH + payloadLength);
+        body.put(type);
+        body.putLong(uuid.getMostSignificantBits());
+        body.putLong(uuid.getLeastSignificantBits());
+        return body;
+    }
+
+    private static void writeBodyHeader(DataOutputStream outputStream, byte type, UUID uuid) throws IOException {
+        outputStream.writeByte(type);
+        outputStream.writeLong(uuid.getMostSignificantBits());
+        outputStream.writeLong(uuid.getLeastSignificantBits());
+    }
+
+    private static void writePlayer(DataOutputStream outputStream, Player player) throws IOException {
+        ByteArrayOutputStream playerOutputStream = new ByteArrayOutputStream(256);
+
+        try (ObjectOutputStream objectOutputStream = new ObjectOutputStream(playerOutputStream)) {
+            objectOutputStream.writeObject(player);
+        }
+
+        outputStream.writeInt(playerOutputStream.size());
+        playerOutputStream.writeTo(outputStream);
+    }
+
+    private static Player readPlayer(DataInputStream inputStream) throws IOException {
+        byte[] values = new byte[inputStream.readInt()];
+        inputStream.readFully(values);
+
+        try (ObjectInputStream objectInputStream = new ObjectInputStream(new ByteArrayInputStream(values))) {
+            return (Player) objectInputStream.readObject();
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("Invalid player in the journal", e);
+        }
+    }
+
+    /**
+     * Remove the segments and snapshots already merged in the latest snapshot (left behind by a crash during a
+     * snapshot).
+     *
+     * @return The number of the latest snapshot; the first segment not merged in it
+     */
+    private long removeCompactedFiles() throws IOException {
+        List<Long> snapshots = listFileNumbers(SNAPSHOT_PREFIX, SNAPSHOT_EXTENSION);
+
+        if (snapshots.isEmpty()) {
+            return 0;
+        }
+
+        long latestSnapshot = snapshots.get(snapshots.size() - 1);
+
+        for (Long snapshot : snapshots) {
+            if (snapshot < latestSnapshot) {
+                Files.deleteIfExists(getSnapshotFile(snapshot));
+            }
+        }
+
+        for (Long segment : listFileNumbers(SEGMENT_PREFIX, SEGMENT_EXTENSION)) {
+            if (segment < latestSnapshot) {
+                Files.deleteIfExists(getSegmentFile(segment));
+            }
+        }
+
+        return latestSnapshot;
+    }
+
+    private List<Long> listFileNumbers(String prefix, String extension) throws IOException {
+        List<Long> values = new ArrayList<>();
+
+        try (Stream<Path> files = Files.list(directory)) {
+            files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.startsWith(prefix) && name.endsWith(extension))
+                    .forEach(name -> values.add(Long.parseLong(name.substring(prefix.length(), name.length() - extension.length()))));
+        }
+
+        values.sort(Long::compareTo);
+        return values;
+    }
+
+    private Path getSegmentFile(long segmentNumber) {
+        return directory.resolve(String.format("%s%016d%s", SEGMENT_PREFIX, segmentNumber, SEGMENT_EXTENSION));
+    }
+
+    private Path getSnapshotFile(long snapshotNumber) {
+        return directory.resolve(String.format("%s%016d%s", SNAPSHOT_PREFIX, snapshotNumber, SNAPSHOT_EXTENSION));
+    }
+
+    @FunctionalInterface
+    private interface RecordHandler {
+        void handle(byte[] body) throws IOException;
+    }
+
+    /**
+     * A game not deleted, as seen at a record of the compacted files
+     */
+    private static final class LiveGame {
+        private final long firstRecord;
+        private boolean isHibernated;
+
+        private LiveGame(long firstRecord) {
+            this.firstRecord = firstRecord;
+        }
+
+        private boolean isKept(long recordNumber) {
+            return !isHibernated && recordNumber >= firstRecord;
+        }
+    }
+}
@@ -0,0 +1,311 @@
+/*
+ *    Copyright 2014 - 2021 Yannick Watier
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.watier.echechess.repositories;
+
+import ca.watier.echechess.communication.redis.model.GenericGameHandlerWrapper;
+import ca.watier.echechess.engine.engines.GenericGameHandler;
+import ca.watier.echechess.interfaces.IndexedGameRepository;
+import ca.watier.echechess.models.GamePage;
+import ca.watier.echechess.models.GameState;
+import ca.watier.echechess.models.TrackedGameHandlerWrapper;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Defer the writes of the games ({@link #add}) by a short window; the writes of a game during the window are merged
+ * into one write of the last value. The pending games, and the games being written, are returned by {@link #get}, so a
+ * node reads its own writes.
+ * <p>
+ * A pending game is written with a compare-and-set on the version it was read with: when another node changed the game
+ * during the window, the deferred write is dropped instead of overwriting the other change. The new games (version 0)
+ * and the games without a version (not a {@link TrackedGameHandlerWrapper}) are written as they are.
+ * <p>
+ * The pending game is taken from the map while holding its entry, and written outside of it, so the other games of
+ * the bin are not blocked by the remote write; a game is written by one thread at a time, the writes requested
+ * meanwhile stay pending until the next window. When the write succeeds, the version of the game pending since is
+ * moved to the written version, since it was read from the game being written. A failed write is put back in the
+ * pending writes (unless a newer value is pending) and retried at the next window, without stopping the writes of the
+ * other games.
+ * <p>
+ * The compare-and-set needs the result of the remote write, so it is not deferred: the pending write of the game is
+ * written first, unless the game was read from the pending write (same version), in which case the compare-and-set
+ * replaces it. The listings and index queries write the pending games first.
+ * <p>
+ * Only used with the compact storage ({@code app.game.storage.format=compact}, the default), which provides the
+ * versions of the games.
+ */
+public class WriteBehindGameRepository implements IndexedGameRepository {
+    private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(WriteBehindGameRepository.class);
+
+    private final IndexedGameRepository gameRepository;
+    private final boolean isDeferred;
+    private final ConcurrentMap<String, GenericGameHandlerWrapper<GenericGameHandler>> pendingWrites = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, GenericGameHandlerWrapper<GenericGameHandler>> ongoingWrites = new ConcurrentHashMap<>();
+    private final AtomicLong submittedWrites = new AtomicLong();
+    private final AtomicLong executedWrites = new AtomicLong();
+    private final ScheduledExecutorService scheduledExecutorService;
+
+    /**
+     * @param window - The delay before writing a game; the games are written directly when zero
+     */
+    public WriteBehindGameRepository(IndexedGameRepository gameRepository, Duration window) {
+        this.gameRepository = gameRepository;
+        this.isDeferred = !window.isZero() && !window.isNegative();
+
+        if (isDeferred) {
+            long interval = window.toNanos();
+            scheduledExecutorService = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("game-write-behind-"));
+            scheduledExecutorService.scheduleWithFixedDelay(this::flushQuietly, interval, interval, TimeUnit.NANOSECONDS);
+        } else {
+            scheduledExecutorService = null;
+        }
+    }
+
+    @Override
+    public void add(GenericGameHandlerWrapper<GenericGameHandler> genericGameHandlerWrapper) {
+        submittedWrites.incrementAndGet();
+
+        if (!isDeferred) {
+            executedWrites.incrementAndGet();
+            gameRepository.add(genericGameHandlerWrapper);
+            return;
+        }
+
+        pendingWrites.put(genericGameHandlerWrapper.getId(), genericGameHandlerWrapper);
+    }
+
+    @Override
+    public void add(String id, GenericGameHandler genericGameHandler) {
+        add(new GenericGameHandlerWrapper<>(id, genericGameHandler));
+    }
+
+    @Override
+    public boolean compareAndSet(TrackedGameHandlerWrapper trackedGameHandlerWrapper, long expectedVersion) {
+        String id = trackedGameHandlerWrapper.getId();
+        GenericGameHandlerWrapper<GenericGameHandler> pendingWrapper = takePendingWrite(id);
+
+        if (pendingWrapper == null) {
+            return gameRepository.compareAndSet(trackedGameHandlerWrapper, expectedVersion);
+        }
+
+        try {
+            if (TrackedGameHandlerWrapper.getVersion(pendingWrapper) != expectedVersion) {
+                writePendingWrite(id, pendingWrapper);
+            }
+
+            // When the game was read from the pending write, the pending write is replaced
+            return gameRepository.compareAndSet(trackedGameHandlerWrapper, expectedVersion);
+        } catch (RuntimeException e) {
+            pendingWrites.putIfAbsent(id, pendingWrapper);
+            throw e;
+        } finally {
+            ongoingWrites.remove(id, pendingWrapper);
+        }
+    }
+
+    @Override
+    public void delete(String id) {
+        pendingWrites.remove(id);
+        gameRepository.delete(id);
+    }
+
+    @Override
+    public GenericGameHandlerWrapper<GenericGameHandler> get(String id) {
+        if (id == null) {
+            return null;
+        }
+
+        GenericGameHandlerWrapper<GenericGameHandler> pendingWrapper = pendingWrites.get(id);
+
+        if (pendingWrapper == null) {
+            pendingWrapper = ongoingWrites.get(id);
+        }
+
+        if (pendingWrapper != null) {
+            return pendingWrapper;
+        }
+
+        return gameRepository.get(id);
+    }
+
+    @Override
+    public List<GenericGameHandlerWrapper<GenericGameHandler>> getAll() {
+        flush();
+        return gameRepository.getAll();
+    }
+
+    @Override
+    public GamePage<GenericGameHandlerWrapper<GenericGameHandler>> getPage(String cursor, int pageSize) {
+        flush();
+        return gameRepository.getPage(cursor, pageSize);
+    }
+
+    @Override
+    public Set<String> getGamesOfPlayer(String playerId) {
+        flush();
+        return gameRepository.getGamesOfPlayer(playerId);
+    }
+
+    @Override
+    public Set<String> getOpenGames() {
+        flush();
+        return gameRepository.getOpenGames();
+    }
+
+    @Override
+    public Set<String> getGamesByState(GameState gameState) {
+        flush();
+        return gameRepository.getGamesByState(gameState);
+    }
+
+    /**
+     * Write all the pending games; the failed writes are kept pending, and the first failure is thrown once all the
+     * games were tried (with the other failures suppressed).
+     */
+    public void flush() {
+        RuntimeException failure = null;
+
+        for (String id : pendingWrites.keySet()) {
+            try {
+                flush(id);
+            } catch (RuntimeException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void flush(String id) {
+        GenericGameHandlerWrapper<GenericGameHandler> pendingWrapper = takePendingWrite(id);
+
+        if (pendingWrapper == null) {
+            return;
+        }
+
+        try {
+            writePendingWrite(id, pendingWrapper);
+        } catch (RuntimeException e) {
+            pendingWrites.putIfAbsent(id, pendingWrapper);
+            throw e;
+        } finally {
+            ongoingWrites.remove(id, pendingWrapper);
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            LOGGER.error("Unable to write some of the pending games, retrying at the next window", e);
+        }
+    }
+
+    /**
+     * @return The pending game, moved to the ongoing writes; null when there's no pending game, or when the game is
+     * already being written by another thread
+     */
+    private GenericGameHandlerWrapper<GenericGameHandler> takePendingWrite(String id) {
+        List<GenericGameHandlerWrapper<GenericGameHandler>> takenWrapper = new ArrayList<>(1);
+
+        pendingWrites.computeIfPresent(id, (key, pendingWrapper) -> {
+            if (ongoingWrites.putIfAbsent(key, pendingWrapper) != null) {
+                return pendingWrapper;
+            }
+
+            takenWrapper.add(pendingWrapper);
+            return null;
+        });
+
+        return takenWrapper.isEmpty() ? null : takenWrapper.get(0);
+    }
+
+    private void writePendingWrite(String id, GenericGameHandlerWrapper<GenericGameHandler> pendingWrapper) {
+        executedWrites.incrementAndGet();
+
+        if (!(pendingWrapper instanceof TrackedGameHandlerWrapper)) {
+            gameRepository.add(pendingWrapper);
+            return;
+        }
+
+        TrackedGameHandlerWrapper trackedGameHandlerWrapper = (TrackedGameHandlerWrapper) pendingWrapper;
+        long expectedVersion = trackedGameHandlerWrapper.getVersion();
+
+        if (expectedVersion == 0) {
+            gameRepository.add(trackedGameHandlerWrapper); // Never written
+        } else if (!gameRepository.compareAndSet(trackedGameHandlerWrapper, expectedVersion)) {
+            LOGGER.warn("The game {} was changed by another node since the version {}, the deferred write is dropped", id, expectedVersion);
+            return;
+        }
+
+        long version = trackedGameHandlerWrapper.getVersion();
+
+        pendingWrites.computeIfPresent(id, (key, newerWrapper) -> {
+            if (newerWrapper instanceof TrackedGameHandlerWrapper && TrackedGameHandlerWrapper.getVersion(newerWrapper) == expectedVersion) {
+                ((TrackedGameHandlerWrapper) newerWrapper).setVersion(version);
+            }
+
+            return newerWrapper;
+        });
+    }
+
+    public int getNumberOfPendingWrites() {
+        return pendingWrites.size();
+    }
+
+    public long getSubmittedWrites() {
+        return submittedWrites.get();
+    }
+
+    public long getExecutedWrites() {
+        return executedWrites.get();
+    }
+
+    /**
+     * Stop the deferred writes and write the pending games.
+     */
+    public void shutdown() {
+        if (scheduledExecutorService != null) {
+            scheduledExecutorService.shutdown();
+
+            try {
+                scheduledExecutorService.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        flush();
+    }
+}
@@ -17,12 +17,17 @@
 package ca.watier.echechess.services;
 
 import ca.watier.echechess.common.enums.CasePosition;
+import ca.watier.echechess.common.enums.MoveType;
 import ca.watier.echechess.common.enums.Side;
 import ca.watier.echechess.common.responses.BooleanResponse;
 import ca.watier.echechess.common.sessions.Player;
 import ca.watier.echechess.engine.engines.GenericGameHandler;
 import ca.watier.echechess.engine.exceptions.FenParserException;
 import ca.watier.echechess.exceptions.GameException;
+import ca.watier.echechess.models.BoardUpdateModel;
+import ca.watier.echechess.models.GamePage;
+import ca.watier.echechess.models.GameState;
+import ca.watier.echechess.models.GameSummaryModel;
 import ca.watier.echechess.models.PawnPromotionPiecesModel;
 import ca.watier.echechess.models.PieceLocationModel;
 
@@ -33,7 +38,22 @@ import java.util.UUID;
 public interface GameService {
     UUID createNewGame(String specialGamePieces, Side side, boolean againstComputer, boolean observers, Player player) throws FenParserException, GameException;
 
-    void movePiece(CasePosition from, CasePosition to, String uuid, Player player) throws GameException;
+    default void movePiece(CasePosition from, CasePosition to, String uuid, Player player) throws GameException {
+        movePiece(from, to, uuid, null, null, player);
+    }
+
+    /**
+     * @param sequence       - The number of moves of the game seen by the player, null to use the current number
+     * @param idempotencyKey - The key of the move, the same for all the retries of the move; can be null. The sequence
+     *                       and the key are ignored by the engine nodes reading the previous text format
+     */
+    void movePiece(CasePosition from, CasePosition to, String uuid, Integer sequence, String idempotencyKey, Player player) throws GameException;
+
+    default MoveType movePieceAndWait(CasePosition from, CasePosition to, String uuid, Player player) throws GameException {
+        return movePieceAndWait(from, to, uuid, null, null, player);
+    }
+
+    MoveType movePieceAndWait(CasePosition from, CasePosition to, String uuid, Integer sequence, String idempotencyKey, Player player) throws GameException;
 
     GenericGameHandler getGameFromUuid(String uuid) throws GameException;
 
@@ -45,9 +65,43 @@ public interface GameService {
 
     List<PieceLocationModel> getIterableBoard(String uuid, Player player) throws GameException;
 
+    /**
+     * @return The whole board, in the order of {@link #getIterableBoard(String, Player)}, with the number of moves of
+     * the game
+     */
+    BoardUpdateModel getBoard(String uuid, Player player) throws GameException;
+
     boolean setSideOfPlayer(Side side, String uuid, Player player) throws GameException;
 
     boolean upgradePiece(CasePosition to, String uuid, PawnPromotionPiecesModel piece, Player player) throws GameException;
 
+    /**
+     * Copy all the games; prefer {@link #getGames(String, int)} when the number of games is large.
+     */
     Map<UUID, GenericGameHandler> getAllGames();
+
+    /**
+     * List the games one page at a time; when the games can't be listed by page (see {@link #isGamesPageable()}), all
+     * the games are returned in the first page.
+     *
+     * @param cursor - The cursor of the previous page, null for the first page
+     */
+    GamePage<GameSummaryModel> getGames(String cursor, int pageSize) throws GameException;
+
+    /**
+     * @return true when the repository reads the games by page, without reading all of them
+     */
+    boolean isGamesPageable();
+
+    /**
+     * @return The games where the player is white, black or an observer
+     */
+    List<GameSummaryModel> getGamesOfPlayer(Player player) throws GameException;
+
+    /**
+     * @return The games still accepting other players, with a free side
+     */
+    List<GameSummaryModel> getOpenGames();
+
+    List<GameSummaryModel> getGamesByState(GameState gameState) throws GameException;
 }
@@ -18,34 +18,56 @@ package ca.watier.echechess.services;
 
 import ca.watier.echechess.common.enums.CasePosition;
 import ca.watier.echechess.common.enums.KingStatus;
+import ca.watier.echechess.common.enums.MoveType;
 import ca.watier.echechess.common.enums.Pieces;
 import ca.watier.echechess.common.enums.Side;
 import ca.watier.echechess.common.responses.BooleanResponse;
 import ca.watier.echechess.common.services.WebSocketService;
 import ca.watier.echechess.common.sessions.Player;
-import ca.watier.echechess.common.utils.Constants;
 import ca.watier.echechess.communication.redis.interfaces.GameRepository;
 import ca.watier.echechess.communication.redis.model.GenericGameHandlerWrapper;
 import ca.watier.echechess.components.CasePositionPiecesMapEntryComparator;
+import ca.watier.echechess.components.GameAdmissionController;
 import ca.watier.echechess.delegates.GameMessageDelegate;
 import ca.watier.echechess.engine.delegates.PieceMoveConstraintDelegate;
 import ca.watier.echechess.engine.engines.GenericGameHandler;
 import ca.watier.echechess.engine.exceptions.FenParserException;
 import ca.watier.echechess.engine.utils.FenGameParser;
+import ca.watier.echechess.exceptions.GameConflictException;
 import ca.watier.echechess.exceptions.GameException;
 import ca.watier.echechess.exceptions.GameNotFoundException;
+import ca.watier.echechess.exceptions.GameOverloadedException;
+import ca.watier.echechess.exceptions.GameRequestFailedException;
+import ca.watier.echechess.exceptions.GameRequestTimeoutException;
 import ca.watier.echechess.exceptions.InvalidGameParameterException;
+import ca.watier.echechess.interfaces.GameJournal;
+import ca.watier.echechess.interfaces.IndexedGameRepository;
+import ca.watier.echechess.interfaces.PageableGameRepository;
+import ca.watier.echechess.interfaces.VersionedGameRepository;
+import ca.watier.echechess.models.BoardUpdateModel;
+import ca.watier.echechess.models.GamePage;
+import ca.watier.echechess.models.GameState;
+import ca.watier.echechess.models.GameSummaryModel;
+import ca.watier.echechess.models.MoveAppliedModel;
 import ca.watier.echechess.models.PawnPromotionPiecesModel;
 import ca.watier.echechess.models.PieceLocationModel;
-import ca.watier.echechess.utils.MessageQueueUtils;
+import ca.watier.echechess.models.TrackedGameHandlerWrapper;
+import ca.watier.echechess.repositories.GameIndexEntry;
+import ca.watier.echechess.utils.BoardDeltas;
+import ca.watier.echechess.utils.CasePositionMask;
+import ca.watier.echechess.utils.GameMessageCodec;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang3.ObjectUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.LoggerFactory;
 
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+import java.util.function.Predicate;
 
-import static ca.watier.echechess.common.enums.ChessEventMessage.PLAYER_TURN;
 import static ca.watier.echechess.common.enums.ChessEventMessage.*;
 import static ca.watier.echechess.common.enums.Side.getOtherPlayerSide;
 import static ca.watier.echechess.common.utils.Constants.*;
@@ -57,6 +79,7 @@ import static ca.watier.echechess.common.utils.Constants.*;
 public class GameServiceImpl implements GameService {
     private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(GameServiceImpl.class);
     private static final BooleanResponse NO = BooleanResponse.NO;
+    private static final int MAX_UPDATE_ATTEMPTS = 5;
 
     private static final CasePositionPiecesMapEntryComparator PIECE_LOCATION_COMPARATOR =
             new CasePositionPiecesMapEntryComparator();
@@ -65,16 +88,35 @@ public class GameServiceImpl implements GameService {
     private final WebSocketService webSocketService;
     private final GameRepository<GenericGameHandler> gameRepository;
     private final GameMessageDelegate gameMessageDelegate;
+    private final GameJournal gameJournal;
+    private final GameAdmissionController gameAdmissionController;
 
     public GameServiceImpl(PieceMoveConstraintDelegate pieceMoveConstraintDelegate,
                            WebSocketService webSocketService,
                            GameRepository<GenericGameHandler> gameRepository,
                            GameMessageDelegate gameMessageDelegate) {
 
+        this(pieceMoveConstraintDelegate, webSocketService, gameRepository, gameMessageDelegate, null, null);
+    }
+
+    /**
+     * @param gameJournal             - When set, the creations, joins and promotions are journaled; null when the games
+     *                                are not journaled (dependent mode)
+     * @param gameAdmissionController - Bounds the moves and available moves in progress; can be null
+     */
+    public GameServiceImpl(PieceMoveConstraintDelegate pieceMoveConstraintDelegate,
+                           WebSocketService webSocketService,
+                           GameRepository<GenericGameHandler> gameRepository,
+                           GameMessageDelegate gameMessageDelegate,
+                           GameJournal gameJournal,
+                           GameAdmissionController gameAdmissionController) {
+
         this.pieceMoveConstraintDelegate = pieceMoveConstraintDelegate;
         this.webSocketService = webSocketService;
         this.gameRepository = gameRepository;
         this.gameMessageDelegate = gameMessageDelegate;
+        this.gameJournal = gameJournal;
+        this.gameAdmissionController = gameAdmissionController;
     }
 
     /**
@@ -108,7 +150,11 @@ public class GameServiceImpl implements GameService {
         genericGameHandler.setAllowOtherToJoin(!againstComputer);
         genericGameHandler.setAllowObservers(observers);
 
-        gameRepository.add(new GenericGameHandlerWrapper<>(uuidAsString, genericGameHandler));
+        gameRepository.add(newGameWrapper(uuidAsString, genericGameHandler, StringUtils.trimToNull(specialGamePieces)));
+
+        if (gameJournal != null) {
+            gameJournal.recordCreation(uui, specialGamePieces, side, againstComputer, observers, player);
+        }
 
         return uui;
     }
@@ -119,31 +165,135 @@ public class GameServiceImpl implements GameService {
      * @param from
      * @param to
      * @param uuid
+     * @param sequence
+     * @param idempotencyKey
      * @param player
      * @return
      */
     @Override
-    public void movePiece(CasePosition from, CasePosition to, String uuid, Player player) throws GameException {
+    public void movePiece(CasePosition from, CasePosition to, String uuid, Integer sequence, String idempotencyKey, Player player) throws GameException {
+        CompletableFuture<byte[]> response = requestMove(from, to, uuid, sequence, idempotencyKey, player);
+
+        if (response == null) {
+            return;
+        }
+
+        response.whenComplete((ignored, throwable) -> {
+            if (throwable != null) {
+                // The move was not sent or not answered in time, the players refresh their board
+                LOGGER.warn("No response for the move {} -> {} of the game {}", from, to, uuid, throwable);
+                webSocketService.fireGameEvent(uuid, REFRESH_BOARD);
+            }
+        });
+    }
+
+    /**
+     * Moves the piece and waits for the response of the game engine; the events are still sent to the players.
+     *
+     * @return The type of the move, {@link MoveType#MOVE_NOT_ALLOWED} when the move was refused; the first result
+     * when the move was already applied; null when the game engine doesn't answer the requests (the result is only sent
+     * to the players)
+     * @throws GameRequestTimeoutException when the game engine didn't answer in time
+     * @throws GameConflictException       when the move was played on another state of the game
+     * @throws GameRequestFailedException  when the game engine failed while applying the move
+     */
+    @Override
+    public MoveType movePieceAndWait(CasePosition from, CasePosition to, String uuid, Integer sequence, String idempotencyKey, Player player) throws GameException {
+        CompletableFuture<byte[]> response = requestMove(from, to, uuid, sequence, idempotencyKey, player);
+
+        if (response == null) {
+            return MoveType.MOVE_NOT_ALLOWED;
+        }
+
+        byte[] moveResponse;
+        try {
+            moveResponse = response.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GameRequestTimeoutException();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+
+            if (cause instanceof GameException) {
+                throw (GameException) cause;
+            }
+
+            throw new IllegalStateException(cause);
+        }
+
+        if (moveResponse == null) {
+            return null;
+        }
+
+        if (GameMessageCodec.getMoveStatus(moveResponse) == GameMessageCodec.MOVE_STALE) {
+            throw new GameConflictException();
+        }
+
+        return GameMessageCodec.getMoveType(moveResponse);
+    }
+
+    /**
+     * @param sequence - The number of moves seen by the player; when null, the number of moves of the game read here
+     * @return The response of the move, or null when the move cannot be played
+     * @throws GameOverloadedException when the move is not admitted
+     */
+    private CompletableFuture<byte[]> requestMove(CasePosition from, CasePosition to, String uuid, Integer sequence, String idempotencyKey, Player player) throws GameException {
         if (ObjectUtils.anyNull(from, to, uuid, player)) {
             throw new InvalidGameParameterException();
         }
 
-        GenericGameHandler gameFromUuid = getGameFromUuid(uuid);
-        Side playerSide = getPlayerSide(uuid, player);
+        GenericGameHandlerWrapper<GenericGameHandler> wrapper = getGameWrapperFromUuid(uuid);
+        GenericGameHandler gameFromUuid = wrapper.getGenericGameHandler();
+        Side playerSide = gameFromUuid.getPlayerSide(player);
 
         if (!gameFromUuid.hasPlayer(player) || gameFromUuid.isGamePaused() || gameFromUuid.isGameDraw()) {
-            return;
+            return null;
         } else if (gameFromUuid.isGameEnded()) {
             webSocketService.fireSideEvent(uuid, playerSide, GAME_WON_EVENT_MOVE, GAME_ENDED);
-            return;
+            return null;
         } else if (gameFromUuid.isKing(KingStatus.STALEMATE, playerSide)) {
             webSocketService.fireSideEvent(uuid, playerSide, GAME_WON_EVENT_MOVE, PLAYER_KING_STALEMATE);
-            return;
+            return null;
         }
 
-        //UUID|FROM|TO|ID_PLAYER_SIDE
-        String payload =  MessageQueueUtils.convertToMessage(uuid, from, to, playerSide.getValue());
-        gameMessageDelegate.handleMoveMessage(payload);
+        String playerId = player.getId();
+
+        if (gameAdmissionController != null) {
+            gameAdmissionController.admitMove(playerId);
+        }
+
+        CompletableFuture<byte[]> response;
+        try {
+            int sequenceOfMove = sequence != null ? sequence : TrackedGameHandlerWrapper.getNumberOfMoves(wrapper);
+            response = gameMessageDelegate.requestMove(UUID.fromString(uuid), from, to, playerSide, sequenceOfMove,
+                    getIdempotencyKey(playerId, idempotencyKey));
+        } catch (RuntimeException e) {
+            releaseMove(playerId);
+            throw e;
+        }
+
+        response.whenComplete((ignored, throwable) -> releaseMove(playerId));
+        return response;
+    }
+
+    /**
+     * The keys are given by the players, they are only unique for a player.
+     *
+     * @return The hash of the player and of the key, {@link GameMessageCodec#NO_IDEMPOTENCY_KEY} when not given
+     */
+    private static long getIdempotencyKey(String playerId, String idempotencyKey) {
+        if (StringUtils.isBlank(idempotencyKey)) {
+            return GameMessageCodec.NO_IDEMPOTENCY_KEY;
+        }
+
+        long key = UUID.nameUUIDFromBytes((playerId + '|' + idempotencyKey).getBytes(StandardCharsets.UTF_8)).getMostSignificantBits();
+        return key == GameMessageCodec.NO_IDEMPOTENCY_KEY ? 1 : key;
+    }
+
+    private void releaseMove(String playerId) {
+        if (gameAdmissionController != null) {
+            gameAdmissionController.releaseMove(playerId);
+        }
     }
 
     /**
@@ -155,15 +305,75 @@ public class GameServiceImpl implements GameService {
      */
     @Override
     public GenericGameHandler getGameFromUuid(String uuid) throws GameException {
+        return getGameWrapperFromUuid(uuid).getGenericGameHandler();
+    }
+
+    /**
+     * Get the stored wrapper of the game; the same wrapper must be written back, to keep the moves tracked by it.
+     */
+    private GenericGameHandlerWrapper<GenericGameHandler> getGameWrapperFromUuid(String uuid) throws GameException {
         if (StringUtils.isBlank(uuid)) {
             throw new InvalidGameParameterException();
         }
 
         return Optional.ofNullable(gameRepository.get(uuid))
-                .map(GenericGameHandlerWrapper::getGenericGameHandler)
                 .orElseThrow(GameNotFoundException::new);
     }
 
+    /**
+     * Apply the update on the game and write it. With a {@link VersionedGameRepository}, the update is applied on a
+     * copy of the game, that replaces the stored wrapper only when the game was not changed since it was read; the
+     * other threads never see an update that is not written. When the game was changed (by another thread or node),
+     * the game is read again and the update is applied on a copy of the new state; the side effects of the update
+     * (events, journal) need to be done once this returns.
+     *
+     * @return The written wrapper, or null when the update didn't change the game
+     * @throws GameConflictException when the game is still changed concurrently after {@link #MAX_UPDATE_ATTEMPTS}
+     */
+    private GenericGameHandlerWrapper<GenericGameHandler> updateGame(String uuid, GameUpdate gameUpdate) throws GameException {
+        for (int attempt = 1; ; attempt++) {
+            GenericGameHandlerWrapper<GenericGameHandler> storedGameWrapper = getGameWrapperFromUuid(uuid);
+            long version = TrackedGameHandlerWrapper.getVersion(storedGameWrapper);
+            GenericGameHandlerWrapper<GenericGameHandler> gameWrapper = gameRepository instanceof VersionedGameRepository ?
+                    TrackedGameHandlerWrapper.copyOf(storedGameWrapper) : storedGameWrapper;
+
+            if (!gameUpdate.apply(gameWrapper)) {
+                return null;
+            }
+
+            if (writeGame(gameWrapper, version)) {
+                return gameWrapper;
+            }
+
+            if (attempt == MAX_UPDATE_ATTEMPTS) {
+                throw new GameConflictException();
+            }
+
+            LOGGER.debug("The game {} was changed concurrently, retrying the update ({})", uuid, attempt);
+        }
+    }
+
+    /**
+     * The moves are only tracked when the repository keeps the versions; the other repositories store the games in
+     * the format shared with the engine nodes, that only know the {@link GenericGameHandlerWrapper}.
+     */
+    private GenericGameHandlerWrapper<GenericGameHandler> newGameWrapper(String uuid, GenericGameHandler genericGameHandler, String initialPosition) {
+        if (gameRepository instanceof VersionedGameRepository) {
+            return new TrackedGameHandlerWrapper(uuid, genericGameHandler, initialPosition);
+        }
+
+        return new GenericGameHandlerWrapper<>(uuid, genericGameHandler);
+    }
+
+    private boolean writeGame(GenericGameHandlerWrapper<GenericGameHandler> gameWrapper, long expectedVersion) {
+        if (gameRepository instanceof VersionedGameRepository && gameWrapper instanceof TrackedGameHandlerWrapper) {
+            return ((VersionedGameRepository) gameRepository).compareAndSet((TrackedGameHandlerWrapper) gameWrapper, expectedVersion);
+        }
+
+        gameRepository.add(gameWrapper);
+        return true;
+    }
+
     /**
      * Get the side of the player for the associated game
      *
@@ -200,8 +410,33 @@ public class GameServiceImpl implements GameService {
             return;  //TODO: Add a checked exception
         }
 
-        String payload = MessageQueueUtils.convertToMessage(uuid, from.name(), playerSide.getValue());
-        gameMessageDelegate.handleAvailableMoveMessage(payload);
+        String playerId = player.getId();
+
+        if (gameAdmissionController != null) {
+            gameAdmissionController.admitAvailableMoves(playerId); // Shed before the moves
+        }
+
+        CompletableFuture<byte[]> response;
+        try {
+            response = gameMessageDelegate.requestAvailableMoves(UUID.fromString(uuid), from, playerSide);
+        } catch (RuntimeException e) {
+            releaseAvailableMoves(playerId);
+            throw e;
+        }
+
+        response.whenComplete((ignored, throwable) -> {
+            releaseAvailableMoves(playerId);
+
+            if (throwable != null) {
+                LOGGER.warn("No response for the available moves request of the game {}", uuid, throwable);
+            }
+        });
+    }
+
+    private void releaseAvailableMoves(String playerId) {
+        if (gameAdmissionController != null) {
+            gameAdmissionController.releaseAvailableMoves(playerId);
+        }
     }
 
     private boolean isPlayerSameColorThanPiece(CasePosition from, GenericGameHandler gameFromUuid, Side playerSide) {
@@ -226,15 +461,26 @@ public class GameServiceImpl implements GameService {
 
         UUID gameUuid = UUID.fromString(uuid);
         if (!player.getCreatedGameList().contains(gameUuid) && !player.getJoinedGameList().contains(gameUuid)) {
-            joined = gameFromUuid.setPlayerToSide(player, side);
+            joined = updateGame(uuid, gameWrapper -> {
+                if (!gameWrapper.getGenericGameHandler().setPlayerToSide(player, side)) {
+                    return false;
+                }
+
+                if (!player.getJoinedGameList().contains(gameUuid)) {
+                    player.addJoinedGame(gameUuid);
+                }
+
+                return true;
+            }) != null;
         }
 
         if (joined) {
+            if (gameJournal != null) {
+                gameJournal.recordJoin(gameUuid, side, player);
+            }
+
             webSocketService.fireGameEvent(uuid, PLAYER_JOINED, String.format(NEW_PLAYER_JOINED_SIDE, side));
             webSocketService.fireUiEvent(uiUuid, PLAYER_JOINED, String.format(JOINING_GAME, uuid));
-            player.addJoinedGame(gameUuid);
-
-            gameRepository.add(new GenericGameHandlerWrapper<>(uuid, gameFromUuid));
         }
 
         return BooleanResponse.getResponse(joined);
@@ -263,6 +509,30 @@ public class GameServiceImpl implements GameService {
             return Collections.emptyList();
         }
 
+        return getSortedBoard(gameFromUuid);
+    }
+
+    /**
+     * The number of moves is read before the pieces; the board can be ahead of it, never behind.
+     */
+    @Override
+    public BoardUpdateModel getBoard(String uuid, Player player) throws GameException {
+        if (player == null || StringUtils.isBlank(uuid)) {
+            throw new InvalidGameParameterException();
+        }
+
+        GenericGameHandlerWrapper<GenericGameHandler> wrapper = getGameWrapperFromUuid(uuid);
+        GenericGameHandler gameFromUuid = wrapper.getGenericGameHandler();
+        int sequence = TrackedGameHandlerWrapper.getNumberOfMoves(wrapper);
+
+        if (!gameFromUuid.hasPlayer(player)) {
+            return new BoardUpdateModel(sequence, Collections.emptyList());
+        }
+
+        return new BoardUpdateModel(sequence, getSortedBoard(gameFromUuid));
+    }
+
+    private List<PieceLocationModel> getSortedBoard(GenericGameHandler gameFromUuid) {
         // Keys are sorted by small values fist (-3 -> 4)
         Map<Integer, Set<Map.Entry<CasePosition, Pieces>>> sortedByCol = new TreeMap<>(Comparator.naturalOrder());
         Map<CasePosition, Pieces> piecesLocation = new EnumMap<>(gameFromUuid.getPiecesLocation());
@@ -309,7 +579,13 @@ public class GameServiceImpl implements GameService {
 
     @Override
     public boolean setSideOfPlayer(Side side, String uuid, Player player) throws GameException {
-        return getGameFromUuid(uuid).setPlayerToSide(player, side);
+        boolean isSideChanged = updateGame(uuid, gameWrapper -> gameWrapper.getGenericGameHandler().setPlayerToSide(player, side)) != null;
+
+        if (isSideChanged && gameJournal != null) {
+            gameJournal.recordJoin(UUID.fromString(uuid), side, player);
+        }
+
+        return isSideChanged;
     }
 
     /**
@@ -326,22 +602,38 @@ public class GameServiceImpl implements GameService {
             throw new InvalidGameParameterException();
         }
 
-        GenericGameHandler gameFromUuid = getGameFromUuid(uuid);
-        Side playerSide = gameFromUuid.getPlayerSide(player);
-
-        webSocketService.fireSideEvent(uuid, playerSide, PAWN_PROMOTION, to.name());
-        webSocketService.fireGameEvent(uuid, PAWN_PROMOTION, String.format(GAME_PAUSED_PAWN_PROMOTION, playerSide));
+        Side playerSide = getGameFromUuid(uuid).getPlayerSide(player);
 
         boolean isUpgraded = false;
 
         try {
             Pieces pieces = PawnPromotionPiecesModel.from(piece, playerSide);
-            isUpgraded = gameFromUuid.upgradePiece(to, pieces, playerSide);
+            GenericGameHandlerWrapper<GenericGameHandler> upgradedGameWrapper = updateGame(uuid, gameWrapper -> {
+                if (!gameWrapper.getGenericGameHandler().upgradePiece(to, pieces, playerSide)) {
+                    return false;
+                }
+
+                if (gameWrapper instanceof TrackedGameHandlerWrapper) {
+                    ((TrackedGameHandlerWrapper) gameWrapper).recordPromotion(to, pieces);
+                }
+
+                return true;
+            });
+            isUpgraded = upgradedGameWrapper != null;
 
             if (isUpgraded) {
-                webSocketService.fireGameEvent(uuid, SCORE_UPDATE, gameFromUuid.getGameScore()); //Refresh the points
-                webSocketService.fireGameEvent(uuid, REFRESH_BOARD); //Refresh the boards
-                webSocketService.fireSideEvent(uuid, getOtherPlayerSide(playerSide), PLAYER_TURN, Constants.PLAYER_TURN);
+                GenericGameHandler gameFromUuid = upgradedGameWrapper.getGenericGameHandler();
+
+                if (gameJournal != null) {
+                    gameJournal.recordPromotion(UUID.fromString(uuid), to, pieces, playerSide);
+                }
+
+                // The promoted position, the points and the turn in one event
+                MoveAppliedModel moveApplied = MoveAppliedModel.of(TrackedGameHandlerWrapper.getNumberOfMoves(upgradedGameWrapper),
+                        BoardDeltas.getSquares(CasePositionMask.of(to), gameFromUuid.getPiecesLocation()),
+                        playerSide, getOtherPlayerSide(playerSide), upgradedGameWrapper, pieceMoveConstraintDelegate);
+                moveApplied.setTo(to.name());
+                webSocketService.fireGameEvent(uuid, MOVE, moveApplied);
             }
 
         } catch (IllegalArgumentException ex) {
@@ -362,4 +654,105 @@ public class GameServiceImpl implements GameService {
         return values;
     }
 
+    /**
+     * When the repository can't be listed by page (shared storage), all the games are returned in a single page, and
+     * a cursor is refused.
+     */
+    @Override
+    public GamePage<GameSummaryModel> getGames(String cursor, int pageSize) throws GameException {
+        if (pageSize < 1) {
+            throw new InvalidGameParameterException();
+        }
+
+        List<GenericGameHandlerWrapper<GenericGameHandler>> wrappers;
+        String nextCursor;
+
+        if (isGamesPageable()) {
+            try {
+                GamePage<GenericGameHandlerWrapper<GenericGameHandler>> page = ((PageableGameRepository) gameRepository).getPage(cursor, pageSize);
+                wrappers = page.getValues();
+                nextCursor = page.getNextCursor();
+            } catch (IllegalArgumentException e) {
+                throw new InvalidGameParameterException();
+            }
+        } else if (cursor != null) {
+            throw new InvalidGameParameterException();
+        } else {
+            wrappers = gameRepository.getAll();
+            nextCursor = null;
+        }
+
+        List<GameSummaryModel> values = new ArrayList<>(wrappers.size());
+
+        for (GenericGameHandlerWrapper<GenericGameHandler> wrapper : wrappers) {
+            values.add(new GameSummaryModel(wrapper.getId(), wrapper.getGenericGameHandler()));
+        }
+
+        return new GamePage<>(values, nextCursor);
+    }
+
+    @Override
+    public boolean isGamesPageable() {
+        return gameRepository instanceof PageableGameRepository;
+    }
+
+    @Override
+    public List<GameSummaryModel> getGamesOfPlayer(Player player) throws GameException {
+        if (player == null || player.getId() == null) {
+            throw new InvalidGameParameterException();
+        }
+
+        String playerId = player.getId();
+        return findGames(indexedGameRepository -> indexedGameRepository.getGamesOfPlayer(playerId),
+                indexEntry -> indexEntry.getPlayerIds().contains(playerId));
+    }
+
+    @Override
+    public List<GameSummaryModel> getOpenGames() {
+        return findGames(IndexedGameRepository::getOpenGames, GameIndexEntry::isOpen);
+    }
+
+    @Override
+    public List<GameSummaryModel> getGamesByState(GameState gameState) throws GameException {
+        if (gameState == null) {
+            throw new InvalidGameParameterException();
+        }
+
+        return findGames(indexedGameRepository -> indexedGameRepository.getGamesByState(gameState),
+                indexEntry -> indexEntry.getGameState() == gameState);
+    }
+
+    /**
+     * Read the games listed by the index, or all the games when the repository is not indexed; the games are checked
+     * with the filter, since an index can briefly list a game that no longer matches.
+     */
+    private List<GameSummaryModel> findGames(Function<IndexedGameRepository, Set<String>> indexQuery, Predicate<GameIndexEntry> filter) {
+        List<GameSummaryModel> values = new ArrayList<>();
+
+        if (gameRepository instanceof IndexedGameRepository) {
+            for (String id : indexQuery.apply((IndexedGameRepository) gameRepository)) {
+                addIfMatching(values, gameRepository.get(id), filter);
+            }
+        } else {
+            for (GenericGameHandlerWrapper<GenericGameHandler> wrapper : gameRepository.getAll()) {
+                addIfMatching(values, wrapper, filter);
+            }
+        }
+
+        return values;
+    }
+
+    private static void addIfMatching(List<GameSummaryModel> values, GenericGameHandlerWrapper<GenericGameHandler> wrapper, Predicate<GameIndexEntry> filter) {
+        if (wrapper != null && filter.test(GameIndexEntry.of(wrapper))) {
+            values.add(new GameSummaryModel(wrapper.getId(), wrapper.getGenericGameHandler()));
+        }
+    }
+
+    @FunctionalInterface
+    private interface GameUpdate {
+        /**
+         * @return true when the game was changed, and needs to be written
+         */
+        boolean apply(GenericGameHandlerWrapper<GenericGameHandler> gameWrapper) throws GameException;
+    }
 }
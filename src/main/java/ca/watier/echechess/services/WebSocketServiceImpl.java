@@ -20,25 +20,52 @@ import ca.watier.echechess.common.enums.ChessEventMessage;
 import ca.watier.echechess.common.enums.Side;
 import ca.watier.echechess.common.responses.ChessEvent;
 import ca.watier.echechess.common.services.WebSocketService;
+import ca.watier.echechess.components.GameEventLog;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.messaging.converter.MessageConversionException;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.stereotype.Service;
+import org.springframework.util.MimeTypeUtils;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 
 /**
  * Created by yannick on 6/10/2017.
+ * <p>
+ * The events are serialized once, by this service, and sent as bytes; the broker shares the payload between all the
+ * subscribers of the topic. The events without content are serialized once for all the games.
+ * <p>
+ * The events of the games carry their sequence in the {@link GameEventLog#EVENT_SEQUENCE_HEADER} header, qualified by
+ * the epoch of the log in the {@link GameEventLog#EVENT_EPOCH_HEADER} header, and are kept
+ * by the {@link GameEventLog} to be replayed to the clients resuming their session; the available moves answer a
+ * request of the player, they are neither numbered nor kept.
  */
 
 @Service
 public class WebSocketServiceImpl implements WebSocketService {
 
     private static final String TOPIC = "/topic/";
+    private static final Set<ChessEventMessage> TRANSIENT_EVENTS = Set.of(ChessEventMessage.AVAILABLE_MOVE);
+
     private final SimpMessagingTemplate template;
+    private final ObjectMapper objectMapper;
+    private final GameEventLog gameEventLog;
+    private final Map<ChessEventMessage, byte[]> emptyEvents = new ConcurrentHashMap<>();
 
     @Autowired
-    public WebSocketServiceImpl(SimpMessagingTemplate template) {
+    public WebSocketServiceImpl(SimpMessagingTemplate template, ObjectMapper objectMapper, GameEventLog gameEventLog) {
         this.template = template;
+        this.objectMapper = objectMapper;
+        this.gameEventLog = gameEventLog;
     }
 
     public void fireSideEvent(String uuid, Side side, ChessEventMessage evtMessage, String message) {
@@ -46,7 +73,7 @@ public class WebSocketServiceImpl implements WebSocketService {
             throw new IllegalArgumentException();
         }
 
-        template.convertAndSend(TOPIC + uuid + '/' + side, new ChessEvent(evtMessage, message));
+        sendGameEvent(uuid, side, evtMessage, serialize(new ChessEvent(evtMessage, message)));
     }
 
     @Override
@@ -57,20 +84,66 @@ public class WebSocketServiceImpl implements WebSocketService {
 
         ChessEvent payload = new ChessEvent(evtMessage, message);
         payload.setObj(obj);
-        template.convertAndSend(TOPIC + uuid + '/' + side, payload);
+        sendGameEvent(uuid, side, evtMessage, serialize(payload));
     }
 
     public void fireUiEvent(String uiUuid, ChessEventMessage evtMessage, String message) {
-        template.convertAndSend(TOPIC + uiUuid, new ChessEvent(evtMessage, message));
+        send(TOPIC + uiUuid, serialize(new ChessEvent(evtMessage, message)), null); // Sent once by ui, not kept
     }
 
 
     public void fireGameEvent(String uuid, ChessEventMessage evtMessage, Object message) {
-        template.convertAndSend(TOPIC + uuid, new ChessEvent(evtMessage, message));
+        sendGameEvent(uuid, null, evtMessage, serialize(new ChessEvent(evtMessage, message)));
     }
 
     @Override
     public void fireGameEvent(String uuid, ChessEventMessage refreshBoard) {
-        template.convertAndSend(TOPIC + uuid, new ChessEvent(refreshBoard));
+        byte[] payload = emptyEvents.computeIfAbsent(refreshBoard, evtMessage -> serialize(new ChessEvent(evtMessage)));
+        sendGameEvent(uuid, null, refreshBoard, payload);
+    }
+
+    /**
+     * @param side - The side of the topic, null for the topic of the game
+     */
+    private void sendGameEvent(String uuid, Side side, ChessEventMessage evtMessage, byte[] payload) {
+        GameEventLog.GameEvents eventsOfGame = gameEventLog.get(uuid);
+        String destination = eventsOfGame.getDestination(side);
+
+        if (TRANSIENT_EVENTS.contains(evtMessage)) {
+            send(destination, payload, 0, null);
+            return;
+        }
+
+        synchronized (eventsOfGame) { // Locked by game; the events of the game are sent in the order of their sequence
+            send(destination, payload, eventsOfGame.getEpoch(), eventsOfGame.append(side, payload));
+        }
+    }
+
+    private byte[] serialize(ChessEvent chessEvent) {
+        try {
+            return objectMapper.writeValueAsBytes(chessEvent);
+        } catch (JsonProcessingException e) {
+            throw new MessageConversionException("Unable to serialize the event", e);
+        }
+    }
+
+    /**
+     * The headers are left mutable, so the template sets the destination without copying the message.
+     *
+     * @param epoch    - The epoch of the log of the game event, ignored when not numbered
+     * @param sequence - The sequence of the game event, null when not numbered
+     */
+    private void send(String destination, byte[] payload, long epoch, Long sequence) {
+        SimpMessageHeaderAccessor headerAccessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        headerAccessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+
+        if (sequence != null) {
+            headerAccessor.setNativeHeader(GameEventLog.EVENT_EPOCH_HEADER, Long.toString(epoch));
+            headerAccessor.setNativeHeader(GameEventLog.EVENT_SEQUENCE_HEADER, sequence.toString());
+        }
+
+        headerAccessor.setLeaveMutable(true);
+
+        template.send(destination, MessageBuilder.createMessage(payload, headerAccessor.getMessageHeaders()));
     }
 }
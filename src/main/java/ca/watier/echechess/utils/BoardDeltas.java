@@ -0,0 +1,72 @@
+/*
+ *    Copyright 2014 - 2021 Yannick Watier
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.watier.echechess.utils;
+
+import ca.watier.echechess.common.enums.CasePosition;
+import ca.watier.echechess.common.enums.Pieces;
+import ca.watier.echechess.models.PieceLocationModel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Positions changed by a move, with their content after the move; the rook of a castling and the pawn taken en
+ * passant are included.
+ * <p>
+ * The positions possibly changed are all sent with their current content, so applying a delta twice is harmless.
+ */
+public final class BoardDeltas {
+    private BoardDeltas() {
+    }
+
+    /**
+     * @param piecesLocation - The pieces of the board after the move
+     */
+    public static List<PieceLocationModel> getChangedSquares(CasePosition from, CasePosition to, Map<CasePosition, Pieces> piecesLocation) {
+        long changed = CasePositionMask.of(from) | CasePositionMask.of(to);
+        Pieces movedPiece = piecesLocation.get(to);
+        String fromName = from.name();
+        String toName = to.name();
+        char fromFile = fromName.charAt(0);
+        char toFile = toName.charAt(0);
+        char rank = fromName.charAt(1);
+
+        if ((movedPiece == Pieces.W_KING || movedPiece == Pieces.B_KING) && Math.abs(toFile - fromFile) == 2) {
+            boolean isKingSide = toFile > fromFile;
+            changed |= CasePositionMask.of(CasePosition.valueOf("" + (isKingSide ? 'H' : 'A') + rank));
+            changed |= CasePositionMask.of(CasePosition.valueOf("" + (isKingSide ? 'F' : 'D') + rank));
+        } else if ((movedPiece == Pieces.W_PAWN || movedPiece == Pieces.B_PAWN) && toFile != fromFile) {
+            changed |= CasePositionMask.of(CasePosition.valueOf("" + toFile + rank)); // Taken en passant
+        }
+
+        return getSquares(changed, piecesLocation);
+    }
+
+    /**
+     * @return The positions of the mask with their content
+     */
+    public static List<PieceLocationModel> getSquares(long positions, Map<CasePosition, Pieces> piecesLocation) {
+        List<PieceLocationModel> squares = new ArrayList<>(CasePositionMask.size(positions));
+
+        for (CasePosition position : CasePositionMask.toPositions(positions)) {
+            squares.add(new PieceLocationModel(piecesLocation.get(position), position));
+        }
+
+        return squares;
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ *    Copyright 2014 - 2021 Yannick Watier
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.watier.echechess.utils;
+
+import ca.watier.echechess.common.enums.CasePosition;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Set of positions of the board as a 64 bits mask, the bit of a position is its ordinal.
+ */
+public final class CasePositionMask {
+    public static final long EMPTY = 0L;
+
+    private static final CasePosition[] POSITIONS = CasePosition.values();
+
+    static {
+        if (POSITIONS.length > Long.SIZE) {
+            throw new IllegalStateException("The positions don't fit in a mask");
+        }
+    }
+
+    private CasePositionMask() {
+    }
+
+    public static long of(Collection<CasePosition> positions) {
+        long mask = EMPTY;
+
+        if (positions != null) {
+            for (CasePosition position : positions) {
+                mask |= of(position);
+            }
+        }
+
+        return mask;
+    }
+
+    public static long of(CasePosition position) {
+        return 1L << position.ordinal();
+    }
+
+    public static boolean contains(long mask, CasePosition position) {
+        return (mask & of(position)) != 0;
+    }
+
+    public static int size(long mask) {
+        return Long.bitCount(mask);
+    }
+
+    public static List<CasePosition> toPositions(long mask) {
+        List<CasePosition> positions = new ArrayList<>(size(mask));
+
+        for (long remaining = mask; remaining != 0; remaining &= remaining - 1) {
+            positions.add(POSITIONS[Long.numberOfTrailingZeros(remaining)]);
+        }
+
+        return positions;
+    }
+
+    /**
+     * @return The names of the positions, in the order of the board
+     */
+    public static List<String> toNames(long mask) {
+        List<String> names = new ArrayList<>(size(mask));
+
+        for (long remaining = mask; remaining != 0; remaining &= remaining - 1) {
+            names.add(POSITIONS[Long.numberOfTrailingZeros(remaining)].name());
+        }
+
+        return names;
+    }
+}
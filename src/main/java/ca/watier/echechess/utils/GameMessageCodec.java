@@ -0,0 +1,332 @@
+/*
+ *    Copyright 2014 - 2021 Yannick Watier
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.watier.echechess.utils;
+
+import ca.watier.echechess.common.enums.CasePosition;
+import ca.watier.echechess.common.enums.MoveType;
+import ca.watier.echechess.common.enums.Side;
+import org.apache.commons.lang3.StringUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * Fixed layout of the messages exchanged between the application and the game engine (queues, or in process).
+ * <pre>
+ * [0]      magic
+ * [1]      version of the protocol ({@link #PROTOCOL_VERSION})
+ * [2]      type of message
+ * [3-18]   id of the game (uuid, most significant bits first)
+ * [19-26]  correlation id, copied from the request to its response ({@link #NO_CORRELATION} when not correlated)
+ * [27]     from (ordinal of the {@link CasePosition})
+ * move request:                 [28] to, [29] side, [30-33] sequence, [34-41] idempotency key
+ * available moves request:      [28] side
+ * move response:                [28] to, [29] side, [30] move type, [31] status, [32-35] sequence
+ * available moves response:     [28] side, [29-36] positions ({@link CasePositionMask})
+ * </pre>
+ * The sides and move types are written with their value ({@link Side#getValue()}, {@link MoveType#getValue()}). The
+ * engine answers a move request even when the move is refused, so a correlated request always gets its response.
+ * <p>
+ * The sequence of a move request is the number of moves of the game seen by the sender ({@link #NO_SEQUENCE} when not
+ * checked), a move played on another state of the game is answered as {@link #MOVE_STALE}. The idempotency key
+ * identifies the move across the retries and redeliveries; a move already applied is answered again as
+ * {@link #MOVE_DUPLICATE}, with its first result. The sequence of a move response is the number of moves of the game
+ * once the move is handled.
+ * <p>
+ * The previous format ({@code UUID|FROM|TO|SIDE} strings) is still read with {@link #normalize(byte[], byte)}, and
+ * written with {@link #encodeLegacyMoveRequest} and {@link #encodeLegacyAvailableMovesRequest} for the engine nodes
+ * not reading the fixed layout yet; only the fields of the previous format are kept.
+ */
+public final class GameMessageCodec {
+    public static final byte MOVE_REQUEST = 1;
+    public static final byte AVAILABLE_MOVES_REQUEST = 2;
+    public static final byte MOVE_RESPONSE = 3;
+    public static final byte AVAILABLE_MOVES_RESPONSE = 4;
+    public static final long NO_CORRELATION = 0;
+    public static final int NO_SEQUENCE = -1;
+    public static final long NO_IDEMPOTENCY_KEY = 0;
+    public static final byte MOVE_APPLIED = 0;
+    public static final byte MOVE_DUPLICATE = 1;
+    public static final byte MOVE_STALE = 2;
+    public static final byte PROTOCOL_VERSION = 1;
+
+    private static final byte MAGIC = (byte) 0xEC;
+    private static final int VERSION_OFFSET = 1;
+    private static final int TYPE_OFFSET = 2;
+    private static final int GAME_ID_OFFSET = 3;
+    private static final int CORRELATION_ID_OFFSET = 19;
+    private static final int FROM_OFFSET = 27;
+    private static final int TO_OFFSET = 28;
+    private static final int MOVE_SIDE_OFFSET = 29;
+    private static final int AVAILABLE_MOVES_SIDE_OFFSET = 28;
+    private static final int MOVE_TYPE_OFFSET = 30;
+    private static final int POSITIONS_OFFSET = 29;
+    private static final int REQUEST_SEQUENCE_OFFSET = 30;
+    private static final int IDEMPOTENCY_KEY_OFFSET = 34;
+    private static final int STATUS_OFFSET = 31;
+    private static final int RESPONSE_SEQUENCE_OFFSET = 32;
+    private static final char LEGACY_SEPARATOR = '|';
+    private static final CasePosition[] POSITIONS = CasePosition.values();
+
+    private GameMessageCodec() {
+    }
+
+    public static byte[] encodeMoveRequest(UUID gameId, long correlationId, CasePosition from, CasePosition to, Side side) {
+        return encodeMoveRequest(gameId, correlationId, from, to, side, NO_SEQUENCE, NO_IDEMPOTENCY_KEY);
+    }
+
+    public static byte[] encodeMoveRequest(UUID gameId, long correlationId, CasePosition from, CasePosition to, Side side, int sequence, long idempotencyKey) {
+        byte[] message = newMessage(MOVE_REQUEST, gameId, correlationId, from, 42);
+        message[TO_OFFSET] = (byte) to.ordinal();
+        message[MOVE_SIDE_OFFSET] = side.getValue();
+        writeInt(message, REQUEST_SEQUENCE_OFFSET, sequence);
+        writeLong(message, IDEMPOTENCY_KEY_OFFSET, idempotencyKey);
+        return message;
+    }
+
+    public static byte[] encodeAvailableMovesRequest(UUID gameId, long correlationId, CasePosition from, Side side) {
+        byte[] message = newMessage(AVAILABLE_MOVES_REQUEST, gameId, correlationId, from, 29);
+        message[AVAILABLE_MOVES_SIDE_OFFSET] = side.getValue();
+        return message;
+    }
+
+    public static byte[] encodeMoveResponse(UUID gameId, long correlationId, CasePosition from, CasePosition to, MoveType moveType, Side side) {
+        return encodeMoveResponse(gameId, correlationId, from, to, moveType, side, MOVE_APPLIED, NO_SEQUENCE);
+    }
+
+    /**
+     * @param status   - {@link #MOVE_APPLIED}, {@link #MOVE_DUPLICATE} or {@link #MOVE_STALE}
+     * @param sequence - The number of moves of the game, once the move is handled
+     */
+    public static byte[] encodeMoveResponse(UUID gameId, long correlationId, CasePosition from, CasePosition to, MoveType moveType, Side side, byte status, int sequence) {
+        byte[] message = newMessage(MOVE_RESPONSE, gameId, correlationId, from, 36);
+        message[TO_OFFSET] = (byte) to.ordinal();
+        message[MOVE_SIDE_OFFSET] = side.getValue();
+        message[MOVE_TYPE_OFFSET] = moveType.getValue();
+        message[STATUS_OFFSET] = status;
+        writeInt(message, RESPONSE_SEQUENCE_OFFSET, sequence);
+        return message;
+    }
+
+    /**
+     * @param positions - The mask of the available positions ({@link CasePositionMask})
+     */
+    public static byte[] encodeAvailableMovesResponse(UUID gameId, long correlationId, CasePosition from, Side side, long positions) {
+        byte[] message = newMessage(AVAILABLE_MOVES_RESPONSE, gameId, correlationId, from, 37);
+        message[AVAILABLE_MOVES_SIDE_OFFSET] = side.getValue();
+        writeLong(message, POSITIONS_OFFSET, positions);
+        return message;
+    }
+
+    public static boolean isEncoded(byte[] message) {
+        return message != null && message.length > FROM_OFFSET && message[0] == MAGIC;
+    }
+
+    public static byte getVersion(byte[] message) {
+        return message[VERSION_OFFSET];
+    }
+
+    public static byte getType(byte[] message) {
+        return message[TYPE_OFFSET];
+    }
+
+    public static UUID getGameId(byte[] message) {
+        return new UUID(readLong(message, GAME_ID_OFFSET), readLong(message, GAME_ID_OFFSET + 8));
+    }
+
+    public static long getCorrelationId(byte[] message) {
+        return readLong(message, CORRELATION_ID_OFFSET);
+    }
+
+    public static CasePosition getFrom(byte[] message) {
+        return POSITIONS[message[FROM_OFFSET]];
+    }
+
+    public static CasePosition getTo(byte[] message) {
+        return POSITIONS[message[TO_OFFSET]];
+    }
+
+    public static Side getSide(byte[] message) {
+        byte type = getType(message);
+        int offset = (type == MOVE_REQUEST || type == MOVE_RESPONSE) ? MOVE_SIDE_OFFSET : AVAILABLE_MOVES_SIDE_OFFSET;
+        return Side.getFromValue(message[offset]);
+    }
+
+    public static MoveType getMoveType(byte[] message) {
+        return MoveType.getFromValue(message[MOVE_TYPE_OFFSET]);
+    }
+
+    /**
+     * @return The mask of the available positions ({@link CasePositionMask})
+     */
+    public static long getPositions(byte[] message) {
+        return readLong(message, POSITIONS_OFFSET);
+    }
+
+    /**
+     * @return The sequence of a move request or response, {@link #NO_SEQUENCE} when the message has none (sent by a
+     * node not using the sequences yet)
+     */
+    public static int getSequence(byte[] message) {
+        int offset = getType(message) == MOVE_REQUEST ? REQUEST_SEQUENCE_OFFSET : RESPONSE_SEQUENCE_OFFSET;
+        return message.length >= offset + 4 ? readInt(message, offset) : NO_SEQUENCE;
+    }
+
+    /**
+     * @return The idempotency key of a move request, {@link #NO_IDEMPOTENCY_KEY} when the message has none
+     */
+    public static long getIdempotencyKey(byte[] message) {
+        return message.length >= IDEMPOTENCY_KEY_OFFSET + 8 ? readLong(message, IDEMPOTENCY_KEY_OFFSET) : NO_IDEMPOTENCY_KEY;
+    }
+
+    /**
+     * @return The status of a move response, {@link #MOVE_APPLIED} when the message has none
+     */
+    public static byte getMoveStatus(byte[] message) {
+        return message.length > STATUS_OFFSET ? message[STATUS_OFFSET] : MOVE_APPLIED;
+    }
+
+    /**
+     * Convert a message in the previous format (pipe-delimited string) to the fixed layout; the encoded messages are
+     * returned as is. The converted messages are not correlated.
+     *
+     * @param type - The type of the message, the previous format has no type
+     * @throws IllegalArgumentException when the message cannot be read, or is encoded with another version of the
+     *                                  protocol
+     */
+    public static byte[] normalize(byte[] message, byte type) {
+        if (isEncoded(message)) {
+            if (getVersion(message) != PROTOCOL_VERSION) {
+                throw new IllegalArgumentException("Unsupported version of the game message: " + getVersion(message));
+            }
+
+            return message;
+        }
+
+        String[] sections = StringUtils.split(new String(message, StandardCharsets.UTF_8), LEGACY_SEPARATOR);
+
+        if (sections.length < 3) {
+            throw new IllegalArgumentException("Invalid game message");
+        }
+
+        UUID gameId = UUID.fromString(sections[0]);
+        CasePosition from = CasePosition.valueOf(sections[1]);
+
+        switch (type) {
+            case MOVE_REQUEST:
+                return encodeMoveRequest(gameId, NO_CORRELATION, from, CasePosition.valueOf(sections[2]), Side.getFromValue(Byte.parseByte(sections[3])));
+            case AVAILABLE_MOVES_REQUEST:
+                return encodeAvailableMovesRequest(gameId, NO_CORRELATION, from, Side.getFromValue(Byte.parseByte(sections[2])));
+            case MOVE_RESPONSE:
+                return encodeMoveResponse(gameId, NO_CORRELATION, from, CasePosition.valueOf(sections[2]),
+                        MoveType.getFromValue(Byte.parseByte(sections[3])), Side.getFromValue(Byte.parseByte(sections[4])));
+            case AVAILABLE_MOVES_RESPONSE:
+                // The positions were sent as a json array of names
+                long positions = CasePositionMask.EMPTY;
+                String[] names = StringUtils.substringsBetween(sections[3], "\"", "\"");
+
+                if (names != null) {
+                    for (String name : names) {
+                        positions |= CasePositionMask.of(CasePosition.valueOf(name));
+                    }
+                }
+
+                return encodeAvailableMovesResponse(gameId, NO_CORRELATION, from, Side.getFromValue(Byte.parseByte(sections[2])), positions);
+            default:
+                throw new IllegalArgumentException("Unknown type of game message: " + type);
+        }
+    }
+
+    /**
+     * Convert a request to the previous format ({@code UUID|FROM|TO|SIDE} for a move, {@code UUID|FROM|SIDE} for the
+     * available moves); the correlation id, the sequence and the idempotency key are dropped.
+     *
+     * @throws IllegalArgumentException when the message is not a request
+     */
+    public static byte[] toLegacyFormat(byte[] message) {
+        switch (getType(message)) {
+            case MOVE_REQUEST:
+                return encodeLegacyMoveRequest(getGameId(message), getFrom(message), getTo(message), getSide(message));
+            case AVAILABLE_MOVES_REQUEST:
+                return encodeLegacyAvailableMovesRequest(getGameId(message), getFrom(message), getSide(message));
+            default:
+                throw new IllegalArgumentException("Not a game request: " + getType(message));
+        }
+    }
+
+    /**
+     * @return The move request in the previous format ({@code UUID|FROM|TO|SIDE})
+     */
+    public static byte[] encodeLegacyMoveRequest(UUID gameId, CasePosition from, CasePosition to, Side side) {
+        return (gameId.toString() + LEGACY_SEPARATOR + from.name() + LEGACY_SEPARATOR + to.name() + LEGACY_SEPARATOR + side.getValue())
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return The available moves request in the previous format ({@code UUID|FROM|SIDE})
+     */
+    public static byte[] encodeLegacyAvailableMovesRequest(UUID gameId, CasePosition from, Side side) {
+        return (gameId.toString() + LEGACY_SEPARATOR + from.name() + LEGACY_SEPARATOR + side.getValue())
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] newMessage(byte type, UUID gameId, long correlationId, CasePosition from, int length) {
+        byte[] message = new byte[length];
+        message[0] = MAGIC;
+        message[VERSION_OFFSET] = PROTOCOL_VERSION;
+        message[TYPE_OFFSET] = type;
+        writeLong(message, GAME_ID_OFFSET, gameId.getMostSignificantBits());
+        writeLong(message, GAME_ID_OFFSET + 8, gameId.getLeastSignificantBits());
+        writeLong(message, CORRELATION_ID_OFFSET, correlationId);
+        message[FROM_OFFSET] = (byte) from.ordinal();
+        return message;
+    }
+
+    private static void writeLong(byte[] message, int offset, long value) {
+        for (int i = 7; i >= 0; i--) {
+            message[offset + i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+
+    private static void writeInt(byte[] message, int offset, int value) {
+        for (int i = 3; i >= 0; i--) {
+            message[offset + i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+
+    private static int readInt(byte[] message, int offset) {
+        int value = 0;
+
+        for (int i = 0; i < 4; i++) {
+            value = (value << 8) | (message[offset + i] & 0xFF);
+        }
+
+        return value;
+    }
+
+    private static long readLong(byte[] message, int offset) {
+        long value = 0;
+
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (message[offset + i] & 0xFF);
+        }
+
+        return value;
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ *    Copyright 2014 - 2021 Yannick Watier
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.watier.echechess.utils;
+
+import ca.watier.echechess.common.enums.MoveType;
+
+/**
+ * The results of the last moves of a game, by idempotency key; the oldest result is replaced once the window is full.
+ * <p>
+ * The window is written by the thread applying the moves of its game, and copied with the game by the other threads
+ * (see {@link ca.watier.echechess.models.TrackedGameHandlerWrapper#copyOf}); the methods are synchronized.
+ * <p>
+ * The window only exists in the process applying the moves: the engine nodes reading the previous text format (see
+ * {@link GameMessageCodec}) receive neither the key nor the sequence, and apply a move received again.
+ */
+public class IdempotencyWindow {
+    public static final int DEFAULT_SIZE = 16;
+
+    private final long[] keys;
+    private final byte[] moveTypes;
+    private int next;
+
+    public IdempotencyWindow() {
+        this(DEFAULT_SIZE);
+    }
+
+    public IdempotencyWindow(int size) {
+        this.keys = new long[size];
+        this.moveTypes = new byte[size];
+    }
+
+    /**
+     * @return The result of the move, or null when the key is not in the window
+     */
+    public synchronized MoveType get(long idempotencyKey) {
+        if (idempotencyKey == GameMessageCodec.NO_IDEMPOTENCY_KEY) {
+            return null;
+        }
+
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] == idempotencyKey) {
+                return MoveType.getFromValue(moveTypes[i]);
+            }
+        }
+
+        return null;
+    }
+
+    public synchronized void put(long idempotencyKey, MoveType moveType) {
+        if (idempotencyKey == GameMessageCodec.NO_IDEMPOTENCY_KEY) {
+            return;
+        }
+
+        keys[next] = idempotencyKey;
+        moveTypes[next] = moveType.getValue();
+        next = (next + 1) % keys.length;
+    }
+
+    /**
+     * @return A copy of the window, changed without changing this window
+     */
+    public synchronized IdempotencyWindow copy() {
+        IdempotencyWindow copy = new IdempotencyWindow(keys.length);
+        System.arraycopy(keys, 0, copy.keys, 0, keys.length);
+        System.arraycopy(moveTypes, 0, copy.moveTypes, 0, moveTypes.length);
+        copy.next = next;
+        return copy;
+    }
+}
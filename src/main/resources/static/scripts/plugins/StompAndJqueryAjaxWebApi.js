@@ -69,14 +69,14 @@ class StompAndJqueryAjaxWebApi {
             })
         }
 
-        app.config.globalProperties.$post = function (baseUrl, body, success, fail) {
+        app.config.globalProperties.$post = function (baseUrl, body, success, fail, headers) {
             const correctedUrl = app.config.globalProperties.api.restUrl + makeBaseUrlValid(baseUrl);
             fetch(correctedUrl, {
                 method: 'POST',
-                headers: {
+                headers: _.assign({
                     'Authorization': `Bearer ${app.config.globalProperties.oauth.token}`,
                     'Content-Type': 'application/x-www-form-urlencoded; charset=UTF-8'
-                },
+                }, headers),
                 body: encodeURI(body),
             }).then(response => {
                 handleFetchRequestResponseWithCallback(response, success, fail);
@@ -87,37 +87,69 @@ class StompAndJqueryAjaxWebApi {
             app.config.globalProperties.$get(`/api/v1${makeBaseUrlValid(baseUrl)}`, success, fail);
         }
 
-        app.config.globalProperties.$postV1 = function (baseUrl, body, success, fail) {
-            app.config.globalProperties.$post(`/api/v1${makeBaseUrlValid(baseUrl)}`, body, success, fail);
+        app.config.globalProperties.$postV1 = function (baseUrl, body, success, fail, headers) {
+            app.config.globalProperties.$post(`/api/v1${makeBaseUrlValid(baseUrl)}`, body, success, fail, headers);
         }
 
+        let currentGameEvents = undefined; // The topics and callbacks of the current game, subscribed again on reconnection
+
         //TODO: find a better than using callbacks
-        app.config.globalProperties.$registerGameEvents = function (basePath, sideEventPath, gameEventCallback, sideEventCallback, gameStartCallback) {
+        app.config.globalProperties.$registerGameEvents = function (basePath, sideEventPath, gameEventCallback, sideEventCallback, gameStartCallback, gameResumeCallback) {
+            currentGameEvents = {basePath, sideEventPath, gameEventCallback, sideEventCallback, gameResumeCallback};
+
             if (app.config.globalProperties.websocketClient) {
                 app.config.globalProperties.websocketClient.unsubscribe();
-
-                app.config.globalProperties.websocketClient.subscribe(sideEventPath, sideEventCallback);
-                app.config.globalProperties.websocketClient.subscribe(basePath, gameEventCallback);
+                subscribeCurrentGameEvents();
             } else {
-                let url = `${app.config.globalProperties.api.websocketUrl}/websocket?access_token=${app.config.globalProperties.oauth.token}`;
-                app.config.globalProperties.websocketClient = Stomp.over(new WebSocket(url));
-
-                let headers = {
-                    "Authorization": `Bearer ${app.config.globalProperties.oauth.token}`
-                };
-
-                app.config.globalProperties.websocketClient.connect(headers, function () {
-                    if(gameStartCallback) {
+                connectWebsocket(function (isReconnected) {
+                    if (!isReconnected && gameStartCallback) {
                         gameStartCallback();
                     }
 
-                    app.config.globalProperties.websocketClient.subscribe(sideEventPath, sideEventCallback);
-                    app.config.globalProperties.websocketClient.subscribe(basePath, gameEventCallback);
-                });
+                    subscribeCurrentGameEvents();
 
+                    if (isReconnected && currentGameEvents.gameResumeCallback) {
+                        currentGameEvents.gameResumeCallback(); // Asks for the events sent while disconnected, once subscribed
+                    }
+                }, false, 0);
             }
         }
 
+        /**
+         * Subscribe to the topics of the game registered last; read on each (re)connection, not captured, since the
+         * player may have changed of game since the websocket was first connected.
+         */
+        function subscribeCurrentGameEvents() {
+            app.config.globalProperties.websocketClient.subscribe(currentGameEvents.sideEventPath, currentGameEvents.sideEventCallback);
+            app.config.globalProperties.websocketClient.subscribe(currentGameEvents.basePath, currentGameEvents.gameEventCallback);
+        }
+
+        /**
+         * Connect the websocket; when the connection is lost, it is connected again after a random delay (growing
+         * with the attempts), to spread the reconnections of the players after a network blip.
+         */
+        function connectWebsocket(connectedCallback, wasConnected, attempt) {
+            let url = `${app.config.globalProperties.api.websocketUrl}/websocket?access_token=${app.config.globalProperties.oauth.token}`;
+            let isConnected = false;
+            app.config.globalProperties.websocketClient = Stomp.over(new WebSocket(url));
+
+            let headers = {
+                "Authorization": `Bearer ${app.config.globalProperties.oauth.token}`
+            };
+
+            app.config.globalProperties.websocketClient.connect(headers, function () {
+                isConnected = true;
+                connectedCallback(wasConnected);
+            }, function () {
+                const nextAttempt = isConnected ? 1 : attempt + 1;
+                const delayInMillis = _.random(0, Math.min(30000, 500 * Math.pow(2, nextAttempt)));
+
+                setTimeout(function () {
+                    connectWebsocket(connectedCallback, wasConnected || isConnected, nextAttempt);
+                }, delayInMillis);
+            });
+        }
+
         function handleFetchRequestResponseWithCallback(response, success, fail) {
             if (response.ok) {
                 if (success) { //TODO: Check if the return code is valid (! 4xx & 5xx, ect)
@@ -251,6 +251,12 @@ const Game = {
             specialGamePatternEnabled: false,
             isPlayerTurn: null, //TODO: Bind and switch
             isGameStarted: false,
+            boardSequence: -1, // Number of moves of the game shown by the board, -1 when unknown
+            isBoardResyncInProgress: false,
+            lastEventSequence: 0, // Sequence of the last event of the game received, to resume the session
+            lastEventEpoch: 0, // Epoch of the log of the last event received, the sequences of another log are not comparable
+            isResumeInProgress: false,
+            pendingEvents: [],
             board: [
                 {
                     "unicodeIcon": "&#9820;",
@@ -578,16 +584,79 @@ const Game = {
             let ref = this;
 
             if (this.gameUuid) {
-                this.$getV1(`/game/pieces?uuid=${this.gameUuid}`,
-                    function (pieces) {
-                        ref.updateBoardPieces(pieces);
+                this.isBoardResyncInProgress = true;
+                this.$getV1(`/game/board?uuid=${this.gameUuid}`,
+                    function (board) {
+                        ref.updateBoardPieces(board.squares);
+                        ref.boardSequence = board.sequence;
+                        ref.isBoardResyncInProgress = false;
                     }, function () {
+                        ref.isBoardResyncInProgress = false;
                         ref.$addErrorAlert("Unable to fetch the pieces!");
                     });
             } else {
                 this.$addErrorAlert("Unable to fetch the pieces location (uuid is not available)!");
             }
         },
+        applyBoardDelta: function (delta) {
+            if (this.isBoardResyncInProgress) {
+                return; // The fetched board replaces it, a later gap is detected with the next delta
+            }
+
+            const sequence = delta.sequence;
+
+            if (sequence >= 0 && this.boardSequence >= 0) {
+                if (sequence < this.boardSequence) {
+                    return; // Already in the board
+                } else if (sequence > this.boardSequence + 1) {
+                    this.refreshGamePieces(); // At least one move was missed
+                    return;
+                }
+            }
+
+            for (const square of delta.squares) {
+                const index = _.findIndex(this.board, {rawPosition: square.rawPosition});
+
+                if (index >= 0) {
+                    this.board.splice(index, 1, square);
+                }
+            }
+
+            if (sequence >= 0) {
+                this.boardSequence = sequence;
+            }
+        },
+        applyMove: function (moveApplied) { // The whole outcome of a move, in one event
+            this.applyBoardDelta(moveApplied);
+
+            if (moveApplied.message) {
+                this.moveLog.push(moveApplied.message);
+            }
+
+            this.blackPlayerScore = moveApplied.score.blackPlayerPoint;
+            this.whitePlayerScore = moveApplied.score.whitePlayerPoint;
+
+            if (moveApplied.pawnPromotion) {
+                this.handlePawnPromotion({gameSide: moveApplied.side, from: moveApplied.from, to: moveApplied.to});
+                return; // The turn changes once the piece is chosen
+            }
+
+            const kingStatuses = {"WHITE": moveApplied.whiteKingStatus, "BLACK": moveApplied.blackKingStatus};
+
+            for (const side in kingStatuses) {
+                if (kingStatuses[side] === 'CHECKMATE') {
+                    this.$addWarningAlert(`The ${side} king is checkmate !`);
+                }
+            }
+
+            if (kingStatuses[this.gameSide] === 'CHECK') {
+                this.$addWarningAlert("Your king is in check !");
+            }
+
+            if (moveApplied.turn === this.gameSide) {
+                this.$addSuccessAlert("It's your turn !");
+            }
+        },
         getCaseIdFromTargetWhenPieceDragEvent: function (target) {
             const parentElement = _.get(target, 'parentElement');
 
@@ -674,8 +743,12 @@ const Game = {
                     this.$addErrorAlert(message);
                     break;
                 case 'MOVE':
-                    this.refreshGamePieces();
-                    this.moveLog.push(message);
+                    if (_.isObject(message)) {
+                        this.applyMove(message);
+                    } else {
+                        this.refreshGamePieces(); // Previous version of the event, only the description of the move
+                        this.moveLog.push(message);
+                    }
                     break;
                 case 'GAME_WON':
                     // TODO: PRINT THE GAME WON MESSAGE
@@ -688,7 +761,11 @@ const Game = {
                     this.whitePlayerScore = message.whitePlayerPoint;
                     break;
                 case 'REFRESH_BOARD':
-                    this.refreshGamePieces();
+                    if (message && message.squares) {
+                        this.applyBoardDelta(message);
+                    } else {
+                        this.refreshGamePieces(); // The board may be behind the game
+                    }
                     break;
                 case 'PAWN_PROMOTION':
                     this.handlePawnPromotion(message);
@@ -698,6 +775,71 @@ const Game = {
                     break;
             }
         },
+        receiveGameEvent: function (payload) {
+            this.receiveEvent(payload, this.onGameEvent);
+        },
+        receiveGameSideEvent: function (payload) {
+            this.receiveEvent(payload, this.onGameSideEvent);
+        },
+        receiveEvent: function (payload, handler) {
+            if (this.isResumeInProgress) {
+                this.pendingEvents.push({payload: payload, handler: handler}); // Applied after the missed events
+                return;
+            }
+
+            this.applyEvent(payload, handler);
+        },
+        applyEvent: function (payload, handler) {
+            const sequence = Number(_.get(payload, ['headers', 'event-sequence'], 0));
+
+            if (sequence > 0) {
+                const epoch = Number(_.get(payload, ['headers', 'event-epoch'], 0));
+
+                if (epoch === this.lastEventEpoch && sequence <= this.lastEventSequence) {
+                    return; // Already received, or replayed on the resume
+                }
+
+                this.lastEventSequence = epoch === this.lastEventEpoch ? Math.max(this.lastEventSequence, sequence) : sequence;
+                this.lastEventEpoch = epoch;
+            }
+
+            handler(payload);
+        },
+        onGameResume: function () { // The websocket was connected again, the missed events are replayed
+            let ref = this;
+            this.isResumeInProgress = true;
+
+            this.$getV1(`/game/events?uuid=${this.gameUuid}&epoch=${this.lastEventEpoch}&after=${this.lastEventSequence}`,
+                function (missedEvents) {
+                    if (missedEvents.complete) {
+                        for (const event of missedEvents.events) {
+                            const payload = {
+                                headers: {'event-epoch': missedEvents.epoch, 'event-sequence': event.sequence},
+                                body: JSON.stringify(event.event)
+                            };
+                            ref.applyEvent(payload, event.side ? ref.onGameSideEvent : ref.onGameEvent);
+                        }
+                    } else {
+                        ref.refreshGamePieces(); // Too many events were missed, or the log of the game was replaced
+                    }
+
+                    ref.lastEventEpoch = missedEvents.epoch;
+                    ref.lastEventSequence = missedEvents.lastSequence;
+                    ref.applyPendingEvents();
+                }, function () {
+                    ref.refreshGamePieces();
+                    ref.applyPendingEvents();
+                });
+        },
+        applyPendingEvents: function () {
+            const pendingEvents = this.pendingEvents;
+            this.pendingEvents = [];
+            this.isResumeInProgress = false;
+
+            for (const pendingEvent of pendingEvents) {
+                this.applyEvent(pendingEvent.payload, pendingEvent.handler); // The events already replayed are dropped
+            }
+        },
         onGameStart: function () {
             this.isGameStarted = true;
             router.push({name: 'game', query: {id: this.gameUuid}});
@@ -779,12 +921,16 @@ const Game = {
 
             let basePath = `/topic/${this.gameUuid}`;
             let sideEventPath = `${basePath}/${this.gameSide}`;
-            this.$registerGameEvents(basePath, sideEventPath, this.onGameEvent, this.onGameSideEvent, this.onGameStart);
+            this.$registerGameEvents(basePath, sideEventPath, this.receiveGameEvent, this.receiveGameSideEvent, this.onGameStart, this.onGameResume);
         },
         initNewGame: function (gameUuid, gameSide) {
             this.moveLog = [];
             this.blackPlayerScore = 0;
             this.whitePlayerScore = 0;
+            this.boardSequence = -1;
+            this.lastEventSequence = 0;
+            this.lastEventEpoch = 0;
+            this.pendingEvents = [];
 
             if (gameSide) {
                 this.gameSide = gameSide;
@@ -857,12 +1003,22 @@ const Game = {
             let ref = this;
 
             if (this.gameUuid && from && to && (from !== to)) {
-                this.$postV1('/game/move', `from=${from}&to=${to}&uuid=${ref.gameUuid}`, null,
+                // The move is refused when the board is behind the game; the key identifies the move if it is sent again
+                const sequenceParameter = this.boardSequence >= 0 ? `&sequence=${this.boardSequence}` : '';
+
+                this.$postV1('/game/move', `from=${from}&to=${to}&uuid=${ref.gameUuid}${sequenceParameter}`, null,
                     function () {
                         ref.$addErrorAlert("Unable to move to the selected position!");
-                    });
+                    }, {'Idempotency-Key': this.newIdempotencyKey()});
             }
         },
+        newIdempotencyKey: function () {
+            if (window.crypto && window.crypto.randomUUID) {
+                return window.crypto.randomUUID();
+            }
+
+            return `${Date.now()}-${_.random(0, Number.MAX_SAFE_INTEGER)}`;
+        },
         handlePawnPromotion(message) {
 
             if (message.gameSide === this.gameSide) {
@@ -0,0 +1,118 @@
+/*
+ *    Copyright 2014 - 2021 Yannick Watier
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.watier.echechess.benchmarks;
+
+import ca.watier.echechess.components.BatchingMessagePublisher;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitOperations;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Throughput of the requests sent to the game engine, one channel operation per message (the previous publishing)
+ * against the {@link BatchingMessagePublisher}. Each operation waits for the confirm of its message.
+ * <p>
+ * The broker is a stand-in: each channel operation costs {@link #channelCostInMicros} (checkout and network round
+ * trip), the sends themselves are free and the confirms are delivered from another thread.
+ * <p>
+ * Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=ca.watier.echechess.benchmarks.BatchingMessagePublisherBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(16)
+@Fork(1)
+public class BatchingMessagePublisherBenchmark {
+    private static final String ROUTING_KEY = "move-work";
+    private static final Message MESSAGE = new Message(new byte[29], new MessageProperties());
+
+    @Param({"50"})
+    public long channelCostInMicros;
+
+    private ExecutorService confirmExecutor;
+    private RabbitOperations broker;
+    private BatchingMessagePublisher messagePublisher;
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(BatchingMessagePublisherBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+
+    @Setup
+    public void setup() {
+        confirmExecutor = Executors.newSingleThreadExecutor();
+        broker = newBroker();
+        messagePublisher = new BatchingMessagePublisher(broker, "", 64, Duration.ZERO, 10_000);
+    }
+
+    @TearDown
+    public void tearDown() {
+        messagePublisher.shutdown();
+        confirmExecutor.shutdown();
+    }
+
+    @Benchmark
+    public Object perMessage() {
+        CorrelationData correlationData = new CorrelationData();
+        broker.invoke(operations -> {
+            operations.send("", ROUTING_KEY, MESSAGE, correlationData);
+            return null;
+        });
+
+        return correlationData.getFuture().completable().join();
+    }
+
+    @Benchmark
+    public Object batched() {
+        return messagePublisher.publish(ROUTING_KEY, MESSAGE).join();
+    }
+
+    /**
+     * Only the methods used by the publishers are implemented.
+     */
+    private RabbitOperations newBroker() {
+        long channelCostInNanos = TimeUnit.MICROSECONDS.toNanos(channelCostInMicros);
+
+        return (RabbitOperations) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{RabbitOperations.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "invoke":
+                    LockSupport.parkNanos(channelCostInNanos);
+                    return ((RabbitOperations.OperationsCallback<?>) args[0]).doInRabbit((RabbitOperations) proxy);
+                case "send":
+                    CorrelationData correlationData = (CorrelationData) args[3];
+                    confirmExecutor.execute(() -> correlationData.getFuture().set(new CorrelationData.Confirm(true, null)));
+                    return null;
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ *    Copyright 2014 - 2021 Yannick Watier
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.watier.echechess.benchmarks;
+
+import ca.watier.echechess.common.enums.CasePosition;
+import ca.watier.echechess.common.enums.Side;
+import ca.watier.echechess.engine.delegates.PieceMoveConstraintDelegate;
+import ca.watier.echechess.repositories.GameStateCodec;
+import ca.watier.echechess.repositories.MappedGameJournal;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Cost of the journal append done on the move path, with the group commit (the default) and with the wait for the
+ * group to be forced on the disk.
+ * <p>
+ * Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=ca.watier.echechess.benchmarks.GameJournalAppendBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GameJournalAppendBenchmark {
+    private static final UUID GAME_UUID = UUID.randomUUID();
+
+    @Param({"false", "true"})
+    public boolean syncOnAppend;
+
+    private Path directory;
+    private MappedGameJournal journal;
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(GameJournalAppendBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+
+    @Setup
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("journal-benchmark");
+        journal = new MappedGameJournal(directory, new GameStateCodec(new PieceMoveConstraintDelegate()), 64 * 1024 * 1024, Duration.ofMillis(10), Duration.ofMinutes(5), syncOnAppend);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        journal.close();
+
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.delete(path);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void recordMove() {
+        journal.recordMove(GAME_UUID, CasePosition.E2, CasePosition.E4, Side.WHITE);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void recordMoveContended() {
+        journal.recordMove(GAME_UUID, CasePosition.E2, CasePosition.E4, Side.WHITE);
+    }
+}
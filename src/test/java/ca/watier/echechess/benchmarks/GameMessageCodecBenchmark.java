@@ -0,0 +1,86 @@
+/*
+ *    Copyright 2014 - 2021 Yannick Watier
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.watier.echechess.benchmarks;
+
+import ca.watier.echechess.common.enums.CasePosition;
+import ca.watier.echechess.common.enums.MoveType;
+import ca.watier.echechess.common.enums.Side;
+import ca.watier.echechess.utils.GameMessageCodec;
+import org.apache.commons.lang3.StringUtils;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Round trip of a move response (encoded by the engine, read by the application), with the {@link GameMessageCodec}
+ * and with the previous pipe-delimited strings. The allocations per round trip are reported by the gc profiler
+ * ({@code gc.alloc.rate.norm}).
+ * <p>
+ * Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=ca.watier.echechess.benchmarks.GameMessageCodecBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GameMessageCodecBenchmark {
+    private static final UUID GAME_ID = UUID.randomUUID();
+    private static final String GAME_ID_AS_STRING = GAME_ID.toString();
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(GameMessageCodecBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+
+    @Benchmark
+    public void codec(Blackhole blackhole) {
+        byte[] message = GameMessageCodec.encodeMoveResponse(GAME_ID, GameMessageCodec.NO_CORRELATION, CasePosition.E2, CasePosition.E4, MoveType.NORMAL_MOVE, Side.WHITE);
+
+        blackhole.consume(GameMessageCodec.getGameId(message).toString());
+        blackhole.consume(GameMessageCodec.getFrom(message));
+        blackhole.consume(GameMessageCodec.getTo(message));
+        blackhole.consume(GameMessageCodec.getMoveType(message));
+        blackhole.consume(GameMessageCodec.getSide(message));
+    }
+
+    /**
+     * The previous format; the string is converted to bytes and back, like on the queues.
+     */
+    @Benchmark
+    public void pipeDelimitedString(Blackhole blackhole) {
+        String joined = StringUtils.join(new Object[]{GAME_ID_AS_STRING, CasePosition.E2, CasePosition.E4,
+                MoveType.NORMAL_MOVE.getValue(), Side.WHITE.getValue()}, '|');
+        byte[] message = joined.getBytes(StandardCharsets.UTF_8);
+
+        String[] sections = new String(message, StandardCharsets.UTF_8).split("\\|");
+        blackhole.consume(sections[0]);
+        blackhole.consume(CasePosition.valueOf(sections[1]));
+        blackhole.consume(CasePosition.valueOf(sections[2]));
+        blackhole.consume(MoveType.getFromValue(Byte.parseByte(sections[3])));
+        blackhole.consume(Side.getFromValue(Byte.parseByte(sections[4])));
+    }
+}
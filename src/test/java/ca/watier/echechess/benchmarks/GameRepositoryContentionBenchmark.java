@@ -0,0 +1,152 @@
+/*
+ *    Copyright 2014 - 2021 Yannick Watier
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.watier.echechess.benchmarks;
+
+import ca.watier.echechess.communication.redis.interfaces.GameRepository;
+import ca.watier.echechess.communication.redis.model.GenericGameHandlerWrapper;
+import ca.watier.echechess.engine.delegates.PieceMoveConstraintDelegate;
+import ca.watier.echechess.engine.engines.GenericGameHandler;
+import ca.watier.echechess.repositories.IndependentGameRepositoryImpl;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compare the game store of the independent mode with the previous implementation (a {@link HashMap} wrapped in
+ * {@link Collections#synchronizedMap(Map)}), with readers, writers and a listing thread hitting the store at the same
+ * time.
+ * <p>
+ * Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=ca.watier.echechess.benchmarks.GameRepositoryContentionBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GameRepositoryContentionBenchmark {
+
+    @Param({"synchronized-map", "concurrent-map"})
+    public String implementation;
+
+    @Param({"10000", "100000"})
+    public int numberOfGames;
+
+    private GameRepository<GenericGameHandler> repository;
+    private GenericGameHandler gameHandler;
+    private String[] ids;
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(GameRepositoryContentionBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+
+    @Setup
+    public void setup() {
+        gameHandler = GenericGameHandler.newStandardHandlerFromConstraintDelegate(new PieceMoveConstraintDelegate());
+
+        repository = "synchronized-map".equals(implementation) ?
+                new SynchronizedMapGameRepository() :
+                new IndependentGameRepositoryImpl(numberOfGames);
+
+        ids = new String[numberOfGames];
+        for (int i = 0; i < numberOfGames; i++) {
+            String id = UUID.randomUUID().toString();
+            ids[i] = id;
+            repository.add(new GenericGameHandlerWrapper<>(id, gameHandler));
+        }
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(6)
+    public GenericGameHandlerWrapper<GenericGameHandler> get() {
+        return repository.get(randomId());
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(2)
+    public void add() {
+        String id = randomId();
+        repository.add(new GenericGameHandlerWrapper<>(id, gameHandler));
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public void iterate(Blackhole blackhole) {
+        if (repository instanceof IndependentGameRepositoryImpl) {
+            for (GenericGameHandlerWrapper<GenericGameHandler> wrapper : ((IndependentGameRepositoryImpl) repository).values()) {
+                blackhole.consume(wrapper);
+            }
+        } else {
+            for (GenericGameHandlerWrapper<GenericGameHandler> wrapper : repository.getAll()) {
+                blackhole.consume(wrapper);
+            }
+        }
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public GenericGameHandlerWrapper<GenericGameHandler> getOnly() {
+        return repository.get(randomId());
+    }
+
+    private String randomId() {
+        return ids[ThreadLocalRandom.current().nextInt(ids.length)];
+    }
+
+    /**
+     * The store used before the migration to the {@link java.util.concurrent.ConcurrentHashMap}
+     */
+    private static final class SynchronizedMapGameRepository implements GameRepository<GenericGameHandler> {
+        private final Map<String, GenericGameHandlerWrapper<GenericGameHandler>> games = Collections.synchronizedMap(new HashMap<>(256));
+
+        @Override
+        public void add(GenericGameHandlerWrapper<GenericGameHandler> genericGameHandlerWrapper) {
+            games.put(genericGameHandlerWrapper.getId(), genericGameHandlerWrapper);
+        }
+
+        @Override
+        public void add(String id, GenericGameHandler genericGameHandler) {
+            games.put(id, new GenericGameHandlerWrapper<>(genericGameHandler));
+        }
+
+        @Override
+        public void delete(String id) {
+            games.remove(id);
+        }
+
+        @Override
+        public GenericGameHandlerWrapper<GenericGameHandler> get(String id) {
+            return games.get(id);
+        }
+
+        @Override
+        public List<GenericGameHandlerWrapper<GenericGameHandler>> getAll() {
+            return new ArrayList<>(games.values());
+        }
+    }
+}
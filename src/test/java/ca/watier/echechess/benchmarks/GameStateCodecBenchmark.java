@@ -0,0 +1,121 @@
+/*
+ *    Copyright 2014 - 2021 Yannick Watier
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.watier.echechess.benchmarks;
+
+import ca.watier.echechess.common.enums.CasePosition;
+import ca.watier.echechess.common.enums.Side;
+import ca.watier.echechess.common.sessions.Player;
+import ca.watier.echechess.communication.redis.model.GenericGameHandlerWrapper;
+import ca.watier.echechess.engine.delegates.PieceMoveConstraintDelegate;
+import ca.watier.echechess.engine.engines.GenericGameHandler;
+import ca.watier.echechess.models.TrackedGameHandlerWrapper;
+import ca.watier.echechess.repositories.GameStateCodec;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static ca.watier.echechess.common.enums.CasePosition.*;
+
+/**
+ * Compare the {@link GameStateCodec} with the java serialization of the wrapper (the format used by the Redis
+ * repository of the communication module), for a game after a few opening moves. The payload sizes are logged at
+ * the setup.
+ * <p>
+ * Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=ca.watier.echechess.benchmarks.GameStateCodecBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GameStateCodecBenchmark {
+    private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(GameStateCodecBenchmark.class);
+    private static final CasePosition[][] OPENING = {
+            {E2, E4}, {E7, E5}, {G1, F3}, {B8, C6}, {F1, C4}, {G8, F6}, {D2, D3}, {F8, C5}, {C2, C3}, {D7, D6}
+    };
+
+    private GameStateCodec gameStateCodec;
+    private TrackedGameHandlerWrapper wrapper;
+    private byte[] encodedGame;
+    private byte[] serializedGame;
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(GameStateCodecBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+
+    @Setup
+    public void setup() throws IOException {
+        PieceMoveConstraintDelegate pieceMoveConstraintDelegate = new PieceMoveConstraintDelegate();
+        gameStateCodec = new GameStateCodec(pieceMoveConstraintDelegate);
+
+        GenericGameHandler genericGameHandler = GenericGameHandler.newStandardHandlerFromConstraintDelegate(pieceMoveConstraintDelegate);
+        String id = UUID.randomUUID().toString();
+        genericGameHandler.setUuid(id);
+        genericGameHandler.setPlayerToSide(new Player(UUID.randomUUID().toString()), Side.WHITE);
+        genericGameHandler.setPlayerToSide(new Player(UUID.randomUUID().toString()), Side.BLACK);
+        wrapper = new TrackedGameHandlerWrapper(id, genericGameHandler, null);
+
+        Side side = Side.WHITE;
+        for (CasePosition[] move : OPENING) {
+            genericGameHandler.movePiece(move[0], move[1], side);
+            wrapper.recordMove(move[0], move[1]);
+            side = Side.getOtherPlayerSide(side);
+        }
+
+        encodedGame = gameStateCodec.encode(wrapper);
+        serializedGame = javaSerialize();
+
+        LOGGER.info("Encoded game: {} bytes, java serialized game: {} bytes", encodedGame.length, serializedGame.length);
+    }
+
+    @Benchmark
+    public byte[] encode() throws IOException {
+        return gameStateCodec.encode(wrapper);
+    }
+
+    @Benchmark
+    public GenericGameHandlerWrapper<GenericGameHandler> decode() throws IOException {
+        return gameStateCodec.decode(encodedGame);
+    }
+
+    @Benchmark
+    public byte[] javaSerialize() throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(4096);
+
+        try (ObjectOutputStream objectOutputStream = new ObjectOutputStream(outputStream)) {
+            objectOutputStream.writeObject(new GenericGameHandlerWrapper<>(wrapper.getId(), wrapper.getGenericGameHandler()));
+        }
+
+        return outputStream.toByteArray();
+    }
+
+    @Benchmark
+    public Object javaDeserialize() throws IOException, ClassNotFoundException {
+        try (ObjectInputStream objectInputStream = new ObjectInputStream(new ByteArrayInputStream(serializedGame))) {
+            return objectInputStream.readObject();
+        }
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ *    Copyright 2014 - 2021 Yannick Watier
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.watier.echechess.benchmarks;
+
+import ca.watier.echechess.components.PreEncodedStompEncoder;
+import ca.watier.echechess.components.ShardedBrokerMessageHandler;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.broker.AbstractBrokerMessageHandler;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.messaging.StompSubProtocolHandler;
+
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of a broadcast on a game topic, from the send until the frames of all its subscribers are written, with the
+ * Spring simple broker and with the {@link ShardedBrokerMessageHandler}. The other games have their own subscribers,
+ * to show the cost of the subscriptions of the other topics.
+ * <p>
+ * The frames are encoded by a {@link StompSubProtocolHandler} (with the {@link PreEncodedStompEncoder} for the sharded
+ * broker) and written to a stand-in session.
+ * <p>
+ * Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=ca.watier.echechess.benchmarks.ShardedBrokerBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ShardedBrokerBenchmark {
+    private static final String TOPIC = "/topic/";
+    private static final String GAME_TOPIC = TOPIC + "23770896-069d-43c3-9a83-336031b153fe";
+    private static final byte[] PAYLOAD = "{\"event\":\"MOVE\",\"message\":\"WHITE player moved E2 to E4\",\"obj\":null}".getBytes(StandardCharsets.UTF_8);
+
+    @Param({"simple", "sharded"})
+    public String broker;
+
+    @Param({"10000"})
+    public int subscribersByTopic;
+
+    @Param({"1000"})
+    public int otherGames;
+
+    private AbstractBrokerMessageHandler brokerMessageHandler;
+    private Message<byte[]> message;
+    private volatile CountDownLatch writtenFrames = new CountDownLatch(0);
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ShardedBrokerBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+
+    @Setup
+    public void setup() {
+        ExecutorSubscribableChannel clientInboundChannel = new ExecutorSubscribableChannel();
+        ExecutorSubscribableChannel clientOutboundChannel = new ExecutorSubscribableChannel();
+        ExecutorSubscribableChannel brokerChannel = new ExecutorSubscribableChannel();
+        StompSubProtocolHandler stompSubProtocolHandler = new StompSubProtocolHandler();
+        WebSocketSession session = newSession();
+
+        if ("sharded".equals(broker)) {
+            stompSubProtocolHandler.setEncoder(new PreEncodedStompEncoder());
+            brokerMessageHandler = new ShardedBrokerMessageHandler(clientInboundChannel, clientOutboundChannel, brokerChannel,
+                    List.of(TOPIC), Runtime.getRuntime().availableProcessors(), 1024);
+        } else {
+            brokerMessageHandler = new SimpleBrokerMessageHandler(clientInboundChannel, clientOutboundChannel, brokerChannel, List.of(TOPIC));
+        }
+
+        clientOutboundChannel.subscribe(outboundMessage -> {
+            if (SimpMessageHeaderAccessor.getMessageType(outboundMessage.getHeaders()) == SimpMessageType.MESSAGE) {
+                stompSubProtocolHandler.handleMessageToClient(session, outboundMessage);
+            }
+        });
+
+        brokerMessageHandler.start();
+
+        for (int i = 0; i < subscribersByTopic; i++) {
+            subscribe("game-" + i, GAME_TOPIC);
+        }
+
+        for (int i = 0; i < otherGames; i++) {
+            String otherTopic = TOPIC + "other-" + i;
+            subscribe("other-" + i, otherTopic);
+            subscribe("other-white-" + i, otherTopic + "/WHITE");
+            subscribe("other-black-" + i, otherTopic + "/BLACK");
+        }
+
+        SimpMessageHeaderAccessor headerAccessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        headerAccessor.setDestination(GAME_TOPIC);
+        headerAccessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        message = MessageBuilder.createMessage(PAYLOAD, headerAccessor.getMessageHeaders());
+    }
+
+    @TearDown
+    public void tearDown() {
+        brokerMessageHandler.stop();
+
+        if (brokerMessageHandler instanceof ShardedBrokerMessageHandler) {
+            ((ShardedBrokerMessageHandler) brokerMessageHandler).shutdown();
+        }
+    }
+
+    @Benchmark
+    public void broadcast() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(subscribersByTopic);
+        writtenFrames = latch;
+        brokerMessageHandler.handleMessage(message);
+        latch.await();
+    }
+
+    private void subscribe(String sessionId, String destination) {
+        SimpMessageHeaderAccessor connect = SimpMessageHeaderAccessor.create(SimpMessageType.CONNECT);
+        connect.setSessionId(sessionId);
+        brokerMessageHandler.handleMessage(MessageBuilder.createMessage(new byte[0], connect.getMessageHeaders()));
+
+        SimpMessageHeaderAccessor subscribe = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+        subscribe.setSessionId(sessionId);
+        subscribe.setSubscriptionId("sub-0");
+        subscribe.setDestination(destination);
+        brokerMessageHandler.handleMessage(MessageBuilder.createMessage(new byte[0], subscribe.getMessageHeaders()));
+    }
+
+    /**
+     * Only the methods used by the {@link StompSubProtocolHandler} are implemented; the written frames are counted.
+     */
+    private WebSocketSession newSession() {
+        Map<String, Object> attributes = new HashMap<>();
+
+        return (WebSocketSession) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{WebSocketSession.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "sendMessage":
+                    writtenFrames.countDown();
+                    return null;
+                case "isOpen":
+                    return true;
+                case "getId":
+                    return "session";
+                case "getAttributes":
+                    return attributes;
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                case "toString":
+                    return "session";
+                default:
+                    return null;
+            }
+        });
+    }
+}
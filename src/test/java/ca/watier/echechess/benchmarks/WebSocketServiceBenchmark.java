@@ -0,0 +1,149 @@
+/*
+ *    Copyright 2014 - 2021 Yannick Watier
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.watier.echechess.benchmarks;
+
+import ca.watier.echechess.common.enums.ChessEventMessage;
+import ca.watier.echechess.common.enums.Pieces;
+import ca.watier.echechess.common.responses.ChessEvent;
+import ca.watier.echechess.components.GameEventLog;
+import ca.watier.echechess.models.BoardUpdateModel;
+import ca.watier.echechess.models.PieceLocationModel;
+import ca.watier.echechess.services.WebSocketServiceImpl;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.messaging.converter.ByteArrayMessageConverter;
+import org.springframework.messaging.converter.CompositeMessageConverter;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.converter.StringMessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static ca.watier.echechess.common.enums.CasePosition.E2;
+import static ca.watier.echechess.common.enums.CasePosition.E4;
+
+/**
+ * Game events broadcast to the subscribers of the games, converted by the template on each send (the previous
+ * sending) against the {@link WebSocketServiceImpl}, which serializes the event once and caches the destinations.
+ * The allocations per event, fan-out included, are reported by the gc profiler ({@code gc.alloc.rate.norm}).
+ * <p>
+ * The broker is the Spring simple broker, delivering in the calling thread; the sessions only count the messages.
+ * <p>
+ * Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=ca.watier.echechess.benchmarks.WebSocketServiceBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WebSocketServiceBenchmark {
+    private static final String TOPIC = "/topic/";
+    private static final BoardUpdateModel BOARD_DELTA = new BoardUpdateModel(12,
+            List.of(new PieceLocationModel(null, E2), new PieceLocationModel(Pieces.W_PAWN, E4)));
+
+    @Param({"100"})
+    public int games;
+
+    @Param({"100"})
+    public int subscribersByGame;
+
+    private SimpleBrokerMessageHandler broker;
+    private SimpMessagingTemplate template;
+    private WebSocketServiceImpl webSocketService;
+    private String[] gameIds;
+    private int nextGame;
+    private long deliveredMessages;
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(WebSocketServiceBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+
+    @Setup
+    public void setup() {
+        ExecutorSubscribableChannel clientInboundChannel = new ExecutorSubscribableChannel();
+        ExecutorSubscribableChannel clientOutboundChannel = new ExecutorSubscribableChannel();
+        ExecutorSubscribableChannel brokerChannel = new ExecutorSubscribableChannel();
+
+        clientOutboundChannel.subscribe(message -> deliveredMessages++);
+        broker = new SimpleBrokerMessageHandler(clientInboundChannel, clientOutboundChannel, brokerChannel, List.of(TOPIC));
+        broker.start();
+
+        template = new SimpMessagingTemplate(brokerChannel);
+        template.setMessageConverter(new CompositeMessageConverter(List.of(new StringMessageConverter(),
+                new ByteArrayMessageConverter(), new MappingJackson2MessageConverter())));
+        webSocketService = new WebSocketServiceImpl(template, new ObjectMapper(), new GameEventLog(games, 32));
+
+        gameIds = new String[games];
+
+        for (int i = 0; i < games; i++) {
+            gameIds[i] = UUID.randomUUID().toString();
+
+            for (int j = 0; j < subscribersByGame; j++) {
+                subscribe(i + "-" + j, TOPIC + gameIds[i]);
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        broker.stop();
+    }
+
+    @Benchmark
+    public long convertAndSend() {
+        template.convertAndSend(TOPIC + nextGameId(), new ChessEvent(ChessEventMessage.MOVE, BOARD_DELTA));
+        return deliveredMessages;
+    }
+
+    @Benchmark
+    public long serializedOnce() {
+        webSocketService.fireGameEvent(nextGameId(), ChessEventMessage.MOVE, BOARD_DELTA);
+        return deliveredMessages;
+    }
+
+    private String nextGameId() {
+        nextGame = (nextGame + 1) % games;
+        return gameIds[nextGame];
+    }
+
+    private void subscribe(String sessionId, String destination) {
+        SimpMessageHeaderAccessor connect = SimpMessageHeaderAccessor.create(SimpMessageType.CONNECT);
+        connect.setSessionId(sessionId);
+        broker.handleMessage(MessageBuilder.createMessage(new byte[0], connect.getMessageHeaders()));
+
+        SimpMessageHeaderAccessor subscribe = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+        subscribe.setSessionId(sessionId);
+        subscribe.setSubscriptionId("sub-0");
+        subscribe.setDestination(destination);
+        broker.handleMessage(MessageBuilder.createMessage(new byte[0], subscribe.getMessageHeaders()));
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ *    Copyright 2014 - 2021 Yannick Watier
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.watier.echechess.components;
+
+import ca.watier.echechess.exceptions.MessageNotConfirmedException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitOperations;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class BatchingMessagePublisherTest {
+    private static final String ROUTING_KEY = "move-work";
+
+    @Mock
+    private RabbitOperations rabbitOperations;
+
+    private BatchingMessagePublisher messagePublisher;
+
+    @AfterEach
+    public void tearDown() {
+        messagePublisher.shutdown();
+    }
+
+    @Test
+    public void publish_messages_sent_in_one_batch() throws Exception {
+        // given
+        givenBrokerConfirms(true);
+        messagePublisher = new BatchingMessagePublisher(rabbitOperations, "", 3, Duration.ofHours(1), 16);
+
+        // when
+        CompletableFuture<Void> first = messagePublisher.publish(ROUTING_KEY, newMessage());
+        CompletableFuture<Void> second = messagePublisher.publish(ROUTING_KEY, newMessage());
+        CompletableFuture<Void> third = messagePublisher.publish(ROUTING_KEY, newMessage());
+
+        // then
+        CompletableFuture.allOf(first, second, third).get(5, TimeUnit.SECONDS);
+        assertThat(messagePublisher.getPublishedBatches()).isEqualTo(1);
+        assertThat(messagePublisher.getPublishedMessages()).isEqualTo(3);
+        assertThat(messagePublisher.getConfirmedMessages()).isEqualTo(3);
+    }
+
+    @Test
+    public void publish_negative_confirm_future_failed() {
+        // given
+        givenBrokerConfirms(false);
+        messagePublisher = new BatchingMessagePublisher(rabbitOperations, "", 1, Duration.ZERO, 16);
+
+        // when
+        CompletableFuture<Void> future = messagePublisher.publish(ROUTING_KEY, newMessage());
+
+        // then
+        assertThatThrownBy(() -> future.get(5, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(MessageNotConfirmedException.class);
+        assertThat(messagePublisher.getFailedMessages()).isEqualTo(1);
+    }
+
+    @Test
+    public void publish_runtime_exception_while_sending_all_futures_failed() {
+        // given
+        IllegalStateException givenException = new IllegalStateException("not an AmqpException");
+        when(rabbitOperations.invoke(any())).thenThrow(givenException);
+        messagePublisher = new BatchingMessagePublisher(rabbitOperations, "", 2, Duration.ofHours(1), 16);
+
+        // when
+        CompletableFuture<Void> first = messagePublisher.publish(ROUTING_KEY, newMessage());
+        CompletableFuture<Void> second = messagePublisher.publish(ROUTING_KEY, newMessage());
+
+        // then
+        assertThatThrownBy(() -> first.get(5, TimeUnit.SECONDS)).hasCause(givenException);
+        assertThatThrownBy(() -> second.get(5, TimeUnit.SECONDS)).hasCause(givenException);
+        assertThat(messagePublisher.getFailedMessages()).isEqualTo(2);
+        assertThat(messagePublisher.getPublishedMessages()).isZero();
+    }
+
+    @Test
+    public void publish_error_after_first_message_sent_message_confirmed_and_others_failed() throws Exception {
+        // given
+        givenBrokerConfirms(true);
+        AssertionError givenError = new AssertionError("not a RuntimeException");
+        Message givenFailingMessage = new Message(new byte[]{4}, new MessageProperties());
+        doAnswer(invocation -> {
+            throw givenError;
+        }).when(rabbitOperations).send(eq(""), eq(ROUTING_KEY), eq(givenFailingMessage), any(CorrelationData.class));
+        messagePublisher = new BatchingMessagePublisher(rabbitOperations, "", 3, Duration.ofHours(1), 16);
+
+        // when
+        CompletableFuture<Void> first = messagePublisher.publish(ROUTING_KEY, newMessage());
+        CompletableFuture<Void> second = messagePublisher.publish(ROUTING_KEY, givenFailingMessage);
+        CompletableFuture<Void> third = messagePublisher.publish(ROUTING_KEY, newMessage());
+
+        // then
+        first.get(5, TimeUnit.SECONDS);
+        assertThatThrownBy(() -> second.get(5, TimeUnit.SECONDS)).hasCause(givenError);
+        assertThatThrownBy(() -> third.get(5, TimeUnit.SECONDS)).hasCause(givenError);
+        assertThat(messagePublisher.getPublishedMessages()).isEqualTo(1);
+        assertThat(messagePublisher.getConfirmedMessages()).isEqualTo(1);
+        assertThat(messagePublisher.getFailedMessages()).isEqualTo(2);
+    }
+
+    private void givenBrokerConfirms(boolean isAck) {
+        when(rabbitOperations.invoke(any())).thenAnswer(invocation ->
+                invocation.<RabbitOperations.OperationsCallback<?>>getArgument(0).doInRabbit(rabbitOperations));
+
+        doAnswer(invocation -> {
+            CorrelationData correlationData = invocation.getArgument(3);
+            correlationData.getFuture().set(new CorrelationData.Confirm(isAck, isAck ? null : "refused"));
+            return null;
+        }).when(rabbitOperations).send(eq(""), eq(ROUTING_KEY), any(Message.class), any(CorrelationData.class));
+    }
+
+    private static Message newMessage() {
+        return new Message(new byte[]{1, 2, 3}, new MessageProperties());
+    }
+}
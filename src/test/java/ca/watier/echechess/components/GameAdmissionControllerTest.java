@@ -0,0 +1,99 @@
+/*
+ *    Copyright 2014 - 2021 Yannick Watier
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.watier.echechess.components;
+
+import ca.watier.echechess.exceptions.GameOverloadedException;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+public class GameAdmissionControllerTest {
+    private static final String PLAYER_ID = "player";
+    private static final String OTHER_PLAYER_ID = "other-player";
+
+    @Test
+    public void admitMove_server_full_rejected() throws Exception {
+        // given
+        GameAdmissionController gameAdmissionController = new GameAdmissionController(1, 10, 10, 1, Duration.ofSeconds(2));
+        gameAdmissionController.admitMove(PLAYER_ID);
+
+        // when
+        Throwable throwable = catchThrowable(() -> gameAdmissionController.admitMove(OTHER_PLAYER_ID));
+
+        // then
+        assertThat(throwable).isInstanceOf(GameOverloadedException.class);
+        assertThat(((GameOverloadedException) throwable).isLimitOfPlayer()).isFalse();
+        assertThat(((GameOverloadedException) throwable).getRetryAfterInSeconds()).isEqualTo(2);
+        assertThat(gameAdmissionController.getMovesInProgress()).isEqualTo(1);
+        assertThat(gameAdmissionController.getRejectedMoves()).isEqualTo(1);
+    }
+
+    @Test
+    public void admitMove_limit_of_player_rejected() throws Exception {
+        // given
+        GameAdmissionController gameAdmissionController = new GameAdmissionController(10, 10, 1, 1, Duration.ofSeconds(1));
+        gameAdmissionController.admitMove(PLAYER_ID);
+
+        // when
+        Throwable throwable = catchThrowable(() -> gameAdmissionController.admitMove(PLAYER_ID));
+        gameAdmissionController.admitMove(OTHER_PLAYER_ID);
+
+        // then
+        assertThat(throwable).isInstanceOf(GameOverloadedException.class);
+        assertThat(((GameOverloadedException) throwable).isLimitOfPlayer()).isTrue();
+        assertThat(gameAdmissionController.getMovesInProgress()).isEqualTo(2);
+        assertThat(gameAdmissionController.getRejectedCommandsOfPlayers()).isEqualTo(1);
+    }
+
+    @Test
+    public void releaseMove_capacity_freed() throws Exception {
+        // given
+        GameAdmissionController gameAdmissionController = new GameAdmissionController(1, 10, 1, 1, Duration.ofSeconds(1));
+        gameAdmissionController.admitMove(PLAYER_ID);
+
+        // when
+        gameAdmissionController.releaseMove(PLAYER_ID);
+        gameAdmissionController.admitMove(PLAYER_ID);
+
+        // then
+        assertThat(gameAdmissionController.getMovesInProgress()).isEqualTo(1);
+        assertThat(gameAdmissionController.getRejectedMoves()).isZero();
+    }
+
+    @Test
+    public void admitAvailableMoves_moves_above_threshold_shed() throws Exception {
+        // given
+        GameAdmissionController gameAdmissionController = new GameAdmissionController(4, 10, 10, 0.5, Duration.ofSeconds(1));
+        gameAdmissionController.admitMove(PLAYER_ID);
+        gameAdmissionController.admitAvailableMoves(PLAYER_ID);
+        gameAdmissionController.admitMove(OTHER_PLAYER_ID);
+
+        // when
+        Throwable throwable = catchThrowable(() -> gameAdmissionController.admitAvailableMoves(PLAYER_ID));
+        gameAdmissionController.admitMove(PLAYER_ID);
+
+        // then
+        assertThat(throwable).isInstanceOf(GameOverloadedException.class);
+        assertThat(((GameOverloadedException) throwable).isLimitOfPlayer()).isFalse();
+        assertThat(gameAdmissionController.getAvailableMovesInProgress()).isEqualTo(1);
+        assertThat(gameAdmissionController.getShedAvailableMoves()).isEqualTo(1);
+        assertThat(gameAdmissionController.getMovesInProgress()).isEqualTo(3);
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ *    Copyright 2014 - 2021 Yannick Watier
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.watier.echechess.components;
+
+import ca.watier.echechess.common.enums.CasePosition;
+import ca.watier.echechess.common.enums.Side;
+import ca.watier.echechess.interfaces.GameCommandHandler;
+import ca.watier.echechess.models.GameCommand;
+import ca.watier.echechess.utils.GameMessageCodec;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class GameCommandPipelineTest {
+    private static final UUID FIRST_GAME = UUID.fromString("23770896-069d-43c3-9a83-336031b153fe");
+    private static final UUID SECOND_GAME = UUID.fromString("07693684-082b-4f3c-9ea7-a8133a78225a");
+
+    private GameCommandPipeline pipeline;
+
+    @AfterEach
+    public void tearDown() {
+        if (pipeline != null) {
+            pipeline.shutdown();
+        }
+    }
+
+    @Test
+    public void submit_commands_applied_and_published_in_order_of_game() throws InterruptedException {
+        // given
+        pipeline = newPipeline("blocking");
+        int givenNumberOfCommands = 10_000; // More than the slots, the buffer wraps
+        List<Long> appliedCommands = Collections.synchronizedList(new ArrayList<>());
+        List<Long> publishedCommands = Collections.synchronizedList(new ArrayList<>());
+        List<Long> secondGamePublishedCommands = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch latch = new CountDownLatch(givenNumberOfCommands);
+        GameCommandHandler handler = new GameCommandHandler() {
+            @Override
+            public void apply(GameCommand command) {
+                if (command.getGameUuid().equals(FIRST_GAME)) {
+                    appliedCommands.add(command.getCorrelationId());
+                }
+            }
+
+            @Override
+            public void publish(GameCommand command) {
+                (command.getGameUuid().equals(FIRST_GAME) ? publishedCommands : secondGamePublishedCommands).add(command.getCorrelationId());
+                latch.countDown();
+            }
+
+            @Override
+            public void publishFailure(GameCommand command) {
+            }
+        };
+
+        // when
+        for (int i = 0; i < givenNumberOfCommands; i++) {
+            UUID game = i % 2 == 0 ? FIRST_GAME : SECOND_GAME;
+            pipeline.submit(GameMessageCodec.encodeMoveRequest(game, i, CasePosition.E2, CasePosition.E4, Side.WHITE), handler);
+        }
+
+        // then
+        assertThat(latch.await(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(appliedCommands).hasSize(givenNumberOfCommands / 2).isSorted();
+        assertThat(publishedCommands).hasSize(givenNumberOfCommands / 2).isSorted();
+        assertThat(secondGamePublishedCommands).hasSize(givenNumberOfCommands / 2).isSorted();
+        assertThat(pipeline.getExecutedCommands()).isEqualTo(givenNumberOfCommands);
+    }
+
+    @Test
+    public void submit_failed_command_failure_published() throws InterruptedException {
+        // given
+        pipeline = newPipeline("sleeping");
+        List<Long> publishedCommands = Collections.synchronizedList(new ArrayList<>());
+        List<Long> failedCommands = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch latch = new CountDownLatch(2);
+        GameCommandHandler handler = new GameCommandHandler() {
+            @Override
+            public void apply(GameCommand command) {
+                if (command.getCorrelationId() == 1) {
+                    throw new IllegalStateException();
+                }
+            }
+
+            @Override
+            public void publish(GameCommand command) {
+                publishedCommands.add(command.getCorrelationId());
+                latch.countDown();
+            }
+
+            @Override
+            public void publishFailure(GameCommand command) {
+                failedCommands.add(command.getCorrelationId());
+                latch.countDown();
+            }
+        };
+
+        // when
+        pipeline.submit(GameMessageCodec.encodeAvailableMovesRequest(FIRST_GAME, 1, CasePosition.E2, Side.WHITE), handler);
+        pipeline.submit(GameMessageCodec.encodeAvailableMovesRequest(FIRST_GAME, 2, CasePosition.E2, Side.WHITE), handler);
+
+        // then
+        assertThat(latch.await(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(publishedCommands).containsExactly(2L);
+        assertThat(failedCommands).containsExactly(1L);
+        assertThat(pipeline.getFailedCommands()).isEqualTo(1);
+    }
+
+    @Test
+    public void submit_slow_game_results_of_other_worker_published() throws InterruptedException {
+        // given
+        pipeline = new GameCommandPipeline(256, 2, WaitStrategy.of("blocking"), WaitStrategy.of("blocking"), WaitStrategy.of("blocking"));
+        UUID givenOtherWorkerGame = getGameOfOtherWorker(FIRST_GAME, 2);
+        CountDownLatch slowGameLatch = new CountDownLatch(1);
+        CountDownLatch publishedLatch = new CountDownLatch(1);
+        GameCommandHandler handler = new GameCommandHandler() {
+            @Override
+            public void apply(GameCommand command) {
+                if (command.getGameUuid().equals(FIRST_GAME)) {
+                    awaitQuietly(slowGameLatch);
+                }
+            }
+
+            @Override
+            public void publish(GameCommand command) {
+                if (command.getGameUuid().equals(givenOtherWorkerGame)) {
+                    publishedLatch.countDown();
+                }
+            }
+
+            @Override
+            public void publishFailure(GameCommand command) {
+            }
+        };
+
+        // when
+        pipeline.submit(GameMessageCodec.encodeAvailableMovesRequest(FIRST_GAME, 1, CasePosition.E2, Side.WHITE), handler);
+        pipeline.submit(GameMessageCodec.encodeAvailableMovesRequest(givenOtherWorkerGame, 2, CasePosition.E2, Side.WHITE), handler);
+
+        // then
+        try {
+            assertThat(publishedLatch.await(10, TimeUnit.SECONDS)).isTrue();
+        } finally {
+            slowGameLatch.countDown();
+        }
+    }
+
+    @Test
+    public void submit_command_failed_with_error_next_commands_executed() throws InterruptedException {
+        // given
+        pipeline = newPipeline("sleeping");
+        CountDownLatch latch = new CountDownLatch(1);
+
+        // when
+        pipeline.submit(FIRST_GAME.toString(), () -> {
+            throw new AssertionError();
+        });
+        pipeline.submit(FIRST_GAME.toString(), latch::countDown);
+
+        // then
+        assertThat(latch.await(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(pipeline.getFailedCommands()).isEqualTo(1);
+    }
+
+    @Test
+    public void submit_task_executed() throws InterruptedException {
+        // given
+        pipeline = newPipeline("yielding");
+        CountDownLatch latch = new CountDownLatch(1);
+
+        // when
+        pipeline.submit(FIRST_GAME.toString(), latch::countDown);
+
+        // then
+        assertThat(latch.await(10, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    public void of_unknown_wait_strategy_refused() {
+        // given
+        // when
+        // then
+        assertThatThrownBy(() -> WaitStrategy.of("unknown")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    /**
+     * @return A game applied by another worker than the given game (the workers are assigned by the hash of the id)
+     */
+    private static UUID getGameOfOtherWorker(UUID game, int numberOfWorkers) {
+        int worker = (game.toString().hashCode() & Integer.MAX_VALUE) % numberOfWorkers;
+
+        while (true) {
+            UUID otherGame = UUID.randomUUID();
+
+            if ((otherGame.toString().hashCode() & Integer.MAX_VALUE) % numberOfWorkers != worker) {
+                return otherGame;
+            }
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static GameCommandPipeline newPipeline(String waitStrategy) {
+        return new GameCommandPipeline(256, 4, WaitStrategy.of(waitStrategy), WaitStrategy.of(waitStrategy), WaitStrategy.of(waitStrategy));
+    }
+}
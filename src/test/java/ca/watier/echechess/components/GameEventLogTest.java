@@ -0,0 +1,156 @@
+/*
+ *    Copyright 2014 - 2021 Yannick Watier
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.watier.echechess.components;
+
+import ca.watier.echechess.models.GameEventModel;
+import ca.watier.echechess.models.GameEventsModel;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static ca.watier.echechess.common.enums.Side.BLACK;
+import static ca.watier.echechess.common.enums.Side.WHITE;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class GameEventLogTest {
+    private static final String GAME_ID = "23770896-069d-43c3-9a83-336031b153fe";
+
+    @Test
+    public void getDestination_side_topic_of_side() {
+        // given
+        GameEventLog gameEventLog = new GameEventLog(16, 8);
+
+        // when
+        GameEventLog.GameEvents gameEvents = gameEventLog.get(GAME_ID);
+
+        // then
+        assertThat(gameEvents.getDestination(null)).isEqualTo("/topic/" + GAME_ID);
+        assertThat(gameEvents.getDestination(WHITE)).isEqualTo("/topic/" + GAME_ID + "/WHITE");
+    }
+
+    @Test
+    public void getEventsAfter_events_of_game_and_side_of_player() {
+        // given
+        GameEventLog gameEventLog = new GameEventLog(16, 8);
+        GameEventLog.GameEvents gameEvents = gameEventLog.get(GAME_ID);
+        gameEvents.append(null, event("move"));
+        gameEvents.append(WHITE, event("white"));
+        gameEvents.append(BLACK, event("black"));
+        gameEvents.append(null, event("score"));
+
+        // when
+        GameEventsModel events = gameEventLog.getEventsAfter(GAME_ID, WHITE, gameEvents.getEpoch(), 1);
+
+        // then
+        assertThat(events.isComplete()).isTrue();
+        assertThat(events.getEpoch()).isEqualTo(gameEvents.getEpoch());
+        assertThat(events.getLastSequence()).isEqualTo(4);
+        assertThat(events.getEvents()).extracting(GameEventModel::getSequence).containsExactly(2L, 4L);
+        assertThat(events.getEvents()).extracting(GameEventModel::getEvent).containsExactly("\"white\"", "\"score\"");
+    }
+
+    @Test
+    public void getEventsAfter_events_dropped_not_complete() {
+        // given
+        GameEventLog gameEventLog = new GameEventLog(16, 2);
+        GameEventLog.GameEvents gameEvents = gameEventLog.get(GAME_ID);
+
+        for (int i = 0; i < 5; i++) {
+            gameEvents.append(null, event("move-" + i));
+        }
+
+        // when
+        GameEventsModel droppedEvents = gameEventLog.getEventsAfter(GAME_ID, WHITE, gameEvents.getEpoch(), 2);
+        GameEventsModel keptEvents = gameEventLog.getEventsAfter(GAME_ID, WHITE, gameEvents.getEpoch(), 3);
+
+        // then
+        assertThat(droppedEvents.isComplete()).isFalse();
+        assertThat(droppedEvents.getLastSequence()).isEqualTo(5);
+        assertThat(keptEvents.isComplete()).isTrue();
+        assertThat(keptEvents.getEvents()).extracting(GameEventModel::getSequence).containsExactly(4L, 5L);
+    }
+
+    @Test
+    public void getEventsAfter_unknown_game_complete_only_without_sequence() {
+        // given
+        GameEventLog gameEventLog = new GameEventLog(16, 8);
+
+        // when
+        GameEventsModel newSession = gameEventLog.getEventsAfter(GAME_ID, WHITE, 0, 0);
+        GameEventsModel evictedGame = gameEventLog.getEventsAfter(GAME_ID, WHITE, 42, 12);
+
+        // then
+        assertThat(newSession.isComplete()).isTrue();
+        assertThat(evictedGame.isComplete()).isFalse();
+    }
+
+    @Test
+    public void getEventsAfter_evicted_game_sequence_of_previous_epoch_not_complete() {
+        // given
+        GameEventLog gameEventLog = new GameEventLog(1, 8);
+        GameEventLog.GameEvents evictedEvents = gameEventLog.get(GAME_ID);
+        evictedEvents.append(null, event("move-0"));
+        evictedEvents.append(null, event("move-1"));
+        gameEventLog.get("3f0d2a6c-0d5e-4b9a-8f5e-5a3c1d9b7e21");
+
+        GameEventLog.GameEvents gameEvents = gameEventLog.get(GAME_ID);
+        gameEvents.append(null, event("move-0"));
+        gameEvents.append(null, event("move-1"));
+        gameEvents.append(null, event("move-2"));
+
+        // when
+        GameEventsModel previousEpoch = gameEventLog.getEventsAfter(GAME_ID, WHITE, evictedEvents.getEpoch(), 2);
+        GameEventsModel currentEpoch = gameEventLog.getEventsAfter(GAME_ID, WHITE, gameEvents.getEpoch(), 2);
+
+        // then
+        assertThat(gameEvents.getEpoch()).isNotEqualTo(evictedEvents.getEpoch());
+        assertThat(previousEpoch.isComplete()).isFalse();
+        assertThat(previousEpoch.getEpoch()).isEqualTo(gameEvents.getEpoch());
+        assertThat(previousEpoch.getLastSequence()).isEqualTo(3);
+        assertThat(currentEpoch.isComplete()).isTrue();
+        assertThat(currentEpoch.getEvents()).extracting(GameEventModel::getSequence).containsExactly(3L);
+    }
+
+    @Test
+    public void get_more_games_than_maximum_recently_used_game_kept() {
+        // given
+        GameEventLog gameEventLog = new GameEventLog(16, 8);
+        GameEventLog.GameEvents gameEvents = gameEventLog.get(GAME_ID);
+        gameEvents.append(null, event("move"));
+
+        for (int i = 0; i < 15; i++) {
+            gameEventLog.get("other-" + i);
+        }
+
+        gameEventLog.get(GAME_ID);
+
+        // when
+        gameEventLog.get("other-15");
+
+        // then
+        GameEventsModel events = gameEventLog.getEventsAfter(GAME_ID, WHITE, gameEvents.getEpoch(), 0);
+        GameEventsModel evictedGame = gameEventLog.getEventsAfter("other-0", WHITE, 42, 12);
+        assertThat(events.getEpoch()).isEqualTo(gameEvents.getEpoch());
+        assertThat(events.getLastSequence()).isEqualTo(1);
+        assertThat(evictedGame.isComplete()).isFalse();
+        assertThat(evictedGame.getEpoch()).isZero();
+    }
+
+    private static byte[] event(String value) {
+        return ('"' + value + '"').getBytes(StandardCharsets.UTF_8);
+    }
+}
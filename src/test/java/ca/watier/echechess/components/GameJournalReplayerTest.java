@@ -0,0 +1,140 @@
+/*
+ *    Copyright 2014 - 2021 Yannick Watier
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.watier.echechess.components;
+
+import ca.watier.echechess.common.enums.CasePosition;
+import ca.watier.echechess.common.enums.Side;
+import ca.watier.echechess.common.sessions.Player;
+import ca.watier.echechess.communication.redis.model.GenericGameHandlerWrapper;
+import ca.watier.echechess.engine.delegates.PieceMoveConstraintDelegate;
+import ca.watier.echechess.engine.engines.GenericGameHandler;
+import ca.watier.echechess.models.GameState;
+import ca.watier.echechess.models.TrackedGameHandlerWrapper;
+import ca.watier.echechess.repositories.GameHibernationStore;
+import ca.watier.echechess.repositories.GameStateCodec;
+import ca.watier.echechess.repositories.IndependentGameRepositoryImpl;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class GameJournalReplayerTest {
+    private static final UUID GAME_UUID = UUID.fromString("23770896-069d-43c3-9a83-336031b153fe");
+    private static final String GAME_ID = GAME_UUID.toString();
+
+    @TempDir
+    Path hibernationDirectory;
+
+    private GameHibernationStore hibernationStore;
+    private IndependentGameRepositoryImpl gameRepository;
+    private GameJournalReplayer gameJournalReplayer;
+
+    @BeforeEach
+    public void setup() {
+        PieceMoveConstraintDelegate pieceMoveConstraintDelegate = new PieceMoveConstraintDelegate();
+        hibernationStore = new GameHibernationStore(hibernationDirectory, new GameStateCodec(pieceMoveConstraintDelegate));
+        gameRepository = new IndependentGameRepositoryImpl(16, hibernationStore);
+        gameJournalReplayer = new GameJournalReplayer(gameRepository, pieceMoveConstraintDelegate);
+    }
+
+    @Test
+    public void recordMove_game_rebuilt() {
+        // given
+        Player givenPlayer = new Player(UUID.randomUUID().toString());
+        gameJournalReplayer.recordCreation(GAME_UUID, "", Side.WHITE, false, false, givenPlayer);
+
+        // when
+        gameJournalReplayer.recordMove(GAME_UUID, CasePosition.E2, CasePosition.E4, Side.WHITE);
+
+        // then
+        GenericGameHandlerWrapper<GenericGameHandler> wrapper = gameRepository.get(GAME_ID);
+        assertThat(wrapper.getGenericGameHandler().getPiece(CasePosition.E4)).isNotNull();
+        assertThat(wrapper.getGenericGameHandler().getPiece(CasePosition.E2)).isNull();
+        assertThat(TrackedGameHandlerWrapper.getNumberOfMoves(wrapper)).isEqualTo(1);
+        assertThat(givenPlayer.getCreatedGameList()).containsExactly(GAME_UUID);
+    }
+
+    @Test
+    public void recordHibernation_hibernated_game_put_back_in_hibernation() throws IOException {
+        // given
+        gameJournalReplayer.recordCreation(GAME_UUID, "", Side.WHITE, false, false, new Player(UUID.randomUUID().toString()));
+        gameJournalReplayer.recordMove(GAME_UUID, CasePosition.E2, CasePosition.E4, Side.WHITE);
+        hibernationStore.write(GAME_ID, gameRepository.get(GAME_ID));
+
+        // when
+        gameJournalReplayer.recordHibernation(GAME_UUID);
+
+        // then
+        assertThat(gameRepository.size()).isZero();
+        assertThat(gameRepository.getIdleGames(Duration.ZERO)).isEmpty();
+        assertThat(hibernationDirectory.resolve(GAME_ID + ".game")).exists();
+        assertThat(gameRepository.get(GAME_ID).getGenericGameHandler().getPiece(CasePosition.E4)).isNotNull();
+    }
+
+    @Test
+    public void recordHibernation_game_loaded_again_kept_in_memory() {
+        // given
+        gameJournalReplayer.recordCreation(GAME_UUID, "", Side.WHITE, false, false, new Player(UUID.randomUUID().toString()));
+
+        // when
+        gameJournalReplayer.recordHibernation(GAME_UUID);
+
+        // then
+        assertThat(gameRepository.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void recordState_previous_game_replaced() {
+        // given
+        gameJournalReplayer.recordCreation(GAME_UUID, "", Side.WHITE, false, false, new Player(UUID.randomUUID().toString()));
+
+        GenericGameHandler givenGameHandler = GenericGameHandler.newStandardHandlerFromConstraintDelegate(new PieceMoveConstraintDelegate());
+        givenGameHandler.movePiece(CasePosition.D2, CasePosition.D4, Side.WHITE);
+        TrackedGameHandlerWrapper givenWrapper = new TrackedGameHandlerWrapper(GAME_ID, givenGameHandler, null);
+        givenWrapper.recordMove(CasePosition.D2, CasePosition.D4);
+
+        // when
+        gameJournalReplayer.recordState(GAME_UUID, givenWrapper);
+        gameJournalReplayer.recordMove(GAME_UUID, CasePosition.E7, CasePosition.E5, Side.BLACK);
+
+        // then
+        GenericGameHandlerWrapper<GenericGameHandler> wrapper = gameRepository.get(GAME_ID);
+        assertThat(wrapper).isSameAs(givenWrapper);
+        assertThat(wrapper.getGenericGameHandler().getPiece(CasePosition.D4)).isNotNull();
+        assertThat(wrapper.getGenericGameHandler().getPiece(CasePosition.E5)).isNotNull();
+        assertThat(TrackedGameHandlerWrapper.getNumberOfMoves(wrapper)).isEqualTo(2);
+    }
+
+    @Test
+    public void recordDeletion_game_removed() {
+        // given
+        gameJournalReplayer.recordCreation(GAME_UUID, "", Side.WHITE, false, false, new Player(UUID.randomUUID().toString()));
+
+        // when
+        gameJournalReplayer.recordDeletion(GAME_UUID);
+
+        // then
+        assertThat(gameRepository.get(GAME_ID)).isNull();
+        assertThat(gameRepository.getGamesByState(GameState.RUNNING)).isEmpty();
+    }
+}
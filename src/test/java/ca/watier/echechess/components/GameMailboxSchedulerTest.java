@@ -0,0 +1,161 @@
+/*
+ *    Copyright 2014 - 2021 Yannick Watier
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.watier.echechess.components;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class GameMailboxSchedulerTest {
+    private static final String FIRST_GAME = "23770896-069d-43c3-9a83-336031b153fe";
+    private static final String SECOND_GAME = "07693684-082b-4f3c-9ea7-a8133a78225a";
+
+    private GameMailboxScheduler scheduler;
+
+    @BeforeEach
+    public void setup() {
+        scheduler = new GameMailboxScheduler(4);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void submit_same_game_executed_in_order_by_one_thread() throws InterruptedException {
+        // given
+        int givenNumberOfCommands = 1_000;
+        List<Integer> executedCommands = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger concurrentExecutions = new AtomicInteger();
+        AtomicInteger highestConcurrentExecutions = new AtomicInteger();
+        CountDownLatch latch = new CountDownLatch(givenNumberOfCommands);
+
+        // when
+        for (int i = 0; i < givenNumberOfCommands; i++) {
+            int commandNumber = i;
+            scheduler.submit(FIRST_GAME, () -> {
+                highestConcurrentExecutions.accumulateAndGet(concurrentExecutions.incrementAndGet(), Math::max);
+                executedCommands.add(commandNumber);
+                concurrentExecutions.decrementAndGet();
+                latch.countDown();
+            });
+        }
+
+        // then
+        assertThat(latch.await(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(highestConcurrentExecutions.get()).isEqualTo(1);
+        assertThat(executedCommands).hasSize(givenNumberOfCommands).isSorted();
+    }
+
+    @Test
+    public void submit_different_games_executed_in_parallel() throws InterruptedException {
+        // given
+        CountDownLatch bothStarted = new CountDownLatch(2);
+        CountDownLatch finished = new CountDownLatch(2);
+
+        Runnable givenCommand = () -> {
+            bothStarted.countDown();
+
+            try {
+                if (bothStarted.await(5, TimeUnit.SECONDS)) {
+                    finished.countDown();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+
+        // when
+        scheduler.submit(FIRST_GAME, givenCommand);
+        scheduler.submit(SECOND_GAME, givenCommand);
+
+        // then
+        assertThat(finished.await(10, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    public void getQueueDepth_pending_commands() throws InterruptedException {
+        // given
+        CountDownLatch blocker = new CountDownLatch(1);
+        CountDownLatch finished = new CountDownLatch(3);
+        Runnable givenBlockingCommand = () -> {
+            try {
+                blocker.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            finished.countDown();
+        };
+
+        // when
+        scheduler.submit(FIRST_GAME, givenBlockingCommand);
+        scheduler.submit(FIRST_GAME, finished::countDown);
+        scheduler.submit(FIRST_GAME, finished::countDown);
+
+        // then
+        assertThat(scheduler.getQueueDepth(FIRST_GAME)).isEqualTo(3);
+        assertThat(scheduler.getQueueDepths()).containsEntry(FIRST_GAME, 3);
+        assertThat(scheduler.getQueueDepth(SECOND_GAME)).isZero();
+
+        blocker.countDown();
+        assertThat(finished.await(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(scheduler.getHighestQueueDepth()).isEqualTo(3);
+    }
+
+    @Test
+    public void submit_failing_command_does_not_block_the_mailbox() throws InterruptedException {
+        // given
+        CountDownLatch latch = new CountDownLatch(1);
+
+        // when
+        scheduler.submit(FIRST_GAME, () -> {
+            throw new IllegalStateException();
+        });
+        scheduler.submit(FIRST_GAME, latch::countDown);
+
+        // then
+        assertThat(latch.await(10, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    public void submit_command_failed_with_error_next_commands_executed() throws InterruptedException {
+        // given
+        CountDownLatch latch = new CountDownLatch(2);
+
+        // when
+        scheduler.submit(FIRST_GAME, () -> {
+            throw new AssertionError();
+        });
+        scheduler.submit(FIRST_GAME, latch::countDown);
+        scheduler.submit(FIRST_GAME, latch::countDown);
+
+        // then
+        assertThat(latch.await(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(scheduler.getExecutedCommands()).isGreaterThanOrEqualTo(2);
+    }
+}
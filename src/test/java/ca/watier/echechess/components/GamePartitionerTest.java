@@ -0,0 +1,82 @@
+/*
+ *    Copyright 2014 - 2021 Yannick Watier
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.watier.echechess.components;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class GamePartitionerTest {
+    private static final int NUMBER_OF_GAMES = 100_000;
+
+    private final List<UUID> games = newGames();
+
+    @Test
+    public void getPartition_games_evenly_distributed() {
+        // given
+        GamePartitioner gamePartitioner = new GamePartitioner(8);
+        int[] gamesByPartition = new int[8];
+
+        // when
+        for (UUID game : games) {
+            gamesByPartition[gamePartitioner.getPartition(game)]++;
+        }
+
+        // then
+        for (int numberOfGames : gamesByPartition) {
+            assertThat(numberOfGames).isBetween(NUMBER_OF_GAMES / 8 * 9 / 10, NUMBER_OF_GAMES / 8 * 11 / 10);
+        }
+    }
+
+    @Test
+    public void getPartition_partition_added_few_games_moved() {
+        // given
+        GamePartitioner gamePartitioner = new GamePartitioner(8);
+        GamePartitioner biggerGamePartitioner = new GamePartitioner(9);
+        int movedGames = 0;
+
+        // when
+        for (UUID game : games) {
+            int partition = gamePartitioner.getPartition(game);
+            int newPartition = biggerGamePartitioner.getPartition(game);
+
+            if (partition != newPartition) {
+                assertThat(newPartition).isEqualTo(8); // Only moved to the new partition
+                movedGames++;
+            }
+        }
+
+        // then
+        assertThat(movedGames).isBetween(NUMBER_OF_GAMES / 9 * 9 / 10, NUMBER_OF_GAMES / 9 * 11 / 10);
+    }
+
+    private static List<UUID> newGames() {
+        Random random = new Random(42);
+        List<UUID> games = new ArrayList<>(NUMBER_OF_GAMES);
+
+        for (int i = 0; i < NUMBER_OF_GAMES; i++) {
+            games.add(new UUID(random.nextLong(), random.nextLong()));
+        }
+
+        return games;
+    }
+}
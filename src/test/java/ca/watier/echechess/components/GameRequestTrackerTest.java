@@ -0,0 +1,116 @@
+/*
+ *    Copyright 2014 - 2021 Yannick Watier
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.watier.echechess.components;
+
+import ca.watier.echechess.exceptions.GameRequestRejectedException;
+import ca.watier.echechess.exceptions.GameRequestTimeoutException;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+public class GameRequestTrackerTest {
+    private static final byte[] RESPONSE = {1, 2, 3};
+
+    @Test
+    public void complete_pending_request_response_received() {
+        // given
+        GameRequestTracker gameRequestTracker = new GameRequestTracker(10, Duration.ofSeconds(30));
+        long correlationId = gameRequestTracker.nextCorrelationId();
+        CompletableFuture<byte[]> response = gameRequestTracker.getResponse(correlationId);
+
+        // when
+        boolean completed = gameRequestTracker.complete(correlationId, RESPONSE);
+
+        // then
+        assertThat(completed).isTrue();
+        assertThat(response.join()).isSameAs(RESPONSE);
+        assertThat(gameRequestTracker.getInFlight()).isZero();
+        assertThat(gameRequestTracker.getCompletedRequests()).isEqualTo(1);
+    }
+
+    @Test
+    public void complete_expired_request_late_reply() {
+        // given
+        GameRequestTracker gameRequestTracker = new GameRequestTracker(10, Duration.ofMillis(10));
+        long correlationId = gameRequestTracker.nextCorrelationId();
+        CompletableFuture<byte[]> response = gameRequestTracker.getResponse(correlationId);
+        Throwable throwable = catchThrowable(response::join);
+
+        // when
+        boolean completed = gameRequestTracker.complete(correlationId, RESPONSE);
+
+        // then
+        assertThat(throwable).isInstanceOf(CompletionException.class).hasCauseInstanceOf(GameRequestTimeoutException.class);
+        assertThat(completed).isFalse();
+        assertThat(gameRequestTracker.getTimeouts()).isEqualTo(1);
+        assertThat(gameRequestTracker.getLateReplies()).isEqualTo(1);
+        assertThat(gameRequestTracker.getOrphanReplies()).isZero();
+        assertThat(gameRequestTracker.getInFlight()).isZero();
+    }
+
+    @Test
+    public void complete_unknown_request_orphan() {
+        // given
+        GameRequestTracker gameRequestTracker = new GameRequestTracker(10, Duration.ofSeconds(30));
+        long correlationId = gameRequestTracker.nextCorrelationId();
+
+        // when
+        boolean completed = gameRequestTracker.complete(correlationId, RESPONSE);
+
+        // then
+        assertThat(completed).isFalse();
+        assertThat(gameRequestTracker.getOrphanReplies()).isEqualTo(1);
+        assertThat(gameRequestTracker.getLateReplies()).isZero();
+    }
+
+    @Test
+    public void complete_request_of_other_node_ignored() {
+        // given
+        GameRequestTracker gameRequestTracker = new GameRequestTracker(10, Duration.ofSeconds(30));
+        GameRequestTracker otherGameRequestTracker = new GameRequestTracker(10, Duration.ofSeconds(30));
+        long correlationId = otherGameRequestTracker.nextCorrelationId();
+        otherGameRequestTracker.getResponse(correlationId);
+
+        // when
+        boolean completed = gameRequestTracker.complete(correlationId, RESPONSE);
+
+        // then
+        assertThat(completed).isFalse();
+        assertThat(gameRequestTracker.getOrphanReplies()).isZero();
+        assertThat(gameRequestTracker.getLateReplies()).isZero();
+    }
+
+    @Test
+    public void getResponse_too_many_requests_rejected() {
+        // given
+        GameRequestTracker gameRequestTracker = new GameRequestTracker(1, Duration.ofSeconds(30));
+        gameRequestTracker.getResponse(gameRequestTracker.nextCorrelationId());
+
+        // when
+        CompletableFuture<byte[]> response = gameRequestTracker.getResponse(gameRequestTracker.nextCorrelationId());
+
+        // then
+        assertThat(catchThrowable(response::join)).hasCauseInstanceOf(GameRequestRejectedException.class);
+        assertThat(gameRequestTracker.getRejectedRequests()).isEqualTo(1);
+        assertThat(gameRequestTracker.getInFlight()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ *    Copyright 2014 - 2021 Yannick Watier
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.watier.echechess.components;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ListenerConcurrencyScalerTest {
+    private static final String LISTENER_ID = "listener";
+    private static final long ONE_SECOND = TimeUnit.SECONDS.toNanos(1);
+    private static final long TEN_MILLIS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final AtomicInteger givenQueueDepth = new AtomicInteger();
+    private final List<Integer> updatedConsumers = new ArrayList<>();
+
+    @Test
+    public void scale_queue_backlog_consumers_added() {
+        // given
+        ListenerConcurrencyScaler listenerConcurrencyScaler = newScaler(8, 3);
+        givenQueueDepth.set(300);
+        givenProcessedMessages(listenerConcurrencyScaler, 100);
+
+        // when
+        listenerConcurrencyScaler.scale(ONE_SECOND);
+
+        // then
+        // 400 messages arrived and 300 to drain in one second, 10 ms each
+        assertThat(updatedConsumers).containsExactly(7);
+        assertThat(listenerConcurrencyScaler.getConsumers(LISTENER_ID)).isEqualTo(7);
+        assertThat(listenerConcurrencyScaler.getQueueDepth(LISTENER_ID)).isEqualTo(300);
+        assertThat(listenerConcurrencyScaler.getProcessingTimeInMicros(LISTENER_ID)).isEqualTo(10_000);
+        assertThat(listenerConcurrencyScaler.getScaleUps()).isEqualTo(1);
+    }
+
+    @Test
+    public void scale_queue_idle_consumers_removed_after_rounds() {
+        // given
+        ListenerConcurrencyScaler listenerConcurrencyScaler = newScaler(8, 2);
+        givenQueueDepth.set(300);
+        givenProcessedMessages(listenerConcurrencyScaler, 100);
+        listenerConcurrencyScaler.scale(ONE_SECOND);
+        givenQueueDepth.set(0);
+
+        // when
+        listenerConcurrencyScaler.scale(ONE_SECOND);
+        int consumersAfterFirstIdleRound = listenerConcurrencyScaler.getConsumers(LISTENER_ID);
+        listenerConcurrencyScaler.scale(ONE_SECOND);
+
+        // then
+        assertThat(consumersAfterFirstIdleRound).isEqualTo(7);
+        assertThat(listenerConcurrencyScaler.getNeededConsumers(LISTENER_ID)).isEqualTo(1);
+        assertThat(updatedConsumers).containsExactly(7, 6);
+        assertThat(listenerConcurrencyScaler.getScaleDowns()).isEqualTo(1);
+    }
+
+    @Test
+    public void scale_queue_backlog_maximum_respected() {
+        // given
+        ListenerConcurrencyScaler listenerConcurrencyScaler = newScaler(2, 3);
+        givenQueueDepth.set(10_000);
+        givenProcessedMessages(listenerConcurrencyScaler, 100);
+
+        // when
+        listenerConcurrencyScaler.scale(ONE_SECOND);
+
+        // then
+        assertThat(updatedConsumers).containsExactly(2);
+    }
+
+    @Test
+    public void scale_nothing_processed_one_consumer_added() {
+        // given
+        ListenerConcurrencyScaler listenerConcurrencyScaler = newScaler(8, 3);
+        givenQueueDepth.set(10);
+
+        // when
+        listenerConcurrencyScaler.scale(ONE_SECOND);
+
+        // then
+        assertThat(updatedConsumers).containsExactly(2);
+    }
+
+    @Test
+    public void bindTo_scaling_decisions_exposed_as_meters() {
+        // given
+        MeterRegistry givenMeterRegistry = new SimpleMeterRegistry();
+        ListenerConcurrencyScaler listenerConcurrencyScaler = newScaler(8, 3);
+        listenerConcurrencyScaler.bindTo(givenMeterRegistry);
+        listenerConcurrencyScaler.register("other-listener", () -> 0, consumers -> {
+        });
+        givenQueueDepth.set(300);
+        givenProcessedMessages(listenerConcurrencyScaler, 100);
+
+        // when
+        listenerConcurrencyScaler.scale(ONE_SECOND);
+
+        // then
+        assertThat(givenMeterRegistry.get("echechess.listener.consumers").tag("listener", LISTENER_ID).gauge().value()).isEqualTo(7);
+        assertThat(givenMeterRegistry.get("echechess.listener.consumers.needed").tag("listener", LISTENER_ID).gauge().value()).isEqualTo(7);
+        assertThat(givenMeterRegistry.get("echechess.listener.queue.depth").tag("listener", LISTENER_ID).gauge().value()).isEqualTo(300);
+        assertThat(givenMeterRegistry.get("echechess.listener.processing.time").tag("listener", LISTENER_ID).gauge().value()).isEqualTo(0.01);
+        assertThat(givenMeterRegistry.get("echechess.listener.consumers").tag("listener", "other-listener").gauge().value()).isEqualTo(1);
+        assertThat(givenMeterRegistry.get("echechess.listener.scale.ups").functionCounter().count()).isEqualTo(1);
+        assertThat(givenMeterRegistry.get("echechess.listener.scale.downs").functionCounter().count()).isZero();
+    }
+
+    private ListenerConcurrencyScaler newScaler(int maximumConsumers, int scaleDownRounds) {
+        ListenerConcurrencyScaler listenerConcurrencyScaler =
+                new ListenerConcurrencyScaler(1, maximumConsumers, Duration.ofSeconds(1), scaleDownRounds, Duration.ofSeconds(5));
+        listenerConcurrencyScaler.register(LISTENER_ID, givenQueueDepth::get, updatedConsumers::add);
+        return listenerConcurrencyScaler;
+    }
+
+    private static void givenProcessedMessages(ListenerConcurrencyScaler listenerConcurrencyScaler, int numberOfMessages) {
+        for (int i = 0; i < numberOfMessages; i++) {
+            listenerConcurrencyScaler.recordProcessing(LISTENER_ID, TEN_MILLIS);
+        }
+    }
+}
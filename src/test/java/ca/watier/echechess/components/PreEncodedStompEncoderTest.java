@@ -0,0 +1,138 @@
+/*
+ *    Copyright 2014 - 2021 Yannick Watier
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.watier.echechess.components;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompEncoder;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MimeTypeUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PreEncodedStompEncoderTest {
+    private static final String DESTINATION = "/topic/23770896-069d-43c3-9a83-336031b153fe";
+    private static final byte[] PAYLOAD = "{\"event\":\"PLAYER_TURN\",\"message\":\"é ♔\"}".getBytes(StandardCharsets.UTF_8);
+
+    private final StompEncoder stompEncoder = new StompEncoder();
+    private final PreEncodedStompEncoder preEncodedStompEncoder = new PreEncodedStompEncoder();
+
+    @Test
+    public void encode_broadcast_frames_same_as_stomp_encoder() {
+        // given
+        Message<byte[]> givenMessage = newMessage(DESTINATION);
+        givenMessage = withNativeHeader(givenMessage, "event-sequence", "42");
+        PreEncodedStompEncoder.PreEncodedFrame preEncodedFrame = PreEncodedStompEncoder.preEncode(DESTINATION, givenMessage);
+
+        for (int i = 0; i < 3; i++) {
+            Map<String, Object> givenHeaders = newFrameHeaders(givenMessage, "sub-" + i, preEncodedFrame);
+
+            // when
+            byte[] frame = preEncodedStompEncoder.encode(givenHeaders, PAYLOAD);
+
+            // then
+            assertThat(frame).isEqualTo(stompEncoder.encode(givenHeaders, PAYLOAD));
+        }
+    }
+
+    @Test
+    public void encode_headers_to_escape_same_as_stomp_encoder() {
+        // given
+        String givenDestination = DESTINATION + ":white\\black";
+        Message<byte[]> givenMessage = newMessage(givenDestination);
+        givenMessage = withNativeHeader(givenMessage, "event:sequence", "a:b\\c\nd\re");
+        PreEncodedStompEncoder.PreEncodedFrame preEncodedFrame = PreEncodedStompEncoder.preEncode(givenDestination, givenMessage);
+        Map<String, Object> givenHeaders = newFrameHeaders(givenMessage, "sub:0", preEncodedFrame);
+
+        // when
+        byte[] frame = preEncodedStompEncoder.encode(givenHeaders, PAYLOAD);
+
+        // then
+        assertThat(frame).isEqualTo(stompEncoder.encode(givenHeaders, PAYLOAD));
+        assertThat(new String(frame, StandardCharsets.UTF_8)).contains("event\\csequence:a\\cb\\\\c\\nd\\re\n");
+    }
+
+    @Test
+    public void encode_content_length_header_of_message_replaced_by_length_of_payload() {
+        // given
+        Message<byte[]> givenMessage = withNativeHeader(newMessage(DESTINATION), "content-length", "3");
+        PreEncodedStompEncoder.PreEncodedFrame preEncodedFrame = PreEncodedStompEncoder.preEncode(DESTINATION, givenMessage);
+        Map<String, Object> givenHeaders = newFrameHeaders(givenMessage, "sub-0", preEncodedFrame);
+
+        // when
+        byte[] frame = preEncodedStompEncoder.encode(givenHeaders, PAYLOAD);
+
+        // then
+        assertThat(frame).isEqualTo(stompEncoder.encode(givenHeaders, PAYLOAD));
+        assertThat(new String(frame, StandardCharsets.UTF_8)).contains("content-length:" + PAYLOAD.length + "\n");
+    }
+
+    @Test
+    public void encode_header_changed_after_pre_encoding_same_as_stomp_encoder() {
+        // given
+        Message<byte[]> givenMessage = withNativeHeader(newMessage(DESTINATION), "event-sequence", "42");
+        PreEncodedStompEncoder.PreEncodedFrame preEncodedFrame = PreEncodedStompEncoder.preEncode(DESTINATION, givenMessage);
+        Map<String, Object> givenHeaders = newFrameHeaders(withNativeHeader(givenMessage, "event-sequence", "43"), "sub-0", preEncodedFrame);
+
+        // when
+        byte[] frame = preEncodedStompEncoder.encode(givenHeaders, PAYLOAD);
+
+        // then
+        assertThat(frame).isEqualTo(stompEncoder.encode(givenHeaders, PAYLOAD));
+        assertThat(new String(frame, StandardCharsets.UTF_8)).contains("event-sequence:43\n");
+    }
+
+    private static Message<byte[]> newMessage(String destination) {
+        SimpMessageHeaderAccessor headerAccessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        headerAccessor.setDestination(destination);
+        headerAccessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        return MessageBuilder.createMessage(PAYLOAD, headerAccessor.getMessageHeaders());
+    }
+
+    private static Message<byte[]> withNativeHeader(Message<byte[]> message, String name, String value) {
+        SimpMessageHeaderAccessor headerAccessor = SimpMessageHeaderAccessor.wrap(message);
+        headerAccessor.setNativeHeader(name, value);
+        return MessageBuilder.createMessage(PAYLOAD, headerAccessor.getMessageHeaders());
+    }
+
+    /**
+     * The headers of the frame of a subscriber, as sent by the {@link ShardedBrokerMessageHandler} and completed by
+     * the {@link org.springframework.web.socket.messaging.StompSubProtocolHandler}.
+     */
+    private static Map<String, Object> newFrameHeaders(Message<byte[]> message, String subscriptionId,
+                                                       PreEncodedStompEncoder.PreEncodedFrame preEncodedFrame) {
+
+        SimpMessageHeaderAccessor headerAccessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        headerAccessor.setSessionId("session-0");
+        headerAccessor.setSubscriptionId(subscriptionId);
+        headerAccessor.copyHeadersIfAbsent(message.getHeaders());
+        headerAccessor.setHeader(PreEncodedStompEncoder.PRE_ENCODED_FRAME_HEADER, preEncodedFrame);
+        Message<byte[]> outboundMessage = MessageBuilder.createMessage(PAYLOAD, headerAccessor.getMessageHeaders());
+
+        StompHeaderAccessor stompHeaderAccessor = StompHeaderAccessor.wrap(outboundMessage);
+        stompHeaderAccessor.setHeader(StompHeaderAccessor.COMMAND_HEADER, StompCommand.MESSAGE);
+        stompHeaderAccessor.setMessageId(subscriptionId + "-0");
+        return stompHeaderAccessor.getMessageHeaders();
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ *    Copyright 2014 - 2021 Yannick Watier
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.watier.echechess.components;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MultiValueMap;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ShardedSubscriptionRegistryTest {
+    private static final String TOPIC = "/topic/game-1";
+    private static final String OTHER_TOPIC = "/topic/game-2";
+
+    private final ShardedSubscriptionRegistry registry = new ShardedSubscriptionRegistry(4);
+
+    @Test
+    public void findSubscriptions_subscribed_only_destination_subscribers() {
+        // given
+        registry.registerSubscription(subscribe("session-1", "sub-0", TOPIC));
+        registry.registerSubscription(subscribe("session-1", "sub-1", TOPIC));
+        registry.registerSubscription(subscribe("session-2", "sub-0", TOPIC));
+        registry.registerSubscription(subscribe("session-3", "sub-0", OTHER_TOPIC));
+
+        // when
+        MultiValueMap<String, String> subscriptions = registry.findSubscriptions(message(TOPIC));
+
+        // then
+        assertThat(subscriptions).containsOnlyKeys("session-1", "session-2");
+        assertThat(subscriptions.get("session-1")).containsExactly("sub-0", "sub-1");
+        assertThat(subscriptions.get("session-2")).containsExactly("sub-0");
+    }
+
+    @Test
+    public void unregisterSubscription_last_subscription_destination_without_subscribers() {
+        // given
+        registry.registerSubscription(subscribe("session-1", "sub-0", TOPIC));
+        registry.registerSubscription(subscribe("session-1", "sub-1", OTHER_TOPIC));
+
+        // when
+        registry.unregisterSubscription(unsubscribe("session-1", "sub-0"));
+
+        // then
+        assertThat(registry.findSubscriptions(message(TOPIC))).isEmpty();
+        assertThat(registry.findSubscriptions(message(OTHER_TOPIC)).get("session-1")).containsExactly("sub-1");
+    }
+
+    @Test
+    public void unregisterAllSubscriptions_session_closed_removed_from_all_destinations() {
+        // given
+        registry.registerSubscription(subscribe("session-1", "sub-0", TOPIC));
+        registry.registerSubscription(subscribe("session-1", "sub-1", OTHER_TOPIC));
+        registry.registerSubscription(subscribe("session-2", "sub-0", TOPIC));
+
+        // when
+        registry.unregisterAllSubscriptions("session-1");
+
+        // then
+        assertThat(registry.findSubscriptions(message(TOPIC))).containsOnlyKeys("session-2");
+        assertThat(registry.findSubscriptions(message(OTHER_TOPIC))).isEmpty();
+    }
+
+    @Test
+    public void findSubscriptions_pattern_subscription_found_with_destination_subscribers() {
+        // given
+        registry.registerSubscription(subscribe("session-1", "sub-0", TOPIC));
+        registry.registerSubscription(subscribe("session-2", "sub-0", "/topic/*"));
+
+        // when
+        MultiValueMap<String, String> subscriptions = registry.findSubscriptions(message(TOPIC));
+
+        // then
+        assertThat(subscriptions).containsOnlyKeys("session-1", "session-2");
+        assertThat(subscriptions.get("session-2")).isEqualTo(List.of("sub-0"));
+    }
+
+    private static Message<byte[]> subscribe(String sessionId, String subscriptionId, String destination) {
+        SimpMessageHeaderAccessor headerAccessor = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+        headerAccessor.setSessionId(sessionId);
+        headerAccessor.setSubscriptionId(subscriptionId);
+        headerAccessor.setDestination(destination);
+        return MessageBuilder.createMessage(new byte[0], headerAccessor.getMessageHeaders());
+    }
+
+    private static Message<byte[]> unsubscribe(String sessionId, String subscriptionId) {
+        SimpMessageHeaderAccessor headerAccessor = SimpMessageHeaderAccessor.create(SimpMessageType.UNSUBSCRIBE);
+        headerAccessor.setSessionId(sessionId);
+        headerAccessor.setSubscriptionId(subscriptionId);
+        return MessageBuilder.createMessage(new byte[0], headerAccessor.getMessageHeaders());
+    }
+
+    private static Message<byte[]> message(String destination) {
+        SimpMessageHeaderAccessor headerAccessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        headerAccessor.setDestination(destination);
+        return MessageBuilder.createMessage(new byte[0], headerAccessor.getMessageHeaders());
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ *    Copyright 2014 - 2021 Yannick Watier
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.watier.echechess.delegates;
+
+import ca.watier.echechess.common.enums.Side;
+import ca.watier.echechess.communication.redis.model.GenericGameHandlerWrapper;
+import ca.watier.echechess.components.BatchingMessagePublisher;
+import ca.watier.echechess.components.GamePartitioner;
+import ca.watier.echechess.components.MessageActionExecutor;
+import ca.watier.echechess.engine.delegates.PieceMoveConstraintDelegate;
+import ca.watier.echechess.engine.engines.GenericGameHandler;
+import ca.watier.echechess.repositories.CachingGameRepository;
+import ca.watier.echechess.utils.CasePositionMask;
+import ca.watier.echechess.utils.GameMessageCodec;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+import static ca.watier.echechess.common.enums.CasePosition.*;
+import static ca.watier.echechess.communication.rabbitmq.configuration.RabbitMqConfiguration.AVAIL_MOVE_WORK_QUEUE_NAME;
+import static ca.watier.echechess.communication.rabbitmq.configuration.RabbitMqConfiguration.MOVE_WORK_QUEUE_NAME;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class DependentGameMessageImplTest {
+    private static final UUID GAME_ID = UUID.fromString("23770896-069d-43c3-9a83-336031b153fe");
+
+    @Mock
+    private BatchingMessagePublisher messagePublisher;
+    @Mock
+    private CachingGameRepository gameCache;
+    @Mock
+    private MessageActionExecutor actionExecutor;
+
+    @Test
+    public void sendMove_binary_protocol_fixed_layout_sent_to_partition() {
+        // given
+        GamePartitioner givenGamePartitioner = new GamePartitioner(4);
+        DependentGameMessageImpl gameMessage = new DependentGameMessageImpl(messagePublisher, givenGamePartitioner, null, null, true);
+
+        // when
+        gameMessage.sendMove(GAME_ID, 42L, E2, E4, Side.WHITE, 3, -7L);
+
+        // then
+        ArgumentCaptor<Message> message = ArgumentCaptor.forClass(Message.class);
+        String expectedQueueName = GamePartitioner.getQueueName(MOVE_WORK_QUEUE_NAME, givenGamePartitioner.getPartition(GAME_ID));
+        verify(messagePublisher).publish(eq(expectedQueueName), message.capture());
+        assertThat(message.getValue().getMessageProperties().getContentType()).isEqualTo(MessageProperties.CONTENT_TYPE_BYTES);
+        assertThat(message.getValue().getBody()).isEqualTo(GameMessageCodec.encodeMoveRequest(GAME_ID, 42L, E2, E4, Side.WHITE, 3, -7L));
+    }
+
+    @Test
+    public void sendMove_text_protocol_previous_format_sent() {
+        // given
+        DependentGameMessageImpl gameMessage = new DependentGameMessageImpl(messagePublisher, null);
+
+        // when
+        gameMessage.sendMove(GAME_ID, 42L, H7, H5, Side.BLACK, 3, -7L);
+
+        // then
+        ArgumentCaptor<Message> message = ArgumentCaptor.forClass(Message.class);
+        verify(messagePublisher).publish(eq(MOVE_WORK_QUEUE_NAME), message.capture());
+        byte[] body = message.getValue().getBody();
+        assertThat(message.getValue().getMessageProperties().getContentType()).isEqualTo(MessageProperties.CONTENT_TYPE_TEXT_PLAIN);
+        assertThat(new String(body, StandardCharsets.UTF_8)).isEqualTo(GAME_ID + "|H7|H5|" + Side.BLACK.getValue());
+
+        // Read back by the engine nodes, without the fields of the fixed layout
+        assertThat(GameMessageCodec.normalize(body, GameMessageCodec.MOVE_REQUEST))
+                .isEqualTo(GameMessageCodec.encodeMoveRequest(GAME_ID, GameMessageCodec.NO_CORRELATION, H7, H5, Side.BLACK));
+    }
+
+    @Test
+    public void handleMoveMessage_text_protocol_request_converted_once() {
+        // given
+        DependentGameMessageImpl gameMessage = new DependentGameMessageImpl(messagePublisher, null);
+        byte[] givenMessage = GameMessageCodec.encodeMoveRequest(GAME_ID, 42L, E2, E4, Side.WHITE);
+
+        // when
+        gameMessage.handleMoveMessage(givenMessage);
+
+        // then
+        ArgumentCaptor<Message> message = ArgumentCaptor.forClass(Message.class);
+        verify(messagePublisher).publish(eq(MOVE_WORK_QUEUE_NAME), message.capture());
+        assertThat(message.getValue().getBody()).isEqualTo(GameMessageCodec.toLegacyFormat(givenMessage));
+    }
+
+    @Test
+    public void sendAvailableMoves_game_cached_answered_locally() {
+        // given
+        GenericGameHandler givenGameHandler = GenericGameHandler.newStandardHandlerFromConstraintDelegate(new PieceMoveConstraintDelegate());
+        when(gameCache.getIfCached(GAME_ID.toString())).thenReturn(new GenericGameHandlerWrapper<>(GAME_ID.toString(), givenGameHandler));
+        DependentGameMessageImpl gameMessage = new DependentGameMessageImpl(messagePublisher, null, gameCache, actionExecutor, false);
+
+        // when
+        gameMessage.sendAvailableMoves(GAME_ID, 42L, E2, Side.WHITE);
+
+        // then
+        ArgumentCaptor<byte[]> response = ArgumentCaptor.forClass(byte[].class);
+        verify(actionExecutor).handleAvailMoveResponseMessage(response.capture());
+        verify(messagePublisher, never()).publish(anyString(), any(Message.class));
+
+        // The local response is already in the fixed layout, kept as is by the normalization of the responses
+        byte[] normalizedResponse = GameMessageCodec.normalize(response.getValue(), GameMessageCodec.AVAILABLE_MOVES_RESPONSE);
+        assertThat(normalizedResponse).isSameAs(response.getValue());
+        assertThat(GameMessageCodec.getCorrelationId(normalizedResponse)).isEqualTo(42L);
+        assertThat(CasePositionMask.toPositions(GameMessageCodec.getPositions(normalizedResponse))).containsExactlyInAnyOrder(E3, E4);
+    }
+
+    @Test
+    public void sendAvailableMoves_game_not_cached_request_sent() {
+        // given
+        DependentGameMessageImpl gameMessage = new DependentGameMessageImpl(messagePublisher, null, gameCache, actionExecutor, false);
+
+        // when
+        gameMessage.sendAvailableMoves(GAME_ID, 42L, G1, Side.WHITE);
+
+        // then
+        ArgumentCaptor<Message> message = ArgumentCaptor.forClass(Message.class);
+        verify(messagePublisher).publish(eq(AVAIL_MOVE_WORK_QUEUE_NAME), message.capture());
+        verify(actionExecutor, never()).handleAvailMoveResponseMessage(any());
+        assertThat(new String(message.getValue().getBody(), StandardCharsets.UTF_8)).isEqualTo(GAME_ID + "|G1|" + Side.WHITE.getValue());
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ *    Copyright 2014 - 2021 Yannick Watier
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.watier.echechess.delegates;
+
+import ca.watier.echechess.common.enums.CasePosition;
+import ca.watier.echechess.common.enums.MoveType;
+import ca.watier.echechess.common.enums.Side;
+import ca.watier.echechess.common.sessions.Player;
+import ca.watier.echechess.communication.redis.model.GenericGameHandlerWrapper;
+import ca.watier.echechess.components.MessageActionExecutor;
+import ca.watier.echechess.engine.delegates.PieceMoveConstraintDelegate;
+import ca.watier.echechess.engine.engines.GenericGameHandler;
+import ca.watier.echechess.interfaces.GameCommandExecutor;
+import ca.watier.echechess.models.GameCommand;
+import ca.watier.echechess.models.MoveAppliedModel;
+import ca.watier.echechess.models.PieceLocationModel;
+import ca.watier.echechess.models.TrackedGameHandlerWrapper;
+import ca.watier.echechess.repositories.IndependentGameRepositoryImpl;
+import ca.watier.echechess.utils.GameMessageCodec;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+public class IndependentGameMessageImplTest {
+    private static final UUID GAME_UUID = UUID.fromString("23770896-069d-43c3-9a83-336031b153fe");
+    private static final String GAME_ID = GAME_UUID.toString();
+
+    @Mock
+    private MessageActionExecutor actionExecutor;
+    @Mock
+    private GameCommandExecutor commandExecutor;
+
+    private Player blackPlayer;
+    private AtomicInteger numberOfConcurrentJoins;
+    private AtomicInteger numberOfWrites;
+    private IndependentGameRepositoryImpl gameRepository;
+
+    @BeforeEach
+    public void setup() {
+        blackPlayer = new Player(UUID.randomUUID().toString());
+        numberOfConcurrentJoins = new AtomicInteger();
+        numberOfWrites = new AtomicInteger();
+
+        // A player joins the game between the read of the game and the write of the move, the given number of times
+        gameRepository = new IndependentGameRepositoryImpl() {
+            @Override
+            public boolean compareAndSet(TrackedGameHandlerWrapper trackedGameHandlerWrapper, long expectedVersion) {
+                numberOfWrites.incrementAndGet();
+
+                if (numberOfConcurrentJoins.getAndDecrement() > 0) {
+                    GenericGameHandlerWrapper<GenericGameHandler> storedWrapper = get(GAME_ID);
+                    TrackedGameHandlerWrapper joinedWrapper = (TrackedGameHandlerWrapper) TrackedGameHandlerWrapper.copyOf(storedWrapper);
+                    joinedWrapper.getGenericGameHandler().setPlayerToSide(blackPlayer, Side.BLACK);
+                    super.compareAndSet(joinedWrapper, TrackedGameHandlerWrapper.getVersion(storedWrapper));
+                }
+
+                return super.compareAndSet(trackedGameHandlerWrapper, expectedVersion);
+            }
+        };
+
+        GenericGameHandler givenGameHandler = GenericGameHandler.newStandardHandlerFromConstraintDelegate(new PieceMoveConstraintDelegate());
+        gameRepository.add(new TrackedGameHandlerWrapper(GAME_ID, givenGameHandler, null));
+    }
+
+    @Test
+    public void apply_game_changed_concurrently_move_retried_and_both_updates_kept() {
+        // given
+        numberOfConcurrentJoins.set(1);
+        IndependentGameMessageImpl gameMessage = newGameMessage();
+        GameCommand givenCommand = newMoveCommand();
+
+        // when
+        gameMessage.apply(givenCommand);
+
+        // then
+        GenericGameHandler gameHandler = gameRepository.get(GAME_ID).getGenericGameHandler();
+        assertThat(givenCommand.getMoveType()).isEqualTo(MoveType.NORMAL_MOVE);
+        assertThat(givenCommand.getStatus()).isEqualTo(GameMessageCodec.MOVE_APPLIED);
+        assertThat(givenCommand.getSequence()).isEqualTo(1);
+        assertThat(gameHandler.getPiece(CasePosition.E4)).isNotNull();
+        assertThat(gameHandler.getPlayerBlack().getId()).isEqualTo(blackPlayer.getId());
+        assertThat(numberOfWrites.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void apply_game_always_changed_move_stale_and_game_not_changed() {
+        // given
+        numberOfConcurrentJoins.set(Integer.MAX_VALUE);
+        IndependentGameMessageImpl gameMessage = newGameMessage();
+        GameCommand givenCommand = newMoveCommand();
+
+        // when
+        gameMessage.apply(givenCommand);
+        gameMessage.publish(givenCommand);
+
+        // then
+        GenericGameHandlerWrapper<GenericGameHandler> wrapper = gameRepository.get(GAME_ID);
+        assertThat(givenCommand.getMoveType()).isEqualTo(MoveType.MOVE_NOT_ALLOWED);
+        assertThat(wrapper.getGenericGameHandler().getPiece(CasePosition.E2)).isNotNull();
+        assertThat(wrapper.getGenericGameHandler().getPiece(CasePosition.E4)).isNull();
+        assertThat(TrackedGameHandlerWrapper.getNumberOfMoves(wrapper)).isZero();
+
+        // Answered as stale, so the service throws a GameConflictException
+        ArgumentCaptor<byte[]> response = ArgumentCaptor.forClass(byte[].class);
+        verify(actionExecutor).handleMoveResponseMessage(response.capture(), isNull());
+        assertThat(GameMessageCodec.getMoveStatus(response.getValue())).isEqualTo(GameMessageCodec.MOVE_STALE);
+        assertThat(GameMessageCodec.getMoveType(response.getValue())).isEqualTo(MoveType.MOVE_NOT_ALLOWED);
+    }
+
+    @Test
+    public void apply_move_received_again_after_concurrent_join_duplicate() {
+        // given
+        numberOfConcurrentJoins.set(1);
+        IndependentGameMessageImpl gameMessage = newGameMessage();
+        gameMessage.apply(newMoveCommand());
+        GameCommand givenCommandReceivedAgain = newMoveCommand();
+
+        // when
+        gameMessage.apply(givenCommandReceivedAgain);
+
+        // then
+        assertThat(givenCommandReceivedAgain.getStatus()).isEqualTo(GameMessageCodec.MOVE_DUPLICATE);
+        assertThat(givenCommandReceivedAgain.getMoveType()).isEqualTo(MoveType.NORMAL_MOVE);
+        assertThat(givenCommandReceivedAgain.getSequence()).isEqualTo(1);
+        assertThat(numberOfWrites.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void apply_refused_move_game_not_written() {
+        // given
+        IndependentGameMessageImpl gameMessage = newGameMessage();
+        GameCommand givenCommand = new GameCommand();
+        givenCommand.decode(GameMessageCodec.encodeMoveRequest(GAME_UUID, 1, CasePosition.E2, CasePosition.E5, Side.WHITE));
+
+        // when
+        gameMessage.apply(givenCommand);
+
+        // then
+        assertThat(givenCommand.getMoveType()).isEqualTo(MoveType.MOVE_NOT_ALLOWED);
+        assertThat(numberOfWrites.get()).isZero();
+        assertThat(gameRepository.get(GAME_ID).getGenericGameHandler().getPiece(CasePosition.E2)).isNotNull();
+    }
+
+    @Test
+    public void publish_game_changed_after_apply_recorded_outcome_sent() {
+        // given
+        IndependentGameMessageImpl gameMessage = newGameMessage();
+        GameCommand givenCommand = newMoveCommand();
+        gameMessage.apply(givenCommand);
+
+        GameCommand givenNextCommand = new GameCommand();
+        givenNextCommand.decode(GameMessageCodec.encodeMoveRequest(GAME_UUID, 2, CasePosition.E7, CasePosition.E5, Side.BLACK));
+        gameMessage.apply(givenNextCommand);
+
+        // when
+        gameMessage.publish(givenCommand);
+
+        // then
+        ArgumentCaptor<MoveAppliedModel> moveApplied = ArgumentCaptor.forClass(MoveAppliedModel.class);
+        verify(actionExecutor).handleMoveResponseMessage(any(byte[].class), moveApplied.capture());
+        assertThat(moveApplied.getValue().getSequence()).isEqualTo(1);
+        assertThat(moveApplied.getValue().getFrom()).isEqualTo(CasePosition.E2.name());
+        assertThat(moveApplied.getValue().getTurn()).isEqualTo(Side.BLACK);
+        assertThat(moveApplied.getValue().getSquares())
+                .extracting(PieceLocationModel::getRawPosition)
+                .containsExactlyInAnyOrder(CasePosition.E2.name(), CasePosition.E4.name());
+    }
+
+    @Test
+    public void publishFailure_decoded_command_request_failed() {
+        // given
+        IndependentGameMessageImpl gameMessage = newGameMessage();
+        GameCommand givenCommand = newMoveCommand();
+
+        // when
+        gameMessage.publishFailure(givenCommand);
+
+        // then
+        verify(actionExecutor).handleFailedRequest(GAME_UUID, 1);
+    }
+
+    private IndependentGameMessageImpl newGameMessage() {
+        return new IndependentGameMessageImpl(actionExecutor, gameRepository, commandExecutor, null, new PieceMoveConstraintDelegate());
+    }
+
+    private static GameCommand newMoveCommand() {
+        GameCommand command = new GameCommand();
+        command.decode(GameMessageCodec.encodeMoveRequest(GAME_UUID, 1, CasePosition.E2, CasePosition.E4, Side.WHITE));
+        return command;
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ *    Copyright 2014 - 2021 Yannick Watier
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.watier.echechess.repositories;
+
+import ca.watier.echechess.common.enums.CasePosition;
+import ca.watier.echechess.common.enums.Side;
+import ca.watier.echechess.communication.redis.model.GenericGameHandlerWrapper;
+import ca.watier.echechess.engine.delegates.PieceMoveConstraintDelegate;
+import ca.watier.echechess.engine.engines.GenericGameHandler;
+import ca.watier.echechess.interfaces.IndexedGameRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.connection.DefaultMessage;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class CachingGameRepositoryTest {
+    private static final String FIRST_GAME = "23770896-069d-43c3-9a83-336031b153fe";
+    private static final String SECOND_GAME = "07693684-082b-4f3c-9ea7-a8133a78225a";
+
+    @Mock
+    private IndexedGameRepository remoteGameRepository;
+
+    private GenericGameHandler gameHandler;
+    private CachingGameRepository gameRepository;
+
+    @BeforeEach
+    public void setup() {
+        gameHandler = GenericGameHandler.newStandardHandlerFromConstraintDelegate(new PieceMoveConstraintDelegate());
+        gameRepository = new CachingGameRepository(remoteGameRepository, 1, Duration.ofMinutes(1));
+    }
+
+    @Test
+    public void get_cached_game_not_read_again() {
+        // given
+        GenericGameHandlerWrapper<GenericGameHandler> givenWrapper = new GenericGameHandlerWrapper<>(FIRST_GAME, gameHandler);
+        when(remoteGameRepository.get(FIRST_GAME)).thenReturn(givenWrapper);
+
+        // when
+        gameRepository.get(FIRST_GAME);
+        GenericGameHandlerWrapper<GenericGameHandler> wrapper = gameRepository.get(FIRST_GAME);
+
+        // then
+        assertThat(wrapper).isNotSameAs(givenWrapper);
+        assertThat(wrapper.getId()).isEqualTo(FIRST_GAME);
+        assertThat(gameRepository.getHits()).isEqualTo(1);
+        assertThat(gameRepository.getMisses()).isEqualTo(1);
+        verify(remoteGameRepository, times(1)).get(FIRST_GAME);
+    }
+
+    @Test
+    public void get_changed_copy_not_cached() {
+        // given
+        gameRepository.add(new GenericGameHandlerWrapper<>(FIRST_GAME, gameHandler));
+        gameHandler.movePiece(CasePosition.E2, CasePosition.E4, Side.WHITE);
+        gameRepository.get(FIRST_GAME).getGenericGameHandler().movePiece(CasePosition.D2, CasePosition.D4, Side.WHITE);
+
+        // when
+        GenericGameHandlerWrapper<GenericGameHandler> wrapper = gameRepository.get(FIRST_GAME);
+
+        // then
+        assertThat(wrapper.getGenericGameHandler().getPiece(CasePosition.E2)).isNotNull();
+        assertThat(wrapper.getGenericGameHandler().getPiece(CasePosition.D2)).isNotNull();
+    }
+
+    @Test
+    public void get_game_invalidated_while_read_not_cached() {
+        // given
+        when(remoteGameRepository.get(FIRST_GAME)).thenAnswer(invocation -> {
+            gameRepository.invalidate(FIRST_GAME);
+            return new GenericGameHandlerWrapper<>(FIRST_GAME, gameHandler);
+        });
+
+        // when
+        gameRepository.get(FIRST_GAME);
+        gameRepository.get(FIRST_GAME);
+
+        // then
+        assertThat(gameRepository.getMisses()).isEqualTo(2);
+        verify(remoteGameRepository, times(2)).get(FIRST_GAME);
+    }
+
+    @Test
+    public void get_other_game_invalidated_while_read_cached() {
+        // given
+        when(remoteGameRepository.get(FIRST_GAME)).thenAnswer(invocation -> {
+            gameRepository.invalidate(SECOND_GAME);
+            return new GenericGameHandlerWrapper<>(FIRST_GAME, gameHandler);
+        });
+
+        // when
+        gameRepository.get(FIRST_GAME);
+        gameRepository.get(FIRST_GAME);
+
+        // then
+        assertThat(gameRepository.getHits()).isEqualTo(1);
+        verify(remoteGameRepository, times(1)).get(FIRST_GAME);
+    }
+
+    @Test
+    public void getIfCached_game_not_cached_remote_not_read() {
+        // given
+        // when
+        GenericGameHandlerWrapper<GenericGameHandler> wrapper = gameRepository.getIfCached(FIRST_GAME);
+
+        // then
+        assertThat(wrapper).isNull();
+        verifyNoInteractions(remoteGameRepository);
+    }
+
+    @Test
+    public void getIfCached_invalidated_game_not_returned() {
+        // given
+        gameRepository.add(new GenericGameHandlerWrapper<>(FIRST_GAME, gameHandler));
+        gameRepository.invalidate(FIRST_GAME);
+
+        // when
+        GenericGameHandlerWrapper<GenericGameHandler> wrapper = gameRepository.getIfCached(FIRST_GAME);
+
+        // then
+        assertThat(wrapper).isNull();
+    }
+
+    @Test
+    public void add_game_cached_and_written() {
+        // given
+        GenericGameHandlerWrapper<GenericGameHandler> givenWrapper = new GenericGameHandlerWrapper<>(FIRST_GAME, gameHandler);
+
+        // when
+        gameRepository.add(givenWrapper);
+
+        // then
+        assertThat(gameRepository.get(FIRST_GAME).getId()).isEqualTo(FIRST_GAME);
+        assertThat(gameRepository.getHits()).isEqualTo(1);
+        verify(remoteGameRepository).add(givenWrapper);
+        verify(remoteGameRepository, never()).get(FIRST_GAME);
+    }
+
+    @Test
+    public void add_over_maximum_size_eldest_evicted() {
+        // given
+        gameRepository.add(new GenericGameHandlerWrapper<>(FIRST_GAME, gameHandler));
+
+        // when
+        gameRepository.add(new GenericGameHandlerWrapper<>(SECOND_GAME, gameHandler));
+
+        // then
+        assertThat(gameRepository.size()).isEqualTo(1);
+        assertThat(gameRepository.getEvictions()).isEqualTo(1);
+        gameRepository.get(FIRST_GAME);
+        assertThat(gameRepository.getMisses()).isEqualTo(1);
+    }
+
+    @Test
+    public void get_expired_game_read_again() {
+        // given
+        gameRepository = new CachingGameRepository(remoteGameRepository, 16, Duration.ZERO);
+        when(remoteGameRepository.get(FIRST_GAME)).thenReturn(new GenericGameHandlerWrapper<>(FIRST_GAME, gameHandler));
+
+        // when
+        gameRepository.get(FIRST_GAME);
+        gameRepository.get(FIRST_GAME);
+
+        // then
+        assertThat(gameRepository.getHits()).isZero();
+        assertThat(gameRepository.getMisses()).isEqualTo(2);
+        verify(remoteGameRepository, times(2)).get(FIRST_GAME);
+    }
+
+    @Test
+    public void onMessage_other_node_game_invalidated() {
+        // given
+        gameRepository.add(new GenericGameHandlerWrapper<>(FIRST_GAME, gameHandler));
+        byte[] givenBody = ("07e4b5e5-2d3c-4c36-a1c2-2ad8d8c0b1f4|" + FIRST_GAME).getBytes(StandardCharsets.UTF_8);
+        byte[] givenChannel = CachingGameRepository.INVALIDATION_CHANNEL.getBytes(StandardCharsets.UTF_8);
+
+        // when
+        gameRepository.onMessage(new DefaultMessage(givenChannel, givenBody), null);
+
+        // then
+        assertThat(gameRepository.size()).isZero();
+        assertThat(gameRepository.getInvalidations()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ *    Copyright 2014 - 2021 Yannick Watier
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.watier.echechess.repositories;
+
+import ca.watier.echechess.common.enums.CasePosition;
+import ca.watier.echechess.common.enums.Pieces;
+import ca.watier.echechess.common.enums.Side;
+import ca.watier.echechess.common.responses.GameScoreResponse;
+import ca.watier.echechess.common.sessions.Player;
+import ca.watier.echechess.communication.redis.model.GenericGameHandlerWrapper;
+import ca.watier.echechess.engine.delegates.PieceMoveConstraintDelegate;
+import ca.watier.echechess.engine.engines.GenericGameHandler;
+import ca.watier.echechess.engine.exceptions.FenParserException;
+import ca.watier.echechess.engine.utils.FenGameParser;
+import ca.watier.echechess.models.TrackedGameHandlerWrapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.UUID;
+
+import static ca.watier.echechess.common.enums.CasePosition.*;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class GameStateCodecTest {
+    private static final String GAME_ID = "23770896-069d-43c3-9a83-336031b153fe";
+    private static final PieceMoveConstraintDelegate PIECE_MOVE_CONSTRAINT_DELEGATE = new PieceMoveConstraintDelegate();
+
+    private final GameStateCodec gameStateCodec = new GameStateCodec(PIECE_MOVE_CONSTRAINT_DELEGATE);
+
+    @Test
+    public void decode_standard_game_restored() throws IOException {
+        // given
+        GenericGameHandler givenGameHandler = GenericGameHandler.newStandardHandlerFromConstraintDelegate(PIECE_MOVE_CONSTRAINT_DELEGATE);
+        givenGameHandler.setUuid(GAME_ID);
+        givenGameHandler.setAllowOtherToJoin(true);
+        givenGameHandler.setPlayerToSide(new Player(UUID.randomUUID().toString()), Side.WHITE);
+        givenGameHandler.setPlayerToSide(new Player(UUID.randomUUID().toString()), Side.BLACK);
+        TrackedGameHandlerWrapper givenWrapper = new TrackedGameHandlerWrapper(GAME_ID, givenGameHandler, null);
+
+        move(givenWrapper, E2, E4, Side.WHITE);
+        move(givenWrapper, E7, E5, Side.BLACK);
+        move(givenWrapper, G1, F3, Side.WHITE);
+
+        // when
+        GenericGameHandlerWrapper<GenericGameHandler> wrapper = gameStateCodec.decode(gameStateCodec.encode(givenWrapper));
+
+        // then
+        assertThat(wrapper).isInstanceOf(TrackedGameHandlerWrapper.class);
+        assertThat(wrapper.getId()).isEqualTo(GAME_ID);
+        assertThat(((TrackedGameHandlerWrapper) wrapper).getMoves()).containsExactly(givenWrapper.getMoves());
+
+        GenericGameHandler gameHandler = wrapper.getGenericGameHandler();
+        assertThat(gameHandler.getPiecesLocation()).isEqualTo(givenGameHandler.getPiecesLocation());
+        assertThat(gameHandler.isAllowOtherToJoin()).isTrue();
+        assertThat(gameHandler.isAllowObservers()).isFalse();
+        assertThat(gameHandler.getPlayerWhite()).isNotNull();
+        assertThat(gameHandler.getPlayerBlack()).isNotNull();
+    }
+
+    @Test
+    public void decode_promotion_restored() throws IOException, FenParserException {
+        // given
+        String givenPattern = "K7/6P1/8/8/8/8/6p1/k7 w";
+        GenericGameHandler givenGameHandler = FenGameParser.parse(givenPattern);
+        TrackedGameHandlerWrapper givenWrapper = new TrackedGameHandlerWrapper(GAME_ID, givenGameHandler, givenPattern);
+
+        move(givenWrapper, G7, G8, Side.WHITE);
+        givenGameHandler.upgradePiece(G8, Pieces.W_QUEEN, Side.WHITE);
+        givenWrapper.recordPromotion(G8, Pieces.W_QUEEN);
+
+        // when
+        GenericGameHandlerWrapper<GenericGameHandler> wrapper = gameStateCodec.decode(gameStateCodec.encode(givenWrapper));
+
+        // then
+        GenericGameHandler gameHandler = wrapper.getGenericGameHandler();
+        assertThat(gameHandler.getPiece(G8)).isEqualTo(Pieces.W_QUEEN);
+        assertThat(gameHandler.isGamePaused()).isFalse();
+        assertThat(gameHandler.getPiecesLocation()).isEqualTo(givenGameHandler.getPiecesLocation());
+        assertThat(((TrackedGameHandlerWrapper) wrapper).getInitialPosition()).isEqualTo(givenPattern);
+        assertThat(((TrackedGameHandlerWrapper) wrapper).getMoves()).containsExactly(givenWrapper.getMoves());
+    }
+
+    @Test
+    public void decode_castling_kept() throws IOException {
+        // given
+        TrackedGameHandlerWrapper givenWrapper = newStandardGame();
+
+        move(givenWrapper, E2, E4, Side.WHITE);
+        move(givenWrapper, E7, E5, Side.BLACK);
+        move(givenWrapper, G1, F3, Side.WHITE);
+        move(givenWrapper, B8, C6, Side.BLACK);
+        move(givenWrapper, F1, C4, Side.WHITE);
+        move(givenWrapper, G8, F6, Side.BLACK);
+
+        // when
+        GenericGameHandlerWrapper<GenericGameHandler> wrapper = gameStateCodec.decode(gameStateCodec.encode(givenWrapper));
+        wrapper.getGenericGameHandler().movePiece(E1, G1, Side.WHITE);
+
+        // then
+        GenericGameHandler gameHandler = wrapper.getGenericGameHandler();
+        assertThat(gameHandler.getPiece(G1)).isEqualTo(Pieces.W_KING);
+        assertThat(gameHandler.getPiece(F1)).isEqualTo(Pieces.W_ROOK);
+        assertThat(gameHandler.getPiece(H1)).isNull();
+    }
+
+    @Test
+    public void decode_castling_lost_when_king_moved() throws IOException {
+        // given
+        TrackedGameHandlerWrapper givenWrapper = newStandardGame();
+
+        move(givenWrapper, E2, E4, Side.WHITE);
+        move(givenWrapper, E7, E5, Side.BLACK);
+        move(givenWrapper, G1, F3, Side.WHITE);
+        move(givenWrapper, B8, C6, Side.BLACK);
+        move(givenWrapper, F1, C4, Side.WHITE);
+        move(givenWrapper, G8, F6, Side.BLACK);
+        move(givenWrapper, E1, E2, Side.WHITE);
+        move(givenWrapper, F8, C5, Side.BLACK);
+        move(givenWrapper, E2, E1, Side.WHITE);
+        move(givenWrapper, D7, D6, Side.BLACK);
+
+        // when
+        GenericGameHandlerWrapper<GenericGameHandler> wrapper = gameStateCodec.decode(gameStateCodec.encode(givenWrapper));
+        wrapper.getGenericGameHandler().movePiece(E1, G1, Side.WHITE);
+
+        // then
+        GenericGameHandler gameHandler = wrapper.getGenericGameHandler();
+        assertThat(gameHandler.getPiece(E1)).isEqualTo(Pieces.W_KING);
+        assertThat(gameHandler.getPiece(H1)).isEqualTo(Pieces.W_ROOK);
+        assertThat(gameHandler.getPiece(G1)).isNull();
+    }
+
+    @Test
+    public void decode_en_passant_kept() throws IOException {
+        // given
+        TrackedGameHandlerWrapper givenWrapper = newStandardGame();
+
+        move(givenWrapper, E2, E4, Side.WHITE);
+        move(givenWrapper, A7, A6, Side.BLACK);
+        move(givenWrapper, E4, E5, Side.WHITE);
+        move(givenWrapper, D7, D5, Side.BLACK);
+
+        // when
+        GenericGameHandlerWrapper<GenericGameHandler> wrapper = gameStateCodec.decode(gameStateCodec.encode(givenWrapper));
+        wrapper.getGenericGameHandler().movePiece(E5, D6, Side.WHITE);
+
+        // then
+        GenericGameHandler gameHandler = wrapper.getGenericGameHandler();
+        assertThat(gameHandler.getPiece(D6)).isEqualTo(Pieces.W_PAWN);
+        assertThat(gameHandler.getPiece(D5)).isNull();
+        assertThat(gameHandler.getPiece(E5)).isNull();
+    }
+
+    @Test
+    public void decode_captured_points_kept() throws IOException {
+        // given
+        TrackedGameHandlerWrapper givenWrapper = newStandardGame();
+        GenericGameHandler givenGameHandler = givenWrapper.getGenericGameHandler();
+
+        move(givenWrapper, E2, E4, Side.WHITE);
+        move(givenWrapper, D7, D5, Side.BLACK);
+        move(givenWrapper, E4, D5, Side.WHITE);
+
+        // when
+        GenericGameHandlerWrapper<GenericGameHandler> wrapper = gameStateCodec.decode(gameStateCodec.encode(givenWrapper));
+
+        // then
+        GameScoreResponse givenGameScore = givenGameHandler.getGameScore();
+        GameScoreResponse gameScore = wrapper.getGenericGameHandler().getGameScore();
+        assertThat(givenGameScore.getWhitePlayerPoint()).isPositive();
+        assertThat(gameScore.getWhitePlayerPoint()).isEqualTo(givenGameScore.getWhitePlayerPoint());
+        assertThat(gameScore.getBlackPlayerPoint()).isEqualTo(givenGameScore.getBlackPlayerPoint());
+        assertThat(wrapper.getGenericGameHandler().getPiece(D5)).isEqualTo(Pieces.W_PAWN);
+    }
+
+    @Test
+    public void encode_smaller_than_java_serialization() throws IOException {
+        // given
+        GenericGameHandler givenGameHandler = GenericGameHandler.newStandardHandlerFromConstraintDelegate(PIECE_MOVE_CONSTRAINT_DELEGATE);
+        givenGameHandler.setPlayerToSide(new Player(UUID.randomUUID().toString()), Side.WHITE);
+        TrackedGameHandlerWrapper givenWrapper = new TrackedGameHandlerWrapper(GAME_ID, givenGameHandler, null);
+        move(givenWrapper, D2, D4, Side.WHITE);
+
+        // when
+        byte[] encoded = gameStateCodec.encode(givenWrapper);
+
+        // then
+        assertThat(encoded.length).isLessThan(serialize(new GenericGameHandlerWrapper<>(GAME_ID, givenGameHandler)).length);
+    }
+
+    @Test
+    public void decode_untracked_game_restored() throws IOException {
+        // given
+        GenericGameHandler givenGameHandler = GenericGameHandler.newStandardHandlerFromConstraintDelegate(PIECE_MOVE_CONSTRAINT_DELEGATE);
+        givenGameHandler.movePiece(E2, E4, Side.WHITE);
+        GenericGameHandlerWrapper<GenericGameHandler> givenWrapper = new GenericGameHandlerWrapper<>(GAME_ID, givenGameHandler);
+
+        // when
+        GenericGameHandlerWrapper<GenericGameHandler> wrapper = gameStateCodec.decode(gameStateCodec.encode(givenWrapper));
+
+        // then
+        assertThat(wrapper).isNotInstanceOf(TrackedGameHandlerWrapper.class);
+        assertThat(wrapper.getId()).isEqualTo(GAME_ID);
+        assertThat(wrapper.getGenericGameHandler().getPiecesLocation()).isEqualTo(givenGameHandler.getPiecesLocation());
+    }
+
+    private static TrackedGameHandlerWrapper newStandardGame() {
+        GenericGameHandler givenGameHandler = GenericGameHandler.newStandardHandlerFromConstraintDelegate(PIECE_MOVE_CONSTRAINT_DELEGATE);
+        givenGameHandler.setUuid(GAME_ID);
+        return new TrackedGameHandlerWrapper(GAME_ID, givenGameHandler, null);
+    }
+
+    private static void move(TrackedGameHandlerWrapper wrapper, CasePosition from, CasePosition to, Side side) {
+        wrapper.getGenericGameHandler().movePiece(from, to, side);
+        wrapper.recordMove(from, to);
+    }
+
+    private static byte[] serialize(Object value) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        try (ObjectOutputStream objectOutputStream = new ObjectOutputStream(outputStream)) {
+            objectOutputStream.writeObject(value);
+        }
+
+        return outputStream.toByteArray();
+    }
+}
@@ -0,0 +1,321 @@
+/*
+ *    Copyright 2014 - 2021 Yannick Watier
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.watier.echechess.repositories;
+
+import ca.watier.echechess.common.enums.CasePosition;
+import ca.watier.echechess.common.enums.Side;
+import ca.watier.echechess.common.sessions.Player;
+import ca.watier.echechess.communication.redis.model.GenericGameHandlerWrapper;
+import ca.watier.echechess.engine.delegates.PieceMoveConstraintDelegate;
+import ca.watier.echechess.engine.engines.GenericGameHandler;
+import ca.watier.echechess.models.GamePage;
+import ca.watier.echechess.models.GameState;
+import ca.watier.echechess.models.TrackedGameHandlerWrapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class IndependentGameRepositoryImplTest {
+    private static final String GAME_ID = "23770896-069d-43c3-9a83-336031b153fe";
+
+    @TempDir
+    Path hibernationDirectory;
+
+    private IndependentGameRepositoryImpl gameRepository;
+
+    @BeforeEach
+    public void setup() {
+        gameRepository = new IndependentGameRepositoryImpl(16, new GameHibernationStore(hibernationDirectory, new GameStateCodec(new PieceMoveConstraintDelegate())));
+    }
+
+    @Test
+    public void hibernate_idle_game_rehydrated_on_get() {
+        // given
+        GenericGameHandler givenGameHandler = GenericGameHandler.newStandardHandlerFromConstraintDelegate(new PieceMoveConstraintDelegate());
+        givenGameHandler.movePiece(CasePosition.E2, CasePosition.E4, Side.WHITE);
+        gameRepository.add(new GenericGameHandlerWrapper<>(GAME_ID, givenGameHandler));
+
+        // when
+        boolean isHibernated = gameRepository.hibernate(GAME_ID, Duration.ZERO);
+
+        // then
+        assertThat(isHibernated).isTrue();
+        assertThat(gameRepository.size()).isZero();
+        assertThat(gameRepository.getIdleGames(Duration.ZERO)).isEmpty();
+        assertThat(hibernationDirectory.resolve(GAME_ID + ".game")).exists();
+
+        GenericGameHandlerWrapper<GenericGameHandler> wrapper = gameRepository.get(GAME_ID);
+        assertThat(wrapper).isNotNull();
+        assertThat(wrapper.getGenericGameHandler().getPiece(CasePosition.E4)).isNotNull();
+        assertThat(wrapper.getGenericGameHandler().getPiece(CasePosition.E2)).isNull();
+        assertThat(gameRepository.size()).isEqualTo(1);
+        assertThat(hibernationDirectory.resolve(GAME_ID + ".game")).doesNotExist();
+    }
+
+    @Test
+    public void hibernate_active_game_kept_in_memory() {
+        // given
+        GenericGameHandler givenGameHandler = GenericGameHandler.newStandardHandlerFromConstraintDelegate(new PieceMoveConstraintDelegate());
+        gameRepository.add(new GenericGameHandlerWrapper<>(GAME_ID, givenGameHandler));
+
+        // when
+        boolean isHibernated = gameRepository.hibernate(GAME_ID, Duration.ofHours(1));
+
+        // then
+        assertThat(isHibernated).isFalse();
+        assertThat(gameRepository.getIdleGames(Duration.ofHours(1))).isEmpty();
+        assertThat(gameRepository.get(GAME_ID).getGenericGameHandler()).isSameAs(givenGameHandler);
+        assertThat(hibernationDirectory.resolve(GAME_ID + ".game")).doesNotExist();
+    }
+
+    @Test
+    public void delete_hibernated_game() {
+        // given
+        GenericGameHandler givenGameHandler = GenericGameHandler.newStandardHandlerFromConstraintDelegate(new PieceMoveConstraintDelegate());
+        gameRepository.add(new GenericGameHandlerWrapper<>(GAME_ID, givenGameHandler));
+        gameRepository.hibernate(GAME_ID, Duration.ZERO);
+
+        // when
+        gameRepository.delete(GAME_ID);
+
+        // then
+        assertThat(gameRepository.get(GAME_ID)).isNull();
+        assertThat(hibernationDirectory.resolve(GAME_ID + ".game")).doesNotExist();
+    }
+
+    @Test
+    public void compareAndSet_stale_version_rejected() {
+        // given
+        GenericGameHandler givenGameHandler = GenericGameHandler.newStandardHandlerFromConstraintDelegate(new PieceMoveConstraintDelegate());
+        TrackedGameHandlerWrapper givenWrapper = new TrackedGameHandlerWrapper(GAME_ID, givenGameHandler, null);
+        gameRepository.add(givenWrapper);
+        long givenReadVersion = givenWrapper.getVersion();
+        gameRepository.add(givenWrapper);
+
+        // when
+        boolean isSet = gameRepository.compareAndSet(givenWrapper, givenReadVersion);
+
+        // then
+        assertThat(isSet).isFalse();
+        assertThat(givenWrapper.getVersion()).isEqualTo(givenReadVersion + 1);
+    }
+
+    @Test
+    public void compareAndSet_current_version_incremented() {
+        // given
+        GenericGameHandler givenGameHandler = GenericGameHandler.newStandardHandlerFromConstraintDelegate(new PieceMoveConstraintDelegate());
+        TrackedGameHandlerWrapper givenWrapper = new TrackedGameHandlerWrapper(GAME_ID, givenGameHandler, null);
+        gameRepository.add(givenWrapper);
+        long givenReadVersion = givenWrapper.getVersion();
+
+        // when
+        boolean isSet = gameRepository.compareAndSet(givenWrapper, givenReadVersion);
+
+        // then
+        assertThat(isSet).isTrue();
+        assertThat(givenWrapper.getVersion()).isEqualTo(givenReadVersion + 1);
+    }
+
+    @Test
+    public void compareAndSet_version_kept_when_hibernated() {
+        // given
+        GenericGameHandler givenGameHandler = GenericGameHandler.newStandardHandlerFromConstraintDelegate(new PieceMoveConstraintDelegate());
+        TrackedGameHandlerWrapper givenWrapper = new TrackedGameHandlerWrapper(GAME_ID, givenGameHandler, null);
+        gameRepository.add(givenWrapper);
+        long givenReadVersion = givenWrapper.getVersion();
+        gameRepository.hibernate(GAME_ID, Duration.ZERO);
+
+        // when
+        boolean isSet = gameRepository.compareAndSet(givenWrapper, givenReadVersion);
+
+        // then
+        assertThat(isSet).isTrue();
+        assertThat(gameRepository.get(GAME_ID)).isSameAs(givenWrapper);
+    }
+
+    @Test
+    public void compareAndSet_refused_activity_recorded() throws InterruptedException {
+        // given
+        GenericGameHandler givenGameHandler = GenericGameHandler.newStandardHandlerFromConstraintDelegate(new PieceMoveConstraintDelegate());
+        TrackedGameHandlerWrapper givenWrapper = new TrackedGameHandlerWrapper(GAME_ID, givenGameHandler, null);
+        gameRepository.add(givenWrapper);
+        long givenReadVersion = givenWrapper.getVersion();
+        gameRepository.add(givenWrapper);
+        Thread.sleep(200);
+        assertThat(gameRepository.getIdleGames(Duration.ofMillis(100))).containsExactly(GAME_ID);
+
+        // when
+        boolean isSet = gameRepository.compareAndSet(givenWrapper, givenReadVersion);
+
+        // then
+        assertThat(isSet).isFalse();
+        assertThat(gameRepository.getIdleGames(Duration.ofMillis(100))).isEmpty();
+        assertThat(gameRepository.hibernate(GAME_ID, Duration.ofMillis(100))).isFalse();
+    }
+
+    @Test
+    public void hibernate_game_written_by_compareAndSet_kept_in_memory() throws InterruptedException {
+        // given
+        GenericGameHandler givenGameHandler = GenericGameHandler.newStandardHandlerFromConstraintDelegate(new PieceMoveConstraintDelegate());
+        TrackedGameHandlerWrapper givenWrapper = new TrackedGameHandlerWrapper(GAME_ID, givenGameHandler, null);
+        gameRepository.add(givenWrapper);
+        Thread.sleep(200);
+        TrackedGameHandlerWrapper givenJoinedWrapper = (TrackedGameHandlerWrapper) TrackedGameHandlerWrapper.copyOf(givenWrapper);
+        givenJoinedWrapper.getGenericGameHandler().setPlayerToSide(new Player(UUID.randomUUID().toString()), Side.BLACK);
+
+        // when
+        boolean isSet = gameRepository.compareAndSet(givenJoinedWrapper, givenWrapper.getVersion());
+        boolean isHibernated = gameRepository.hibernate(GAME_ID, Duration.ofMillis(100));
+
+        // then
+        assertThat(isSet).isTrue();
+        assertThat(isHibernated).isFalse();
+        assertThat(gameRepository.get(GAME_ID)).isSameAs(givenJoinedWrapper);
+        assertThat(hibernationDirectory.resolve(GAME_ID + ".game")).doesNotExist();
+    }
+
+    @Test
+    public void add_indexes_updated() {
+        // given
+        Player givenWhitePlayer = new Player(UUID.randomUUID().toString());
+        Player givenBlackPlayer = new Player(UUID.randomUUID().toString());
+        GenericGameHandler givenGameHandler = GenericGameHandler.newStandardHandlerFromConstraintDelegate(new PieceMoveConstraintDelegate());
+        givenGameHandler.setAllowOtherToJoin(true);
+        givenGameHandler.setPlayerToSide(givenWhitePlayer, Side.WHITE);
+        gameRepository.add(new GenericGameHandlerWrapper<>(GAME_ID, givenGameHandler));
+
+        assertThat(gameRepository.getOpenGames()).containsExactly(GAME_ID);
+        assertThat(gameRepository.getGamesOfPlayer(givenWhitePlayer.getId())).containsExactly(GAME_ID);
+        assertThat(gameRepository.getGamesByState(GameState.RUNNING)).containsExactly(GAME_ID);
+
+        // when
+        givenGameHandler.setPlayerToSide(givenBlackPlayer, Side.BLACK);
+        gameRepository.add(new GenericGameHandlerWrapper<>(GAME_ID, givenGameHandler));
+
+        // then
+        assertThat(gameRepository.getOpenGames()).isEmpty();
+        assertThat(gameRepository.getGamesOfPlayer(givenWhitePlayer.getId())).containsExactly(GAME_ID);
+        assertThat(gameRepository.getGamesOfPlayer(givenBlackPlayer.getId())).containsExactly(GAME_ID);
+        assertThat(gameRepository.getGamesByState(GameState.RUNNING)).containsExactly(GAME_ID);
+    }
+
+    @Test
+    public void delete_removed_from_indexes() {
+        // given
+        Player givenPlayer = new Player(UUID.randomUUID().toString());
+        GenericGameHandler givenGameHandler = GenericGameHandler.newStandardHandlerFromConstraintDelegate(new PieceMoveConstraintDelegate());
+        givenGameHandler.setAllowOtherToJoin(true);
+        givenGameHandler.setPlayerToSide(givenPlayer, Side.WHITE);
+        gameRepository.add(new GenericGameHandlerWrapper<>(GAME_ID, givenGameHandler));
+        gameRepository.hibernate(GAME_ID, Duration.ZERO);
+
+        assertThat(gameRepository.getGamesOfPlayer(givenPlayer.getId())).containsExactly(GAME_ID);
+
+        // when
+        gameRepository.delete(GAME_ID);
+
+        // then
+        assertThat(gameRepository.getOpenGames()).isEmpty();
+        assertThat(gameRepository.getGamesOfPlayer(givenPlayer.getId())).isEmpty();
+        assertThat(gameRepository.getGamesByState(GameState.RUNNING)).isEmpty();
+    }
+
+    @Test
+    public void getPage_all_games_listed() {
+        // given
+        Set<String> givenIds = new HashSet<>();
+
+        for (int i = 0; i < 5; i++) {
+            String id = UUID.randomUUID().toString();
+            givenIds.add(id);
+            gameRepository.add(new GenericGameHandlerWrapper<>(id, GenericGameHandler.newStandardHandlerFromConstraintDelegate(new PieceMoveConstraintDelegate())));
+        }
+
+        // when
+        Set<String> listedIds = new HashSet<>();
+        int numberOfPages = 0;
+        String cursor = null;
+
+        do {
+            GamePage<GenericGameHandlerWrapper<GenericGameHandler>> page = gameRepository.getPage(cursor, 2);
+            page.getValues().forEach(wrapper -> listedIds.add(wrapper.getId()));
+            cursor = page.getNextCursor();
+            numberOfPages++;
+        } while (cursor != null);
+
+        // then
+        assertThat(listedIds).isEqualTo(givenIds);
+        assertThat(numberOfPages).isEqualTo(3);
+    }
+
+    @Test
+    public void getPage_cursor_used_again_same_page() {
+        // given
+        gameRepository.add(new GenericGameHandlerWrapper<>(UUID.randomUUID().toString(), GenericGameHandler.newStandardHandlerFromConstraintDelegate(new PieceMoveConstraintDelegate())));
+        gameRepository.add(new GenericGameHandlerWrapper<>(UUID.randomUUID().toString(), GenericGameHandler.newStandardHandlerFromConstraintDelegate(new PieceMoveConstraintDelegate())));
+        String givenCursor = gameRepository.getPage(null, 1).getNextCursor();
+        GamePage<GenericGameHandlerWrapper<GenericGameHandler>> firstRead = gameRepository.getPage(givenCursor, 1);
+
+        // when
+        GamePage<GenericGameHandlerWrapper<GenericGameHandler>> secondRead = gameRepository.getPage(givenCursor, 1);
+
+        // then
+        assertThat(firstRead.getValues()).hasSize(1);
+        assertThat(secondRead.getValues()).extracting(GenericGameHandlerWrapper::getId)
+                .containsExactly(firstRead.getValues().get(0).getId());
+        assertThat(secondRead.getNextCursor()).isNull();
+    }
+
+    @Test
+    public void getPage_games_added_and_deleted_during_listing_present_games_listed_once() {
+        // given
+        for (int i = 0; i < 6; i++) {
+            String id = "game-" + i;
+            gameRepository.add(new GenericGameHandlerWrapper<>(id, GenericGameHandler.newStandardHandlerFromConstraintDelegate(new PieceMoveConstraintDelegate())));
+        }
+
+        GamePage<GenericGameHandlerWrapper<GenericGameHandler>> firstPage = gameRepository.getPage(null, 2);
+
+        // when
+        gameRepository.delete("game-0");
+        gameRepository.delete("game-4");
+        gameRepository.add(new GenericGameHandlerWrapper<>("game-00", GenericGameHandler.newStandardHandlerFromConstraintDelegate(new PieceMoveConstraintDelegate())));
+
+        List<String> listedIds = new ArrayList<>();
+        firstPage.getValues().forEach(wrapper -> listedIds.add(wrapper.getId()));
+        String cursor = firstPage.getNextCursor();
+
+        while (cursor != null) {
+            GamePage<GenericGameHandlerWrapper<GenericGameHandler>> page = gameRepository.getPage(cursor, 2);
+            page.getValues().forEach(wrapper -> listedIds.add(wrapper.getId()));
+            cursor = page.getNextCursor();
+        }
+
+        // then
+        assertThat(listedIds).containsExactly("game-0", "game-1", "game-2", "game-3", "game-5");
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ *    Copyright 2014 - 2021 Yannick Watier
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.watier.echechess.repositories;
+
+import ca.watier.echechess.common.enums.CasePosition;
+import ca.watier.echechess.common.enums.Pieces;
+import ca.watier.echechess.common.enums.Side;
+import ca.watier.echechess.common.sessions.Player;
+import ca.watier.echechess.communication.redis.model.GenericGameHandlerWrapper;
+import ca.watier.echechess.engine.delegates.PieceMoveConstraintDelegate;
+import ca.watier.echechess.engine.engines.GenericGameHandler;
+import ca.watier.echechess.interfaces.GameJournal;
+import ca.watier.echechess.models.TrackedGameHandlerWrapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MappedGameJournalTest {
+    private static final UUID GAME_UUID = UUID.fromString("23770896-069d-43c3-9a83-336031b153fe");
+    private static final UUID OTHER_GAME_UUID = UUID.fromString("07693684-082b-4f3c-9ea7-a8133a78225a");
+    private static final int SEGMENT_SIZE = 4096;
+    private static final Duration FLUSH_INTERVAL = Duration.ofMillis(5);
+    private static final Duration SNAPSHOT_INTERVAL = Duration.ofHours(1);
+    private static final GameStateCodec GAME_STATE_CODEC = new GameStateCodec(new PieceMoveConstraintDelegate());
+
+    @TempDir
+    Path journalDirectory;
+
+    @Test
+    public void replay_records_after_restart() {
+        // given
+        MappedGameJournal givenJournal = newJournal();
+        List<String> expectedRecords = writeRecords(givenJournal, 500);
+        givenJournal.close();
+
+        // when
+        MappedGameJournal journal = newJournal();
+        List<String> records = replay(journal);
+        journal.close();
+
+        // then
+        assertThat(records).containsExactlyElementsOf(expectedRecords);
+        assertThat(journalDirectory.toFile().list()).hasSizeGreaterThan(2); // The records were split in many segments
+    }
+
+    @Test
+    public void snapshot_merge_sealed_segments() {
+        // given
+        MappedGameJournal givenJournal = newJournal();
+        List<String> expectedRecords = writeRecords(givenJournal, 500);
+        givenJournal.close();
+
+        MappedGameJournal givenReopenedJournal = newJournal();
+        givenReopenedJournal.recordMove(GAME_UUID, CasePosition.E7, CasePosition.E5, Side.BLACK);
+        expectedRecords.add("MOVE E7 E5 BLACK");
+
+        // when
+        givenReopenedJournal.snapshot();
+        givenReopenedJournal.close();
+
+        MappedGameJournal journal = newJournal();
+        List<String> records = replay(journal);
+        journal.close();
+
+        // then
+        assertThat(records).containsExactlyElementsOf(expectedRecords);
+        assertThat(journalDirectory.toFile().listFiles())
+                .extracting(File::getName)
+                .filteredOn(name -> name.startsWith("snapshot-"))
+                .hasSize(1);
+    }
+
+    @Test
+    public void snapshot_deleted_game_dropped() {
+        // given
+        MappedGameJournal givenJournal = newJournal();
+        List<String> expectedRecords = writeRecords(givenJournal, 10);
+
+        Player givenPlayer = new Player(UUID.randomUUID().toString());
+        givenJournal.recordCreation(OTHER_GAME_UUID, "", Side.BLACK, true, false, givenPlayer);
+        givenJournal.recordMove(OTHER_GAME_UUID, CasePosition.E7, CasePosition.E5, Side.BLACK);
+        givenJournal.recordDeletion(OTHER_GAME_UUID);
+        givenJournal.recordMove(OTHER_GAME_UUID, CasePosition.D7, CasePosition.D5, Side.BLACK);
+        givenJournal.close();
+
+        MappedGameJournal givenReopenedJournal = newJournal();
+
+        // when
+        givenReopenedJournal.snapshot();
+        givenReopenedJournal.close();
+
+        MappedGameJournal journal = newJournal();
+        List<String> records = replay(journal);
+        journal.close();
+
+        // then
+        assertThat(records).containsExactlyElementsOf(expectedRecords);
+    }
+
+    @Test
+    public void snapshot_hibernated_game_dropped() {
+        // given
+        MappedGameJournal givenJournal = newJournal();
+        List<String> expectedRecords = writeRecords(givenJournal, 10);
+
+        Player givenPlayer = new Player(UUID.randomUUID().toString());
+        givenJournal.recordCreation(OTHER_GAME_UUID, "", Side.BLACK, true, false, givenPlayer);
+        givenJournal.recordMove(OTHER_GAME_UUID, CasePosition.E7, CasePosition.E5, Side.BLACK);
+        givenJournal.recordHibernation(OTHER_GAME_UUID);
+        givenJournal.close();
+
+        MappedGameJournal givenReopenedJournal = newJournal();
+
+        // when
+        givenReopenedJournal.snapshot();
+        givenReopenedJournal.close();
+
+        MappedGameJournal journal = newJournal();
+        List<String> records = replay(journal);
+        journal.close();
+
+        // then
+        assertThat(records).containsExactlyElementsOf(expectedRecords);
+    }
+
+    @Test
+    public void snapshot_state_replaces_previous_records() {
+        // given
+        MappedGameJournal givenJournal = newJournal();
+        writeRecords(givenJournal, 10);
+        givenJournal.recordHibernation(GAME_UUID);
+
+        GenericGameHandler givenGameHandler = GenericGameHandler.newStandardHandlerFromConstraintDelegate(new PieceMoveConstraintDelegate());
+        givenJournal.recordState(GAME_UUID, new TrackedGameHandlerWrapper(GAME_UUID.toString(), givenGameHandler, null));
+        givenJournal.recordMove(GAME_UUID, CasePosition.E2, CasePosition.E4, Side.WHITE);
+        givenJournal.close();
+
+        MappedGameJournal givenReopenedJournal = newJournal();
+
+        // when
+        givenReopenedJournal.snapshot();
+        givenReopenedJournal.close();
+
+        MappedGameJournal journal = newJournal();
+        List<String> records = replay(journal);
+        journal.close();
+
+        // then
+        assertThat(records).containsExactly("STATE " + GAME_UUID, "MOVE E2 E4 WHITE");
+    }
+
+    @Test
+    public void recordMove_sync_on_append_durable() {
+        // given
+        MappedGameJournal journal = new MappedGameJournal(journalDirectory, GAME_STATE_CODEC, SEGMENT_SIZE, FLUSH_INTERVAL, SNAPSHOT_INTERVAL, true);
+
+        // when
+        journal.recordMove(GAME_UUID, CasePosition.E2, CasePosition.E4, Side.WHITE);
+
+        // then
+        assertThat(journal.getAppendedRecords()).isEqualTo(1);
+        assertThat(journal.getDurableRecords()).isEqualTo(1);
+        journal.close();
+    }
+
+    private MappedGameJournal newJournal() {
+        return new MappedGameJournal(journalDirectory, GAME_STATE_CODEC, SEGMENT_SIZE, FLUSH_INTERVAL, SNAPSHOT_INTERVAL, false);
+    }
+
+    private List<String> writeRecords(MappedGameJournal journal, int numberOfMoves) {
+        List<String> expectedRecords = new ArrayList<>();
+
+        Player givenCreator = new Player(UUID.randomUUID().toString());
+        givenCreator.addCreatedGame(GAME_UUID);
+        Player givenOpponent = new Player(UUID.randomUUID().toString());
+        givenOpponent.addCreatedGame(OTHER_GAME_UUID);
+
+        journal.recordCreation(GAME_UUID, "K7/6P1/8/8/8/8/6p1/k7 w", Side.WHITE, false, true, givenCreator);
+        expectedRecords.add("CREATION K7/6P1/8/8/8/8/6p1/k7 w WHITE false true [" + GAME_UUID + "]");
+
+        journal.recordJoin(GAME_UUID, Side.BLACK, givenOpponent);
+        expectedRecords.add("JOIN BLACK [" + OTHER_GAME_UUID + "]");
+
+        for (int i = 0; i < numberOfMoves; i++) {
+            journal.recordMove(GAME_UUID, CasePosition.E2, CasePosition.E4, Side.WHITE);
+            expectedRecords.add("MOVE E2 E4 WHITE");
+        }
+
+        journal.recordPromotion(GAME_UUID, CasePosition.G8, Pieces.W_QUEEN, Side.WHITE);
+        expectedRecords.add("PROMOTION G8 W_QUEEN WHITE");
+
+        return expectedRecords;
+    }
+
+    private List<String> replay(MappedGameJournal journal) {
+        List<String> records = new ArrayList<>();
+
+        journal.replay(new GameJournal() {
+            @Override
+            public void recordCreation(UUID uuid, String specialGamePieces, Side side, boolean againstComputer, boolean observers, Player player) {
+                records.add(String.format("CREATION %s %s %s %s %s", specialGamePieces, side, againstComputer, observers, player.getCreatedGameList()));
+            }
+
+            @Override
+            public void recordMove(UUID uuid, CasePosition from, CasePosition to, Side side) {
+                records.add(String.format("MOVE %s %s %s", from, to, side));
+            }
+
+            @Override
+            public void recordPromotion(UUID uuid, CasePosition to, Pieces pieces, Side side) {
+                records.add(String.format("PROMOTION %s %s %s", to, pieces, side));
+            }
+
+            @Override
+            public void recordJoin(UUID uuid, Side side, Player player) {
+                records.add(String.format("JOIN %s %s", side, player.getCreatedGameList()));
+            }
+
+            @Override
+            public void recordDeletion(UUID uuid) {
+                records.add("DELETION " + uuid);
+            }
+
+            @Override
+            public void recordState(UUID uuid, GenericGameHandlerWrapper<GenericGameHandler> genericGameHandlerWrapper) {
+                records.add("STATE " + genericGameHandlerWrapper.getId());
+            }
+
+            @Override
+            public void recordHibernation(UUID uuid) {
+                records.add("HIBERNATION " + uuid);
+            }
+        });
+
+        return records;
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ *    Copyright 2014 - 2021 Yannick Watier
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.watier.echechess.repositories;
+
+import ca.watier.echechess.communication.redis.model.GenericGameHandlerWrapper;
+import ca.watier.echechess.engine.engines.GenericGameHandler;
+import ca.watier.echechess.interfaces.IndexedGameRepository;
+import ca.watier.echechess.models.TrackedGameHandlerWrapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class WriteBehindGameRepositoryTest {
+    private static final String GAME_ID = "23770896-069d-43c3-9a83-336031b153fe";
+
+    @Mock
+    private IndexedGameRepository remoteGameRepository;
+    @Mock
+    private GenericGameHandler gameHandler;
+
+    private WriteBehindGameRepository gameRepository;
+
+    @BeforeEach
+    public void setup() {
+        // The window is never reached, the games are written by the flush
+        gameRepository = new WriteBehindGameRepository(remoteGameRepository, Duration.ofHours(1));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        gameRepository.shutdown();
+    }
+
+    @Test
+    public void add_multiple_writes_merged() {
+        // given
+        GenericGameHandlerWrapper<GenericGameHandler> lastWrapper = new GenericGameHandlerWrapper<>(GAME_ID, gameHandler);
+        gameRepository.add(new GenericGameHandlerWrapper<>(GAME_ID, gameHandler));
+        gameRepository.add(new GenericGameHandlerWrapper<>(GAME_ID, gameHandler));
+        gameRepository.add(lastWrapper);
+
+        // when
+        gameRepository.flush();
+
+        // then
+        verify(remoteGameRepository, times(1)).add(any(GenericGameHandlerWrapper.class));
+        verify(remoteGameRepository).add(lastWrapper);
+        assertThat(gameRepository.getSubmittedWrites()).isEqualTo(3);
+        assertThat(gameRepository.getExecutedWrites()).isEqualTo(1);
+        assertThat(gameRepository.getNumberOfPendingWrites()).isZero();
+    }
+
+    @Test
+    public void get_pending_game_returned() {
+        // given
+        GenericGameHandlerWrapper<GenericGameHandler> givenWrapper = new GenericGameHandlerWrapper<>(GAME_ID, gameHandler);
+        gameRepository.add(givenWrapper);
+
+        // when
+        GenericGameHandlerWrapper<GenericGameHandler> wrapper = gameRepository.get(GAME_ID);
+
+        // then
+        assertThat(wrapper).isSameAs(givenWrapper);
+        verify(remoteGameRepository, never()).get(GAME_ID);
+        verify(remoteGameRepository, never()).add(any(GenericGameHandlerWrapper.class));
+    }
+
+    @Test
+    public void compareAndSet_pending_game_written_first() {
+        // given
+        GenericGameHandlerWrapper<GenericGameHandler> givenWrapper = new GenericGameHandlerWrapper<>(GAME_ID, gameHandler);
+        TrackedGameHandlerWrapper givenTrackedWrapper = new TrackedGameHandlerWrapper(GAME_ID, gameHandler, null);
+        gameRepository.add(givenWrapper);
+        when(remoteGameRepository.compareAndSet(givenTrackedWrapper, 1)).thenReturn(true);
+
+        // when
+        boolean isSet = gameRepository.compareAndSet(givenTrackedWrapper, 1);
+
+        // then
+        assertThat(isSet).isTrue();
+        assertThat(gameRepository.getNumberOfPendingWrites()).isZero();
+        InOrder inOrder = inOrder(remoteGameRepository);
+        inOrder.verify(remoteGameRepository).add(givenWrapper);
+        inOrder.verify(remoteGameRepository).compareAndSet(givenTrackedWrapper, 1);
+    }
+
+    @Test
+    public void compareAndSet_game_read_from_pending_write_set() {
+        // given
+        TrackedGameHandlerWrapper givenWrapper = new TrackedGameHandlerWrapper(GAME_ID, gameHandler, null);
+        givenWrapper.setVersion(3);
+        gameRepository.add(givenWrapper);
+        TrackedGameHandlerWrapper givenUpdatedWrapper = (TrackedGameHandlerWrapper) gameRepository.get(GAME_ID);
+        when(remoteGameRepository.compareAndSet(givenUpdatedWrapper, 3)).thenReturn(true);
+
+        // when
+        boolean isSet = gameRepository.compareAndSet(givenUpdatedWrapper, 3);
+
+        // then
+        assertThat(isSet).isTrue();
+        assertThat(gameRepository.getNumberOfPendingWrites()).isZero();
+        verify(remoteGameRepository, never()).add(any(GenericGameHandlerWrapper.class));
+    }
+
+    @Test
+    public void compareAndSet_game_read_from_pending_write_refused_pending_dropped() {
+        // given
+        TrackedGameHandlerWrapper givenWrapper = new TrackedGameHandlerWrapper(GAME_ID, gameHandler, null);
+        TrackedGameHandlerWrapper givenUpdatedWrapper = new TrackedGameHandlerWrapper(GAME_ID, gameHandler, null);
+        gameRepository.add(givenWrapper);
+        when(remoteGameRepository.compareAndSet(givenUpdatedWrapper, 0)).thenReturn(false);
+
+        // when
+        boolean isSet = gameRepository.compareAndSet(givenUpdatedWrapper, 0);
+
+        // then
+        assertThat(isSet).isFalse();
+        assertThat(gameRepository.getNumberOfPendingWrites()).isZero();
+        verify(remoteGameRepository, never()).add(any(GenericGameHandlerWrapper.class));
+        verify(remoteGameRepository, never()).compareAndSet(givenWrapper, 0);
+    }
+
+    @Test
+    public void flush_tracked_game_written_with_version_read() {
+        // given
+        TrackedGameHandlerWrapper givenWrapper = new TrackedGameHandlerWrapper(GAME_ID, gameHandler, null);
+        givenWrapper.setVersion(2);
+        gameRepository.add(givenWrapper);
+        when(remoteGameRepository.compareAndSet(givenWrapper, 2)).thenReturn(true);
+
+        // when
+        gameRepository.flush();
+
+        // then
+        verify(remoteGameRepository, never()).add(any(GenericGameHandlerWrapper.class));
+        assertThat(gameRepository.getNumberOfPendingWrites()).isZero();
+    }
+
+    @Test
+    public void flush_game_changed_by_other_node_write_dropped() {
+        // given
+        TrackedGameHandlerWrapper givenWrapper = new TrackedGameHandlerWrapper(GAME_ID, gameHandler, null);
+        givenWrapper.setVersion(2);
+        gameRepository.add(givenWrapper);
+        when(remoteGameRepository.compareAndSet(givenWrapper, 2)).thenReturn(false);
+
+        // when
+        gameRepository.flush();
+
+        // then
+        verify(remoteGameRepository, never()).add(any(GenericGameHandlerWrapper.class));
+        assertThat(gameRepository.getNumberOfPendingWrites()).isZero();
+    }
+
+    @Test
+    public void flush_game_added_during_write_kept_pending_with_written_version() {
+        // given
+        TrackedGameHandlerWrapper givenWrapper = new TrackedGameHandlerWrapper(GAME_ID, gameHandler, null);
+        TrackedGameHandlerWrapper givenNewerWrapper = new TrackedGameHandlerWrapper(GAME_ID, gameHandler, null);
+        givenWrapper.setVersion(2);
+        givenNewerWrapper.setVersion(2);
+        gameRepository.add(givenWrapper);
+
+        // The remote write is done outside of the entry of the game, so the game can be read and written meanwhile
+        GenericGameHandlerWrapper<?>[] wrapperReadDuringWrite = new GenericGameHandlerWrapper<?>[1];
+        when(remoteGameRepository.compareAndSet(any(TrackedGameHandlerWrapper.class), anyLong())).thenAnswer(invocation -> {
+            if (invocation.getArgument(0) != givenWrapper) {
+                return false;
+            }
+
+            wrapperReadDuringWrite[0] = gameRepository.get(GAME_ID);
+            gameRepository.add(givenNewerWrapper);
+            givenWrapper.setVersion(3);
+            return true;
+        });
+
+        // when
+        gameRepository.flush();
+
+        // then
+        assertThat(wrapperReadDuringWrite[0]).isSameAs(givenWrapper);
+        assertThat(gameRepository.getNumberOfPendingWrites()).isEqualTo(1);
+        assertThat(gameRepository.get(GAME_ID)).isSameAs(givenNewerWrapper);
+        assertThat(givenNewerWrapper.getVersion()).isEqualTo(3);
+    }
+
+    @Test
+    public void flush_write_failed_other_games_written_and_failed_game_kept() {
+        // given
+        String givenOtherId = "5bd6f5a2-5a43-4a5b-8f0a-7c1c1b1ba8b0";
+        GenericGameHandlerWrapper<GenericGameHandler> givenWrapper = new GenericGameHandlerWrapper<>(GAME_ID, gameHandler);
+        GenericGameHandlerWrapper<GenericGameHandler> givenOtherWrapper = new GenericGameHandlerWrapper<>(givenOtherId, gameHandler);
+        gameRepository.add(givenWrapper);
+        gameRepository.add(givenOtherWrapper);
+        boolean[] isAvailable = {false};
+        doAnswer(invocation -> {
+            if (!isAvailable[0] && invocation.getArgument(0) == givenWrapper) {
+                throw new IllegalStateException("Remote store unavailable");
+            }
+
+            return null;
+        }).when(remoteGameRepository).add(any(GenericGameHandlerWrapper.class));
+
+        // when / then
+        assertThatThrownBy(() -> gameRepository.flush()).isInstanceOf(IllegalStateException.class);
+        verify(remoteGameRepository).add(givenOtherWrapper);
+        assertThat(gameRepository.getNumberOfPendingWrites()).isEqualTo(1);
+        assertThat(gameRepository.get(GAME_ID)).isSameAs(givenWrapper);
+
+        // Written at the next window
+        isAvailable[0] = true;
+        gameRepository.flush();
+        assertThat(gameRepository.getNumberOfPendingWrites()).isZero();
+    }
+
+    @Test
+    public void shutdown_pending_games_written() {
+        // given
+        GenericGameHandlerWrapper<GenericGameHandler> givenWrapper = new GenericGameHandlerWrapper<>(GAME_ID, gameHandler);
+        gameRepository.add(givenWrapper);
+
+        // when
+        gameRepository.shutdown();
+
+        // then
+        verify(remoteGameRepository).add(givenWrapper);
+        assertThat(gameRepository.getNumberOfPendingWrites()).isZero();
+    }
+}
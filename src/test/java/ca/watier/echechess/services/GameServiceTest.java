@@ -32,8 +32,13 @@ import ca.watier.echechess.engine.interfaces.GameEventEvaluatorHandler;
 import ca.watier.echechess.engine.interfaces.PlayerHandler;
 import ca.watier.echechess.engine.utils.GameUtils;
 import ca.watier.echechess.exceptions.GameException;
+import ca.watier.echechess.models.GamePage;
+import ca.watier.echechess.models.GameState;
+import ca.watier.echechess.models.GameSummaryModel;
+import ca.watier.echechess.models.MoveAppliedModel;
 import ca.watier.echechess.models.PawnPromotionPiecesModel;
 import ca.watier.echechess.models.PieceLocationModel;
+import ca.watier.echechess.repositories.IndependentGameRepositoryImpl;
 import ca.watier.repository.KeyValueRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -41,6 +46,7 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 
 import static ca.watier.echechess.common.enums.CasePosition.*;
 import static ca.watier.echechess.common.enums.ChessEventMessage.*;
@@ -98,14 +104,14 @@ public class GameServiceTest {
         assertTrue(gameService.upgradePiece(G8, uuid, PawnPromotionPiecesModel.QUEEN, givenPlayer));
         assertFalse(gameFromUuid.isGamePaused());
 
-        assertThat(currentWebSocketService.getMessages()).containsOnly(
-                "G8",
-                String.format(Constants.GAME_PAUSED_PAWN_PROMOTION, "WHITE"),
-                "G8",
-                String.format(Constants.GAME_PAUSED_PAWN_PROMOTION, "WHITE"),
-                "It's your turn !", //Black turn
-                EMPTY_GAME_SCORE_RESPONSE,
-                REFRESH_BOARD);
+        // The promoted position, the points and the turn are sent in one event
+        assertThat(currentWebSocketService.getMessages()).hasOnlyElementsOfType(MoveAppliedModel.class)
+                .singleElement()
+                .isInstanceOfSatisfying(MoveAppliedModel.class, moveApplied -> {
+                    assertThat(moveApplied.getSquares()).containsExactly(new PieceLocationModel(W_QUEEN, G8));
+                    assertThat(moveApplied.getTurn()).isEqualTo(BLACK);
+                    assertThat(moveApplied.getScore()).isEqualTo(EMPTY_GAME_SCORE_RESPONSE);
+                });
     }
 
     @Test
@@ -405,7 +411,7 @@ public class GameServiceTest {
     @Test
     void getAllAvailableMoves_player_same_color_move() throws GameException {
         // given
-        String givenUuid = "superUUID";
+        String givenUuid = "23770896-069d-43c3-9a83-336031b153fe";
         CasePosition givenPosition = A7; // Black PAWN
         Side givenSide = BLACK;
 
@@ -413,11 +419,12 @@ public class GameServiceTest {
         mockRedisRepository();
         when(givenGameHandler.hasPlayer(givenPlayer)).thenReturn(true);
         when(givenGameHandler.getPlayerSide(givenPlayer)).thenReturn(givenSide);
+        when(givenGameMessageDelegate.requestAvailableMoves(UUID.fromString(givenUuid), givenPosition, givenSide)).thenReturn(new CompletableFuture<>());
 
         gameService.getAllAvailableMoves(givenPosition, givenUuid, givenPlayer);
 
         // then
-        verify(givenGameMessageDelegate).handleAvailableMoveMessage(anyString());
+        verify(givenGameMessageDelegate).requestAvailableMoves(UUID.fromString(givenUuid), givenPosition, givenSide);
     }
 
 
@@ -638,4 +645,60 @@ public class GameServiceTest {
         // then
         assertThat(isUpgraded).isFalse();
     }
+
+    @Test
+    public void getOpenGames_indexed_repository_open_games_returned() throws FenParserException, GameException {
+        // given
+        GameService indexedGameService = new GameServiceImpl(
+                DEFAULT_GAME_MOVE_DELEGATE,
+                givenWebSocketService,
+                new IndependentGameRepositoryImpl(),
+                givenGameMessageDelegate);
+
+        Player otherPlayer = new Player(UUID.randomUUID().toString());
+        UUID openGame = indexedGameService.createNewGame("", WHITE, false, false, givenPlayer);
+        UUID gameAgainstComputer = indexedGameService.createNewGame("", WHITE, true, false, givenPlayer);
+        UUID gameOfOtherPlayer = indexedGameService.createNewGame("", BLACK, true, false, otherPlayer);
+
+        // when
+        List<GameSummaryModel> openGames = indexedGameService.getOpenGames();
+        List<GameSummaryModel> gamesOfPlayer = indexedGameService.getGamesOfPlayer(givenPlayer);
+        List<GameSummaryModel> runningGames = indexedGameService.getGamesByState(GameState.RUNNING);
+
+        // then
+        assertThat(openGames).extracting(GameSummaryModel::getUuid).containsExactly(openGame.toString());
+        assertThat(gamesOfPlayer).extracting(GameSummaryModel::getUuid)
+                .containsExactlyInAnyOrder(openGame.toString(), gameAgainstComputer.toString());
+        assertThat(runningGames).extracting(GameSummaryModel::getUuid)
+                .containsExactlyInAnyOrder(openGame.toString(), gameAgainstComputer.toString(), gameOfOtherPlayer.toString());
+    }
+
+    @Test
+    public void getGamesOfPlayer_not_indexed_repository_games_read() throws FenParserException, GameException {
+        // given
+        UUID gameOfPlayer = gameService.createNewGame("", WHITE, false, false, givenPlayer);
+        gameService.createNewGame("", WHITE, false, false, new Player(UUID.randomUUID().toString()));
+
+        // when
+        List<GameSummaryModel> gamesOfPlayer = gameService.getGamesOfPlayer(givenPlayer);
+
+        // then
+        assertThat(gamesOfPlayer).extracting(GameSummaryModel::getUuid).containsExactly(gameOfPlayer.toString());
+    }
+
+    @Test
+    public void getGames_not_pageable_repository_all_games_in_single_page() throws FenParserException, GameException {
+        // given
+        gameService.createNewGame("", WHITE, false, false, givenPlayer);
+        gameService.createNewGame("", BLACK, false, false, givenPlayer);
+
+        // when
+        GamePage<GameSummaryModel> page = gameService.getGames(null, 1);
+
+        // then
+        assertThat(gameService.isGamesPageable()).isFalse();
+        assertThat(page.getValues()).hasSize(2);
+        assertThat(page.getNextCursor()).isNull();
+        assertThrows(GameException.class, () -> gameService.getGames("1", 1));
+    }
 }
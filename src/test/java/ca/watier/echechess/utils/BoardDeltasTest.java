@@ -0,0 +1,80 @@
+/*
+ *    Copyright 2014 - 2021 Yannick Watier
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.watier.echechess.utils;
+
+import ca.watier.echechess.common.enums.CasePosition;
+import ca.watier.echechess.common.enums.Pieces;
+import ca.watier.echechess.models.PieceLocationModel;
+import org.junit.jupiter.api.Test;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import static ca.watier.echechess.common.enums.CasePosition.*;
+import static ca.watier.echechess.common.enums.Pieces.*;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BoardDeltasTest {
+
+    @Test
+    public void getChangedSquares_normal_move_origin_removed_destination_placed() {
+        // given
+        Map<CasePosition, Pieces> piecesLocation = new EnumMap<>(CasePosition.class);
+        piecesLocation.put(E4, W_PAWN);
+
+        // when
+        List<PieceLocationModel> squares = BoardDeltas.getChangedSquares(E2, E4, piecesLocation);
+
+        // then
+        assertThat(squares).containsExactlyInAnyOrder(new PieceLocationModel(null, E2), new PieceLocationModel(W_PAWN, E4));
+    }
+
+    @Test
+    public void getChangedSquares_castling_rook_included() {
+        // given
+        Map<CasePosition, Pieces> piecesLocation = new EnumMap<>(CasePosition.class);
+        piecesLocation.put(C8, B_KING);
+        piecesLocation.put(D8, B_ROOK);
+
+        // when
+        List<PieceLocationModel> squares = BoardDeltas.getChangedSquares(E8, C8, piecesLocation);
+
+        // then
+        assertThat(squares).containsExactlyInAnyOrder(
+                new PieceLocationModel(null, E8),
+                new PieceLocationModel(B_KING, C8),
+                new PieceLocationModel(null, A8),
+                new PieceLocationModel(B_ROOK, D8));
+    }
+
+    @Test
+    public void getChangedSquares_en_passant_taken_pawn_removed() {
+        // given
+        Map<CasePosition, Pieces> piecesLocation = new EnumMap<>(CasePosition.class);
+        piecesLocation.put(D6, W_PAWN);
+
+        // when
+        List<PieceLocationModel> squares = BoardDeltas.getChangedSquares(E5, D6, piecesLocation);
+
+        // then
+        assertThat(squares).containsExactlyInAnyOrder(
+                new PieceLocationModel(null, E5),
+                new PieceLocationModel(W_PAWN, D6),
+                new PieceLocationModel(null, D5));
+    }
+}
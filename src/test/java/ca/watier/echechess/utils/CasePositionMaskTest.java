@@ -0,0 +1,65 @@
+/*
+ *    Copyright 2014 - 2021 Yannick Watier
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.watier.echechess.utils;
+
+import ca.watier.echechess.common.enums.CasePosition;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static ca.watier.echechess.common.enums.CasePosition.*;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CasePositionMaskTest {
+
+    @Test
+    public void of_positions_contained() {
+        // given
+        List<CasePosition> givenPositions = List.of(A1, E4, H8);
+
+        // when
+        long mask = CasePositionMask.of(givenPositions);
+
+        // then
+        assertThat(CasePositionMask.size(mask)).isEqualTo(3);
+        assertThat(CasePositionMask.contains(mask, E4)).isTrue();
+        assertThat(CasePositionMask.contains(mask, E5)).isFalse();
+    }
+
+    @Test
+    public void toPositions_all_positions_expanded() {
+        // given
+        List<CasePosition> givenPositions = Arrays.asList(CasePosition.values());
+
+        // when
+        List<CasePosition> positions = CasePositionMask.toPositions(CasePositionMask.of(givenPositions));
+
+        // then
+        assertThat(positions).containsExactlyElementsOf(givenPositions);
+    }
+
+    @Test
+    public void toNames_empty_mask_no_names() {
+        // given
+        // when
+        List<String> names = CasePositionMask.toNames(CasePositionMask.EMPTY);
+
+        // then
+        assertThat(names).isEmpty();
+    }
+}
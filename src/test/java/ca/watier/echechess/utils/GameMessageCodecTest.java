@@ -0,0 +1,181 @@
+/*
+ *    Copyright 2014 - 2021 Yannick Watier
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.watier.echechess.utils;
+
+import ca.watier.echechess.common.enums.MoveType;
+import ca.watier.echechess.common.enums.Side;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static ca.watier.echechess.common.enums.CasePosition.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+public class GameMessageCodecTest {
+    private static final UUID GAME_ID = UUID.fromString("23770896-069d-43c3-9a83-336031b153fe");
+
+    @Test
+    public void encodeMoveResponse_fields_read() {
+        // given
+        // when
+        byte[] message = GameMessageCodec.encodeMoveResponse(GAME_ID, 42L, E2, E4, MoveType.NORMAL_MOVE, Side.WHITE);
+
+        // then
+        assertThat(message).hasSize(35);
+        assertThat(GameMessageCodec.isEncoded(message)).isTrue();
+        assertThat(GameMessageCodec.getType(message)).isEqualTo(GameMessageCodec.MOVE_RESPONSE);
+        assertThat(GameMessageCodec.getGameId(message)).isEqualTo(GAME_ID);
+        assertThat(GameMessageCodec.getCorrelationId(message)).isEqualTo(42L);
+        assertThat(GameMessageCodec.getFrom(message)).isEqualTo(E2);
+        assertThat(GameMessageCodec.getTo(message)).isEqualTo(E4);
+        assertThat(GameMessageCodec.getMoveType(message)).isEqualTo(MoveType.NORMAL_MOVE);
+        assertThat(GameMessageCodec.getSide(message)).isEqualTo(Side.WHITE);
+    }
+
+    @Test
+    public void encodeMoveRequest_sequence_and_idempotency_key_read() {
+        // given
+        // when
+        byte[] message = GameMessageCodec.encodeMoveRequest(GAME_ID, 42L, E2, E4, Side.WHITE, 12, -7L);
+
+        // then
+        assertThat(GameMessageCodec.getSequence(message)).isEqualTo(12);
+        assertThat(GameMessageCodec.getIdempotencyKey(message)).isEqualTo(-7L);
+        assertThat(GameMessageCodec.getSide(message)).isEqualTo(Side.WHITE);
+    }
+
+    @Test
+    public void encodeMoveResponse_status_and_sequence_read() {
+        // given
+        // when
+        byte[] message = GameMessageCodec.encodeMoveResponse(GAME_ID, 42L, E2, E4, MoveType.NORMAL_MOVE, Side.WHITE, GameMessageCodec.MOVE_DUPLICATE, 13);
+
+        // then
+        assertThat(GameMessageCodec.getMoveStatus(message)).isEqualTo(GameMessageCodec.MOVE_DUPLICATE);
+        assertThat(GameMessageCodec.getSequence(message)).isEqualTo(13);
+        assertThat(GameMessageCodec.getMoveType(message)).isEqualTo(MoveType.NORMAL_MOVE);
+    }
+
+    @Test
+    public void getMoveStatus_response_without_status_applied() {
+        // given
+        byte[] givenMessage = Arrays.copyOf(GameMessageCodec.encodeMoveResponse(GAME_ID, 42L, E2, E4, MoveType.NORMAL_MOVE, Side.WHITE), 31);
+
+        // when
+        byte status = GameMessageCodec.getMoveStatus(givenMessage);
+
+        // then
+        assertThat(status).isEqualTo(GameMessageCodec.MOVE_APPLIED);
+        assertThat(GameMessageCodec.getSequence(givenMessage)).isEqualTo(GameMessageCodec.NO_SEQUENCE);
+    }
+
+    @Test
+    public void encodeAvailableMovesResponse_positions_read() {
+        // given
+        // when
+        byte[] message = GameMessageCodec.encodeAvailableMovesResponse(GAME_ID, GameMessageCodec.NO_CORRELATION, G1, Side.WHITE, CasePositionMask.of(List.of(F3, H3)));
+
+        // then
+        assertThat(message).hasSize(36);
+        assertThat(GameMessageCodec.getSide(message)).isEqualTo(Side.WHITE);
+        assertThat(GameMessageCodec.getFrom(message)).isEqualTo(G1);
+        assertThat(CasePositionMask.toPositions(GameMessageCodec.getPositions(message))).containsExactlyInAnyOrder(F3, H3);
+    }
+
+    @Test
+    public void normalize_legacy_move_request_converted() {
+        // given
+        byte[] givenMessage = (GAME_ID + "|H7|H5|" + Side.BLACK.getValue()).getBytes(StandardCharsets.UTF_8);
+
+        // when
+        byte[] message = GameMessageCodec.normalize(givenMessage, GameMessageCodec.MOVE_REQUEST);
+
+        // then
+        assertThat(message).isEqualTo(GameMessageCodec.encodeMoveRequest(GAME_ID, GameMessageCodec.NO_CORRELATION, H7, H5, Side.BLACK));
+    }
+
+    @Test
+    public void normalize_legacy_move_response_converted() {
+        // given
+        String givenMessage = GAME_ID + "|E2|E4|" + MoveType.NORMAL_MOVE.getValue() + "|" + Side.WHITE.getValue();
+
+        // when
+        byte[] message = GameMessageCodec.normalize(givenMessage.getBytes(StandardCharsets.UTF_8), GameMessageCodec.MOVE_RESPONSE);
+
+        // then
+        assertThat(message).isEqualTo(GameMessageCodec.encodeMoveResponse(GAME_ID, GameMessageCodec.NO_CORRELATION, E2, E4, MoveType.NORMAL_MOVE, Side.WHITE));
+        assertThat(GameMessageCodec.getMoveStatus(message)).isEqualTo(GameMessageCodec.MOVE_APPLIED);
+    }
+
+    @Test
+    public void encodeLegacyAvailableMovesRequest_read_back() {
+        // given
+        byte[] givenMessage = GameMessageCodec.encodeLegacyAvailableMovesRequest(GAME_ID, G1, Side.WHITE);
+
+        // when
+        byte[] message = GameMessageCodec.normalize(givenMessage, GameMessageCodec.AVAILABLE_MOVES_REQUEST);
+
+        // then
+        assertThat(message).isEqualTo(GameMessageCodec.encodeAvailableMovesRequest(GAME_ID, GameMessageCodec.NO_CORRELATION, G1, Side.WHITE));
+    }
+
+    @Test
+    public void normalize_legacy_available_moves_response_converted() {
+        // given
+        String givenMessage = GAME_ID + "|G1|" + Side.WHITE.getValue() + "|[\"F3\",\"H3\"]";
+
+        // when
+        byte[] message = GameMessageCodec.normalize(givenMessage.getBytes(StandardCharsets.UTF_8), GameMessageCodec.AVAILABLE_MOVES_RESPONSE);
+
+        // then
+        assertThat(CasePositionMask.toPositions(GameMessageCodec.getPositions(message))).containsExactlyInAnyOrder(F3, H3);
+    }
+
+    @Test
+    public void normalize_other_protocol_version_refused() {
+        // given
+        byte[] givenMessage = GameMessageCodec.encodeMoveRequest(GAME_ID, 42L, E2, E4, Side.WHITE);
+        givenMessage[1] = GameMessageCodec.PROTOCOL_VERSION + 1;
+
+        // when
+        Throwable throwable = catchThrowable(() -> GameMessageCodec.normalize(givenMessage, GameMessageCodec.MOVE_REQUEST));
+
+        // then
+        assertThat(throwable).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void toLegacyFormat_requests_converted() {
+        // given
+        byte[] givenMoveRequest = GameMessageCodec.encodeMoveRequest(GAME_ID, 42L, H7, H5, Side.BLACK, 12, -7L);
+        byte[] givenAvailableMovesRequest = GameMessageCodec.encodeAvailableMovesRequest(GAME_ID, 42L, G1, Side.WHITE);
+
+        // when
+        String moveRequest = new String(GameMessageCodec.toLegacyFormat(givenMoveRequest), StandardCharsets.UTF_8);
+        String availableMovesRequest = new String(GameMessageCodec.toLegacyFormat(givenAvailableMovesRequest), StandardCharsets.UTF_8);
+
+        // then
+        assertThat(moveRequest).isEqualTo(GAME_ID + "|H7|H5|" + Side.BLACK.getValue());
+        assertThat(availableMovesRequest).isEqualTo(GAME_ID + "|G1|" + Side.WHITE.getValue());
+        assertThat(GameMessageCodec.normalize(moveRequest.getBytes(StandardCharsets.UTF_8), GameMessageCodec.MOVE_REQUEST))
+                .isEqualTo(GameMessageCodec.encodeMoveRequest(GAME_ID, GameMessageCodec.NO_CORRELATION, H7, H5, Side.BLACK));
+    }
+}
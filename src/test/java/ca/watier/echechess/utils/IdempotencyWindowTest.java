@@ -0,0 +1,87 @@
+/*
+ *    Copyright 2014 - 2021 Yannick Watier
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.watier.echechess.utils;
+
+import ca.watier.echechess.common.enums.MoveType;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class IdempotencyWindowTest {
+
+    @Test
+    public void get_key_in_window_first_result() {
+        // given
+        IdempotencyWindow idempotencyWindow = new IdempotencyWindow();
+        idempotencyWindow.put(42L, MoveType.NORMAL_MOVE);
+
+        // when
+        MoveType moveType = idempotencyWindow.get(42L);
+
+        // then
+        assertThat(moveType).isEqualTo(MoveType.NORMAL_MOVE);
+        assertThat(idempotencyWindow.get(43L)).isNull();
+    }
+
+    @Test
+    public void get_oldest_key_replaced_null() {
+        // given
+        IdempotencyWindow idempotencyWindow = new IdempotencyWindow(2);
+        idempotencyWindow.put(1L, MoveType.NORMAL_MOVE);
+        idempotencyWindow.put(2L, MoveType.CAPTURE);
+        idempotencyWindow.put(3L, MoveType.MOVE_NOT_ALLOWED);
+
+        // when
+        MoveType moveType = idempotencyWindow.get(1L);
+
+        // then
+        assertThat(moveType).isNull();
+        assertThat(idempotencyWindow.get(2L)).isEqualTo(MoveType.CAPTURE);
+        assertThat(idempotencyWindow.get(3L)).isEqualTo(MoveType.MOVE_NOT_ALLOWED);
+    }
+
+    @Test
+    public void get_no_idempotency_key_null() {
+        // given
+        IdempotencyWindow idempotencyWindow = new IdempotencyWindow();
+        idempotencyWindow.put(GameMessageCodec.NO_IDEMPOTENCY_KEY, MoveType.NORMAL_MOVE);
+
+        // when
+        MoveType moveType = idempotencyWindow.get(GameMessageCodec.NO_IDEMPOTENCY_KEY);
+
+        // then
+        assertThat(moveType).isNull();
+    }
+
+    @Test
+    public void copy_copy_changed_window_not_changed() {
+        // given
+        IdempotencyWindow idempotencyWindow = new IdempotencyWindow(2);
+        idempotencyWindow.put(1L, MoveType.NORMAL_MOVE);
+
+        // when
+        IdempotencyWindow copy = idempotencyWindow.copy();
+        copy.put(2L, MoveType.CAPTURE);
+        copy.put(3L, MoveType.CAPTURE);
+
+        // then
+        assertThat(copy.get(1L)).isNull();
+        assertThat(copy.get(3L)).isEqualTo(MoveType.CAPTURE);
+        assertThat(idempotencyWindow.get(1L)).isEqualTo(MoveType.NORMAL_MOVE);
+        assertThat(idempotencyWindow.get(2L)).isNull();
+    }
+}